@@ -0,0 +1,56 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Interface for classes that can execute tasks asynchronously, and
+ * notify the caller about the completion of a task via a 
+ * CompletableFuture.
+ */
+public interface AsyncExecutor
+{
+    /**
+     * Submit the given task for execution. The returned future will be 
+     * completed with the result of the task, or exceptionally when
+     * the task caused an exception. Cancelling the returned future 
+     * will try to cancel the execution of the task.
+     * 
+     * @param <T> The result type of the task
+     * @param callable The task
+     * @return The future for the result
+     */
+    <T> CompletableFuture<T> submit(Callable<T> callable);
+    
+    /**
+     * Shut down this executor. Tasks that already have been submitted
+     * will still be executed, but no new tasks will be accepted.
+     */
+    void shutdown();
+}
@@ -0,0 +1,77 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Interface for {@link MatrixMultiplicator}s that can perform the 
+ * multiplication asynchronously.
+ */
+public interface AsyncMatrixMultiplicator extends MatrixMultiplicator
+{
+    /**
+     * Start the multiplication of the given matrices, which will store
+     * the result in the given matrix. The returned future will be 
+     * completed with the result matrix when the multiplication is 
+     * finished.<br />
+     * <br />
+     * Cancelling the returned future will cancel the multiplication: 
+     * No further tasks will be dispatched, and the tasks that are
+     * currently executed will be cancelled. The contents of the 
+     * result matrix are unspecified in this case.
+     * 
+     * @param result The matrix that will store the result
+     * @param m0 The first matrix
+     * @param m1 The second matrix
+     * @return The future for the result
+     */
+    CompletableFuture<MutableFloatMatrix2D> multiplyAsync(
+        MutableFloatMatrix2D result, FloatMatrix2D m0, FloatMatrix2D m1);
+
+    /**
+     * Start the multiplication of the given matrices, which will store
+     * the result in the given matrix, with the given deadline. 
+     * When the multiplication is not finished after the given time,
+     * then it will be cancelled, and the returned future will be
+     * completed exceptionally with a <code>TimeoutException</code>.
+     * Otherwise, the behavior is the same as that of
+     * {@link #multiplyAsync(MutableFloatMatrix2D, FloatMatrix2D, 
+     * FloatMatrix2D)}
+     * 
+     * @param result The matrix that will store the result
+     * @param m0 The first matrix
+     * @param m1 The second matrix
+     * @param timeout The maximum time for the multiplication
+     * @param unit The unit of the timeout
+     * @return The future for the result
+     */
+    CompletableFuture<MutableFloatMatrix2D> multiplyAsync(
+        MutableFloatMatrix2D result, FloatMatrix2D m0, FloatMatrix2D m1,
+        long timeout, TimeUnit unit);
+}
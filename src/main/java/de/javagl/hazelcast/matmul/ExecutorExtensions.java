@@ -25,19 +25,53 @@
  * OTHER DEALINGS IN THE SOFTWARE.
  */
 package de.javagl.hazelcast.matmul;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
 
 /**
- * Utility methods to create special ExecutorService instances 
+ * Utility methods to create special ExecutorService instances, and
+ * {@link AsyncExecutor} instances that are backed by ExecutorServices
  */
 public class ExecutorExtensions
 {
+    /**
+     * The timer that is used for completing futures exceptionally
+     * when their deadline is exceeded 
+     */
+    private static final ScheduledExecutorService deadlineTimer = 
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, "ExecutorExtensions-deadline");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    
     /**
      * Returns an ExecutorService that is similar to one returned by
      * <code>Executors#newFixedThreadPool</code>, but re-throws 
@@ -47,10 +81,111 @@ public class ExecutorExtensions
      * @return The new ExecutorService
      */
     public static ExecutorService newExceptionAwareFixedThreadPool(int nThreads)
+    {
+        return newExceptionAwareFixedThreadPool(
+            nThreads, Executors.defaultThreadFactory());
+    }
+    
+    /**
+     * Returns an ExecutorService that is similar to one returned by
+     * <code>Executors#newFixedThreadPool</code>, but re-throws 
+     * exceptions that happen in one of the submitted tasks.
+     * 
+     * @param nThreads The number of threads
+     * @param threadFactory The factory for the threads
+     * @return The new ExecutorService
+     */
+    public static ExecutorService newExceptionAwareFixedThreadPool(
+        int nThreads, ThreadFactory threadFactory)
+    {
+        return newExceptionAwareThreadPool(nThreads, 
+            new LinkedBlockingQueue<Runnable>(), threadFactory, 
+            new ThreadPoolExecutor.AbortPolicy());
+    }
+    
+    /**
+     * Returns an ExecutorService like 
+     * {@link #newExceptionAwareFixedThreadPool(int, ThreadFactory)}, but
+     * with a queue that contains at most the given number of tasks. When
+     * the queue is full, then a thread that submits a task waits until 
+     * there is space in the queue. A thread of the pool itself that 
+     * submits a task executes it directly instead, because it might 
+     * otherwise wait for itself.
+     * 
+     * @param nThreads The number of threads
+     * @param queueCapacity The capacity of the queue
+     * @param threadFactory The factory for the threads
+     * @return The new ExecutorService
+     */
+    public static ExecutorService newBoundedFixedThreadPool(int nThreads, 
+        int queueCapacity, final ThreadFactory threadFactory)
+    {
+        final ThreadLocal<Boolean> isPoolThread = new ThreadLocal<Boolean>();
+        ThreadFactory poolThreadFactory = new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(final Runnable r)
+            {
+                return threadFactory.newThread(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        isPoolThread.set(Boolean.TRUE);
+                        r.run();
+                    }
+                });
+            }
+        };
+        RejectedExecutionHandler handler = new RejectedExecutionHandler()
+        {
+            @Override
+            public void rejectedExecution(
+                Runnable r, ThreadPoolExecutor executor)
+            {
+                if (executor.isShutdown())
+                {
+                    throw new RejectedExecutionException(
+                        "The executor was shut down");
+                }
+                if (Boolean.TRUE.equals(isPoolThread.get()))
+                {
+                    r.run();
+                    return;
+                }
+                try
+                {
+                    executor.getQueue().put(r);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new RejectedExecutionException(
+                        "Interrupted while waiting for the queue", e);
+                }
+            }
+        };
+        return newExceptionAwareThreadPool(nThreads, 
+            new ArrayBlockingQueue<Runnable>(queueCapacity), 
+            poolThreadFactory, handler);
+    }
+    
+    /**
+     * Creates a fixed thread pool that re-throws exceptions that happen
+     * in one of the submitted tasks
+     * 
+     * @param nThreads The number of threads
+     * @param queue The queue for the tasks
+     * @param threadFactory The factory for the threads
+     * @param handler The handler for tasks that cannot be queued
+     * @return The new ExecutorService
+     */
+    private static ExecutorService newExceptionAwareThreadPool(int nThreads,
+        BlockingQueue<Runnable> queue, ThreadFactory threadFactory, 
+        RejectedExecutionHandler handler)
     {
         return new ThreadPoolExecutor(nThreads, nThreads,
-            0L, TimeUnit.MILLISECONDS,
-            new LinkedBlockingQueue<Runnable>())
+            0L, TimeUnit.MILLISECONDS, queue, threadFactory, handler)
         {
             @Override
             protected void afterExecute(Runnable r, Throwable t)
@@ -68,7 +203,8 @@ public class ExecutorExtensions
                     }
                     catch (CancellationException ce)
                     {
-                        t = ce;
+                        // Tasks are cancelled deliberately, e.g. when
+                        // an asynchronous multiplication is cancelled
                     }
                     catch (ExecutionException ee)
                     {
@@ -87,6 +223,296 @@ public class ExecutorExtensions
         };
     }
     
+    /**
+     * Returns a {@link Factory} for {@link AsyncExecutor} instances that
+     * are backed by the ExecutorService instances that are created by
+     * the given factory. See {@link #asAsyncExecutor(ExecutorService)}.
+     * 
+     * @param executorServiceFactory The factory for the ExecutorService
+     * @return The factory for the {@link AsyncExecutor}
+     */
+    public static Factory<AsyncExecutor> asAsyncExecutorFactory(
+        final Factory<ExecutorService> executorServiceFactory)
+    {
+        return new Factory<AsyncExecutor>()
+        {
+            @Override
+            public AsyncExecutor create()
+            {
+                return asAsyncExecutor(executorServiceFactory.create());
+            }
+            
+            @Override
+            public String toString()
+            {
+                return executorServiceFactory.toString();
+            }
+        };
+    }
+    
+    /**
+     * Returns an {@link AsyncExecutor} that is backed by the given 
+     * ExecutorService.<br />
+     * <br />
+     * When the given ExecutorService executes the tasks in the local
+     * JVM (that is, when it is an <code>AbstractExecutorService</code>),
+     * then the futures that are returned by the {@link AsyncExecutor} 
+     * will be completed directly by the thread that executed the task.
+     * Otherwise, the tasks will be passed to the <code>submit</code> 
+     * method of the given executor, and the returned futures will be
+     * converted with {@link #toCompletableFuture(Future)}.
+     * 
+     * @param executorService The ExecutorService
+     * @return The {@link AsyncExecutor}
+     */
+    public static AsyncExecutor asAsyncExecutor(
+        final ExecutorService executorService)
+    {
+        return new AsyncExecutor()
+        {
+            @Override
+            public <T> CompletableFuture<T> submit(Callable<T> callable)
+            {
+                if (executorService instanceof AbstractExecutorService)
+                {
+                    return submitLocal(executorService, callable);
+                }
+                return toCompletableFuture(executorService.submit(callable));
+            }
+            
+            @Override
+            public void shutdown()
+            {
+                executorService.shutdown();
+            }
+            
+            @Override
+            public String toString()
+            {
+                return executorService.toString();
+            }
+        };
+    }
+    
+    /**
+     * Submit the given task to the given executor, which is assumed to
+     * execute the task in the local JVM, and return a future that will
+     * be completed by the thread that executed the task
+     * 
+     * @param <T> The result type
+     * @param executorService The ExecutorService
+     * @param callable The task
+     * @return The future
+     */
+    private static <T> CompletableFuture<T> submitLocal(
+        ExecutorService executorService, Callable<T> callable)
+    {
+        final CompletableFuture<T> result = new CompletableFuture<T>();
+        final FutureTask<T> futureTask = new FutureTask<T>(callable)
+        {
+            @Override
+            protected void done()
+            {
+                if (isCancelled())
+                {
+                    result.cancel(false);
+                    return;
+                }
+                try
+                {
+                    result.complete(get());
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                catch (ExecutionException e)
+                {
+                    result.completeExceptionally(e.getCause());
+                }
+            }
+        };
+        cancelWhenCancelled(result, futureTask);
+        executorService.execute(futureTask);
+        return result;
+    }
+    
+    /**
+     * Returns a CompletableFuture that will be completed with the
+     * result of the given future. Cancelling the returned future
+     * will cancel the given future.<br />
+     * <br />
+     * If the given future is a <code>CompletionStage</code> (as it is 
+     * the case for the futures that are returned by the Hazelcast 
+     * executor services), then the returned future will be completed 
+     * when the given one is completed. Otherwise, a thread from the 
+     * common pool will wait for the completion of the given future. 
+     * 
+     * @param <T> The result type
+     * @param future The future
+     * @return The CompletableFuture
+     */
+    public static <T> CompletableFuture<T> toCompletableFuture(
+        final Future<T> future)
+    {
+        final CompletableFuture<T> result = new CompletableFuture<T>();
+        cancelWhenCancelled(result, future);
+        if (future instanceof CompletionStage<?>)
+        {
+            @SuppressWarnings("unchecked")
+            CompletionStage<T> completionStage = (CompletionStage<T>)future;
+            completionStage.whenComplete(new BiConsumer<T, Throwable>()
+            {
+                @Override
+                public void accept(T value, Throwable t)
+                {
+                    if (t != null)
+                    {
+                        result.completeExceptionally(unwrap(t));
+                    }
+                    else
+                    {
+                        result.complete(value);
+                    }
+                }
+            });
+            return result;
+        }
+        ForkJoinPool.commonPool().execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    result.complete(future.get());
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    result.completeExceptionally(e);
+                }
+                catch (ExecutionException e)
+                {
+                    result.completeExceptionally(e.getCause());
+                }
+                catch (CancellationException e)
+                {
+                    result.cancel(false);
+                }
+            }
+        });
+        return result;
+    }
+    
+    /**
+     * Make sure that the given future will be cancelled when the given
+     * CompletableFuture is cancelled (or completed exceptionally)
+     * 
+     * @param completableFuture The CompletableFuture
+     * @param future The future to cancel
+     */
+    private static void cancelWhenCancelled(
+        CompletableFuture<?> completableFuture, final Future<?> future)
+    {
+        completableFuture.whenComplete(new BiConsumer<Object, Throwable>()
+        {
+            @Override
+            public void accept(Object value, Throwable t)
+            {
+                if (t != null && !future.isDone())
+                {
+                    future.cancel(true);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Complete the given future exceptionally with a TimeoutException
+     * if it is not completed after the given time
+     * 
+     * @param future The future
+     * @param timeout The timeout
+     * @param unit The time unit
+     */
+    public static void failAfter(final CompletableFuture<?> future, 
+        final long timeout, final TimeUnit unit)
+    {
+        final ScheduledFuture<?> deadline = deadlineTimer.schedule(
+            new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    future.completeExceptionally(new TimeoutException(
+                        "Not completed within " + timeout + " " + unit));
+                }
+            }, timeout, unit);
+        future.whenComplete(new BiConsumer<Object, Throwable>()
+        {
+            @Override
+            public void accept(Object value, Throwable t)
+            {
+                deadline.cancel(false);
+            }
+        });
+    }
+    
+    /**
+     * Waits for the result of the given future, handling the possible
+     * exceptions by either interrupting the calling thread or
+     * re-throwing them as RuntimeExceptions. When the calling thread
+     * is interrupted while waiting, the future will be cancelled.
+     * 
+     * @param <T> The type of the future
+     * @param future The future
+     * @return The contents of the future, or <code>null</code> if the
+     * calling thread was interrupted
+     */
+    public static <T> T await(Future<T> future)
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException e)
+        {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+            {
+                RuntimeException runtimeException = (RuntimeException) cause;
+                throw runtimeException;
+            }
+            throw new RuntimeException(
+                "Unexpected checked exception", e);
+        }
+    }
+    
+    /**
+     * Returns the cause of the given throwable if it is a 
+     * <code>CompletionException</code> or <code>ExecutionException</code>,
+     * and the given throwable otherwise
+     * 
+     * @param t The throwable
+     * @return The unwrapped throwable
+     */
+    public static Throwable unwrap(Throwable t)
+    {
+        if ((t instanceof CompletionException || 
+             t instanceof ExecutionException) && t.getCause() != null)
+        {
+            return t.getCause();
+        }
+        return t;
+    }
+    
     /**
      * Private constructor to prevent instantiation
      */
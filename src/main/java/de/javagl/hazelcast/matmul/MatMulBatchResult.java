@@ -0,0 +1,80 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul;
+
+import java.util.List;
+
+/**
+ * The result of a {@link MatMulBatchTask}
+ */
+public final class MatMulBatchResult  
+{
+    /**
+     * The results of the block products
+     */
+    private final List<MatMulResult> results;
+    
+    /**
+     * The time that was required for computing the results, in 
+     * nanoseconds
+     */
+    private final long computeNanos;
+    
+    /**
+     * Creates a new batch result
+     * 
+     * @param results The results of the block products
+     * @param computeNanos The time that was required for computing 
+     * the results, in nanoseconds
+     */
+    public MatMulBatchResult(List<MatMulResult> results, long computeNanos)
+    {
+        this.results = results;
+        this.computeNanos = computeNanos;
+    }
+    
+    /**
+     * Returns the results of the block products
+     * 
+     * @return The results
+     */
+    public List<MatMulResult> getResults()
+    {
+        return results;
+    }
+    
+    /**
+     * Returns the time that was required for computing the results 
+     * where the task was executed, in nanoseconds
+     * 
+     * @return The compute time
+     */
+    public long getComputeNanos()
+    {
+        return computeNanos;
+    }
+}
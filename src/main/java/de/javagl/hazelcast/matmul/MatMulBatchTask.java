@@ -0,0 +1,285 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A task describing the multiplication of several blocks of one outer
+ * product, for a rectangular tile of blocks of the result matrix. The 
+ * blocks of the first matrix are given for the rows of the tile, and 
+ * the blocks of the second matrix for the columns of the tile, so that 
+ * each block is only transferred once, even though it contributes to 
+ * several blocks of the result. <br />
+ * <br />
+ * Compared to sending one {@link MatMulTask} for each block product,
+ * this reduces the number of round trips, at the cost of a coarser 
+ * granularity of the work. Like a {@link MatMulTask}, the task may 
+ * carry the ID of the job and the index of the slice, which are 
+ * passed on to the {@link MatMulResult}s.
+ */
+public final class MatMulBatchTask implements Callable<MatMulBatchResult> 
+{
+    /**
+     * The logger used in this class
+     */
+    private static final Logger logger = 
+        Logger.getLogger(MatMulBatchTask.class.getName());
+    
+    /**
+     * The ID of the job. This may be <code>null</code>.
+     */
+    private final String jobId;
+    
+    /**
+     * The index of the slice of the reduction dimension
+     */
+    private final int slice;
+    
+    /**
+     * The row block indices of the result matrix
+     */
+    private final int rowBlockIndices[];
+    
+    /**
+     * The blocks of the first factor, one for each row block index
+     */
+    private final FloatMatrix2D rowBlocks[];
+    
+    /**
+     * The column block indices of the result matrix
+     */
+    private final int columnBlockIndices[];
+    
+    /**
+     * The blocks of the second factor, one for each column block index
+     */
+    private final FloatMatrix2D columnBlocks[];
+    
+    /**
+     * The {@link Factory} that will be used to create the 
+     * {@link MatrixMultiplicator} for the multiplication
+     * of the blocks. 
+     */
+    private final Factory<MatrixMultiplicator> matrixMultiplicatorFactory;
+
+    /**
+     * Creates a new task that multiplies each of the given row blocks 
+     * with each of the given column blocks
+     * 
+     * @param rowBlockIndices The row block indices for the result matrix
+     * @param rowBlocks The blocks of the first factor, one for each 
+     * row block index
+     * @param columnBlockIndices The column block indices for the result 
+     * matrix
+     * @param columnBlocks The blocks of the second factor, one for each
+     * column block index
+     * @param matrixMultiplicatorFactory The {@link Factory} that will be 
+     * used to create the {@link MatrixMultiplicator} for the multiplication
+     * of the blocks. If this argument is <code>null</code>, a default,
+     * single-threaded multiplicator will be used.
+     */
+    public MatMulBatchTask(
+        int rowBlockIndices[], FloatMatrix2D rowBlocks[],
+        int columnBlockIndices[], FloatMatrix2D columnBlocks[],
+        Factory<MatrixMultiplicator> matrixMultiplicatorFactory) 
+    {
+        this(null, 0, rowBlockIndices, rowBlocks, 
+            columnBlockIndices, columnBlocks, matrixMultiplicatorFactory);
+    }
+    
+    /**
+     * Creates a new task that multiplies each of the given row blocks 
+     * with each of the given column blocks
+     * 
+     * @param jobId The ID of the job. This may be <code>null</code>.
+     * @param slice The index of the slice of the reduction dimension
+     * @param rowBlockIndices The row block indices for the result matrix
+     * @param rowBlocks The blocks of the first factor, one for each 
+     * row block index
+     * @param columnBlockIndices The column block indices for the result 
+     * matrix
+     * @param columnBlocks The blocks of the second factor, one for each
+     * column block index
+     * @param matrixMultiplicatorFactory The {@link Factory} that will be 
+     * used to create the {@link MatrixMultiplicator} for the multiplication
+     * of the blocks. If this argument is <code>null</code>, a default,
+     * single-threaded multiplicator will be used.
+     */
+    public MatMulBatchTask(String jobId, int slice,
+        int rowBlockIndices[], FloatMatrix2D rowBlocks[],
+        int columnBlockIndices[], FloatMatrix2D columnBlocks[],
+        Factory<MatrixMultiplicator> matrixMultiplicatorFactory) 
+    {
+        this.jobId = jobId;
+        this.slice = slice;
+        this.rowBlockIndices = rowBlockIndices;
+        this.rowBlocks = rowBlocks;
+        this.columnBlockIndices = columnBlockIndices;
+        this.columnBlocks = columnBlocks;
+        if (matrixMultiplicatorFactory == null)
+        {
+            this.matrixMultiplicatorFactory = 
+                MatrixMultiplicators.createSimpleFactory();
+        }
+        else
+        {
+            this.matrixMultiplicatorFactory = matrixMultiplicatorFactory;
+        }
+    }
+    
+    /**
+     * Returns the ID of the job. This may be <code>null</code>.
+     * 
+     * @return The job ID
+     */
+    public String getJobId()
+    {
+        return jobId;
+    }
+    
+    /**
+     * Returns the index of the slice of the reduction dimension
+     * 
+     * @return The slice
+     */
+    public int getSlice()
+    {
+        return slice;
+    }
+    
+    /**
+     * Returns the row block indices of the result matrix
+     * 
+     * @return The row block indices
+     */
+    public int[] getRowBlockIndices()
+    {
+        return rowBlockIndices;
+    }
+    
+    /**
+     * Returns the blocks of the first factor
+     * 
+     * @return The row blocks
+     */
+    public FloatMatrix2D[] getRowBlocks()
+    {
+        return rowBlocks;
+    }
+    
+    /**
+     * Returns the column block indices of the result matrix
+     * 
+     * @return The column block indices
+     */
+    public int[] getColumnBlockIndices()
+    {
+        return columnBlockIndices;
+    }
+    
+    /**
+     * Returns the blocks of the second factor
+     * 
+     * @return The column blocks
+     */
+    public FloatMatrix2D[] getColumnBlocks()
+    {
+        return columnBlocks;
+    }
+    
+    /**
+     * Returns the number of block products that are computed by this task
+     * 
+     * @return The number of products
+     */
+    public int getNumProducts()
+    {
+        return rowBlockIndices.length * columnBlockIndices.length;
+    }
+    
+    /**
+     * Returns the {@link Factory} that will be used to create the 
+     * {@link MatrixMultiplicator} for the multiplication of the 
+     * blocks.
+     *  
+     * @return The factory
+     */
+    public Factory<MatrixMultiplicator> getMatrixMultiplicatorFactory()
+    {
+        return matrixMultiplicatorFactory;
+    }
+
+    @Override
+    public MatMulBatchResult call() 
+    {
+        return call(matrixMultiplicatorFactory.create());
+    }
+    
+    /**
+     * Compute the result of this task with the given 
+     * {@link MatrixMultiplicator}, instead of one that is created
+     * with the factory of this task
+     * 
+     * @param matrixMultiplicator The {@link MatrixMultiplicator}
+     * @return The result
+     */
+    public MatMulBatchResult call(MatrixMultiplicator matrixMultiplicator) 
+    {
+        long before = System.nanoTime();
+        
+        final Level level = Level.FINE;
+        if (logger.isLoggable(level))
+        {
+            logger.log(level, "Multiplying " + rowBlocks.length + " row " +
+                "blocks with " + columnBlocks.length + " column blocks " +
+                "using " + matrixMultiplicator);
+        }
+        List<MatMulResult> results = new ArrayList<MatMulResult>();
+        for (int i = 0; i < rowBlocks.length; i++)
+        {
+            FloatMatrix2D m0 = rowBlocks[i];
+            for (int j = 0; j < columnBlocks.length; j++)
+            {
+                FloatMatrix2D m1 = columnBlocks[j];
+                MutableFloatMatrix2D result = Matrices.createFloatMatrix2D(
+                    m0.getNumRows(), m1.getNumColumns());
+                matrixMultiplicator.multiply(result, m0, m1);
+                Point point = 
+                    new Point(rowBlockIndices[i], columnBlockIndices[j]);
+                results.add(
+                    new MatMulResult(jobId, slice, point, result, null));
+            }
+        }
+        long after = System.nanoTime();
+        return new MatMulBatchResult(results, after - before);
+    }
+}
@@ -0,0 +1,430 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Logger;
+
+/**
+ * A checkpoint of a {@link MatMulJob}, stored in a memory-mapped file.<br />
+ * <br />
+ * For each slice of the reduction dimension, the checkpoint contains 
+ * the index of the next outer product that has to be computed, and the
+ * partial result matrix that contains the sum of all outer products of
+ * the slice before this index. When a job is started with a checkpoint 
+ * file that was written for the same matrices, then the partial results
+ * are restored from the file, and the computation continues with the 
+ * outer products that have not been computed yet.<br />
+ * <br />
+ * The file contains two copies of each partial result. When a partial
+ * result is saved, it is written into the copy that is not active, and
+ * only after this copy has been written to the storage device, the 
+ * state of the slice is updated to refer to this copy. So when the 
+ * process is terminated while the partial result is written, the 
+ * previous state of the slice remains valid.<br />
+ * <br />
+ * The file consists of a header, the states of the slices, and the
+ * copies of the partial results, in column-major order:
+ * <pre><code>
+ * long magic
+ * int numRows, numColumns, numInnerColumns, blockSize, numSlices
+ * int padding
+ * long fingerprint
+ * ... (padding to 64 bytes)
+ * long state[numSlices]         : (nextOuterProduct &lt;&lt; 1) | activeCopy
+ * float data[numSlices][2][numRows * numColumns]
+ * </code></pre>
+ */
+final class MatMulCheckpoint
+{
+    /**
+     * The logger used in this class
+     */
+    private static final Logger logger = 
+        Logger.getLogger(MatMulCheckpoint.class.getName());
+    
+    /**
+     * The magic number at the beginning of a valid checkpoint file
+     */
+    private static final long MAGIC = 0x4D41544D554C4350L;
+    
+    /**
+     * The size of the header, in bytes
+     */
+    private static final int HEADER_SIZE = 64;
+    
+    /**
+     * The maximum size of one memory-mapped part of a partial result,
+     * in bytes
+     */
+    private static final long MAX_CHUNK_SIZE = 1L << 28;
+    
+    /**
+     * The checkpoint file
+     */
+    private final File file;
+    
+    /**
+     * The file that the checkpoint is written to
+     */
+    private final RandomAccessFile randomAccessFile;
+    
+    /**
+     * The memory-mapped header and states of the slices
+     */
+    private final MappedByteBuffer header;
+    
+    /**
+     * The memory-mapped chunks of the copies of the partial results. 
+     * The first index is (2 * slice + copy), the second one is the
+     * index of the chunk.
+     */
+    private final MappedByteBuffer chunks[][];
+    
+    /**
+     * The number of columns of the partial results in each chunk
+     */
+    private final int chunkColumns;
+    
+    /**
+     * The number of rows of the partial results
+     */
+    private final int numRows;
+    
+    /**
+     * The number of columns of the partial results
+     */
+    private final int numColumns;
+    
+    /**
+     * The index of the next outer product of each slice
+     */
+    private final int nextOuterProducts[];
+    
+    /**
+     * The index of the active copy of the partial result of each slice
+     */
+    private final int activeCopies[];
+    
+    /**
+     * Open the checkpoint for the multiplication of the given matrices
+     * from the given file. If the file does not exist, or was written
+     * for a different multiplication (that is, for matrices with 
+     * different sizes or contents, or with a different block size or 
+     * number of slices), then it is initialized to be empty.
+     * 
+     * @param file The checkpoint file
+     * @param A The first factor
+     * @param B The second factor
+     * @param blockSize The block size
+     * @param numSlices The number of slices of the reduction dimension
+     * @return The checkpoint
+     * @throws IOException If the file cannot be opened or written
+     */
+    static MatMulCheckpoint open(File file, FloatMatrix2D A, FloatMatrix2D B,
+        int blockSize, int numSlices) throws IOException
+    {
+        long fingerprint = computeFingerprint(B, computeFingerprint(A, 17));
+        return new MatMulCheckpoint(file, A.getNumRows(), B.getNumColumns(),
+            A.getNumColumns(), blockSize, numSlices, fingerprint);
+    }
+    
+    /**
+     * Creates a new checkpoint
+     * 
+     * @param file The checkpoint file
+     * @param numRows The number of rows of the result
+     * @param numColumns The number of columns of the result
+     * @param numInnerColumns The number of columns of the first factor
+     * @param blockSize The block size
+     * @param numSlices The number of slices
+     * @param fingerprint The fingerprint of the factors
+     * @throws IOException If the file cannot be opened or written
+     */
+    private MatMulCheckpoint(File file, int numRows, int numColumns, 
+        int numInnerColumns, int blockSize, int numSlices, long fingerprint) 
+            throws IOException
+    {
+        this.file = file;
+        this.numRows = numRows;
+        this.numColumns = numColumns;
+        this.nextOuterProducts = new int[numSlices];
+        this.activeCopies = new int[numSlices];
+        
+        long matrixSize = (long)numRows * numColumns * Float.BYTES;
+        long dataOffset = HEADER_SIZE + (long)numSlices * Long.BYTES;
+        long fileSize = dataOffset + 2L * numSlices * matrixSize;
+        
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        try
+        {
+            FileChannel channel = randomAccessFile.getChannel();
+            MappedByteBuffer mappedHeader = null;
+            boolean valid = false;
+            if (randomAccessFile.length() == fileSize)
+            {
+                mappedHeader = map(channel, 0, dataOffset);
+                valid = 
+                    mappedHeader.getLong(0) == MAGIC &&
+                    mappedHeader.getInt(8) == numRows &&
+                    mappedHeader.getInt(12) == numColumns &&
+                    mappedHeader.getInt(16) == numInnerColumns &&
+                    mappedHeader.getInt(20) == blockSize &&
+                    mappedHeader.getInt(24) == numSlices &&
+                    mappedHeader.getLong(32) == fingerprint;
+            }
+            if (valid)
+            {
+                for (int s = 0; s < numSlices; s++)
+                {
+                    long state = 
+                        mappedHeader.getLong(HEADER_SIZE + s * Long.BYTES);
+                    nextOuterProducts[s] = (int)(state >>> 1);
+                    activeCopies[s] = (int)(state & 1);
+                }
+                logger.info("Opened checkpoint " + file);
+            }
+            else
+            {
+                randomAccessFile.setLength(0);
+                randomAccessFile.setLength(fileSize);
+                mappedHeader = map(channel, 0, dataOffset);
+                mappedHeader.putInt(8, numRows);
+                mappedHeader.putInt(12, numColumns);
+                mappedHeader.putInt(16, numInnerColumns);
+                mappedHeader.putInt(20, blockSize);
+                mappedHeader.putInt(24, numSlices);
+                mappedHeader.putLong(32, fingerprint);
+                mappedHeader.force();
+                mappedHeader.putLong(0, MAGIC);
+                mappedHeader.force();
+                logger.info("Created checkpoint " + file);
+            }
+            header = mappedHeader;
+            
+            long columnSize = (long)numRows * Float.BYTES;
+            chunkColumns = (int)Math.max(1, 
+                Math.min(numColumns, MAX_CHUNK_SIZE / Math.max(1, columnSize)));
+            int numChunks = (numColumns + chunkColumns - 1) / chunkColumns;
+            chunks = new MappedByteBuffer[2 * numSlices][numChunks];
+            for (int i = 0; i < chunks.length; i++)
+            {
+                long offset = dataOffset + i * matrixSize;
+                for (int j = 0; j < numChunks; j++)
+                {
+                    int c0 = j * chunkColumns;
+                    int c1 = Math.min(numColumns, c0 + chunkColumns);
+                    chunks[i][j] = map(channel, 
+                        offset + c0 * columnSize, (c1 - c0) * columnSize);
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Map the specified region of the given channel into memory
+     * 
+     * @param channel The channel
+     * @param position The position of the region
+     * @param size The size of the region
+     * @return The buffer
+     * @throws IOException If an IO error occurs
+     */
+    private static MappedByteBuffer map(
+        FileChannel channel, long position, long size) throws IOException
+    {
+        MappedByteBuffer buffer = 
+            channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+    
+    /**
+     * Compute a fingerprint of the given matrix, which is used for
+     * detecting whether a checkpoint was written for other matrices
+     * 
+     * @param m The matrix
+     * @param initial The initial value
+     * @return The fingerprint
+     */
+    private static long computeFingerprint(FloatMatrix2D m, long initial)
+    {
+        long h = initial;
+        h = h * 31 + m.getNumRows();
+        h = h * 31 + m.getNumColumns();
+        for (int c = 0; c < m.getNumColumns(); c++)
+        {
+            for (int r = 0; r < m.getNumRows(); r++)
+            {
+                h = h * 31 + Float.floatToIntBits(m.get(r, c));
+            }
+        }
+        return h;
+    }
+    
+    /**
+     * Restore the partial result of the given slice. If the checkpoint 
+     * contains outer products of the slice after the given first one,
+     * then the partial result will be read into the given matrix, and
+     * the index of the next outer product that has to be computed will
+     * be returned. Otherwise, the given matrix is not modified, and the
+     * index of the first outer product is returned.
+     * 
+     * @param s The slice
+     * @param partialResult The partial result matrix
+     * @param firstOuterProduct The index of the first outer product of
+     * the slice
+     * @return The index of the next outer product that has to be computed
+     */
+    synchronized int restore(
+        int s, MutableFloatMatrix2D partialResult, int firstOuterProduct)
+    {
+        int next = nextOuterProducts[s];
+        if (next <= firstOuterProduct)
+        {
+            return firstOuterProduct;
+        }
+        MappedByteBuffer copy[] = chunks[2 * s + activeCopies[s]];
+        for (int j = 0; j < copy.length; j++)
+        {
+            FloatBuffer values = asFloatBuffer(copy[j]);
+            getChunk(partialResult, j).setDataColumnMajor(values);
+        }
+        return next;
+    }
+    
+    /**
+     * Save the given partial result of the given slice, which contains 
+     * the outer products of the slice before the given index
+     * 
+     * @param s The slice
+     * @param nextOuterProduct The index of the next outer product 
+     * @param partialResult The partial result
+     */
+    synchronized void save(
+        int s, int nextOuterProduct, FloatMatrix2D partialResult)
+    {
+        int inactiveCopy = 1 - activeCopies[s];
+        MappedByteBuffer copy[] = chunks[2 * s + inactiveCopy];
+        for (int j = 0; j < copy.length; j++)
+        {
+            FloatBuffer values = asFloatBuffer(copy[j]);
+            getChunk(partialResult, j).getDataColumnMajor(values);
+            copy[j].force();
+        }
+        long state = ((long)nextOuterProduct << 1) | inactiveCopy;
+        header.putLong(HEADER_SIZE + s * Long.BYTES, state);
+        header.force();
+        nextOuterProducts[s] = nextOuterProduct;
+        activeCopies[s] = inactiveCopy;
+    }
+    
+    /**
+     * Returns the part of the given matrix that corresponds to the 
+     * chunk with the given index
+     * 
+     * @param m The matrix
+     * @param j The chunk index
+     * @return The part of the matrix
+     */
+    private MutableFloatMatrix2D getChunk(MutableFloatMatrix2D m, int j)
+    {
+        int c0 = j * chunkColumns;
+        int c1 = Math.min(numColumns, c0 + chunkColumns);
+        return m.subMatrix(0, c0, numRows, c1);
+    }
+    
+    /**
+     * Returns the part of the given matrix that corresponds to the 
+     * chunk with the given index
+     * 
+     * @param m The matrix
+     * @param j The chunk index
+     * @return The part of the matrix
+     */
+    private FloatMatrix2D getChunk(FloatMatrix2D m, int j)
+    {
+        int c0 = j * chunkColumns;
+        int c1 = Math.min(numColumns, c0 + chunkColumns);
+        return m.subMatrix(0, c0, numRows, c1);
+    }
+    
+    /**
+     * Returns a float buffer view on the whole given chunk
+     * 
+     * @param chunk The chunk
+     * @return The float buffer
+     */
+    private static FloatBuffer asFloatBuffer(MappedByteBuffer chunk)
+    {
+        return chunk.duplicate().order(ByteOrder.LITTLE_ENDIAN)
+            .asFloatBuffer();
+    }
+    
+    /**
+     * Close this checkpoint. The checkpoint file remains valid, so
+     * that the multiplication may be resumed later.
+     */
+    synchronized void close()
+    {
+        try
+        {
+            randomAccessFile.close();
+        }
+        catch (IOException e)
+        {
+            logger.warning("Could not close checkpoint " + file + 
+                ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Invalidate and close this checkpoint, and delete the checkpoint
+     * file. This is called when the multiplication was finished.
+     */
+    synchronized void delete()
+    {
+        header.putLong(0, 0L);
+        header.force();
+        close();
+        if (!file.delete())
+        {
+            logger.warning("Could not delete checkpoint " + file);
+        }
+    }
+}
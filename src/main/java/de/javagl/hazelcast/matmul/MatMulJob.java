@@ -0,0 +1,626 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+/**
+ * A single, asynchronous execution of a multiplication by a 
+ * {@link ParallelMatrixMultiplicator}. The job dispatches the
+ * {@link MatMulTask}s for one outer product after the other to
+ * an {@link AsyncExecutor}, and accumulates the results in the
+ * result matrix, without blocking any thread while waiting for 
+ * the results.<br />
+ * <br />
+ * The outer products may be split into several <i>slices</i> of the 
+ * reduction dimension (that is, of the columns of A and the rows of B).
+ * The slices are processed concurrently, each one accumulating its
+ * results in its own partial result matrix. When a slice is finished,
+ * its partial result is added to that of another finished slice, 
+ * resulting in a tree reduction of the partial results. This
+ * corresponds to a "3D" decomposition of the multiplication, and 
+ * allows keeping many workers busy even when the result matrix 
+ * consists of only few blocks. Each slice except for the first one
+ * requires its own partial result matrix with the size of C on the 
+ * client. The number of slices is therefore limited so that these 
+ * matrices do not require more than {@link #MAX_PARTIAL_RESULTS_BYTES}.
+ * <br />
+ * <br />
+ * When the tasks are {@link MatMulBatchTask}s, then the time between 
+ * the submission of each task and the reception of its result is 
+ * recorded in the {@link TaskCoarsening} of the multiplicator, which 
+ * determines the size of the tasks for the next outer products.<br />
+ * <br />
+ * The tasks carry the ID of the job and the index of their slice, and 
+ * each {@link MatMulResult} is checked to belong to the slice that it 
+ * is accumulated in. The result is accumulated in the completion 
+ * callback of its task. Afterwards, it is {@link MatMulResult#release()
+ * released}, so that its matrix may be reused for receiving the next 
+ * result, instead of becoming garbage.<br />
+ * <br />
+ * When a checkpoint file is given, then the partial result of each 
+ * slice is saved in a {@link MatMulCheckpoint} after an outer product
+ * was completed, at most once in the checkpoint interval. When the job
+ * is started, the partial results are restored from the checkpoint, 
+ * and only the remaining outer products are computed. The checkpoint
+ * is deleted when the job is finished successfully, and retained when
+ * the job fails or is cancelled.
+ */
+final class MatMulJob
+{
+    /**
+     * The logger used in this class
+     */
+    private static final Logger logger = 
+        Logger.getLogger(MatMulJob.class.getName());
+    
+    /**
+     * The maximum number of bytes that the partial result matrices of 
+     * the slices (except for the first one, which is the result matrix
+     * itself) may occupy: A quarter of the maximum heap size.
+     */
+    static final long MAX_PARTIAL_RESULTS_BYTES = 
+        Runtime.getRuntime().maxMemory() / 4;
+    
+    /**
+     * The ID of this job
+     */
+    private final String jobId;
+    
+    /**
+     * The {@link ParallelMatrixMultiplicator} that created this job
+     */
+    private final ParallelMatrixMultiplicator multiplicator;
+    
+    /**
+     * The executor that the tasks are submitted to
+     */
+    private final AsyncExecutor executor;
+    
+    /**
+     * The result matrix
+     */
+    private final MutableFloatMatrix2D C;
+    
+    /**
+     * The first factor
+     */
+    private final FloatMatrix2D A;
+    
+    /**
+     * The second factor
+     */
+    private final FloatMatrix2D B;
+    
+    /**
+     * The number of outer products that have to be computed
+     */
+    private final int numOuterProducts;
+    
+    /**
+     * The number of slices of the reduction dimension that are
+     * processed concurrently
+     */
+    private final int numSlices;
+    
+    /**
+     * The partial result matrices of the slices. The partial result
+     * of the first slice is the result matrix itself.
+     */
+    private final MutableFloatMatrix2D partialResults[];
+    
+    /**
+     * The lock for the reduction of the partial results
+     */
+    private final Object reductionLock = new Object();
+    
+    /**
+     * The number of partial results that have not been added to
+     * another partial result yet
+     */
+    private int remainingPartialResults;
+    
+    /**
+     * A finished partial result that is waiting for another finished
+     * partial result to be added to
+     */
+    private MutableFloatMatrix2D waitingPartialResult;
+    
+    /**
+     * The future that will be completed when this job is finished
+     */
+    private final CompletableFuture<MutableFloatMatrix2D> future;
+    
+    /**
+     * The futures of the tasks that are currently executed
+     */
+    private final Set<CompletableFuture<?>> pendingFutures;
+    
+    /**
+     * The checkpoint file. This may be <code>null</code>.
+     */
+    private final File checkpointFile;
+    
+    /**
+     * The minimum time between two checkpoints of one slice, in
+     * milliseconds
+     */
+    private final long checkpointIntervalMillis;
+    
+    /**
+     * The checkpoint. This is <code>null</code> if no checkpoint file
+     * was given, or the job was not started yet.
+     */
+    private volatile MatMulCheckpoint checkpoint;
+    
+    /**
+     * The time when the last checkpoint of each slice was saved, in
+     * milliseconds
+     */
+    private final long lastCheckpointMillis[];
+    
+    /**
+     * Creates a new job
+     * 
+     * @param multiplicator The {@link ParallelMatrixMultiplicator}
+     * @param executor The {@link AsyncExecutor}. This executor will be 
+     * shut down when the job is finished.
+     * @param C The result matrix
+     * @param A The first factor
+     * @param B The second factor
+     * @param numOuterProducts The number of outer products
+     * @param numSlices The number of slices of the reduction dimension 
+     * that should be processed concurrently. This will be clamped to be 
+     * in [1, numOuterProducts], and limited by the size of C, as 
+     * described in {@link #computeNumSlices}.
+     * @param checkpointFile The checkpoint file. If this is 
+     * <code>null</code>, then no checkpoints will be written.
+     * @param checkpointIntervalMillis The minimum time between two
+     * checkpoints of one slice, in milliseconds
+     */
+    MatMulJob(ParallelMatrixMultiplicator multiplicator, 
+        final AsyncExecutor executor, MutableFloatMatrix2D C, 
+        FloatMatrix2D A, FloatMatrix2D B, int numOuterProducts, 
+        int numSlices, File checkpointFile, long checkpointIntervalMillis)
+    {
+        this.jobId = UUID.randomUUID().toString();
+        this.multiplicator = multiplicator;
+        this.executor = executor;
+        this.C = C;
+        this.A = A;
+        this.B = B;
+        this.numOuterProducts = numOuterProducts;
+        this.numSlices = computeNumSlices(numSlices, numOuterProducts, 
+            C.getNumRows(), C.getNumColumns(), MAX_PARTIAL_RESULTS_BYTES);
+        if (this.numSlices < Math.min(numSlices, numOuterProducts))
+        {
+            logger.warning("Using only " + this.numSlices + " instead of " 
+                + numSlices + " slices, because the partial results of " 
+                + "the slices would require more than " 
+                + MAX_PARTIAL_RESULTS_BYTES + " bytes");
+        }
+        this.partialResults = new MutableFloatMatrix2D[this.numSlices];
+        this.remainingPartialResults = this.numSlices;
+        this.future = new CompletableFuture<MutableFloatMatrix2D>();
+        this.pendingFutures = Collections.newSetFromMap(
+            new ConcurrentHashMap<CompletableFuture<?>, Boolean>());
+        this.checkpointFile = checkpointFile;
+        this.checkpointIntervalMillis = checkpointIntervalMillis;
+        this.lastCheckpointMillis = new long[this.numSlices];
+        
+        future.whenComplete(new BiConsumer<Object, Throwable>()
+        {
+            @Override
+            public void accept(Object value, Throwable t)
+            {
+                if (t != null)
+                {
+                    cancelPendingTasks();
+                }
+                closeCheckpoint(t == null);
+                executor.shutdown();
+            }
+        });
+    }
+    
+    /**
+     * Start this job
+     * 
+     * @return The future that will be completed when the job is finished
+     */
+    CompletableFuture<MutableFloatMatrix2D> start()
+    {
+        Matrices.fill(C, 0.0f);
+        partialResults[0] = C;
+        for (int s = 1; s < numSlices; s++)
+        {
+            partialResults[s] = Matrices.createFloatMatrix2D(
+                C.getNumRows(), C.getNumColumns());
+        }
+        int firstOuterProducts[] = new int[numSlices];
+        for (int s = 0; s < numSlices; s++)
+        {
+            firstOuterProducts[s] = getFirstOuterProduct(s);
+        }
+        if (checkpointFile != null)
+        {
+            try
+            {
+                checkpoint = MatMulCheckpoint.open(checkpointFile, A, B, 
+                    multiplicator.getBlockSize(), numSlices);
+            }
+            catch (IOException e)
+            {
+                future.completeExceptionally(e);
+                return future;
+            }
+            long currentMillis = System.currentTimeMillis();
+            for (int s = 0; s < numSlices; s++)
+            {
+                int p = checkpoint.restore(
+                    s, partialResults[s], firstOuterProducts[s]);
+                if (p != firstOuterProducts[s])
+                {
+                    logger.info("Restored slice " + s + " from checkpoint, "
+                        + "continuing with outer product " + p + " of " 
+                        + numOuterProducts);
+                }
+                firstOuterProducts[s] = p;
+                lastCheckpointMillis[s] = currentMillis;
+            }
+        }
+        if (numSlices > 1)
+        {
+            logger.fine("Processing " + numOuterProducts + 
+                " outer products in " + numSlices + " slices");
+        }
+        for (int s = 0; s < numSlices; s++)
+        {
+            dispatch(s, firstOuterProducts[s]);
+        }
+        return future;
+    }
+    
+    /**
+     * Computes the number of slices that will actually be processed.
+     * This is the given number of slices, clamped to be in 
+     * [1, numOuterProducts], and limited so that the partial results
+     * of all slices except for the first one, each having the size of 
+     * the result matrix, do not require more than the given number
+     * of bytes.
+     * 
+     * @param numSlices The requested number of slices
+     * @param numOuterProducts The number of outer products
+     * @param rows The number of rows of the result matrix
+     * @param columns The number of columns of the result matrix
+     * @param maxPartialResultsBytes The maximum number of bytes for 
+     * the partial results
+     * @return The number of slices
+     */
+    static int computeNumSlices(int numSlices, int numOuterProducts,
+        int rows, int columns, long maxPartialResultsBytes)
+    {
+        long partialResultBytes = 
+            Math.max(1L, (long)rows * columns * Float.BYTES);
+        long maxAdditionalSlices = maxPartialResultsBytes / partialResultBytes;
+        long limit = Math.min(numSlices, numOuterProducts);
+        limit = Math.min(limit, 1 + maxAdditionalSlices);
+        return (int)Math.max(1, limit);
+    }
+    
+    /**
+     * Returns the index of the first outer product of the given slice
+     * 
+     * @param s The slice
+     * @return The index of the first outer product, inclusive
+     */
+    private int getFirstOuterProduct(int s)
+    {
+        return (int)((long)s * numOuterProducts / numSlices);
+    }
+    
+    /**
+     * Start this job with the given deadline. If the job is not finished
+     * after the given time, then the returned future will be completed
+     * exceptionally with a <code>TimeoutException</code>, and all
+     * pending tasks will be cancelled.
+     * 
+     * @param timeout The timeout
+     * @param unit The time unit
+     * @return The future that will be completed when the job is finished
+     */
+    CompletableFuture<MutableFloatMatrix2D> start(
+        long timeout, TimeUnit unit)
+    {
+        ExecutorExtensions.failAfter(future, timeout, unit);
+        return start();
+    }
+    
+    /**
+     * Dispatch the tasks for the outer product with the given index,
+     * or start the reduction of the partial result of the given slice
+     * if all outer products of the slice have been computed.
+     * 
+     * @param s The slice
+     * @param p The index of the outer product
+     */
+    private void dispatch(final int s, final int p)
+    {
+        if (future.isDone())
+        {
+            // The job was cancelled or failed
+            return;
+        }
+        if (p >= getFirstOuterProduct(s + 1))
+        {
+            reduce(partialResults[s]);
+            return;
+        }
+        final MutableFloatMatrix2D partialResult = partialResults[s];
+        List<Callable<?>> tasks = 
+            multiplicator.createTasks(jobId, s, A, B, p);
+        final AtomicInteger remaining = new AtomicInteger(tasks.size());
+        logger.fine("Dispatching " + tasks.size() + " tasks for " + p);
+        for (Callable<?> task : tasks)
+        {
+            if (future.isDone())
+            {
+                return;
+            }
+            final long submitNanos = System.nanoTime();
+            final CompletableFuture<?> taskFuture = executor.submit(task);
+            pendingFutures.add(taskFuture);
+            if (future.isDone())
+            {
+                // The job was cancelled while the task was submitted
+                taskFuture.cancel(true);
+                return;
+            }
+            taskFuture.whenComplete(new BiConsumer<Object, Throwable>()
+            {
+                @Override
+                public void accept(Object result, Throwable t)
+                {
+                    pendingFutures.remove(taskFuture);
+                    if (t != null)
+                    {
+                        future.completeExceptionally(
+                            ExecutorExtensions.unwrap(t));
+                        return;
+                    }
+                    try
+                    {
+                        if (result instanceof MatMulBatchResult)
+                        {
+                            MatMulBatchResult batchResult = 
+                                (MatMulBatchResult)result;
+                            List<MatMulResult> results = 
+                                batchResult.getResults();
+                            long roundTripNanos = 
+                                System.nanoTime() - submitNanos;
+                            multiplicator.getTaskCoarsening().record(
+                                results.size(), roundTripNanos, 
+                                batchResult.getComputeNanos());
+                            for (MatMulResult r : results)
+                            {
+                                accumulate(s, partialResult, r);
+                            }
+                        }
+                        else
+                        {
+                            accumulate(s, partialResult, 
+                                (MatMulResult)result);
+                        }
+                        if (remaining.decrementAndGet() == 0)
+                        {
+                            saveCheckpoint(s, p + 1);
+                            dispatch(s, p + 1);
+                        }
+                    }
+                    catch (Throwable e)
+                    {
+                        // An exception that is thrown in this callback
+                        // would be swallowed by the CompletableFuture,
+                        // and the job would never be completed
+                        future.completeExceptionally(e);
+                    }
+                }
+            });
+        }
+    }
+    
+    /**
+     * Save the partial result of the given slice in the checkpoint, if
+     * a checkpoint is used and the checkpoint interval has passed since
+     * the last checkpoint of the slice. This is called when all tasks
+     * of an outer product have been completed, and before the tasks 
+     * of the next outer product are dispatched. Errors while saving the
+     * checkpoint are only logged, because the previous checkpoint 
+     * remains valid.
+     * 
+     * @param s The slice
+     * @param nextOuterProduct The index of the next outer product
+     */
+    private void saveCheckpoint(int s, int nextOuterProduct)
+    {
+        MatMulCheckpoint currentCheckpoint = checkpoint;
+        if (currentCheckpoint == null || future.isDone())
+        {
+            return;
+        }
+        long currentMillis = System.currentTimeMillis();
+        if (currentMillis - lastCheckpointMillis[s] < checkpointIntervalMillis)
+        {
+            return;
+        }
+        try
+        {
+            currentCheckpoint.save(s, nextOuterProduct, partialResults[s]);
+            logger.fine("Saved checkpoint of slice " + s + 
+                " before outer product " + nextOuterProduct);
+        }
+        catch (RuntimeException e)
+        {
+            logger.warning("Could not save checkpoint: " + e.getMessage());
+        }
+        lastCheckpointMillis[s] = currentMillis;
+    }
+    
+    /**
+     * Close the checkpoint, if a checkpoint file was given
+     * 
+     * @param finished Whether the job was finished successfully. In this
+     * case, the checkpoint file is deleted.
+     */
+    private void closeCheckpoint(boolean finished)
+    {
+        if (checkpointFile == null)
+        {
+            return;
+        }
+        MatMulCheckpoint currentCheckpoint = checkpoint;
+        if (currentCheckpoint != null)
+        {
+            if (finished)
+            {
+                currentCheckpoint.delete();
+            }
+            else
+            {
+                currentCheckpoint.close();
+            }
+        }
+        multiplicator.releaseCheckpointFile();
+    }
+    
+    /**
+     * Add the given result to the respective block of the given partial
+     * result matrix, and release the result. This may be called by 
+     * multiple threads concurrently, because all results of one outer 
+     * product refer to different blocks. 
+     * 
+     * @param s The slice that the partial result belongs to
+     * @param partialResult The partial result matrix
+     * @param result The {@link MatMulResult}
+     * @throws IllegalStateException If the result carries a job ID, and
+     * does not belong to the given slice of this job
+     */
+    private void accumulate(int s, 
+        MutableFloatMatrix2D partialResult, MatMulResult result)
+    {
+        String resultJobId = result.getJobId();
+        if (resultJobId != null && 
+            (!resultJobId.equals(jobId) || result.getSlice() != s))
+        {
+            throw new IllegalStateException("Received a result for slice "
+                + result.getSlice() + " of job " + resultJobId 
+                + " in slice " + s + " of job " + jobId);
+        }
+        if (future.isDone())
+        {
+            result.release();
+            return;
+        }
+        Point point = result.getPoint();
+        FloatMatrix2D block = result.getMatrix();
+        int rb = point.r;
+        int cb = point.c;
+        MutableFloatMatrix2D Crc = multiplicator.createBlockSubMatrix(
+            partialResult, rb, cb, rb+1, cb+1);
+        Matrices.add(Crc, Crc, block);
+        result.release();
+    }
+    
+    /**
+     * Reduce the given partial result of a finished slice: If another 
+     * finished partial result is waiting, then both are added, and the
+     * sum is reduced further. Otherwise, the given partial result will 
+     * wait for the next finished one. When all partial results have
+     * been added, the future of this job is completed.
+     * 
+     * @param partialResult The partial result
+     */
+    private void reduce(MutableFloatMatrix2D partialResult)
+    {
+        MutableFloatMatrix2D current = partialResult;
+        while (!future.isDone())
+        {
+            MutableFloatMatrix2D other = null;
+            synchronized (reductionLock)
+            {
+                if (remainingPartialResults == 1)
+                {
+                    future.complete(current);
+                    return;
+                }
+                if (waitingPartialResult == null)
+                {
+                    waitingPartialResult = current;
+                    return;
+                }
+                other = waitingPartialResult;
+                waitingPartialResult = null;
+            }
+            
+            // Always accumulate into the actual result matrix, so
+            // that the last remaining partial result is C
+            if (other == C)
+            {
+                other = current;
+                current = C;
+            }
+            Matrices.add(current, current, other);
+            synchronized (reductionLock)
+            {
+                remainingPartialResults--;
+            }
+        }
+    }
+    
+    /**
+     * Cancel all tasks that are currently pending
+     */
+    private void cancelPendingTasks()
+    {
+        for (CompletableFuture<?> pendingFuture : pendingFutures)
+        {
+            pendingFuture.cancel(true);
+        }
+    }
+}
@@ -27,10 +27,27 @@
 package de.javagl.hazelcast.matmul;
 
 /**
- * The result of a {@link MatMulTask}
+ * The result of a {@link MatMulTask}. <br />
+ * <br />
+ * The result carries the ID of the job and the index of the slice of 
+ * the task that it was computed by, so that the receiver can verify
+ * where it has to be accumulated. When the matrix of the result was 
+ * obtained from a {@link MatrixPool} while receiving the result, then
+ * it may be returned to this pool with {@link #release()}, after it 
+ * has been accumulated.
  */
 public final class MatMulResult  
 {
+    /**
+     * The ID of the job. This may be <code>null</code>.
+     */
+    private final String jobId;
+    
+    /**
+     * The index of the slice of the reduction dimension
+     */
+    private final int slice;
+    
     /**
      * The point describing the row and column block index of the result
      */
@@ -41,6 +58,17 @@ public final class MatMulResult
      */
     private final MutableFloatMatrix2D matrix;
     
+    /**
+     * The pool that the matrix was obtained from. This may be 
+     * <code>null</code>.
+     */
+    private final MatrixPool pool;
+    
+    /**
+     * Whether the matrix was already released
+     */
+    private boolean released;
+    
     /**
      * Creates a new matrix multiplication result
      * 
@@ -49,8 +77,50 @@ public final class MatMulResult
      */
     public MatMulResult(Point point, MutableFloatMatrix2D matrix)
     {
+        this(null, 0, point, matrix, null);
+    }
+    
+    /**
+     * Creates a new matrix multiplication result
+     * 
+     * @param jobId The ID of the job. This may be <code>null</code>.
+     * @param slice The index of the slice of the reduction dimension
+     * @param point The point describing the row and column block index
+     * @param matrix The result of the multiplication
+     * @param pool The {@link MatrixPool} that the matrix was obtained 
+     * from, and that it will be returned to when this result is
+     * {@link #release() released}. This may be <code>null</code>.
+     */
+    public MatMulResult(String jobId, int slice, 
+        Point point, MutableFloatMatrix2D matrix, MatrixPool pool)
+    {
+        this.jobId = jobId;
+        this.slice = slice;
         this.point = point;
         this.matrix = matrix;
+        this.pool = pool;
+    }
+    
+    /**
+     * Returns the ID of the job that this result belongs to. This may 
+     * be <code>null</code> if the task was created without a job ID.
+     * 
+     * @return The job ID
+     */
+    public String getJobId()
+    {
+        return jobId;
+    }
+    
+    /**
+     * Returns the index of the slice of the reduction dimension that
+     * this result belongs to
+     * 
+     * @return The slice
+     */
+    public int getSlice()
+    {
+        return slice;
     }
     
     /**
@@ -72,4 +142,18 @@ public final class MatMulResult
     {
         return matrix;
     }
+    
+    /**
+     * Release the matrix of this result. If it was obtained from a 
+     * {@link MatrixPool}, then it is returned to this pool, and the 
+     * caller may no longer use it. Otherwise, this has no effect.
+     */
+    public synchronized void release()
+    {
+        if (pool != null && !released)
+        {
+            released = true;
+            pool.release(matrix);
+        }
+    }
 }
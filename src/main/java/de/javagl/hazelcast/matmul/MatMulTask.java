@@ -33,7 +33,10 @@ import java.util.logging.Logger;
 /**
  * A task describing the multiplication of two {@link FloatMatrix2D} objects.
  * Particularly, the multiplication of two block matrices that contribute to
- * the result of a larger matrix multiplication.
+ * the result of a larger matrix multiplication. The task may carry 
+ * the ID of the job and the index of the slice of the reduction 
+ * dimension that it belongs to. These are passed on to the 
+ * {@link MatMulResult}.
  */
 public final class MatMulTask implements Callable<MatMulResult> 
 {
@@ -43,6 +46,16 @@ public final class MatMulTask implements Callable<MatMulResult>
     private static final Logger logger = 
         Logger.getLogger(MatMulTask.class.getName());
     
+    /**
+     * The ID of the job. This may be <code>null</code>.
+     */
+    private final String jobId;
+    
+    /**
+     * The index of the slice of the reduction dimension
+     */
+    private final int slice;
+    
     /**
      * The row block index of the result matrix
      */
@@ -86,6 +99,31 @@ public final class MatMulTask implements Callable<MatMulResult>
         FloatMatrix2D m0, FloatMatrix2D m1,
         Factory<MatrixMultiplicator> matrixMultiplicatorFactory) 
     {
+        this(null, 0, rowBlockIndex, columnBlockIndex, m0, m1, 
+            matrixMultiplicatorFactory);
+    }
+    
+    /**
+     * Creates a new matrix multiplication task
+     * 
+     * @param jobId The ID of the job. This may be <code>null</code>.
+     * @param slice The index of the slice of the reduction dimension
+     * @param rowBlockIndex The row block index for the result matrix
+     * @param columnBlockIndex The column block index for the result matrix
+     * @param m0 The first factor
+     * @param m1 The second factor
+     * @param matrixMultiplicatorFactory The {@link Factory} that will be 
+     * used to create the {@link MatrixMultiplicator} for the multiplication
+     * of the matrices. If this argument is <code>null</code>, a default,
+     * single-threaded multiplicator will be used.
+     */
+    public MatMulTask(String jobId, int slice, 
+        int rowBlockIndex, int columnBlockIndex,
+        FloatMatrix2D m0, FloatMatrix2D m1,
+        Factory<MatrixMultiplicator> matrixMultiplicatorFactory) 
+    {
+        this.jobId = jobId;
+        this.slice = slice;
         this.rowBlockIndex = rowBlockIndex;
         this.columnBlockIndex = columnBlockIndex;
         this.m0 = m0;
@@ -101,6 +139,26 @@ public final class MatMulTask implements Callable<MatMulResult>
         }
     }
     
+    /**
+     * Returns the ID of the job. This may be <code>null</code>.
+     * 
+     * @return The job ID
+     */
+    public String getJobId()
+    {
+        return jobId;
+    }
+    
+    /**
+     * Returns the index of the slice of the reduction dimension
+     * 
+     * @return The slice
+     */
+    public int getSlice()
+    {
+        return slice;
+    }
+    
     /**
      * Returns the row block index of the result
      * 
@@ -155,11 +213,22 @@ public final class MatMulTask implements Callable<MatMulResult>
 
     @Override
     public MatMulResult call() 
+    {
+        return call(matrixMultiplicatorFactory.create());
+    }
+    
+    /**
+     * Compute the result of this task with the given 
+     * {@link MatrixMultiplicator}, instead of one that is created
+     * with the factory of this task
+     * 
+     * @param matrixMultiplicator The {@link MatrixMultiplicator}
+     * @return The result
+     */
+    public MatMulResult call(MatrixMultiplicator matrixMultiplicator) 
     {
         MutableFloatMatrix2D result = 
             Matrices.createFloatMatrix2D(m0.getNumRows(), m1.getNumColumns());
-        MatrixMultiplicator matrixMultiplicator =
-            matrixMultiplicatorFactory.create();
 
         final Level level = Level.FINE;
         if (logger.isLoggable(level))
@@ -174,7 +243,7 @@ public final class MatMulTask implements Callable<MatMulResult>
         }
         matrixMultiplicator.multiply(result, m0, m1);
         Point point = new Point(rowBlockIndex, columnBlockIndex);
-        return new MatMulResult(point, result);
+        return new MatMulResult(jobId, slice, point, result, null);
     }
 
 }
\ No newline at end of file
@@ -56,10 +56,24 @@ public final class Matrices
      * @param numRows The number of rows
      * @param numColumns The number of columns
      * @return The new matrix
+     * @throws IllegalArgumentException If the size is negative, or 
+     * the number of elements does not fit into a single array
      */
     public static MutableFloatMatrix2D createFloatMatrix2D(
     	int numRows, int numColumns)
     {
+        if (numRows < 0 || numColumns < 0)
+        {
+            throw new IllegalArgumentException(
+                "Invalid matrix size: " + numRows + "x" + numColumns);
+        }
+        long numElements = (long)numRows * numColumns;
+        if (numElements > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException(
+                "Matrix size " + numRows + "x" + numColumns + 
+                " exceeds the maximum number of elements");
+        }
         return new ColumnMajor1DArrayFloatMatrix2D(numRows, numColumns);
     }
 
@@ -193,7 +207,7 @@ public final class Matrices
      * @param c1 The end column of the sub-matrix, exclusive
      * @return The sub-matrix
      */
-    static FloatMatrix2D createSubMatrixClamping(
+    public static FloatMatrix2D createSubMatrixClamping(
         FloatMatrix2D m, int r0, int c0, int r1, int c1)
     {
         return m.subMatrix(
@@ -214,7 +228,7 @@ public final class Matrices
      * @param c1 The end column of the sub-matrix, exclusive
      * @return The sub-matrix
      */
-    static MutableFloatMatrix2D createSubMatrixClamping(
+    public static MutableFloatMatrix2D createSubMatrixClamping(
         MutableFloatMatrix2D m, int r0, int c0, int r1, int c1)
     {
         return m.subMatrix(
@@ -26,8 +26,14 @@
  */
 package de.javagl.hazelcast.matmul;
 
+import java.io.File;
 import java.io.Serializable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Methods to create {@link MatrixMultiplicator} instances.
@@ -35,15 +41,25 @@ import java.util.concurrent.ExecutorService;
 public class MatrixMultiplicators
 {
     /**
-     * A factory for simple {@link MatrixMultiplicator} instances
+     * A factory for simple {@link MatrixMultiplicator} instances. 
+     * Instances of this class are created with 
+     * {@link MatrixMultiplicators#createSimpleFactory()}.
      */
-    private static class SimpleMatrixMultiplicatorFactory 
+    public static final class SimpleMatrixMultiplicatorFactory 
         implements Factory<MatrixMultiplicator>, Serializable
     {
         /**
          * Serial UID
          */
         private static final long serialVersionUID = -8379002256269568661L;
+        
+        /**
+         * Creates a new instance
+         */
+        SimpleMatrixMultiplicatorFactory()
+        {
+            // Package-private constructor
+        }
 
         @Override
         public MatrixMultiplicator create()
@@ -59,9 +75,11 @@ public class MatrixMultiplicators
     }
     
     /**
-     * A factory for parallel {@link MatrixMultiplicator} instances
+     * A factory for parallel {@link MatrixMultiplicator} instances.
+     * Instances of this class are created with 
+     * {@link MatrixMultiplicators#createParallelFactory(int)}.
      */
-    private static class ParallelMatrixMultiplicatorFactory 
+    public static final class ParallelMatrixMultiplicatorFactory 
         implements Factory<MatrixMultiplicator>, Serializable
     {
         /**
@@ -84,6 +102,17 @@ public class MatrixMultiplicators
         {
             this.blockSize = blockSize;
         }
+        
+        /**
+         * Returns the block size of the {@link MatrixMultiplicator} 
+         * instances that are created by this factory
+         * 
+         * @return The block size
+         */
+        public int getBlockSize()
+        {
+            return blockSize;
+        }
 
         @Override
         public MatrixMultiplicator create()
@@ -98,6 +127,18 @@ public class MatrixMultiplicators
         }
     }
     
+    /**
+     * The executor service that is shared by all multiplicators that
+     * are created with {@link #createParallelShared(int)}. Created lazily,
+     * when this method is called for the first time.
+     */
+    private static ExecutorService sharedExecutorService;
+    
+    /**
+     * The number of threads of the {@link #sharedExecutorService}
+     */
+    private static int numSharedThreads = 
+        Runtime.getRuntime().availableProcessors();
     
     /**
      * Returns a {@link Factory} that creates {@link MatrixMultiplicator} 
@@ -112,7 +153,12 @@ public class MatrixMultiplicators
     
     /**
      * Returns a {@link Factory} that creates {@link MatrixMultiplicator} 
-     * instances using {@link #createParallelDefault(int)} 
+     * instances using {@link #createParallelDefault(int)}. <br />
+     * <br />
+     * This is the factory that is usually sent to the cluster members
+     * along with the tasks. The members do not use the factory directly,
+     * but multiply the blocks with the compute threads that are shared
+     * by all tasks on the member, using the block size of the factory.
      * 
      * @param blockSize The block size
      * @return The factory
@@ -143,7 +189,8 @@ public class MatrixMultiplicators
      * @param blockSize The block size
      * @return The {@link MatrixMultiplicator}
      */
-    public static MatrixMultiplicator createParallelDefault(int blockSize)
+    public static AsyncMatrixMultiplicator createParallelDefault(
+        int blockSize)
     {
         final int numberOfThreads = 
             Runtime.getRuntime().availableProcessors();
@@ -164,8 +211,144 @@ public class MatrixMultiplicators
             }
         };
         return new ParallelMatrixMultiplicator(
-            executorServiceFactory, blockSize,
-            createSimpleFactory());
+            ExecutorExtensions.asAsyncExecutorFactory(executorServiceFactory),
+            blockSize, 1, 1, null, 0, createSimpleFactory());
+    }
+    
+    /**
+     * Create a parallel {@link MatrixMultiplicator} that multiplies
+     * the matrices by splitting them into blocks of the given size,
+     * and multiplying the blocks in a thread pool whose size is 
+     * fixed to the number of available processors. In contrast to
+     * {@link #createParallelDefault(int)}, this thread pool is not 
+     * created for each multiplication, but shared by all multiplicators
+     * that are created with this method in the same JVM. The blocks of
+     * multiplications that are performed concurrently are processed 
+     * in the order in which they have been submitted. The thread pool
+     * is only created when this method is called for the first time.
+     * 
+     * @param blockSize The block size
+     * @return The {@link MatrixMultiplicator}
+     */
+    public static AsyncMatrixMultiplicator createParallelShared(
+        int blockSize)
+    {
+        return createParallelShared(getSharedExecutorService(), blockSize);
+    }
+    
+    /**
+     * Create a parallel {@link MatrixMultiplicator} that multiplies
+     * the matrices by splitting them into blocks of the given size,
+     * and multiplying the blocks with the given executor service. 
+     * The executor service is not shut down by the multiplicator, 
+     * so that it may be shared by several multiplicators. 
+     * 
+     * @param executorService The executor service
+     * @param blockSize The block size
+     * @return The {@link MatrixMultiplicator}
+     */
+    public static AsyncMatrixMultiplicator createParallelShared(
+        ExecutorService executorService, int blockSize)
+    {
+        final AsyncExecutor sharedAsyncExecutor = 
+            ExecutorExtensions.asAsyncExecutor(executorService);
+        Factory<AsyncExecutor> asyncExecutorFactory = 
+            new Factory<AsyncExecutor>()
+        {
+            @Override
+            public AsyncExecutor create()
+            {
+                return new AsyncExecutor()
+                {
+                    @Override
+                    public <T> CompletableFuture<T> submit(
+                        Callable<T> callable)
+                    {
+                        return sharedAsyncExecutor.submit(callable);
+                    }
+
+                    @Override
+                    public void shutdown()
+                    {
+                        // The shared executor is never shut down
+                    }
+                };
+            }
+            
+            @Override
+            public String toString()
+            {
+                return "sharedExecutorServiceFactory";
+            }
+        };
+        return new ParallelMatrixMultiplicator(asyncExecutorFactory,
+            blockSize, 1, 1, null, 0, createSimpleFactory());
+    }
+    
+    /**
+     * Returns the executor service that is used by the multiplicators
+     * that are created with {@link #createParallelShared(int)}, creating
+     * it if necessary. Its threads are daemon threads, so that they do 
+     * not prevent the JVM from shutting down.
+     * 
+     * @return The executor service
+     */
+    private static synchronized ExecutorService getSharedExecutorService()
+    {
+        if (sharedExecutorService == null)
+        {
+            final AtomicInteger threadCounter = new AtomicInteger();
+            sharedExecutorService = 
+                ExecutorExtensions.newExceptionAwareFixedThreadPool(
+                    numSharedThreads, new ThreadFactory()
+                {
+                    @Override
+                    public Thread newThread(Runnable r)
+                    {
+                        Thread thread = new Thread(r, 
+                            "MatrixMultiplicators-compute-" + 
+                            threadCounter.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        }
+        return sharedExecutorService;
+    }
+    
+    /**
+     * Set the number of threads that are used by the multiplicators that
+     * are created with {@link #createParallelShared(int)}. By default, 
+     * this is the number of available processors. When the threads have
+     * already been created, then the number of threads is adjusted.
+     * 
+     * @param numThreads The number of threads
+     * @throws IllegalArgumentException If the number is not positive
+     */
+    public static synchronized void setNumSharedThreads(int numThreads)
+    {
+        if (numThreads <= 0)
+        {
+            throw new IllegalArgumentException(
+                "The number of threads must be positive, but is " + 
+                numThreads);
+        }
+        numSharedThreads = numThreads;
+        if (sharedExecutorService instanceof ThreadPoolExecutor)
+        {
+            ThreadPoolExecutor threadPoolExecutor = 
+                (ThreadPoolExecutor)sharedExecutorService;
+            if (numThreads > threadPoolExecutor.getMaximumPoolSize())
+            {
+                threadPoolExecutor.setMaximumPoolSize(numThreads);
+                threadPoolExecutor.setCorePoolSize(numThreads);
+            }
+            else
+            {
+                threadPoolExecutor.setCorePoolSize(numThreads);
+                threadPoolExecutor.setMaximumPoolSize(numThreads);
+            }
+        }
     }
     
     /**
@@ -179,12 +362,146 @@ public class MatrixMultiplicators
      * blocks of the given size
      * @return The {@link MatrixMultiplicator}
      */
-    public static MatrixMultiplicator createParallel(
+    public static AsyncMatrixMultiplicator createParallel(
         Factory<ExecutorService> executorServiceFactory, int blockSize,
         Factory<MatrixMultiplicator> subMatrixMultiplicatorFactory)
     {
         return new ParallelMatrixMultiplicator(
-            executorServiceFactory, blockSize,
+            ExecutorExtensions.asAsyncExecutorFactory(executorServiceFactory), 
+            blockSize, 1, 1, null, 0, subMatrixMultiplicatorFactory);
+    }
+    
+    /**
+     * Create a parallel {@link MatrixMultiplicator} that submits its
+     * tasks to {@link AsyncExecutor} instances. A new executor will
+     * be created with the given factory for each multiplication, and
+     * shut down when the multiplication is finished.
+     * 
+     * @param asyncExecutorFactory The {@link Factory} for the 
+     * {@link AsyncExecutor}
+     * @param blockSize The block size
+     * @param subMatrixMultiplicatorFactory The {@link Factory} that will
+     * be used to create the {@link MatrixMultiplicator} instances for the
+     * blocks of the given size
+     * @return The {@link MatrixMultiplicator}
+     */
+    public static AsyncMatrixMultiplicator createAsync(
+        Factory<AsyncExecutor> asyncExecutorFactory, int blockSize,
+        Factory<MatrixMultiplicator> subMatrixMultiplicatorFactory)
+    {
+        return createAsync(asyncExecutorFactory, blockSize, 1, 
+            subMatrixMultiplicatorFactory);
+    }
+    
+    /**
+     * Create a parallel {@link MatrixMultiplicator} that submits its
+     * tasks to {@link AsyncExecutor} instances, like 
+     * {@link #createAsync(Factory, int, Factory)}, but additionally
+     * splits the reduction dimension (the columns of the first matrix
+     * and the rows of the second matrix) into the given number of 
+     * slices that are processed concurrently. The partial results 
+     * of the slices are summed up with a tree reduction. <br />
+     * <br />
+     * This is beneficial for matrices where the inner dimension is 
+     * large, but the result matrix consists of only few blocks, and
+     * thus, only few tasks could be executed concurrently otherwise.
+     * Note that each slice requires a temporary matrix with the size
+     * of the result matrix. The number of slices is limited so that 
+     * these matrices do not require more than a quarter of the maximum
+     * heap size.
+     * 
+     * @param asyncExecutorFactory The {@link Factory} for the 
+     * {@link AsyncExecutor}
+     * @param blockSize The block size
+     * @param reductionSplit The maximum number of slices of the
+     * reduction dimension that are processed concurrently
+     * @param subMatrixMultiplicatorFactory The {@link Factory} that will
+     * be used to create the {@link MatrixMultiplicator} instances for the
+     * blocks of the given size
+     * @return The {@link MatrixMultiplicator}
+     */
+    public static AsyncMatrixMultiplicator createAsync(
+        Factory<AsyncExecutor> asyncExecutorFactory, int blockSize,
+        int reductionSplit,
+        Factory<MatrixMultiplicator> subMatrixMultiplicatorFactory)
+    {
+        return createAsync(asyncExecutorFactory, blockSize, 
+            reductionSplit, 1, subMatrixMultiplicatorFactory);
+    }
+    
+    /**
+     * Create a parallel {@link MatrixMultiplicator} that works like
+     * {@link #createAsync(Factory, int, int, Factory)}, but may combine
+     * up to the given number of block products into one task. The 
+     * number of products that are actually combined is chosen based on
+     * the measured time between submitting a task and receiving its 
+     * result, compared to the time that was required for computing 
+     * the products, so that the overhead of the submission becomes 
+     * small compared to the computation.
+     * 
+     * @param asyncExecutorFactory The {@link Factory} for the 
+     * {@link AsyncExecutor}
+     * @param blockSize The block size
+     * @param reductionSplit The maximum number of slices of the
+     * reduction dimension that are processed concurrently
+     * @param maxProductsPerTask The maximum number of block products
+     * that may be combined into one task
+     * @param subMatrixMultiplicatorFactory The {@link Factory} that will
+     * be used to create the {@link MatrixMultiplicator} instances for the
+     * blocks of the given size
+     * @return The {@link MatrixMultiplicator}
+     */
+    public static AsyncMatrixMultiplicator createAsync(
+        Factory<AsyncExecutor> asyncExecutorFactory, int blockSize,
+        int reductionSplit, int maxProductsPerTask,
+        Factory<MatrixMultiplicator> subMatrixMultiplicatorFactory)
+    {
+        return createAsync(asyncExecutorFactory, blockSize, reductionSplit,
+            maxProductsPerTask, null, 0, subMatrixMultiplicatorFactory);
+    }
+    
+    /**
+     * Create a parallel {@link MatrixMultiplicator} that works like
+     * {@link #createAsync(Factory, int, int, int, Factory)}, but saves
+     * the progress of each multiplication in the given checkpoint file.
+     * The partial results are saved at most once in the given interval.
+     * When the multiplication of the same matrices is started again with
+     * the same checkpoint file, for example, after the process was 
+     * terminated, then only the outer products that have not been 
+     * saved yet are computed. When the multiplication is finished, the
+     * checkpoint file is deleted.<br />
+     * <br />
+     * The checkpoint file can only be used by one multiplication at a
+     * time. Further multiplications that are executed concurrently will
+     * not write checkpoints. The size of the checkpoint file is twice 
+     * the size of the result matrix for each slice of the reduction 
+     * dimension.
+     * 
+     * @param asyncExecutorFactory The {@link Factory} for the 
+     * {@link AsyncExecutor}
+     * @param blockSize The block size
+     * @param reductionSplit The maximum number of slices of the
+     * reduction dimension that are processed concurrently
+     * @param maxProductsPerTask The maximum number of block products
+     * that may be combined into one task
+     * @param checkpointFile The checkpoint file. If this is 
+     * <code>null</code>, then no checkpoints will be written.
+     * @param checkpointIntervalMillis The minimum time between two 
+     * checkpoints of one slice, in milliseconds
+     * @param subMatrixMultiplicatorFactory The {@link Factory} that will
+     * be used to create the {@link MatrixMultiplicator} instances for the
+     * blocks of the given size
+     * @return The {@link MatrixMultiplicator}
+     */
+    public static AsyncMatrixMultiplicator createAsync(
+        Factory<AsyncExecutor> asyncExecutorFactory, int blockSize,
+        int reductionSplit, int maxProductsPerTask,
+        File checkpointFile, long checkpointIntervalMillis,
+        Factory<MatrixMultiplicator> subMatrixMultiplicatorFactory)
+    {
+        return new ParallelMatrixMultiplicator(
+            asyncExecutorFactory, blockSize, reductionSplit,
+            maxProductsPerTask, checkpointFile, checkpointIntervalMillis,
             subMatrixMultiplicatorFactory);
     }
     
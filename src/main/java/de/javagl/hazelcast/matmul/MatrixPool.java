@@ -0,0 +1,161 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A pool of {@link MutableFloatMatrix2D} instances that may be reused 
+ * for receiving blocks. <br />
+ * <br />
+ * When the result blocks of tasks are received, they are read into 
+ * matrices that are obtained from this pool. After such a block has 
+ * been added to the result matrix, it is {@link MatMulResult#release()
+ * released}, and the matrix is returned to the pool, so that it may 
+ * be used for the next block with the same size. The pool only keeps 
+ * matrices up to a maximum number of bytes. Matrices that are obtained
+ * but never released are simply garbage collected.
+ */
+public final class MatrixPool
+{
+    /**
+     * The maximum number of bytes of the matrices that are kept
+     */
+    private final long maxBytes;
+    
+    /**
+     * The matrices that are currently available, for each size
+     */
+    private final Map<Long, Deque<MutableFloatMatrix2D>> matrices;
+    
+    /**
+     * The number of bytes of the matrices that are currently available
+     */
+    private long numBytes;
+    
+    /**
+     * Creates a new pool that keeps matrices with at most the given 
+     * number of bytes
+     * 
+     * @param maxBytes The maximum number of bytes
+     */
+    public MatrixPool(long maxBytes)
+    {
+        this.maxBytes = maxBytes;
+        this.matrices = new HashMap<Long, Deque<MutableFloatMatrix2D>>();
+    }
+    
+    /**
+     * Returns a matrix with the given size. This will be a matrix that 
+     * was released to this pool earlier, if one is available, or a new
+     * matrix otherwise. The contents of the matrix are unspecified.
+     * 
+     * @param rows The number of rows
+     * @param columns The number of columns
+     * @return The matrix
+     */
+    public MutableFloatMatrix2D obtain(int rows, int columns)
+    {
+        synchronized (this)
+        {
+            Deque<MutableFloatMatrix2D> deque = 
+                matrices.get(createKey(rows, columns));
+            if (deque != null && !deque.isEmpty())
+            {
+                numBytes -= computeBytes(rows, columns);
+                return deque.poll();
+            }
+        }
+        return Matrices.createFloatMatrix2D(rows, columns);
+    }
+    
+    /**
+     * Return the given matrix to this pool, so that it may be returned
+     * by a later call to {@link #obtain(int, int)}. The caller may not 
+     * use the matrix afterwards. If the pool already contains the 
+     * maximum number of bytes, then the matrix is discarded. 
+     * 
+     * @param matrix The matrix
+     */
+    public synchronized void release(MutableFloatMatrix2D matrix)
+    {
+        int rows = matrix.getNumRows();
+        int columns = matrix.getNumColumns();
+        long bytes = computeBytes(rows, columns);
+        if (numBytes + bytes > maxBytes)
+        {
+            return;
+        }
+        Long key = createKey(rows, columns);
+        Deque<MutableFloatMatrix2D> deque = matrices.get(key);
+        if (deque == null)
+        {
+            deque = new ArrayDeque<MutableFloatMatrix2D>();
+            matrices.put(key, deque);
+        }
+        deque.push(matrix);
+        numBytes += bytes;
+    }
+    
+    /**
+     * Returns the number of bytes of the matrices that are currently 
+     * available in this pool
+     * 
+     * @return The number of bytes
+     */
+    public synchronized long getNumBytes()
+    {
+        return numBytes;
+    }
+    
+    /**
+     * Creates the key for the matrices with the given size
+     * 
+     * @param rows The number of rows
+     * @param columns The number of columns
+     * @return The key
+     */
+    private static Long createKey(int rows, int columns)
+    {
+        return ((long)rows << 32) | (columns & 0xFFFFFFFFL);
+    }
+    
+    /**
+     * Computes the number of bytes of a matrix with the given size
+     * 
+     * @param rows The number of rows
+     * @param columns The number of columns
+     * @return The number of bytes
+     */
+    private static long computeBytes(int rows, int columns)
+    {
+        return (long)rows * columns * Float.BYTES;
+    }
+}
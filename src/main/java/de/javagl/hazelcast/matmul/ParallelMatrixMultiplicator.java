@@ -26,16 +26,18 @@
  */
 package de.javagl.hazelcast.matmul;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 
 /**
- * Implementation of a {@link MatrixMultiplicator} that uses
- * an ExecutorService for a parallel matrix multiplication.
+ * Implementation of an {@link AsyncMatrixMultiplicator} that uses
+ * an {@link AsyncExecutor} for a parallel matrix multiplication.
  * <br />
  * The implementation is conceptually similar to the SUMMA matrix 
  * multiplication algorithm: 
@@ -65,9 +67,28 @@ import java.util.logging.Logger;
  * equal to the number of rows in 'B'). <br />
  * <br />
  * These outer products are computed in parallel, for all elements 
- * 'Crc' of the result matrix, and then summed up.
+ * 'Crc' of the result matrix, and then summed up.<br />
+ * <br />
+ * Optionally, the range of outer products may be split into several
+ * slices that are processed concurrently, and whose partial results
+ * are summed up with a tree reduction. This increases the number of 
+ * tasks that can be executed in parallel when the result matrix 
+ * consists of only few blocks, but the inner dimension is large.<br />
+ * <br />
+ * Optionally, several block products of one outer product may be 
+ * combined into one {@link MatMulBatchTask}, to reduce the number of
+ * tasks when the time for submitting a task is large compared to the 
+ * time for computing one block product. The number of products per 
+ * task is adjusted based on the measured execution times.<br />
+ * <br />
+ * Optionally, the progress of the multiplication may be saved in a
+ * checkpoint file in regular intervals. When a multiplication of the
+ * same matrices is started again with the same checkpoint file (for 
+ * example, after the process was terminated), then it continues with
+ * the outer products that have not been computed yet. The checkpoint 
+ * file can only be used by one multiplication at a time.
  */
-final class ParallelMatrixMultiplicator implements MatrixMultiplicator
+final class ParallelMatrixMultiplicator implements AsyncMatrixMultiplicator
 {
     /**
      * The logger used in this class
@@ -76,9 +97,9 @@ final class ParallelMatrixMultiplicator implements MatrixMultiplicator
         Logger.getLogger(ParallelMatrixMultiplicator.class.getName());
     
     /**
-     * The factory for the ExecutorService
+     * The factory for the {@link AsyncExecutor}
      */
-    private final Factory<ExecutorService> executorServiceFactory;
+    private final Factory<AsyncExecutor> asyncExecutorFactory;
     
     /**
      * The block size for the matrices
@@ -92,25 +113,75 @@ final class ParallelMatrixMultiplicator implements MatrixMultiplicator
      */
     private final Factory<MatrixMultiplicator> subMatrixMultiplicatorFactory;
     
+    /**
+     * The maximum number of slices of the reduction dimension that 
+     * are processed concurrently
+     */
+    private final int reductionSplit;
+    
+    /**
+     * The {@link TaskCoarsening} that determines how many block products
+     * are combined into one task
+     */
+    private final TaskCoarsening taskCoarsening;
+    
+    /**
+     * The checkpoint file. This may be <code>null</code>.
+     */
+    private final File checkpointFile;
+    
+    /**
+     * The minimum time between two checkpoints of one slice, in 
+     * milliseconds
+     */
+    private final long checkpointIntervalMillis;
+    
+    /**
+     * Whether the {@link #checkpointFile} is currently used by a job
+     */
+    private final AtomicBoolean checkpointFileInUse;
+    
     /**
      * Creates a new matrix multiplicator that can multiply two matrices
      * by submitting tasks to compute blocks of the specified size to 
-     * the ExecutorService that is created by the given factory.
+     * the {@link AsyncExecutor} that is created by the given factory.
      * 
-     * @param executorServiceFactory The {@link Factory} for the
-     * ExecutorService
+     * @param asyncExecutorFactory The {@link Factory} for the
+     * {@link AsyncExecutor}
      * @param blockSize The block size
+     * @param reductionSplit The maximum number of slices of the reduction
+     * dimension that are processed concurrently. A value of 1 means that
+     * the outer products will be computed one after another. Each slice
+     * except for the first one requires a temporary matrix with the size
+     * of the result matrix on the client (and a checkpoint requires twice
+     * the size of the result matrix for each slice). The number of slices 
+     * is limited so that the temporary matrices do not require more than
+     * a quarter of the maximum heap size.
+     * @param maxProductsPerTask The maximum number of block products that
+     * may be combined into one task. A value of 1 means that each block
+     * product is computed by a separate {@link MatMulTask}.
+     * @param checkpointFile The file for checkpoints of the progress. If 
+     * this is <code>null</code>, then no checkpoints will be written.
+     * @param checkpointIntervalMillis The minimum time between two 
+     * checkpoints of the partial result of one slice, in milliseconds
      * @param subMatrixMultiplicatorFactory The {@link Factory} that will be 
      * used to create {@link MatrixMultiplicator} instances for the 
      * sub-matrices. 
      */
     ParallelMatrixMultiplicator(
-        Factory<ExecutorService> executorServiceFactory, int blockSize,
+        Factory<AsyncExecutor> asyncExecutorFactory, int blockSize,
+        int reductionSplit, int maxProductsPerTask,
+        File checkpointFile, long checkpointIntervalMillis,
         Factory<MatrixMultiplicator> subMatrixMultiplicatorFactory)
     {
-        this.executorServiceFactory = executorServiceFactory;
+        this.asyncExecutorFactory = asyncExecutorFactory;
         this.blockSize = blockSize;
         this.subMatrixMultiplicatorFactory = subMatrixMultiplicatorFactory;
+        this.reductionSplit = reductionSplit;
+        this.taskCoarsening = new TaskCoarsening(maxProductsPerTask);
+        this.checkpointFile = checkpointFile;
+        this.checkpointIntervalMillis = checkpointIntervalMillis;
+        this.checkpointFileInUse = new AtomicBoolean(false);
     }
     
     @Override
@@ -120,93 +191,197 @@ final class ParallelMatrixMultiplicator implements MatrixMultiplicator
         //System.out.println("Multiply A "+debugString(A));
         //System.out.println("and      B "+debugString(B));
         
-        ExecutorService executorService = 
-            executorServiceFactory.create();
-        try
-        {
-            multiplyImpl(executorService, C, A, B);
-        }
-        finally
-        {
-            executorService.shutdown();
-        }
+        ExecutorExtensions.await(multiplyAsync(C, A, B));
+    }
+    
+    @Override
+    public CompletableFuture<MutableFloatMatrix2D> multiplyAsync(
+        MutableFloatMatrix2D C, FloatMatrix2D A, FloatMatrix2D B)
+    {
+        return createJob(C, A, B).start();
+    }
+    
+    @Override
+    public CompletableFuture<MutableFloatMatrix2D> multiplyAsync(
+        MutableFloatMatrix2D C, FloatMatrix2D A, FloatMatrix2D B,
+        long timeout, TimeUnit unit)
+    {
+        return createJob(C, A, B).start(timeout, unit);
     }
     
     /**
-     * Implementation of the multiplication method
+     * Create the {@link MatMulJob} for the multiplication of the 
+     * given matrices. The job will use a new {@link AsyncExecutor}
+     * that is created with the {@link #asyncExecutorFactory}, and
+     * that will be shut down when the job is finished. If a
+     * {@link #checkpointFile} was given, and it is not used by another
+     * job, then the job will use it for its checkpoints.
      * 
-     * @param executorService The executor service
      * @param C The result matrix
      * @param A The first factor
      * @param B The second factor
+     * @return The job
      */
-    private void multiplyImpl(ExecutorService executorService, 
+    private MatMulJob createJob(
         MutableFloatMatrix2D C, FloatMatrix2D A, FloatMatrix2D B)
     {
         int numOuterProducts = divCeil(A.getNumColumns(), blockSize);
-        Matrices.fill(C, 0.0f);
-        for (int p=0; p<numOuterProducts; p++)
+        AsyncExecutor asyncExecutor = asyncExecutorFactory.create();
+        File jobCheckpointFile = null;
+        if (checkpointFile != null)
         {
-            List<MatMulTask> tasks = createTasks(A, B, p);
-            List<Future<MatMulResult>> futures = null;
-            try
+            if (checkpointFileInUse.compareAndSet(false, true))
             {
-                futures = executorService.invokeAll(tasks);
+                jobCheckpointFile = checkpointFile;
             }
-            catch (InterruptedException e)
+            else
             {
-                Thread.currentThread().interrupt();
-                return;
-            }
-            
-            for (Future<MatMulResult> future : futures)
-            {
-                MatMulResult result = getSafe(future);
-                Point point = result.getPoint();
-                FloatMatrix2D block = result.getMatrix();
-                int rb = point.r;
-                int cb = point.c;
-                MutableFloatMatrix2D Crc =
-                    createBlockSubMatrix(C, rb, cb, rb+1, cb+1);
-                Matrices.add(Crc, Crc, block);
+                logger.warning("Checkpoint file " + checkpointFile + 
+                    " is used by another multiplication. Running "
+                    + "without checkpoints");
             }
         }
+        return new MatMulJob(this, asyncExecutor, C, A, B, 
+            numOuterProducts, reductionSplit, 
+            jobCheckpointFile, checkpointIntervalMillis);
     }
     
+    /**
+     * Called by a {@link MatMulJob} that used the checkpoint file when
+     * it is finished, so that the checkpoint file may be used by the 
+     * next job.
+     */
+    void releaseCheckpointFile()
+    {
+        checkpointFileInUse.set(false);
+    }
+    
+    /**
+     * Returns the block size
+     * 
+     * @return The block size
+     */
+    int getBlockSize()
+    {
+        return blockSize;
+    }
+    
+    /**
+     * Returns the {@link TaskCoarsening} that records the execution 
+     * times of the tasks
+     * 
+     * @return The {@link TaskCoarsening}
+     */
+    TaskCoarsening getTaskCoarsening()
+    {
+        return taskCoarsening;
+    }
     
-
     /**
      * Creates a list of tasks for computing the products of the 
-     * sub-block-matrices of the given matrices. 
+     * sub-block-matrices of the given matrices. If the 
+     * {@link TaskCoarsening} is enabled, then the tasks will be
+     * {@link MatMulBatchTask}s, each computing the products for a
+     * tile of blocks of the result matrix. Otherwise, they will
+     * be {@link MatMulTask}s. The tasks carry the given job ID and
+     * slice index, which are passed on to their results.
      * 
+     * @param jobId The ID of the job
+     * @param slice The index of the slice of the reduction dimension
      * @param A The first matrix
      * @param B The second matrix
      * @param p The current number of the outer product
      * @return The list of tasks
      */
-    private List<MatMulTask> createTasks(
+    List<Callable<?>> createTasks(String jobId, int slice,
         final FloatMatrix2D A, final FloatMatrix2D B, int p)
     {
         final int numRowBlocks = divCeil(A.getNumRows(), blockSize);
         final int numColumnBlocks = divCeil(B.getNumColumns(), blockSize);
         final int numOuterProducts = divCeil(A.getNumColumns(), blockSize);
         
+        List<Callable<?>> tasks = new ArrayList<Callable<?>>();
+        if (taskCoarsening.isEnabled())
+        {
+            int productsPerTask = taskCoarsening.computeProductsPerTask();
+            int tileRows = Math.min(numRowBlocks, 
+                Math.max(1, (int)Math.sqrt(productsPerTask)));
+            int tileColumns = Math.min(numColumnBlocks, 
+                Math.max(1, productsPerTask / tileRows));
+            logger.fine(this+" creating tasks for tiles of "+
+                tileRows+"*"+tileColumns+" of "+
+                numRowBlocks+"*"+numColumnBlocks+" blocks");
+            for (int rb=0; rb<numRowBlocks; rb+=tileRows)
+            {
+                for (int cb=0; cb<numColumnBlocks; cb+=tileColumns)
+                {
+                    MatMulBatchTask task = createBatchTask(
+                        jobId, slice, A, B, p, 
+                        rb, cb, Math.min(rb + tileRows, numRowBlocks),
+                        Math.min(cb + tileColumns, numColumnBlocks));
+                    tasks.add(task);
+                }
+            }
+            return tasks;
+        }
+        
         logger.fine(
             this+" creating "+numRowBlocks+"*"+numColumnBlocks+" tasks");
         
-        List<MatMulTask> tasks = new ArrayList<MatMulTask>();
         for (int rb=0; rb<numRowBlocks; rb++)
         {
             for (int cb=0; cb<numColumnBlocks; cb++)
             {
-                MatMulTask task =
-                    createTask(A, B, p, rb, cb, numOuterProducts);
+                MatMulTask task = createTask(
+                    jobId, slice, A, B, p, rb, cb, numOuterProducts);
                 tasks.add(task);
             }
         }
         return tasks;
     }
     
+    /**
+     * Create a task for computing the products of the blocks 
+     * <code>Arp * Bpc</code> of the given matrices, for all 
+     * <code>r</code> in [rb0, rb1) and all <code>c</code> in
+     * [cb0, cb1). Each block of A and B is only contained once
+     * in the task.
+     * 
+     * @param jobId The ID of the job
+     * @param slice The index of the slice of the reduction dimension
+     * @param A The first matrix
+     * @param B The second matrix
+     * @param p The current number of the outer product
+     * @param rb0 The start row block index, inclusive
+     * @param cb0 The start column block index, inclusive
+     * @param rb1 The end row block index, exclusive
+     * @param cb1 The end column block index, exclusive
+     * @return The task
+     */
+    private MatMulBatchTask createBatchTask(String jobId, int slice,
+        FloatMatrix2D A, FloatMatrix2D B, int p,
+        int rb0, int cb0, int rb1, int cb1)
+    {
+        int rowBlockIndices[] = new int[rb1 - rb0];
+        FloatMatrix2D rowBlocks[] = new FloatMatrix2D[rb1 - rb0];
+        for (int rb = rb0; rb < rb1; rb++)
+        {
+            rowBlockIndices[rb - rb0] = rb;
+            rowBlocks[rb - rb0] = 
+                createBlockSubMatrix(A, rb, p, rb + 1, p + 1);
+        }
+        int columnBlockIndices[] = new int[cb1 - cb0];
+        FloatMatrix2D columnBlocks[] = new FloatMatrix2D[cb1 - cb0];
+        for (int cb = cb0; cb < cb1; cb++)
+        {
+            columnBlockIndices[cb - cb0] = cb;
+            columnBlocks[cb - cb0] = 
+                createBlockSubMatrix(B, p, cb, p + 1, cb + 1);
+        }
+        return new MatMulBatchTask(jobId, slice, rowBlockIndices, rowBlocks, 
+            columnBlockIndices, columnBlocks, subMatrixMultiplicatorFactory);
+    }
+    
     /**
      * Create a tasks for computing the product of the specified 
      * sub-block-matrices of the given matrices. That is, this method 
@@ -226,6 +401,8 @@ final class ParallelMatrixMultiplicator implements MatrixMultiplicator
      * }
      * </pre></code>
      * 
+     * @param jobId The ID of the job
+     * @param slice The index of the slice of the reduction dimension
      * @param A The first matrix
      * @param B The second matrix
      * @param p The current number of the outer product
@@ -234,7 +411,7 @@ final class ParallelMatrixMultiplicator implements MatrixMultiplicator
      * @param numOuterProducts The number of outer products
      * @return The task for computing the product
      */
-    private MatMulTask createTask(
+    private MatMulTask createTask(String jobId, int slice,
         final FloatMatrix2D A, final FloatMatrix2D B,
         final int p, final int rb, final int cb,
         final int numOuterProducts)
@@ -272,7 +449,8 @@ final class ParallelMatrixMultiplicator implements MatrixMultiplicator
             System.out.println("and      Bpc "+debugString(Bpc));
         }
         
-        return new MatMulTask(rb, cb, Arp, Bpc, subMatrixMultiplicatorFactory);
+        return new MatMulTask(jobId, slice, 
+            rb, cb, Arp, Bpc, subMatrixMultiplicatorFactory);
     }
     
     /**
@@ -304,7 +482,7 @@ final class ParallelMatrixMultiplicator implements MatrixMultiplicator
      * @param cb1 The end column block of the sub-matrix, exclusive
      * @return The sub-matrix
      */
-    private MutableFloatMatrix2D createBlockSubMatrix(MutableFloatMatrix2D m, 
+    MutableFloatMatrix2D createBlockSubMatrix(MutableFloatMatrix2D m, 
         int rb0, int cb0, int rb1, int cb1)
     {
         return Matrices.createSubMatrixClamping(
@@ -312,39 +490,6 @@ final class ParallelMatrixMultiplicator implements MatrixMultiplicator
     }
 
     
-    /**
-     * Returns the contents of the given future, handling the possible
-     * exceptions by either interrupting the calling thread or
-     * re-throwing them as RuntimeExceptions
-     * 
-     * @param <T> The type of the future
-     * @param future The future
-     * @return The contents of the future
-     */
-    private static <T> T getSafe(Future<T> future)
-    {
-        try
-        {
-            return future.get();
-        }
-        catch (InterruptedException e)
-        {
-            Thread.currentThread().interrupt();
-            return null;
-        }
-        catch (ExecutionException e)
-        {
-            Throwable cause = e.getCause();
-            if (cause instanceof RuntimeException)
-            {
-                RuntimeException runtimeException = (RuntimeException) cause;
-                throw runtimeException;
-            }
-            throw new RuntimeException(
-                "Unexpected checked exception", e);
-        }
-    }
-    
     /**
      * Returns ceil(a/b)
      * 
@@ -364,8 +509,10 @@ final class ParallelMatrixMultiplicator implements MatrixMultiplicator
         return getClass().getSimpleName()+
             "[subMatrixMultiplicatorFactory="+
             subMatrixMultiplicatorFactory+","+
-            "executorServiceFactory="+
-            executorServiceFactory+"]";
+            "executorFactory="+
+            asyncExecutorFactory+","+
+            "reductionSplit="+reductionSplit+","+
+            "taskCoarsening="+taskCoarsening+"]";
     }
     
     /**
@@ -0,0 +1,93 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Interface for classes that can perform a matrix multiplication, and
+ * pass each block of the result matrix to a consumer as soon as it has
+ * been computed. The result matrix does not have to be stored as a 
+ * whole, so that it may be larger than the available memory.
+ */
+public interface StreamingMatrixMultiplicator
+{
+    /**
+     * Returns the size of the blocks that are passed to the consumer. 
+     * The blocks in the last row or column of blocks may be smaller.
+     * 
+     * @return The block size
+     */
+    int getBlockSize();
+    
+    /**
+     * Start the multiplication of the given matrices. Each block of the
+     * result matrix will be passed to the given consumer, as a 
+     * {@link MatMulResult} that contains the row and column index of the
+     * block and its elements, as soon as all contributions to this block
+     * have been computed. Each block will be passed to the consumer 
+     * exactly once. The blocks are passed to the consumer in an 
+     * unspecified order, but the consumer will not be called 
+     * concurrently. If the consumer throws an exception, then the 
+     * multiplication will be cancelled, and the returned future will 
+     * be completed exceptionally with this exception.<br />
+     * <br />
+     * The returned future will be completed when all blocks have been
+     * passed to the consumer. Cancelling the returned future will 
+     * cancel the multiplication.
+     * 
+     * @param m0 The first matrix
+     * @param m1 The second matrix
+     * @param consumer The consumer for the blocks of the result matrix
+     * @return The future that is completed when all blocks have been
+     * passed to the consumer
+     */
+    CompletableFuture<Void> multiplyStreaming(FloatMatrix2D m0, 
+        FloatMatrix2D m1, Consumer<? super MatMulResult> consumer);
+    
+    /**
+     * Start the multiplication of the given matrices with the given 
+     * deadline. When the multiplication is not finished after the given 
+     * time, then it will be cancelled, and the returned future will be
+     * completed exceptionally with a <code>TimeoutException</code>.
+     * Otherwise, the behavior is the same as that of
+     * {@link #multiplyStreaming(FloatMatrix2D, FloatMatrix2D, Consumer)}
+     * 
+     * @param m0 The first matrix
+     * @param m1 The second matrix
+     * @param consumer The consumer for the blocks of the result matrix
+     * @param timeout The maximum time for the multiplication
+     * @param unit The unit of the timeout
+     * @return The future that is completed when all blocks have been
+     * passed to the consumer
+     */
+    CompletableFuture<Void> multiplyStreaming(FloatMatrix2D m0, 
+        FloatMatrix2D m1, Consumer<? super MatMulResult> consumer,
+        long timeout, TimeUnit unit);
+}
@@ -0,0 +1,166 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul;
+
+/**
+ * A class that determines how many block products should be combined 
+ * into one {@link MatMulBatchTask}, based on the measured execution 
+ * times of earlier tasks. <br />
+ * <br />
+ * For each task, the time between submitting it and receiving its 
+ * result (the round trip time) and the time that was required for the
+ * computation on the executing side are recorded. The difference is 
+ * the overhead of the submission. The smallest observed overhead is 
+ * used as an estimate for the latency, because larger values may be 
+ * caused by tasks that had to wait in a queue. The number of products
+ * per task is chosen so that this overhead is only a small fraction 
+ * of the time that is required for computing the products of one task.
+ */
+final class TaskCoarsening
+{
+    /**
+     * The maximum ratio between the overhead and the compute time of 
+     * a task that the coarsening aims at
+     */
+    private static final double TARGET_OVERHEAD_RATIO = 0.1;
+    
+    /**
+     * The weight of a new measurement for the average compute time
+     */
+    private static final double SMOOTHING = 0.2;
+    
+    /**
+     * The maximum number of block products for one task
+     */
+    private final int maxProductsPerTask;
+    
+    /**
+     * The smallest overhead that was observed for a task, in nanoseconds
+     */
+    private long minOverheadNanos;
+    
+    /**
+     * The exponential moving average of the compute time for one 
+     * block product, in nanoseconds
+     */
+    private double computeNanosPerProduct;
+    
+    /**
+     * The number of tasks that have been recorded
+     */
+    private int numRecordedTasks;
+    
+    /**
+     * Creates a new instance
+     * 
+     * @param maxProductsPerTask The maximum number of block products for
+     * one task. If this is not greater than 1, then each task will 
+     * compute a single product.
+     */
+    TaskCoarsening(int maxProductsPerTask)
+    {
+        this.maxProductsPerTask = Math.max(1, maxProductsPerTask);
+        this.minOverheadNanos = Long.MAX_VALUE;
+    }
+    
+    /**
+     * Returns whether this instance may combine multiple block products 
+     * into one task
+     * 
+     * @return Whether tasks may be coarsened
+     */
+    boolean isEnabled()
+    {
+        return maxProductsPerTask > 1;
+    }
+    
+    /**
+     * Record the execution of a task
+     * 
+     * @param numProducts The number of block products of the task
+     * @param roundTripNanos The time between the submission of the 
+     * task and the reception of its result, in nanoseconds
+     * @param computeNanos The time that was required for the computation,
+     * in nanoseconds
+     */
+    synchronized void record(
+        int numProducts, long roundTripNanos, long computeNanos)
+    {
+        if (numProducts <= 0)
+        {
+            return;
+        }
+        long overheadNanos = Math.max(0, roundTripNanos - computeNanos);
+        minOverheadNanos = Math.min(minOverheadNanos, overheadNanos);
+        double nanosPerProduct = (double)computeNanos / numProducts;
+        if (numRecordedTasks == 0)
+        {
+            computeNanosPerProduct = nanosPerProduct;
+        }
+        else
+        {
+            computeNanosPerProduct = SMOOTHING * nanosPerProduct + 
+                (1.0 - SMOOTHING) * computeNanosPerProduct;
+        }
+        numRecordedTasks++;
+    }
+    
+    /**
+     * Returns the number of block products that should be computed by
+     * one task, based on the executions that have been recorded so far.
+     * This will be 1 until the first task has been recorded.
+     * 
+     * @return The number of products per task
+     */
+    synchronized int computeProductsPerTask()
+    {
+        if (!isEnabled() || numRecordedTasks == 0)
+        {
+            return 1;
+        }
+        if (computeNanosPerProduct <= 0.0)
+        {
+            return maxProductsPerTask;
+        }
+        double products = minOverheadNanos / 
+            (TARGET_OVERHEAD_RATIO * computeNanosPerProduct);
+        if (products >= maxProductsPerTask)
+        {
+            return maxProductsPerTask;
+        }
+        return Math.max(1, (int)Math.ceil(products));
+    }
+    
+    @Override
+    public synchronized String toString()
+    {
+        return getClass().getSimpleName() + "[" + 
+            "maxProductsPerTask=" + maxProductsPerTask + "," + 
+            "minOverheadNanos=" + minOverheadNanos + "," +
+            "computeNanosPerProduct=" + computeNanosPerProduct + "]";
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.HazelcastInstanceAware;
+
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+import de.javagl.hazelcast.matmul.Matrices;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+import de.javagl.hazelcast.matmul.MutableFloatMatrix2D;
+import de.javagl.hazelcast.matmul.Point;
+
+/**
+ * A task that computes the product of two blocks, and adds it to the
+ * respective block of the result matrix that is accumulated on the 
+ * member that executes the task. The result is not returned, but 
+ * obtained later with a {@link GatherBlocksTask}. Instead, the task
+ * returns the UUID of the member that executed it, so that the job 
+ * knows which members the blocks have to be gathered from.
+ */
+final class AccumulateBlockTask 
+    implements Callable<UUID>, HazelcastInstanceAware
+{
+    /**
+     * The logger used in this class
+     */
+    private static final Logger logger = 
+        Logger.getLogger(AccumulateBlockTask.class.getName());
+    
+    /**
+     * The ID of the job that this task belongs to
+     */
+    private final String jobId;
+    
+    /**
+     * The row block index of the result matrix
+     */
+    private final int rowBlockIndex;
+    
+    /**
+     * The column block index of the result matrix
+     */
+    private final int columnBlockIndex;
+    
+    /**
+     * The first factor
+     */
+    private final FloatMatrix2D m0;
+    
+    /**
+     * The second factor
+     */
+    private final FloatMatrix2D m1;
+    
+    /**
+     * The {@link Factory} that will be used to create the 
+     * {@link MatrixMultiplicator} for the multiplication
+     * of the blocks. 
+     */
+    private final Factory<MatrixMultiplicator> matrixMultiplicatorFactory;
+    
+    /**
+     * The HazelcastInstance of the member that executes this task
+     */
+    private transient HazelcastInstance hazelcastInstance;
+    
+    /**
+     * Creates a new task
+     * 
+     * @param jobId The ID of the job that this task belongs to
+     * @param rowBlockIndex The row block index of the result matrix
+     * @param columnBlockIndex The column block index of the result matrix
+     * @param m0 The first factor
+     * @param m1 The second factor
+     * @param matrixMultiplicatorFactory The {@link Factory} for the
+     * {@link MatrixMultiplicator} that will multiply the blocks
+     */
+    AccumulateBlockTask(String jobId, int rowBlockIndex, int columnBlockIndex, 
+        FloatMatrix2D m0, FloatMatrix2D m1,
+        Factory<MatrixMultiplicator> matrixMultiplicatorFactory)
+    {
+        this.jobId = jobId;
+        this.rowBlockIndex = rowBlockIndex;
+        this.columnBlockIndex = columnBlockIndex;
+        this.m0 = m0;
+        this.m1 = m1;
+        this.matrixMultiplicatorFactory = matrixMultiplicatorFactory;
+    }
+    
+    @Override
+    public void setHazelcastInstance(HazelcastInstance hazelcastInstance)
+    {
+        this.hazelcastInstance = hazelcastInstance;
+    }
+    
+    /**
+     * Returns the ID of the job that this task belongs to
+     * 
+     * @return The job ID
+     */
+    String getJobId()
+    {
+        return jobId;
+    }
+    
+    /**
+     * Returns the row block index of the result matrix
+     * 
+     * @return The row block index
+     */
+    int getRowBlockIndex()
+    {
+        return rowBlockIndex;
+    }
+    
+    /**
+     * Returns the column block index of the result matrix
+     * 
+     * @return The column block index
+     */
+    int getColumnBlockIndex()
+    {
+        return columnBlockIndex;
+    }
+    
+    /**
+     * Returns the first factor
+     * 
+     * @return The first factor
+     */
+    FloatMatrix2D getM0()
+    {
+        return m0;
+    }
+    
+    /**
+     * Returns the second factor
+     * 
+     * @return The second factor
+     */
+    FloatMatrix2D getM1()
+    {
+        return m1;
+    }
+    
+    /**
+     * Returns the {@link Factory} for the {@link MatrixMultiplicator}
+     * 
+     * @return The factory
+     */
+    Factory<MatrixMultiplicator> getMatrixMultiplicatorFactory()
+    {
+        return matrixMultiplicatorFactory;
+    }
+    
+    @Override
+    public UUID call()
+    {
+        ConcurrentMap<Point, MutableFloatMatrix2D> accumulators = 
+            MatMulMemberContext.get(hazelcastInstance).getAccumulators(jobId);
+        if (accumulators == null)
+        {
+            // The job was already finished or cancelled
+            return null;
+        }
+        MatrixMultiplicator matrixMultiplicator = 
+            MatMulMemberContext.get(hazelcastInstance).createMultiplicator(
+                matrixMultiplicatorFactory);
+        
+        final Level level = Level.FINE;
+        if (logger.isLoggable(level))
+        {
+            logger.log(level, "Accumulating block " + rowBlockIndex + "," + 
+                columnBlockIndex + " of job " + jobId + " using " + 
+                matrixMultiplicator);
+        }
+        MutableFloatMatrix2D product = Matrices.createFloatMatrix2D(
+            m0.getNumRows(), m1.getNumColumns());
+        matrixMultiplicator.multiply(product, m0, m1);
+        
+        // Tasks for the same block of the result matrix may be executed 
+        // concurrently, so the addition is synchronized on the block
+        Point point = new Point(rowBlockIndex, columnBlockIndex);
+        MutableFloatMatrix2D Crc = accumulators.get(point);
+        if (Crc == null)
+        {
+            MutableFloatMatrix2D newCrc = Matrices.createFloatMatrix2D(
+                m0.getNumRows(), m1.getNumColumns());
+            Crc = accumulators.putIfAbsent(point, newCrc);
+            if (Crc == null)
+            {
+                Crc = newCrc;
+            }
+        }
+        synchronized (Crc)
+        {
+            Matrices.add(Crc, Crc, product);
+        }
+        return hazelcastInstance.getCluster().getLocalMember().getUuid();
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map.Entry;
+
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+import de.javagl.hazelcast.matmul.MatMulTask;
+
+/**
+ * A cache for blocks of matrices that have been obtained from the 
+ * {@link OperandStore} on a member. The size of the cache is limited
+ * by the total number of bytes of the cached blocks. When this limit
+ * is exceeded, the least recently used blocks are evicted. <br />
+ * <br />
+ * The cache is only used for tasks that refer to stored blocks by
+ * their {@link BlockKey}. The blocks that are contained in a 
+ * {@link MatMulTask} are not cached, because the client does not track
+ * which blocks a member already received, and always sends the blocks
+ * with the task.
+ */
+final class BlockCache
+{
+    /**
+     * The maximum number of bytes of all cached blocks
+     */
+    private final long maxSizeInBytes;
+    
+    /**
+     * The cached blocks, in the order of their last access
+     */
+    private final LinkedHashMap<BlockKey, FloatMatrix2D> blocks;
+    
+    /**
+     * The number of bytes of all cached blocks
+     */
+    private long sizeInBytes;
+    
+    /**
+     * The number of times that a block was found in this cache
+     */
+    private long hitCount;
+    
+    /**
+     * The number of times that a block was not found in this cache
+     */
+    private long missCount;
+    
+    /**
+     * The number of bytes of all blocks that have been evicted
+     */
+    private long evictedBytes;
+    
+    /**
+     * Creates a new cache with the given maximum size
+     * 
+     * @param maxSizeInBytes The maximum number of bytes of all cached 
+     * blocks. If this is not positive, then no blocks will be cached.
+     */
+    BlockCache(long maxSizeInBytes)
+    {
+        this.maxSizeInBytes = maxSizeInBytes;
+        this.blocks = new LinkedHashMap<BlockKey, FloatMatrix2D>(
+            16, 0.75f, true);
+    }
+    
+    /**
+     * Returns the block with the given key, or <code>null</code> if 
+     * it is not contained in this cache
+     * 
+     * @param key The key
+     * @return The block
+     */
+    synchronized FloatMatrix2D get(BlockKey key)
+    {
+        FloatMatrix2D block = blocks.get(key);
+        if (block == null)
+        {
+            missCount++;
+        }
+        else
+        {
+            hitCount++;
+        }
+        return block;
+    }
+    
+    /**
+     * Put the given block into this cache, evicting the least recently 
+     * used blocks if necessary. Blocks that are larger than the maximum
+     * size of this cache are not stored.
+     * 
+     * @param key The key
+     * @param block The block
+     */
+    synchronized void put(BlockKey key, FloatMatrix2D block)
+    {
+        long size = computeSizeInBytes(block);
+        if (size > maxSizeInBytes)
+        {
+            return;
+        }
+        FloatMatrix2D oldBlock = blocks.put(key, block);
+        if (oldBlock != null)
+        {
+            sizeInBytes -= computeSizeInBytes(oldBlock);
+        }
+        sizeInBytes += size;
+        Iterator<Entry<BlockKey, FloatMatrix2D>> iterator = 
+            blocks.entrySet().iterator();
+        while (sizeInBytes > maxSizeInBytes && iterator.hasNext())
+        {
+            Entry<BlockKey, FloatMatrix2D> entry = iterator.next();
+            long evictedSize = computeSizeInBytes(entry.getValue());
+            iterator.remove();
+            sizeInBytes -= evictedSize;
+            evictedBytes += evictedSize;
+        }
+    }
+    
+    /**
+     * Returns the maximum number of bytes of all cached blocks
+     * 
+     * @return The maximum size in bytes
+     */
+    long getMaxSizeInBytes()
+    {
+        return maxSizeInBytes;
+    }
+    
+    /**
+     * Returns the number of bytes of all cached blocks
+     * 
+     * @return The size in bytes
+     */
+    synchronized long getSizeInBytes()
+    {
+        return sizeInBytes;
+    }
+    
+    /**
+     * Returns the number of times that a block was found in this cache
+     * 
+     * @return The hit count
+     */
+    synchronized long getHitCount()
+    {
+        return hitCount;
+    }
+    
+    /**
+     * Returns the number of times that a block was not found in this cache
+     * 
+     * @return The miss count
+     */
+    synchronized long getMissCount()
+    {
+        return missCount;
+    }
+    
+    /**
+     * Returns the ratio of the number of hits to the total number of 
+     * requests, or 0.0 if there have not been any requests yet
+     * 
+     * @return The hit rate
+     */
+    synchronized double getHitRate()
+    {
+        long requests = hitCount + missCount;
+        if (requests == 0)
+        {
+            return 0.0;
+        }
+        return (double)hitCount / requests;
+    }
+    
+    /**
+     * Returns the number of bytes of all blocks that have been evicted
+     * 
+     * @return The evicted bytes
+     */
+    synchronized long getEvictedBytes()
+    {
+        return evictedBytes;
+    }
+    
+    /**
+     * Computes the number of bytes that are occupied by the elements
+     * of the given block
+     * 
+     * @param block The block
+     * @return The size in bytes
+     */
+    private static long computeSizeInBytes(FloatMatrix2D block)
+    {
+        return (long)block.getNumRows() * block.getNumColumns() * 4L;
+    }
+    
+    @Override
+    public synchronized String toString()
+    {
+        return "BlockCache[" + 
+            "blocks=" + blocks.size() + "," +
+            "sizeInBytes=" + sizeInBytes + "," +
+            "maxSizeInBytes=" + maxSizeInBytes + "," +
+            "hitRate=" + String.format(Locale.ENGLISH, "%.3f", getHitRate()) + 
+            "," + "evictedBytes=" + evictedBytes + "]";
+    }
+}
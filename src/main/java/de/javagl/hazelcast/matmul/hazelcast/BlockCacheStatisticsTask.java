@@ -0,0 +1,59 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.util.concurrent.Callable;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.HazelcastInstanceAware;
+
+/**
+ * A task that returns a string representation of the statistics of the
+ * {@link BlockCache} of a member, including the hit rate and the number
+ * of evicted bytes. 
+ */
+final class BlockCacheStatisticsTask 
+    implements Callable<String>, HazelcastInstanceAware
+{
+    /**
+     * The HazelcastInstance of the member that executes this task
+     */
+    private transient HazelcastInstance hazelcastInstance;
+    
+    @Override
+    public void setHazelcastInstance(HazelcastInstance hazelcastInstance)
+    {
+        this.hazelcastInstance = hazelcastInstance;
+    }
+    
+    @Override
+    public String call()
+    {
+        return MatMulMemberContext.get(hazelcastInstance)
+            .getBlockCache().toString();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+/**
+ * The compression that is applied to the elements of matrices when 
+ * they are serialized with the {@link FloatMatrix2DSerializer}
+ */
+enum BlockCompression
+{
+    /**
+     * The elements are written as raw float values
+     */
+    NONE,
+    
+    /**
+     * The bytes of the elements are shuffled, so that the corresponding
+     * bytes of all elements of a chunk are stored consecutively, and 
+     * then compressed with a <code>Deflater</code> using the fastest 
+     * compression level. Chunks that do not become smaller with this 
+     * compression are written as raw float values. This is beneficial
+     * for low-entropy matrices (for example, quantized values or 
+     * repeated rows) when the network is the bottleneck.
+     */
+    DEFLATE;
+    
+    /**
+     * Returns the {@link BlockCompression} for the given string, 
+     * ignoring the case
+     * 
+     * @param s The string
+     * @return The {@link BlockCompression}
+     * @throws IllegalArgumentException If the given string does not
+     * describe a {@link BlockCompression}
+     */
+    static BlockCompression parse(String s)
+    {
+        for (BlockCompression blockCompression : values())
+        {
+            if (blockCompression.name().equalsIgnoreCase(s))
+            {
+                return blockCompression;
+            }
+        }
+        throw new IllegalArgumentException(
+            "Invalid block compression: " + s);
+    }
+}
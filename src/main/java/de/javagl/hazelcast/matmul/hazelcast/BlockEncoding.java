@@ -0,0 +1,194 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The settings for writing the matrix blocks that are sent for one job,
+ * and the statistics about the blocks that have been written. <br />
+ * <br />
+ * An instance of this class is passed to the {@link HazelcastAsyncExecutor}
+ * that submits the tasks of a job. The operand blocks in these tasks are
+ * written with the {@link BlockCompression} and the operand 
+ * {@link BlockPrecision}, and the result blocks that are returned by the
+ * members are written with the same {@link BlockCompression} and the 
+ * result {@link BlockPrecision}. All other matrices, for example, the ones
+ * that are stored in the cluster, are written exactly and without
+ * compression.
+ */
+final class BlockEncoding
+{
+    /**
+     * The {@link BlockEncoding} that writes all blocks exactly and 
+     * without compression
+     */
+    static final BlockEncoding NONE = new BlockEncoding(
+        BlockCompression.NONE, BlockPrecision.FP32, BlockPrecision.FP32);
+    
+    /**
+     * The {@link BlockCompression}
+     */
+    private final BlockCompression compression;
+    
+    /**
+     * The {@link BlockPrecision} of the operand blocks
+     */
+    private final BlockPrecision operandPrecision;
+    
+    /**
+     * The {@link BlockPrecision} of the result blocks
+     */
+    private final BlockPrecision resultPrecision;
+    
+    /**
+     * The bits of the maximum relative error that was caused by
+     * writing elements with a reduced precision. Since the error 
+     * is not negative, the bits can be compared as integers.
+     */
+    private final AtomicInteger maxRelativeErrorBits;
+    
+    /**
+     * Creates a new instance
+     * 
+     * @param compression The {@link BlockCompression}
+     * @param operandPrecision The {@link BlockPrecision} of the operand
+     * blocks that are sent to the members
+     * @param resultPrecision The {@link BlockPrecision} of the result
+     * blocks that are returned by the members
+     */
+    BlockEncoding(BlockCompression compression, 
+        BlockPrecision operandPrecision, BlockPrecision resultPrecision)
+    {
+        this.compression = compression;
+        this.operandPrecision = operandPrecision;
+        this.resultPrecision = resultPrecision;
+        this.maxRelativeErrorBits = new AtomicInteger();
+    }
+    
+    /**
+     * Returns the {@link BlockCompression}
+     * 
+     * @return The {@link BlockCompression}
+     */
+    BlockCompression getCompression()
+    {
+        return compression;
+    }
+    
+    /**
+     * Returns the {@link BlockPrecision} of the operand blocks
+     * 
+     * @return The {@link BlockPrecision}
+     */
+    BlockPrecision getOperandPrecision()
+    {
+        return operandPrecision;
+    }
+    
+    /**
+     * Returns the {@link BlockPrecision} of the result blocks
+     * 
+     * @return The {@link BlockPrecision}
+     */
+    BlockPrecision getResultPrecision()
+    {
+        return resultPrecision;
+    }
+    
+    /**
+     * Returns whether this encoding writes all blocks exactly and without
+     * compression, so that the tasks do not have to carry it
+     * 
+     * @return Whether this encoding is the default encoding
+     */
+    boolean isNone()
+    {
+        return compression == BlockCompression.NONE &&
+            operandPrecision == BlockPrecision.FP32 &&
+            resultPrecision == BlockPrecision.FP32;
+    }
+    
+    /**
+     * Returns whether this encoding writes all elements with full 
+     * precision, so that it does not cause any error
+     * 
+     * @return Whether this encoding is exact
+     */
+    boolean isExact()
+    {
+        return operandPrecision == BlockPrecision.FP32 &&
+            resultPrecision == BlockPrecision.FP32;
+    }
+    
+    /**
+     * Returns the maximum relative error that was caused by writing 
+     * elements with a reduced {@link BlockPrecision} with this encoding,
+     * since the last call to this method, and reset it to zero. This
+     * includes the errors of the result blocks that have been written
+     * by the members.
+     * 
+     * @return The maximum relative error
+     */
+    float fetchMaxRelativeError()
+    {
+        return Float.intBitsToFloat(maxRelativeErrorBits.getAndSet(0));
+    }
+    
+    /**
+     * Update the maximum relative error that was caused by writing
+     * elements with a reduced precision
+     * 
+     * @param relativeError The relative error
+     */
+    void updateMaxRelativeError(float relativeError)
+    {
+        if (!(relativeError > 0.0f))
+        {
+            return;
+        }
+        int bits = Float.floatToIntBits(relativeError);
+        while (true)
+        {
+            int current = maxRelativeErrorBits.get();
+            if (bits <= current || 
+                maxRelativeErrorBits.compareAndSet(current, bits))
+            {
+                return;
+            }
+        }
+    }
+    
+    @Override
+    public String toString()
+    {
+        return "BlockEncoding[" + 
+            "compression=" + compression + "," +
+            "operandPrecision=" + operandPrecision + "," +
+            "resultPrecision=" + resultPrecision + "]";
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import com.hazelcast.partition.PartitionAware;
+
+/**
+ * The key of a block of a matrix that is stored in the 
+ * {@link OperandStore}. <br />
+ * <br />
+ * The {@link Grouping} of the key determines which blocks of the 
+ * matrix are stored in the same partition: When the blocks are 
+ * grouped by {@link Grouping#ROW rows}, then all blocks of one
+ * row of blocks are stored in the same partition, so that a task
+ * that is executed by the owner of this partition can read all 
+ * of them locally. The grouping is not part of the identity of 
+ * the key in terms of <code>equals</code>, but it is part of the
+ * serialized form, so that the same grouping has to be used for
+ * storing and accessing a block in a map.
+ */
+final class BlockKey implements PartitionAware<String>
+{
+    /**
+     * The ways of grouping blocks into partitions
+     */
+    enum Grouping
+    {
+        /**
+         * Each block is stored in its own partition
+         */
+        BLOCK,
+        
+        /**
+         * All blocks of one row of blocks are stored in one partition
+         */
+        ROW,
+        
+        /**
+         * All blocks of one column of blocks are stored in one partition
+         */
+        COLUMN
+    }
+    
+    /**
+     * The ID of the matrix
+     */
+    private final String matrixId;
+    
+    /**
+     * The row block index
+     */
+    private final int rowBlockIndex;
+    
+    /**
+     * The column block index
+     */
+    private final int columnBlockIndex;
+    
+    /**
+     * The {@link Grouping}
+     */
+    private final Grouping grouping;
+    
+    /**
+     * Creates a new key, where each block is stored in its own partition
+     * 
+     * @param matrixId The ID of the matrix
+     * @param rowBlockIndex The row block index
+     * @param columnBlockIndex The column block index
+     */
+    BlockKey(String matrixId, int rowBlockIndex, int columnBlockIndex)
+    {
+        this(matrixId, rowBlockIndex, columnBlockIndex, Grouping.BLOCK);
+    }
+    
+    /**
+     * Creates a new key
+     * 
+     * @param matrixId The ID of the matrix
+     * @param rowBlockIndex The row block index
+     * @param columnBlockIndex The column block index
+     * @param grouping The {@link Grouping}
+     */
+    BlockKey(String matrixId, int rowBlockIndex, int columnBlockIndex, 
+        Grouping grouping)
+    {
+        this.matrixId = matrixId;
+        this.rowBlockIndex = rowBlockIndex;
+        this.columnBlockIndex = columnBlockIndex;
+        this.grouping = grouping;
+    }
+    
+    /**
+     * Returns the ID of the matrix
+     * 
+     * @return The matrix ID
+     */
+    String getMatrixId()
+    {
+        return matrixId;
+    }
+    
+    /**
+     * Returns the row block index
+     * 
+     * @return The row block index
+     */
+    int getRowBlockIndex()
+    {
+        return rowBlockIndex;
+    }
+    
+    /**
+     * Returns the column block index
+     * 
+     * @return The column block index
+     */
+    int getColumnBlockIndex()
+    {
+        return columnBlockIndex;
+    }
+
+    /**
+     * Returns the {@link Grouping}
+     * 
+     * @return The {@link Grouping}
+     */
+    Grouping getGrouping()
+    {
+        return grouping;
+    }
+    
+    @Override
+    public String getPartitionKey()
+    {
+        switch (grouping)
+        {
+            case ROW:
+                return matrixId + "(" + rowBlockIndex + ",*)";
+            case COLUMN:
+                return matrixId + "(*," + columnBlockIndex + ")";
+            default:
+                break;
+        }
+        return toString();
+    }
+
+    @Override
+    public int hashCode()
+    {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + matrixId.hashCode();
+        result = prime * result + rowBlockIndex;
+        result = prime * result + columnBlockIndex;
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj)
+        {
+            return true;
+        }
+        if (obj == null)
+        {
+            return false;
+        }
+        if (getClass() != obj.getClass())
+        {
+            return false;
+        }
+        BlockKey other = (BlockKey) obj;
+        return matrixId.equals(other.matrixId) &&
+            rowBlockIndex == other.rowBlockIndex &&
+            columnBlockIndex == other.columnBlockIndex;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return matrixId + "(" + rowBlockIndex + "," + columnBlockIndex + ")";
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+/**
+ * The precision of the elements of matrices when they are serialized 
+ * with the {@link FloatMatrix2DSerializer}. The elements are always
+ * expanded to float values when they are read.
+ */
+enum BlockPrecision
+{
+    /**
+     * The elements are written as 32-bit float values
+     */
+    FP32,
+    
+    /**
+     * The elements are written as 16-bit "brain floating point" values,
+     * which have the same range as float values, but only 8 bits of
+     * precision
+     */
+    BF16,
+    
+    /**
+     * The elements are written as 16-bit IEEE 754 half precision values,
+     * which have 11 bits of precision, but a range of only about 
+     * &plusmn;65504
+     */
+    FP16;
+    
+    /**
+     * Returns the {@link BlockPrecision} for the given string, 
+     * ignoring the case
+     * 
+     * @param s The string
+     * @return The {@link BlockPrecision}
+     * @throws IllegalArgumentException If the given string does not
+     * describe a {@link BlockPrecision}
+     */
+    static BlockPrecision parse(String s)
+    {
+        for (BlockPrecision blockPrecision : values())
+        {
+            if (blockPrecision.name().equalsIgnoreCase(s))
+            {
+                return blockPrecision;
+            }
+        }
+        throw new IllegalArgumentException(
+            "Invalid block precision: " + s);
+    }
+}
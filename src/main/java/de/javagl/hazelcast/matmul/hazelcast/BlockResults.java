@@ -0,0 +1,92 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.javagl.hazelcast.matmul.MatMulResult;
+
+/**
+ * A list of {@link MatMulResult} objects for blocks of the result matrix
+ * of one job. The receiver adds the blocks to the result matrix, and 
+ * may then {@link MatMulResult#release() release} them.
+ */
+final class BlockResults
+{
+    /**
+     * The ID of the job
+     */
+    private final String jobId;
+    
+    /**
+     * The results
+     */
+    private final List<MatMulResult> results;
+    
+    /**
+     * Creates a new instance
+     * 
+     * @param jobId The ID of the job
+     * @param results The results
+     */
+    BlockResults(String jobId, List<MatMulResult> results)
+    {
+        this.jobId = jobId;
+        this.results = results;
+    }
+    
+    /**
+     * Creates a new, empty instance
+     * 
+     * @param jobId The ID of the job
+     */
+    BlockResults(String jobId)
+    {
+        this(jobId, new ArrayList<MatMulResult>());
+    }
+    
+    /**
+     * Returns the ID of the job
+     * 
+     * @return The job ID
+     */
+    String getJobId()
+    {
+        return jobId;
+    }
+    
+    /**
+     * Returns the results
+     * 
+     * @return The results
+     */
+    List<MatMulResult> getResults()
+    {
+        return results;
+    }
+}
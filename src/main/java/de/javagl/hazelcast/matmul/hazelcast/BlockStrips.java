@@ -0,0 +1,311 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.nio.FloatBuffer;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+
+import de.javagl.hazelcast.matmul.ExecutorExtensions;
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+import de.javagl.hazelcast.matmul.Matrices;
+import de.javagl.hazelcast.matmul.MutableFloatMatrix2D;
+
+/**
+ * A store for matrices that are too large to be sent in a single task 
+ * or result. Each matrix is split into strips of complete columns, and
+ * each strip is stored as a separate entry of a distributed map. The 
+ * strips are written and read one after the other, so that only one 
+ * strip of a matrix has to be serialized at a time. A task or result
+ * then only contains a {@link StripReference}, and the receiver 
+ * reassembles the matrix from the strips. <br />
+ * <br />
+ * The strips expire after {@link #TIME_TO_LIVE_MINUTES}, so that the 
+ * strips of a transfer that was interrupted do not remain in the map.
+ */
+final class BlockStrips
+{
+    /**
+     * The name of the map that is used by default
+     */
+    static final String DEFAULT_MAP_NAME = "matMulBlockStrips";
+    
+    /**
+     * The time after which the strips are removed from the map, in 
+     * minutes, if they have not been removed explicitly
+     */
+    static final long TIME_TO_LIVE_MINUTES = 60;
+    
+    /**
+     * The map that contains the strips
+     */
+    private final IMap<BlockKey, FloatMatrix2D> strips;
+    
+    /**
+     * Creates a new store that uses the map with the given name
+     * 
+     * @param hazelcastInstance The HazelcastInstance
+     * @param mapName The name of the map
+     */
+    BlockStrips(HazelcastInstance hazelcastInstance, String mapName)
+    {
+        this.strips = hazelcastInstance.getMap(mapName);
+    }
+    
+    /**
+     * Returns the name of the map that contains the strips
+     * 
+     * @return The map name
+     */
+    String getMapName()
+    {
+        return strips.getName();
+    }
+    
+    /**
+     * Returns the number of bytes of the elements of a matrix with 
+     * the given size
+     * 
+     * @param numRows The number of rows
+     * @param numColumns The number of columns
+     * @return The number of bytes
+     */
+    static long computeNumBytes(int numRows, int numColumns)
+    {
+        return (long)numRows * numColumns * Float.BYTES;
+    }
+    
+    /**
+     * Creates a new {@link StripReference} for storing the given matrix 
+     * in strips whose elements have at most the given number of bytes.
+     * Each strip contains at least one column.
+     * 
+     * @param matrix The matrix
+     * @param maxStripBytes The maximum number of bytes of each strip
+     * @return The {@link StripReference}
+     */
+    static StripReference createReference(
+        FloatMatrix2D matrix, long maxStripBytes)
+    {
+        int numRows = matrix.getNumRows();
+        int numColumns = matrix.getNumColumns();
+        long columnBytes = Math.max(1, computeNumBytes(numRows, 1));
+        int columnsPerStrip = (int)Math.max(1, 
+            Math.min(numColumns, maxStripBytes / columnBytes));
+        return new StripReference(UUID.randomUUID().toString(), 
+            numRows, numColumns, columnsPerStrip);
+    }
+    
+    /**
+     * Returns the key of the strip with the given index
+     * 
+     * @param reference The {@link StripReference}
+     * @param index The index of the strip
+     * @return The key
+     */
+    private static BlockKey createKey(StripReference reference, int index)
+    {
+        return new BlockKey(reference.getTransferId(), 0, index);
+    }
+    
+    /**
+     * Returns the given strip of the given matrix
+     * 
+     * @param matrix The matrix
+     * @param reference The {@link StripReference}
+     * @param index The index of the strip
+     * @return The strip
+     */
+    private static FloatMatrix2D getStrip(FloatMatrix2D matrix, 
+        StripReference reference, int index)
+    {
+        int c0 = index * reference.getColumnsPerStrip();
+        int c1 = Math.min(reference.getNumColumns(), 
+            c0 + reference.getColumnsPerStrip());
+        return matrix.subMatrix(0, c0, reference.getNumRows(), c1);
+    }
+    
+    /**
+     * Store the strips of the given matrix under the given reference,
+     * one after the other
+     * 
+     * @param reference The {@link StripReference}, as created with
+     * {@link #createReference(FloatMatrix2D, long)} for the matrix
+     * @param matrix The matrix
+     * @return The future that will be completed when all strips are stored
+     */
+    CompletableFuture<Void> upload(
+        final StripReference reference, final FloatMatrix2D matrix)
+    {
+        CompletableFuture<Void> future = 
+            CompletableFuture.completedFuture(null);
+        for (int i = 0; i < reference.getNumStrips(); i++)
+        {
+            final int index = i;
+            future = future.thenCompose(
+                new Function<Void, CompletableFuture<Void>>()
+            {
+                @Override
+                public CompletableFuture<Void> apply(Void v)
+                {
+                    return strips.setAsync(createKey(reference, index), 
+                        getStrip(matrix, reference, index),
+                        TIME_TO_LIVE_MINUTES, TimeUnit.MINUTES)
+                        .toCompletableFuture();
+                }
+            });
+        }
+        return future;
+    }
+    
+    /**
+     * Reassemble the matrix that is stored under the given reference,
+     * reading the strips one after the other, and removing them 
+     * from the map
+     * 
+     * @param reference The {@link StripReference}
+     * @return The future that will be completed with the matrix
+     */
+    CompletableFuture<MutableFloatMatrix2D> download(
+        final StripReference reference)
+    {
+        final MutableFloatMatrix2D matrix = Matrices.createFloatMatrix2D(
+            reference.getNumRows(), reference.getNumColumns());
+        CompletableFuture<Void> future = 
+            CompletableFuture.completedFuture(null);
+        for (int i = 0; i < reference.getNumStrips(); i++)
+        {
+            final int index = i;
+            future = future.thenCompose(
+                new Function<Void, CompletableFuture<Void>>()
+            {
+                @Override
+                public CompletableFuture<Void> apply(Void v)
+                {
+                    return strips.removeAsync(createKey(reference, index))
+                        .toCompletableFuture().thenApply(
+                            new Function<FloatMatrix2D, Void>()
+                    {
+                        @Override
+                        public Void apply(FloatMatrix2D strip)
+                        {
+                            setStrip(matrix, reference, index, strip);
+                            return null;
+                        }
+                    });
+                }
+            });
+        }
+        return future.thenApply(
+            new Function<Void, MutableFloatMatrix2D>()
+        {
+            @Override
+            public MutableFloatMatrix2D apply(Void v)
+            {
+                return matrix;
+            }
+        });
+    }
+    
+    /**
+     * Reassemble the matrix that is stored under the given reference,
+     * reading the strips one after the other. The strips remain in 
+     * the map. This method blocks until all strips have been read.
+     * 
+     * @param reference The {@link StripReference}
+     * @return The matrix
+     */
+    MutableFloatMatrix2D read(StripReference reference)
+    {
+        MutableFloatMatrix2D matrix = Matrices.createFloatMatrix2D(
+            reference.getNumRows(), reference.getNumColumns());
+        for (int i = 0; i < reference.getNumStrips(); i++)
+        {
+            FloatMatrix2D strip = 
+                ExecutorExtensions.await(strips.getAsync(
+                    createKey(reference, i)).toCompletableFuture());
+            setStrip(matrix, reference, i, strip);
+        }
+        return matrix;
+    }
+    
+    /**
+     * Copy the given strip into the given matrix
+     * 
+     * @param matrix The matrix
+     * @param reference The {@link StripReference}
+     * @param index The index of the strip
+     * @param strip The strip
+     * @throws IllegalStateException If the strip is <code>null</code>,
+     * meaning that it was not stored, or already expired or removed
+     */
+    private static void setStrip(MutableFloatMatrix2D matrix, 
+        StripReference reference, int index, FloatMatrix2D strip)
+    {
+        if (strip == null)
+        {
+            throw new IllegalStateException(
+                "Strip " + index + " of " + reference + " is missing");
+        }
+        FloatBuffer values = FloatBuffer.allocate(
+            strip.getNumRows() * strip.getNumColumns());
+        strip.getDataColumnMajor(values);
+        values.flip();
+        int c0 = index * reference.getColumnsPerStrip();
+        matrix.subMatrix(0, c0, strip.getNumRows(), 
+            c0 + strip.getNumColumns()).setDataColumnMajor(values);
+    }
+    
+    /**
+     * Remove all strips that are stored under the given reference
+     * 
+     * @param reference The {@link StripReference}
+     * @return The future that will be completed when the strips 
+     * are removed
+     */
+    CompletableFuture<?> remove(StripReference reference)
+    {
+        Set<BlockKey> keys = new LinkedHashSet<BlockKey>();
+        for (int i = 0; i < reference.getNumStrips(); i++)
+        {
+            keys.add(createKey(reference, i));
+        }
+        if (keys.isEmpty())
+        {
+            return CompletableFuture.completedFuture(null);
+        }
+        return strips.submitToKeys(keys, 
+            new OperandStore.RemoveEntryProcessor()).toCompletableFuture();
+    }
+}
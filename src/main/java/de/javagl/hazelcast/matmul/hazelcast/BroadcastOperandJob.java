@@ -0,0 +1,313 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+import de.javagl.hazelcast.matmul.AsyncExecutor;
+import de.javagl.hazelcast.matmul.ExecutorExtensions;
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+import de.javagl.hazelcast.matmul.MatMulResult;
+import de.javagl.hazelcast.matmul.Matrices;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+import de.javagl.hazelcast.matmul.MutableFloatMatrix2D;
+import de.javagl.hazelcast.matmul.Point;
+
+/**
+ * A single, asynchronous execution of a multiplication by a 
+ * {@link BroadcastOperandMatrixMultiplicator}. <br />
+ * <br />
+ * The job makes sure that the second factor is stored in the 
+ * {@link BroadcastOperandStore}, so that it is available on all 
+ * members. Then it dispatches one {@link BroadcastOperandTask} for 
+ * each row of blocks of the result matrix. These tasks only contain 
+ * the respective row of blocks of the first factor. 
+ */
+final class BroadcastOperandJob
+{
+    /**
+     * The logger used in this class
+     */
+    private static final Logger logger = 
+        Logger.getLogger(BroadcastOperandJob.class.getName());
+    
+    /**
+     * The ID of this job
+     */
+    private final String jobId;
+    
+    /**
+     * The {@link BroadcastOperandStore}
+     */
+    private final BroadcastOperandStore broadcastOperandStore;
+    
+    /**
+     * The executor that the tasks are submitted to
+     */
+    private final AsyncExecutor executor;
+    
+    /**
+     * The block size
+     */
+    private final int blockSize;
+    
+    /**
+     * The {@link Factory} for the {@link MatrixMultiplicator} instances
+     * that will multiply the blocks on the members
+     */
+    private final Factory<MatrixMultiplicator> subMatrixMultiplicatorFactory;
+    
+    /**
+     * The result matrix
+     */
+    private final MutableFloatMatrix2D C;
+    
+    /**
+     * The first factor
+     */
+    private final FloatMatrix2D A;
+    
+    /**
+     * The second factor
+     */
+    private final FloatMatrix2D B;
+    
+    /**
+     * The future that will be completed when this job is finished
+     */
+    private final CompletableFuture<MutableFloatMatrix2D> future;
+    
+    /**
+     * The futures of the tasks that are currently executed
+     */
+    private final Set<CompletableFuture<?>> pendingFutures;
+    
+    /**
+     * The number of rows of blocks of the result matrix that have not 
+     * been computed yet
+     */
+    private final AtomicInteger remainingRows;
+    
+    /**
+     * The version ID of the second factor in the 
+     * {@link BroadcastOperandStore}. This is <code>null</code> until
+     * the job was started.
+     */
+    private volatile String versionId;
+    
+    /**
+     * Creates a new job
+     * 
+     * @param broadcastOperandStore The {@link BroadcastOperandStore}
+     * @param executor The {@link AsyncExecutor}. This executor will be 
+     * shut down when the job is finished.
+     * @param blockSize The block size
+     * @param subMatrixMultiplicatorFactory The {@link Factory} for the 
+     * {@link MatrixMultiplicator} that will multiply the blocks
+     * @param C The result matrix
+     * @param A The first factor
+     * @param B The second factor
+     */
+    BroadcastOperandJob(BroadcastOperandStore broadcastOperandStore, 
+        final AsyncExecutor executor, int blockSize, 
+        Factory<MatrixMultiplicator> subMatrixMultiplicatorFactory,
+        MutableFloatMatrix2D C, FloatMatrix2D A, FloatMatrix2D B)
+    {
+        this.jobId = UUID.randomUUID().toString();
+        this.broadcastOperandStore = broadcastOperandStore;
+        this.executor = executor;
+        this.blockSize = blockSize;
+        this.subMatrixMultiplicatorFactory = subMatrixMultiplicatorFactory;
+        this.C = C;
+        this.A = A;
+        this.B = B;
+        this.future = new CompletableFuture<MutableFloatMatrix2D>();
+        this.pendingFutures = Collections.newSetFromMap(
+            new ConcurrentHashMap<CompletableFuture<?>, Boolean>());
+        this.remainingRows = new AtomicInteger();
+        
+        future.whenComplete(new BiConsumer<Object, Throwable>()
+        {
+            @Override
+            public void accept(Object value, Throwable t)
+            {
+                if (t != null)
+                {
+                    for (CompletableFuture<?> pendingFuture : pendingFutures)
+                    {
+                        pendingFuture.cancel(true);
+                    }
+                }
+                releaseOperand();
+                executor.shutdown();
+            }
+        });
+    }
+    
+    /**
+     * Start this job. Note that this will send the second factor to the
+     * cluster if it has not been stored yet, blocking until it is stored.
+     * 
+     * @return The future that will be completed when the job is finished
+     */
+    CompletableFuture<MutableFloatMatrix2D> start()
+    {
+        Matrices.fill(C, 0.0f);
+        int numRowBlocks = MatMulUtils.divCeil(A.getNumRows(), blockSize);
+        int numColumnBlocks = 
+            MatMulUtils.divCeil(B.getNumColumns(), blockSize);
+        int numOuterProducts = 
+            MatMulUtils.divCeil(A.getNumColumns(), blockSize);
+        if (numRowBlocks * numColumnBlocks == 0 || numOuterProducts == 0)
+        {
+            future.complete(C);
+            return future;
+        }
+        try
+        {
+            versionId = broadcastOperandStore.acquire(B, blockSize);
+        }
+        catch (RuntimeException e)
+        {
+            future.completeExceptionally(e);
+            return future;
+        }
+        if (future.isDone())
+        {
+            // The job was cancelled while the operand was stored
+            releaseOperand();
+            return future;
+        }
+        remainingRows.set(numRowBlocks);
+        logger.fine("Dispatching " + numRowBlocks + " tasks for job " + 
+            jobId);
+        for (int r = 0; r < numRowBlocks; r++)
+        {
+            if (future.isDone())
+            {
+                return future;
+            }
+            FloatMatrix2D rowBlocks = MatMulUtils.createBlockSubMatrix(
+                A, blockSize, r, 0, r + 1, numOuterProducts);
+            submit(new BroadcastOperandTask(jobId, 
+                broadcastOperandStore.getMapName(), versionId, r, 
+                numColumnBlocks, blockSize, rowBlocks, 
+                subMatrixMultiplicatorFactory));
+        }
+        return future;
+    }
+    
+    /**
+     * Start this job with the given deadline. 
+     * 
+     * @param timeout The timeout
+     * @param unit The time unit
+     * @return The future that will be completed when the job is finished
+     * @see ExecutorExtensions#failAfter(CompletableFuture, long, TimeUnit)
+     */
+    CompletableFuture<MutableFloatMatrix2D> start(
+        long timeout, TimeUnit unit)
+    {
+        ExecutorExtensions.failAfter(future, timeout, unit);
+        return start();
+    }
+    
+    /**
+     * Submit the given task, and store its result in the result matrix.
+     * 
+     * @param task The task
+     */
+    private void submit(BroadcastOperandTask task)
+    {
+        final CompletableFuture<BlockResults> taskFuture = 
+            executor.submit(task);
+        pendingFutures.add(taskFuture);
+        taskFuture.whenComplete(new BiConsumer<BlockResults, Throwable>()
+        {
+            @Override
+            public void accept(BlockResults results, Throwable t)
+            {
+                pendingFutures.remove(taskFuture);
+                if (t != null)
+                {
+                    future.completeExceptionally(
+                        ExecutorExtensions.unwrap(t));
+                    return;
+                }
+                try
+                {
+                    if (future.isDone())
+                    {
+                        return;
+                    }
+                    for (MatMulResult result : results.getResults())
+                    {
+                        Point point = result.getPoint();
+                        MutableFloatMatrix2D Crc = 
+                            MatMulUtils.createBlockSubMatrix(C, blockSize, 
+                                point.r, point.c, point.r + 1, point.c + 1);
+                        Matrices.add(Crc, Crc, result.getMatrix());
+                        result.release();
+                    }
+                    if (remainingRows.decrementAndGet() == 0)
+                    {
+                        future.complete(C);
+                    }
+                }
+                catch (Throwable e)
+                {
+                    // An exception that is thrown in this callback would be
+                    // swallowed by the CompletableFuture, and the job would
+                    // never be completed
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Release the second factor in the {@link BroadcastOperandStore}, 
+     * if it was acquired and not released yet
+     */
+    private synchronized void releaseOperand()
+    {
+        if (versionId != null)
+        {
+            broadcastOperandStore.release(versionId);
+            versionId = null;
+        }
+    }
+}
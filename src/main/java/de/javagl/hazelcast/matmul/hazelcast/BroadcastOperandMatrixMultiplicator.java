@@ -0,0 +1,158 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.hazelcast.core.HazelcastInstance;
+
+import de.javagl.hazelcast.matmul.AsyncExecutor;
+import de.javagl.hazelcast.matmul.AsyncMatrixMultiplicator;
+import de.javagl.hazelcast.matmul.ExecutorExtensions;
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+import de.javagl.hazelcast.matmul.MutableFloatMatrix2D;
+
+/**
+ * Implementation of an {@link AsyncMatrixMultiplicator} for the case
+ * that the second factor is small, and the first factor is large. <br />
+ * <br />
+ * The second factor is replicated to all members of the cluster once, 
+ * and the tasks only contain the rows of blocks of the first factor. 
+ * The second factor is stored under a version ID that is derived from
+ * its contents, so that it is not sent again when the same matrix is
+ * used in later multiplications. The given number of versions of 
+ * second factors is kept in the cluster.
+ */
+public final class BroadcastOperandMatrixMultiplicator 
+    implements AsyncMatrixMultiplicator
+{
+    /**
+     * The default maximum number of versions of the second factor 
+     * that are kept in the cluster
+     */
+    public static final int DEFAULT_MAX_VERSIONS = 4;
+    
+    /**
+     * The factory for the {@link AsyncExecutor}
+     */
+    private final Factory<AsyncExecutor> asyncExecutorFactory;
+    
+    /**
+     * The block size
+     */
+    private final int blockSize;
+    
+    /**
+     * The {@link Factory} for the {@link MatrixMultiplicator} instances
+     * that will multiply the blocks on the members
+     */
+    private final Factory<MatrixMultiplicator> subMatrixMultiplicatorFactory;
+    
+    /**
+     * The {@link BroadcastOperandStore} for the second factors
+     */
+    private final BroadcastOperandStore broadcastOperandStore;
+    
+    /**
+     * Creates a new multiplicator
+     * 
+     * @param hazelcastInstance The HazelcastInstance
+     * @param asyncExecutorFactory The {@link Factory} for the
+     * {@link AsyncExecutor} that the tasks are submitted to
+     * @param blockSize The block size
+     * @param maxVersions The maximum number of versions of the second
+     * factor that are kept in the cluster
+     * @param subMatrixMultiplicatorFactory The {@link Factory} that 
+     * will be used to create the {@link MatrixMultiplicator} instances 
+     * for the blocks on the members
+     */
+    public BroadcastOperandMatrixMultiplicator(
+        HazelcastInstance hazelcastInstance,
+        Factory<AsyncExecutor> asyncExecutorFactory, int blockSize,
+        int maxVersions,
+        Factory<MatrixMultiplicator> subMatrixMultiplicatorFactory)
+    {
+        this.asyncExecutorFactory = asyncExecutorFactory;
+        this.blockSize = blockSize;
+        this.subMatrixMultiplicatorFactory = subMatrixMultiplicatorFactory;
+        this.broadcastOperandStore = new BroadcastOperandStore(
+            hazelcastInstance, MatMulUtils.BROADCAST_OPERANDS_MAP_NAME, 
+            maxVersions);
+    }
+
+    @Override
+    public void multiply(
+        MutableFloatMatrix2D C, FloatMatrix2D A, FloatMatrix2D B)
+    {
+        ExecutorExtensions.await(multiplyAsync(C, A, B));
+    }
+
+    @Override
+    public CompletableFuture<MutableFloatMatrix2D> multiplyAsync(
+        MutableFloatMatrix2D C, FloatMatrix2D A, FloatMatrix2D B)
+    {
+        return createJob(C, A, B).start();
+    }
+
+    @Override
+    public CompletableFuture<MutableFloatMatrix2D> multiplyAsync(
+        MutableFloatMatrix2D C, FloatMatrix2D A, FloatMatrix2D B,
+        long timeout, TimeUnit unit)
+    {
+        return createJob(C, A, B).start(timeout, unit);
+    }
+    
+    /**
+     * Create the {@link BroadcastOperandJob} for the multiplication of 
+     * the given matrices
+     * 
+     * @param C The result matrix
+     * @param A The first factor
+     * @param B The second factor
+     * @return The job
+     */
+    private BroadcastOperandJob createJob(
+        MutableFloatMatrix2D C, FloatMatrix2D A, FloatMatrix2D B)
+    {
+        return new BroadcastOperandJob(broadcastOperandStore, 
+            asyncExecutorFactory.create(), blockSize, 
+            subMatrixMultiplicatorFactory, C, A, B);
+    }
+    
+    @Override
+    public String toString()
+    {
+        return getClass().getSimpleName()+
+            "[asyncExecutorFactory="+asyncExecutorFactory+","+
+            "subMatrixMultiplicatorFactory="+
+            subMatrixMultiplicatorFactory+","+
+            "blockSize="+blockSize+"]";
+    }
+}
@@ -0,0 +1,458 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import com.hazelcast.replicatedmap.ReplicatedMap;
+
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+
+/**
+ * A store for operands that are replicated to all members of the 
+ * cluster. The blocks of the operands are stored in a replicated map,
+ * so that each member can read them locally, and members that join
+ * the cluster later receive them as well.<br />
+ * <br />
+ * Each operand is stored under a version ID that is derived from a 
+ * hash of its contents and its size. When an operand with the same 
+ * hash is used again, possibly by another job or another client, then
+ * the stored blocks are compared with the operand, and the operand is
+ * only sent to the cluster if they differ. Operands whose hashes 
+ * collide are stored under different version IDs. <br />
+ * <br />
+ * The versions that are stored in the cluster, and the number of jobs
+ * that use each of them, are kept in a distributed map, so that they 
+ * are shared by all clients that use a store with the same map name.
+ * Each store keeps the given maximum number of the versions that it
+ * used in the cluster. When it used more versions, then the least 
+ * recently used versions that are not used by any job in the cluster
+ * are removed. The counts are changed while holding the lock of the 
+ * respective version in the distributed map. If a client crashes while
+ * one of its jobs is running, then the version of this job is not 
+ * removed by other clients.
+ */
+final class BroadcastOperandStore
+{
+    /**
+     * The logger used in this class
+     */
+    private static final Logger logger = 
+        Logger.getLogger(BroadcastOperandStore.class.getName());
+    
+    /**
+     * The suffix of the name of the map that contains the number of 
+     * jobs that use each version
+     */
+    private static final String LEASES_MAP_NAME_SUFFIX = ".leases";
+    
+    /**
+     * The maximum number of versions with the same hash whose contents
+     * are compared with an operand
+     */
+    private static final int MAX_COLLISIONS = 16;
+    
+    /**
+     * The maximum time to wait for a block of a stored version to be 
+     * replicated to this instance, in milliseconds
+     */
+    private static final long REPLICATION_TIMEOUT_MS = 10000;
+    
+    /**
+     * Information about a version that was used by this store
+     */
+    private static final class Version
+    {
+        /**
+         * The number of rows of blocks
+         */
+        private final int numRowBlocks;
+        
+        /**
+         * The number of columns of blocks
+         */
+        private final int numColumnBlocks;
+        
+        /**
+         * Creates a new instance
+         * 
+         * @param numRowBlocks The number of rows of blocks
+         * @param numColumnBlocks The number of columns of blocks
+         */
+        Version(int numRowBlocks, int numColumnBlocks)
+        {
+            this.numRowBlocks = numRowBlocks;
+            this.numColumnBlocks = numColumnBlocks;
+        }
+    }
+    
+    /**
+     * The replicated map that contains the blocks
+     */
+    private final ReplicatedMap<BlockKey, FloatMatrix2D> blocks;
+    
+    /**
+     * The map from the IDs of the versions that are stored in the 
+     * cluster to the number of jobs that currently use the version
+     */
+    private final IMap<String, Integer> leases;
+    
+    /**
+     * The maximum number of versions that are kept in the cluster
+     */
+    private final int maxVersions;
+    
+    /**
+     * The versions that have been used by this store, in the order 
+     * of their use
+     */
+    private final LinkedHashMap<String, Version> versions;
+    
+    /**
+     * Creates a new store that uses the replicated map with the given name
+     * 
+     * @param hazelcastInstance The HazelcastInstance
+     * @param mapName The name of the replicated map
+     * @param maxVersions The maximum number of versions that are kept 
+     */
+    BroadcastOperandStore(HazelcastInstance hazelcastInstance, 
+        String mapName, int maxVersions)
+    {
+        this.blocks = hazelcastInstance.getReplicatedMap(mapName);
+        this.leases = hazelcastInstance.getMap(
+            mapName + LEASES_MAP_NAME_SUFFIX);
+        this.maxVersions = Math.max(1, maxVersions);
+        this.versions = new LinkedHashMap<String, Version>(16, 0.75f, true);
+    }
+    
+    /**
+     * Returns the name of the replicated map that contains the blocks
+     * 
+     * @return The map name
+     */
+    String getMapName()
+    {
+        return blocks.getName();
+    }
+    
+    /**
+     * Make sure that the blocks of the given matrix are stored in the
+     * cluster, and return the version ID under which they are stored.
+     * The blocks are only sent to the cluster if they have not been
+     * stored yet. The version will not be removed until it is 
+     * {@link #release(String) released}.
+     * 
+     * @param m The matrix
+     * @param blockSize The block size
+     * @return The version ID
+     * @throws IllegalStateException If the matrix could not be stored,
+     * because too many versions with the same hash are stored
+     */
+    synchronized String acquire(FloatMatrix2D m, int blockSize)
+    {
+        String baseVersionId = computeVersionId(m, blockSize);
+        Version version = new Version(
+            MatMulUtils.divCeil(m.getNumRows(), blockSize),
+            MatMulUtils.divCeil(m.getNumColumns(), blockSize));
+        for (int i = 0; i < MAX_COLLISIONS; i++)
+        {
+            String versionId = i == 0 ? 
+                baseVersionId : baseVersionId + "-" + i;
+            if (tryAcquire(versionId, version, m, blockSize))
+            {
+                versions.put(versionId, version);
+                removeUnusedVersions();
+                return versionId;
+            }
+        }
+        throw new IllegalStateException("Could not store the operand, " + 
+            "because " + MAX_COLLISIONS + " other operands with the " + 
+            "hash " + baseVersionId + " are stored");
+    }
+    
+    /**
+     * Try to acquire the given version for the given matrix. If the 
+     * version is not stored yet, then the matrix is stored under this
+     * version. If the version is now stored with the contents of the 
+     * matrix, then the number of jobs that use the version is 
+     * incremented, and <code>true</code> is returned. If the version 
+     * is stored with different contents, then <code>false</code> is 
+     * returned. These contents are not overwritten, because other 
+     * members might still read them from their replicated map.
+     * 
+     * @param versionId The version ID
+     * @param version The version
+     * @param m The matrix
+     * @param blockSize The block size
+     * @return Whether the version was acquired
+     */
+    private boolean tryAcquire(String versionId, Version version, 
+        FloatMatrix2D m, int blockSize)
+    {
+        leases.lock(versionId);
+        try
+        {
+            Integer users = leases.get(versionId);
+            if (users == null)
+            {
+                logger.info("Storing operand " + versionId);
+                store(versionId, version, m, blockSize);
+                leases.set(versionId, 1);
+                return true;
+            }
+            if (!contentEquals(versionId, version, m, blockSize))
+            {
+                logger.fine("Operand " + versionId + " is stored for " + 
+                    "an operand with different contents");
+                return false;
+            }
+            logger.fine("Operand " + versionId + " is already stored");
+            leases.set(versionId, users + 1);
+            return true;
+        }
+        finally
+        {
+            leases.unlock(versionId);
+        }
+    }
+    
+    /**
+     * Release the version with the given ID, which was obtained from
+     * {@link #acquire(FloatMatrix2D, int)}
+     * 
+     * @param versionId The version ID
+     */
+    synchronized void release(String versionId)
+    {
+        leases.lock(versionId);
+        try
+        {
+            Integer users = leases.get(versionId);
+            if (users != null && users > 0)
+            {
+                leases.set(versionId, users - 1);
+            }
+        }
+        finally
+        {
+            leases.unlock(versionId);
+        }
+        removeUnusedVersions();
+    }
+    
+    /**
+     * Remove the least recently used versions that are not used by any
+     * job in the cluster, as long as this store used more than the 
+     * maximum number of versions
+     */
+    private void removeUnusedVersions()
+    {
+        Iterator<Map.Entry<String, Version>> iterator = 
+            versions.entrySet().iterator();
+        while (versions.size() > maxVersions && iterator.hasNext())
+        {
+            Map.Entry<String, Version> entry = iterator.next();
+            String versionId = entry.getKey();
+            leases.lock(versionId);
+            try
+            {
+                Integer users = leases.get(versionId);
+                if (users != null && users > 0)
+                {
+                    continue;
+                }
+                logger.info("Removing operand " + versionId);
+                iterator.remove();
+                remove(versionId, entry.getValue());
+                leases.delete(versionId);
+            }
+            finally
+            {
+                leases.unlock(versionId);
+            }
+        }
+    }
+    
+    /**
+     * Returns whether the blocks of the given version, which is stored
+     * in the cluster, are equal to the blocks of the given matrix. If 
+     * a block was not yet replicated to the replicated map of this 
+     * instance, then this waits until it is available.
+     * 
+     * @param versionId The version ID
+     * @param version The version
+     * @param m The matrix
+     * @param blockSize The block size
+     * @return Whether the version is stored with the given contents
+     * @throws IllegalStateException If a block of the version is not 
+     * available after the replication timeout
+     */
+    private boolean contentEquals(String versionId, Version version, 
+        FloatMatrix2D m, int blockSize)
+    {
+        for (int r = 0; r < version.numRowBlocks; r++)
+        {
+            for (int c = 0; c < version.numColumnBlocks; c++)
+            {
+                FloatMatrix2D block = getBlock(new BlockKey(versionId, r, c));
+                FloatMatrix2D expected = MatMulUtils.createBlockSubMatrix(
+                    m, blockSize, r, c, r + 1, c + 1);
+                if (!bitsEqual(block, expected))
+                {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Returns the block with the given key, waiting until it was
+     * replicated to this instance if necessary
+     * 
+     * @param key The key
+     * @return The block
+     * @throws IllegalStateException If the block is not available after
+     * the replication timeout, or the thread was interrupted while 
+     * waiting for the block
+     */
+    private FloatMatrix2D getBlock(BlockKey key)
+    {
+        try
+        {
+            return BroadcastOperandTask.getBlock(
+                blocks, key, REPLICATION_TIMEOUT_MS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(
+                "Interrupted while waiting for block " + key, e);
+        }
+    }
+    
+    /**
+     * Returns whether the given matrices have the same size, and the 
+     * same bits in all elements
+     * 
+     * @param m0 The first matrix
+     * @param m1 The second matrix
+     * @return Whether the matrices are equal
+     */
+    private static boolean bitsEqual(FloatMatrix2D m0, FloatMatrix2D m1)
+    {
+        if (m0.getNumRows() != m1.getNumRows() || 
+            m0.getNumColumns() != m1.getNumColumns())
+        {
+            return false;
+        }
+        for (int c = 0; c < m0.getNumColumns(); c++)
+        {
+            for (int r = 0; r < m0.getNumRows(); r++)
+            {
+                if (Float.floatToIntBits(m0.get(r, c)) != 
+                    Float.floatToIntBits(m1.get(r, c)))
+                {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Store the blocks of the given matrix under the given version ID
+     * 
+     * @param versionId The version ID
+     * @param version The version
+     * @param m The matrix
+     * @param blockSize The block size
+     */
+    private void store(String versionId, Version version, 
+        FloatMatrix2D m, int blockSize)
+    {
+        Map<BlockKey, FloatMatrix2D> entries = 
+            new HashMap<BlockKey, FloatMatrix2D>();
+        for (int r = 0; r < version.numRowBlocks; r++)
+        {
+            for (int c = 0; c < version.numColumnBlocks; c++)
+            {
+                FloatMatrix2D block = MatMulUtils.createBlockSubMatrix(
+                    m, blockSize, r, c, r + 1, c + 1);
+                entries.put(new BlockKey(versionId, r, c), block);
+            }
+        }
+        blocks.putAll(entries);
+    }
+    
+    /**
+     * Remove the blocks of the given version
+     * 
+     * @param versionId The version ID
+     * @param version The version
+     */
+    private void remove(String versionId, Version version)
+    {
+        for (int r = 0; r < version.numRowBlocks; r++)
+        {
+            for (int c = 0; c < version.numColumnBlocks; c++)
+            {
+                blocks.remove(new BlockKey(versionId, r, c));
+            }
+        }
+    }
+    
+    /**
+     * Compute the base version ID for the given matrix, which is derived 
+     * from its size, a hash of its contents, and the block size
+     * 
+     * @param m The matrix
+     * @param blockSize The block size
+     * @return The version ID
+     */
+    static String computeVersionId(FloatMatrix2D m, int blockSize)
+    {
+        // The FNV-1a hash of the bits of all elements
+        long h = 0xCBF29CE484222325L;
+        for (int c = 0; c < m.getNumColumns(); c++)
+        {
+            for (int r = 0; r < m.getNumRows(); r++)
+            {
+                h ^= Float.floatToIntBits(m.get(r, c));
+                h *= 0x100000001B3L;
+            }
+        }
+        return "broadcast-" + m.getNumRows() + "x" + m.getNumColumns() + 
+            "-" + blockSize + "-" + Long.toHexString(h);
+    }
+}
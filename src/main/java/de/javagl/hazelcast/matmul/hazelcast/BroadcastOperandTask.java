@@ -0,0 +1,352 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.hazelcast.core.EntryAdapter;
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.HazelcastInstanceAware;
+import com.hazelcast.replicatedmap.ReplicatedMap;
+
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+import de.javagl.hazelcast.matmul.MatMulResult;
+import de.javagl.hazelcast.matmul.Matrices;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+import de.javagl.hazelcast.matmul.MutableFloatMatrix2D;
+import de.javagl.hazelcast.matmul.Point;
+
+/**
+ * A task that computes one row of blocks of a result matrix. The task
+ * contains the respective row of blocks of the first factor. The blocks
+ * of the second factor are read from the replicated map of the 
+ * {@link BroadcastOperandStore} on the member that executes the task. 
+ * The result is returned as {@link BlockResults}.
+ */
+final class BroadcastOperandTask 
+    implements Callable<BlockResults>, HazelcastInstanceAware
+{
+    /**
+     * The logger used in this class
+     */
+    private static final Logger logger = 
+        Logger.getLogger(BroadcastOperandTask.class.getName());
+    
+    /**
+     * The maximum time to wait for a block of the second factor to be 
+     * replicated to the member, in milliseconds
+     */
+    private static final long REPLICATION_TIMEOUT_MS = 10000;
+    
+    /**
+     * The ID of the job
+     */
+    private final String jobId;
+    
+    /**
+     * The name of the replicated map that contains the blocks
+     */
+    private final String mapName;
+    
+    /**
+     * The version ID of the second factor
+     */
+    private final String versionId;
+    
+    /**
+     * The row block index of the result matrix
+     */
+    private final int rowBlockIndex;
+    
+    /**
+     * The number of columns of blocks of the second factor
+     */
+    private final int numColumnBlocks;
+    
+    /**
+     * The block size
+     */
+    private final int blockSize;
+    
+    /**
+     * The row of blocks of the first factor
+     */
+    private final FloatMatrix2D rowBlocks;
+    
+    /**
+     * The {@link Factory} that will be used to create the 
+     * {@link MatrixMultiplicator} for the multiplication
+     * of the blocks. 
+     */
+    private final Factory<MatrixMultiplicator> matrixMultiplicatorFactory;
+    
+    /**
+     * The HazelcastInstance of the member that executes this task
+     */
+    private transient HazelcastInstance hazelcastInstance;
+    
+    /**
+     * Creates a new task that computes one row of blocks of the result
+     * 
+     * @param jobId The ID of the job
+     * @param mapName The name of the replicated map that contains the 
+     * blocks of the second factor
+     * @param versionId The version ID of the second factor
+     * @param rowBlockIndex The row block index of the result matrix
+     * @param numColumnBlocks The number of columns of blocks of the
+     * second factor
+     * @param blockSize The block size
+     * @param rowBlocks The row of blocks of the first factor
+     * @param matrixMultiplicatorFactory The {@link Factory} for the
+     * {@link MatrixMultiplicator} that will multiply the blocks
+     */
+    BroadcastOperandTask(String jobId, String mapName, String versionId,
+        int rowBlockIndex, int numColumnBlocks, int blockSize,
+        FloatMatrix2D rowBlocks,
+        Factory<MatrixMultiplicator> matrixMultiplicatorFactory)
+    {
+        this.jobId = jobId;
+        this.mapName = mapName;
+        this.versionId = versionId;
+        this.rowBlockIndex = rowBlockIndex;
+        this.numColumnBlocks = numColumnBlocks;
+        this.blockSize = blockSize;
+        this.rowBlocks = rowBlocks;
+        this.matrixMultiplicatorFactory = matrixMultiplicatorFactory;
+    }
+    
+    @Override
+    public void setHazelcastInstance(HazelcastInstance hazelcastInstance)
+    {
+        this.hazelcastInstance = hazelcastInstance;
+    }
+    
+    /**
+     * Returns the ID of the job
+     * 
+     * @return The job ID
+     */
+    String getJobId()
+    {
+        return jobId;
+    }
+    
+    /**
+     * Returns the name of the replicated map that contains the blocks
+     * 
+     * @return The map name
+     */
+    String getMapName()
+    {
+        return mapName;
+    }
+    
+    /**
+     * Returns the version ID of the second factor
+     * 
+     * @return The version ID
+     */
+    String getVersionId()
+    {
+        return versionId;
+    }
+    
+    /**
+     * Returns the row block index of the result matrix
+     * 
+     * @return The row block index
+     */
+    int getRowBlockIndex()
+    {
+        return rowBlockIndex;
+    }
+    
+    /**
+     * Returns the number of columns of blocks of the second factor
+     * 
+     * @return The number of columns of blocks
+     */
+    int getNumColumnBlocks()
+    {
+        return numColumnBlocks;
+    }
+    
+    /**
+     * Returns the block size
+     * 
+     * @return The block size
+     */
+    int getBlockSize()
+    {
+        return blockSize;
+    }
+    
+    /**
+     * Returns the row of blocks of the first factor
+     * 
+     * @return The row of blocks
+     */
+    FloatMatrix2D getRowBlocks()
+    {
+        return rowBlocks;
+    }
+    
+    /**
+     * Returns the {@link Factory} for the {@link MatrixMultiplicator}
+     * 
+     * @return The factory
+     */
+    Factory<MatrixMultiplicator> getMatrixMultiplicatorFactory()
+    {
+        return matrixMultiplicatorFactory;
+    }
+    
+    @Override
+    public BlockResults call() throws InterruptedException
+    {
+        ReplicatedMap<BlockKey, FloatMatrix2D> blocks = 
+            hazelcastInstance.getReplicatedMap(mapName);
+        MatrixMultiplicator matrixMultiplicator = 
+            MatMulMemberContext.get(hazelcastInstance).createMultiplicator(
+                matrixMultiplicatorFactory);
+        int numOuterProducts = 
+            MatMulUtils.divCeil(rowBlocks.getNumColumns(), blockSize);
+        
+        final Level level = Level.FINE;
+        if (logger.isLoggable(level))
+        {
+            logger.log(level, "Computing row " + rowBlockIndex + " with " + 
+                numColumnBlocks + " blocks from " + numOuterProducts + 
+                " block products each using " + matrixMultiplicator);
+        }
+        List<MatMulResult> results = new ArrayList<MatMulResult>();
+        MutableFloatMatrix2D product = null;
+        for (int c = 0; c < numColumnBlocks; c++)
+        {
+            MutableFloatMatrix2D result = null;
+            for (int p = 0; p < numOuterProducts; p++)
+            {
+                FloatMatrix2D Arp = MatMulUtils.createBlockSubMatrix(
+                    rowBlocks, blockSize, 0, p, 1, p + 1);
+                FloatMatrix2D Bpc = 
+                    getBlock(blocks, new BlockKey(versionId, p, c), 
+                        REPLICATION_TIMEOUT_MS);
+                if (result == null)
+                {
+                    result = Matrices.createFloatMatrix2D(
+                        Arp.getNumRows(), Bpc.getNumColumns());
+                }
+                if (product == null || 
+                    product.getNumRows() != result.getNumRows() ||
+                    product.getNumColumns() != result.getNumColumns())
+                {
+                    product = Matrices.createFloatMatrix2D(
+                        result.getNumRows(), result.getNumColumns());
+                }
+                matrixMultiplicator.multiply(product, Arp, Bpc);
+                Matrices.add(result, result, product);
+            }
+            results.add(new MatMulResult(
+                new Point(rowBlockIndex, c), result));
+        }
+        return new BlockResults(jobId, results);
+    }
+    
+    /**
+     * Returns the block with the given key from the given replicated 
+     * map. If the block is not yet contained in the map, because it was
+     * not yet replicated to this member, then this waits until it is 
+     * added to the map, or the given timeout expired.
+     * 
+     * @param blocks The replicated map
+     * @param key The key
+     * @param timeoutMs The timeout, in milliseconds
+     * @return The block
+     * @throws InterruptedException If the thread was interrupted while
+     * waiting for the block
+     * @throws IllegalStateException If the block is not available after
+     * the timeout
+     */
+    static FloatMatrix2D getBlock(
+        ReplicatedMap<BlockKey, FloatMatrix2D> blocks, BlockKey key,
+        long timeoutMs) throws InterruptedException
+    {
+        FloatMatrix2D block = blocks.get(key);
+        if (block != null)
+        {
+            return block;
+        }
+        final CountDownLatch added = new CountDownLatch(1);
+        UUID registrationId = blocks.addEntryListener(
+            new EntryAdapter<BlockKey, FloatMatrix2D>()
+            {
+                @Override
+                public void entryAdded(
+                    EntryEvent<BlockKey, FloatMatrix2D> event)
+                {
+                    added.countDown();
+                }
+                
+                @Override
+                public void entryUpdated(
+                    EntryEvent<BlockKey, FloatMatrix2D> event)
+                {
+                    added.countDown();
+                }
+            }, key);
+        try
+        {
+            // The block may have been added before the listener was
+            // registered
+            block = blocks.get(key);
+            if (block == null && 
+                added.await(timeoutMs, TimeUnit.MILLISECONDS))
+            {
+                block = blocks.get(key);
+            }
+            if (block == null)
+            {
+                throw new IllegalStateException(
+                    "Block " + key + " is not replicated to this member");
+            }
+            return block;
+        }
+        finally
+        {
+            blocks.removeEntryListener(registrationId);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.io.IOException;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.StreamSerializer;
+
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+
+/**
+ * A Hazelcast StreamSerializer for {@link BroadcastOperandTask} objects
+ */
+final class BroadcastOperandTaskSerializer 
+    implements StreamSerializer<BroadcastOperandTask>
+{
+    @Override
+    public int getTypeId()
+    {
+        return 21098;
+    }
+
+    @Override
+    public void write(ObjectDataOutput out, BroadcastOperandTask task)
+        throws IOException
+    {
+        out.writeUTF(task.getJobId());
+        out.writeUTF(task.getMapName());
+        out.writeUTF(task.getVersionId());
+        out.writeInt(task.getRowBlockIndex());
+        out.writeInt(task.getNumColumnBlocks());
+        out.writeInt(task.getBlockSize());
+        FloatMatrix2DSerializer.writeImpl(out, task.getRowBlocks());
+        MatrixMultiplicatorFactoryCodecs.write(
+            out, task.getMatrixMultiplicatorFactory());
+    }
+
+    @Override
+    public BroadcastOperandTask read(ObjectDataInput in) throws IOException
+    {
+        String jobId = in.readUTF();
+        String mapName = in.readUTF();
+        String versionId = in.readUTF();
+        int rowBlockIndex = in.readInt();
+        int numColumnBlocks = in.readInt();
+        int blockSize = in.readInt();
+        FloatMatrix2D rowBlocks = FloatMatrix2DSerializer.readImpl(in);
+        Factory<MatrixMultiplicator> matrixMultiplicatorFactory = 
+            MatrixMultiplicatorFactoryCodecs.read(in);
+        return new BroadcastOperandTask(jobId, mapName, versionId, 
+            rowBlockIndex, numColumnBlocks, blockSize, rowBlocks, 
+            matrixMultiplicatorFactory);
+    }
+
+    @Override
+    public void destroy()
+    {
+        // Not used
+    }
+
+}
@@ -0,0 +1,526 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+import com.hazelcast.cluster.Cluster;
+import com.hazelcast.cluster.Member;
+import com.hazelcast.cluster.MembershipEvent;
+import com.hazelcast.cluster.MembershipListener;
+import com.hazelcast.core.IExecutorService;
+import com.hazelcast.topic.ITopic;
+import com.hazelcast.topic.Message;
+import com.hazelcast.topic.MessageListener;
+
+import de.javagl.hazelcast.matmul.ExecutorExtensions;
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+import de.javagl.hazelcast.matmul.MatMulResult;
+import de.javagl.hazelcast.matmul.Matrices;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+import de.javagl.hazelcast.matmul.MutableFloatMatrix2D;
+import de.javagl.hazelcast.matmul.Point;
+
+/**
+ * A single, asynchronous execution of a multiplication by a 
+ * {@link CannonMatrixMultiplicator}. <br />
+ * <br />
+ * The job sends one {@link CannonStartTask} with the initial, skewed
+ * tiles to each member of the process grid. The members then shift 
+ * the tiles among each other, without involvement of the client. Each
+ * member publishes a {@link JobEvent} when it has finished all steps. 
+ * When all members have finished, the tiles of the result matrix are 
+ * gathered with a {@link GatherBlocksTask}. When a member of the grid
+ * leaves the cluster before that, the job fails, because its tiles 
+ * are lost and the other members would wait for them forever.
+ */
+final class CannonJob
+{
+    /**
+     * The logger used in this class
+     */
+    private static final Logger logger = 
+        Logger.getLogger(CannonJob.class.getName());
+    
+    /**
+     * The ID of this job
+     */
+    private final String jobId;
+    
+    /**
+     * The cluster, for detecting members that leave during the job
+     */
+    private final Cluster cluster;
+    
+    /**
+     * The executor service that the tasks are submitted to
+     */
+    private final IExecutorService executorService;
+    
+    /**
+     * The name of the executor service
+     */
+    private final String executorServiceName;
+    
+    /**
+     * The topic that the {@link JobEvent} messages are received from
+     */
+    private final ITopic<JobEvent> jobEvents;
+    
+    /**
+     * The members of the process grid, in row-major order
+     */
+    private final List<Member> gridMembers;
+    
+    /**
+     * The number of rows and columns of the process grid
+     */
+    private final int gridSize;
+    
+    /**
+     * The {@link Factory} for the {@link MatrixMultiplicator} instances
+     * that will multiply the tiles on the members
+     */
+    private final Factory<MatrixMultiplicator> subMatrixMultiplicatorFactory;
+    
+    /**
+     * The result matrix
+     */
+    private final MutableFloatMatrix2D C;
+    
+    /**
+     * The first factor
+     */
+    private final FloatMatrix2D A;
+    
+    /**
+     * The second factor
+     */
+    private final FloatMatrix2D B;
+    
+    /**
+     * The future that will be completed when this job is finished
+     */
+    private final CompletableFuture<MutableFloatMatrix2D> future;
+    
+    /**
+     * The futures of the tasks that are currently executed
+     */
+    private final Set<CompletableFuture<?>> pendingFutures;
+    
+    /**
+     * The number of members that did not finish yet
+     */
+    private final AtomicInteger remainingMembers;
+    
+    /**
+     * The number of tiles of the result matrix that have not been 
+     * gathered yet
+     */
+    private final AtomicInteger remainingTiles;
+    
+    /**
+     * The ID of the registration of the listener for the 
+     * {@link JobEvent} messages
+     */
+    private volatile UUID registrationId;
+    
+    /**
+     * The ID of the registration of the listener for members that 
+     * leave the cluster
+     */
+    private volatile UUID membershipRegistrationId;
+    
+    /**
+     * Creates a new job
+     * 
+     * @param cluster The cluster
+     * @param executorService The executor service
+     * @param executorServiceName The name of the executor service
+     * @param jobEvents The topic for the {@link JobEvent} messages
+     * @param gridMembers The members of the process grid, in row-major 
+     * order. The size of this list must be gridSize * gridSize.
+     * @param gridSize The number of rows and columns of the process grid
+     * @param subMatrixMultiplicatorFactory The {@link Factory} for the 
+     * {@link MatrixMultiplicator} that will multiply the tiles
+     * @param C The result matrix
+     * @param A The first factor
+     * @param B The second factor
+     */
+    CannonJob(Cluster cluster, 
+        IExecutorService executorService, String executorServiceName,
+        ITopic<JobEvent> jobEvents, List<Member> gridMembers, int gridSize,
+        Factory<MatrixMultiplicator> subMatrixMultiplicatorFactory,
+        MutableFloatMatrix2D C, FloatMatrix2D A, FloatMatrix2D B)
+    {
+        this.jobId = UUID.randomUUID().toString();
+        this.cluster = cluster;
+        this.executorService = executorService;
+        this.executorServiceName = executorServiceName;
+        this.jobEvents = jobEvents;
+        this.gridMembers = gridMembers;
+        this.gridSize = gridSize;
+        this.subMatrixMultiplicatorFactory = subMatrixMultiplicatorFactory;
+        this.C = C;
+        this.A = A;
+        this.B = B;
+        this.future = new CompletableFuture<MutableFloatMatrix2D>();
+        this.pendingFutures = Collections.newSetFromMap(
+            new ConcurrentHashMap<CompletableFuture<?>, Boolean>());
+        this.remainingMembers = new AtomicInteger(gridMembers.size());
+        this.remainingTiles = new AtomicInteger(gridMembers.size());
+        
+        future.whenComplete(new BiConsumer<Object, Throwable>()
+        {
+            @Override
+            public void accept(Object value, Throwable t)
+            {
+                UUID id = registrationId;
+                if (id != null)
+                {
+                    jobEvents.removeMessageListener(id);
+                }
+                UUID membershipId = membershipRegistrationId;
+                if (membershipId != null)
+                {
+                    cluster.removeMembershipListener(membershipId);
+                }
+                if (t != null)
+                {
+                    cancel();
+                }
+            }
+        });
+    }
+    
+    /**
+     * Start this job
+     * 
+     * @return The future that will be completed when the job is finished
+     */
+    CompletableFuture<MutableFloatMatrix2D> start()
+    {
+        Matrices.fill(C, 0.0f);
+        logger.fine("Starting Cannon job " + jobId + " on a " + 
+            gridSize + "x" + gridSize + " process grid");
+        
+        // The listener has to be registered before the first member
+        // may finish
+        registrationId = jobEvents.addMessageListener(
+            new MessageListener<JobEvent>()
+        {
+            @Override
+            public void onMessage(Message<JobEvent> message)
+            {
+                try
+                {
+                    handle(message.getMessageObject(), 
+                        message.getPublishingMember());
+                }
+                catch (Throwable e)
+                {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+        membershipRegistrationId = cluster.addMembershipListener(
+            new MembershipListener()
+        {
+            @Override
+            public void memberAdded(MembershipEvent membershipEvent)
+            {
+                // Members that join do not take part in the job
+            }
+            
+            @Override
+            public void memberRemoved(MembershipEvent membershipEvent)
+            {
+                handleMemberRemoved(membershipEvent.getMember());
+            }
+        });
+        
+        // A member that left before the listener was registered
+        for (Member gridMember : gridMembers)
+        {
+            if (!cluster.getMembers().contains(gridMember))
+            {
+                handleMemberRemoved(gridMember);
+            }
+        }
+        if (future.isDone())
+        {
+            jobEvents.removeMessageListener(registrationId);
+            cluster.removeMembershipListener(membershipRegistrationId);
+            return future;
+        }
+        for (int i = 0; i < gridSize; i++)
+        {
+            for (int j = 0; j < gridSize; j++)
+            {
+                int k = (i + j) % gridSize;
+                FloatMatrix2D tileA = createTile(A, i, k);
+                FloatMatrix2D tileB = createTile(B, k, j);
+                Member left = getGridMember(i, j - 1);
+                Member up = getGridMember(i - 1, j);
+                CannonStartTask task = new CannonStartTask(jobId, 
+                    executorServiceName, gridSize, i, j, 
+                    left.getUuid(), up.getUuid(), tileA, tileB, 
+                    subMatrixMultiplicatorFactory);
+                submit(task, getGridMember(i, j));
+            }
+        }
+        return future;
+    }
+    
+    /**
+     * Start this job with the given deadline. 
+     * 
+     * @param timeout The timeout
+     * @param unit The time unit
+     * @return The future that will be completed when the job is finished
+     * @see ExecutorExtensions#failAfter(CompletableFuture, long, TimeUnit)
+     */
+    CompletableFuture<MutableFloatMatrix2D> start(
+        long timeout, TimeUnit unit)
+    {
+        ExecutorExtensions.failAfter(future, timeout, unit);
+        return start();
+    }
+    
+    /**
+     * Returns the member at the given position of the process grid,
+     * wrapping around at the borders
+     * 
+     * @param i The row
+     * @param j The column
+     * @return The member
+     */
+    private Member getGridMember(int i, int j)
+    {
+        int r = (i + gridSize) % gridSize;
+        int c = (j + gridSize) % gridSize;
+        return gridMembers.get(r * gridSize + c);
+    }
+    
+    /**
+     * Returns the index of the first row or column of the given tile,
+     * distributing the given number of rows or columns as evenly as 
+     * possible among the tiles
+     * 
+     * @param t The tile index, between 0 and gridSize, inclusive
+     * @param n The number of rows or columns
+     * @return The index
+     */
+    private int tileStart(int t, int n)
+    {
+        return (int)((long)t * n / gridSize);
+    }
+    
+    /**
+     * Creates the tile with the given indices from the given matrix
+     * 
+     * @param m The matrix
+     * @param r The row of the tile
+     * @param c The column of the tile
+     * @return The tile
+     */
+    private FloatMatrix2D createTile(FloatMatrix2D m, int r, int c)
+    {
+        int rows = m.getNumRows();
+        int cols = m.getNumColumns();
+        return Matrices.createSubMatrixClamping(m, 
+            tileStart(r, rows), tileStart(c, cols), 
+            tileStart(r + 1, rows), tileStart(c + 1, cols));
+    }
+    
+    /**
+     * Creates the tile with the given indices from the given matrix
+     * 
+     * @param m The matrix
+     * @param r The row of the tile
+     * @param c The column of the tile
+     * @return The tile
+     */
+    private MutableFloatMatrix2D createTile(
+        MutableFloatMatrix2D m, int r, int c)
+    {
+        int rows = m.getNumRows();
+        int cols = m.getNumColumns();
+        return Matrices.createSubMatrixClamping(m, 
+            tileStart(r, rows), tileStart(c, cols), 
+            tileStart(r + 1, rows), tileStart(c + 1, cols));
+    }
+    
+    /**
+     * Handle the given {@link JobEvent}
+     * 
+     * @param jobEvent The {@link JobEvent}
+     * @param member The member that published the event
+     */
+    private void handle(JobEvent jobEvent, Member member)
+    {
+        if (!jobId.equals(jobEvent.getJobId()))
+        {
+            return;
+        }
+        String errorMessage = jobEvent.getErrorMessage();
+        if (errorMessage != null)
+        {
+            future.completeExceptionally(new IllegalStateException(
+                "Cannon job failed on member " + member + ": " + 
+                errorMessage));
+            return;
+        }
+        if (remainingMembers.decrementAndGet() == 0)
+        {
+            for (Member gridMember : gridMembers)
+            {
+                gather(gridMember);
+            }
+        }
+    }
+    
+    /**
+     * Called when the given member left the cluster. If it is a member 
+     * of the process grid, then the job fails.
+     * 
+     * @param member The member
+     */
+    private void handleMemberRemoved(Member member)
+    {
+        if (gridMembers.contains(member))
+        {
+            future.completeExceptionally(new IllegalStateException(
+                "Member " + member + " left the cluster, and the tiles " + 
+                "of the Cannon job that have been assigned to it are lost"));
+        }
+    }
+    
+    /**
+     * Submit the given task to the given member
+     * 
+     * @param task The task
+     * @param member The member
+     */
+    private void submit(CannonStartTask task, Member member)
+    {
+        final CompletableFuture<Boolean> taskFuture = 
+            ExecutorExtensions.toCompletableFuture(
+                executorService.submitToMember(task, member));
+        pendingFutures.add(taskFuture);
+        taskFuture.whenComplete(new BiConsumer<Boolean, Throwable>()
+        {
+            @Override
+            public void accept(Boolean value, Throwable t)
+            {
+                pendingFutures.remove(taskFuture);
+                if (t != null)
+                {
+                    future.completeExceptionally(t);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Gather the tile of the result matrix from the given member, and
+     * complete the future of this job if this was the last tile.
+     * 
+     * @param member The member
+     */
+    private void gather(Member member)
+    {
+        final CompletableFuture<BlockResults> gatherFuture = 
+            ExecutorExtensions.toCompletableFuture(
+                executorService.submitToMember(
+                    new GatherBlocksTask(jobId, false), member));
+        pendingFutures.add(gatherFuture);
+        gatherFuture.whenComplete(
+            new BiConsumer<BlockResults, Throwable>()
+        {
+            @Override
+            public void accept(BlockResults results, Throwable t)
+            {
+                pendingFutures.remove(gatherFuture);
+                if (t != null)
+                {
+                    future.completeExceptionally(t);
+                    return;
+                }
+                try
+                {
+                    for (MatMulResult result : results.getResults())
+                    {
+                        Point point = result.getPoint();
+                        MutableFloatMatrix2D Cij = 
+                            createTile(C, point.r, point.c);
+                        Matrices.add(Cij, Cij, result.getMatrix());
+                        result.release();
+                    }
+                    if (remainingTiles.decrementAndGet() == 0)
+                    {
+                        future.complete(C);
+                    }
+                }
+                catch (Throwable e)
+                {
+                    // An exception that is thrown in this callback would be
+                    // swallowed by the CompletableFuture, and the job would
+                    // never be completed
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Cancel all pending tasks, and discard the state and the tiles of 
+     * the result matrix on the members
+     */
+    private void cancel()
+    {
+        for (CompletableFuture<?> pendingFuture : pendingFutures)
+        {
+            pendingFuture.cancel(true);
+        }
+        for (Member member : gridMembers)
+        {
+            executorService.submitToMember(
+                new GatherBlocksTask(jobId, true), member);
+        }
+    }
+}
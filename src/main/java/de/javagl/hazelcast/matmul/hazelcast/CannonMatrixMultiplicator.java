@@ -0,0 +1,169 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.hazelcast.cluster.Member;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IExecutorService;
+import com.hazelcast.topic.ITopic;
+
+import de.javagl.hazelcast.matmul.AsyncMatrixMultiplicator;
+import de.javagl.hazelcast.matmul.ExecutorExtensions;
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+import de.javagl.hazelcast.matmul.MutableFloatMatrix2D;
+
+/**
+ * Implementation of an {@link AsyncMatrixMultiplicator} that uses 
+ * Cannon's matrix multiplication algorithm in a Hazelcast cluster. <br />
+ * <br />
+ * The data members of the cluster are arranged in a square logical 
+ * process grid with <code>q</code> rows and columns, and the matrices
+ * are divided into <code>q x q</code> tiles. The member at 
+ * <code>(i,j)</code> computes the tile <code>Cij</code> of the result 
+ * matrix. It initially receives the tiles <code>Aik</code> and 
+ * <code>Bkj</code> with <code>k = (i+j) mod q</code>. In each of the
+ * <code>q</code> steps, it adds the product of its current tiles to 
+ * <code>Cij</code>, and passes its tile of A to its left neighbor and
+ * its tile of B to its upper neighbor. <br />
+ * <br />
+ * So the client sends each tile of A and B exactly once, and between
+ * the steps, the tiles are only exchanged among the members. The 
+ * members report their completion via a Hazelcast topic, and the tiles
+ * of the result matrix are gathered at the end.
+ */
+public final class CannonMatrixMultiplicator 
+    implements AsyncMatrixMultiplicator
+{
+    /**
+     * The HazelcastInstance
+     */
+    private final HazelcastInstance hazelcastInstance;
+    
+    /**
+     * The name of the executor service
+     */
+    private final String executorServiceName;
+    
+    /**
+     * The {@link Factory} that will be used to create 
+     * {@link MatrixMultiplicator} instances for the 
+     * tiles on the members.
+     */
+    private final Factory<MatrixMultiplicator> subMatrixMultiplicatorFactory;
+    
+    /**
+     * Creates a new Cannon matrix multiplicator 
+     * 
+     * @param hazelcastInstance The HazelcastInstance
+     * @param executorServiceName The name of the executor service
+     * @param subMatrixMultiplicatorFactory The {@link Factory} that will be 
+     * used to create {@link MatrixMultiplicator} instances for the tiles
+     * on the members
+     */
+    public CannonMatrixMultiplicator(HazelcastInstance hazelcastInstance,
+        String executorServiceName,
+        Factory<MatrixMultiplicator> subMatrixMultiplicatorFactory)
+    {
+        this.hazelcastInstance = hazelcastInstance;
+        this.executorServiceName = executorServiceName;
+        this.subMatrixMultiplicatorFactory = subMatrixMultiplicatorFactory;
+    }
+
+    @Override
+    public void multiply(
+        MutableFloatMatrix2D C, FloatMatrix2D A, FloatMatrix2D B)
+    {
+        ExecutorExtensions.await(multiplyAsync(C, A, B));
+    }
+
+    @Override
+    public CompletableFuture<MutableFloatMatrix2D> multiplyAsync(
+        MutableFloatMatrix2D C, FloatMatrix2D A, FloatMatrix2D B)
+    {
+        return createJob(C, A, B).start();
+    }
+
+    @Override
+    public CompletableFuture<MutableFloatMatrix2D> multiplyAsync(
+        MutableFloatMatrix2D C, FloatMatrix2D A, FloatMatrix2D B,
+        long timeout, TimeUnit unit)
+    {
+        return createJob(C, A, B).start(timeout, unit);
+    }
+    
+    /**
+     * Create the {@link CannonJob} for the given matrices, using a process
+     * grid that consists of the current data members of the cluster
+     * 
+     * @param C The result matrix
+     * @param A The first factor
+     * @param B The second factor
+     * @return The job
+     */
+    private CannonJob createJob(
+        MutableFloatMatrix2D C, FloatMatrix2D A, FloatMatrix2D B)
+    {
+        List<Member> members = MatMulUtils.getDataMembers(hazelcastInstance);
+        if (members.isEmpty())
+        {
+            throw new IllegalStateException("No data members in cluster");
+        }
+        
+        // Use the largest square process grid that fits into the cluster,
+        // but do not use more tiles than there are rows or columns
+        int gridSize = (int)Math.sqrt(members.size());
+        gridSize = Math.min(gridSize, A.getNumRows());
+        gridSize = Math.min(gridSize, A.getNumColumns());
+        gridSize = Math.min(gridSize, B.getNumColumns());
+        gridSize = Math.max(1, gridSize);
+        List<Member> gridMembers = 
+            members.subList(0, gridSize * gridSize);
+        
+        IExecutorService executorService = 
+            hazelcastInstance.getExecutorService(executorServiceName);
+        ITopic<JobEvent> jobEvents = 
+            hazelcastInstance.getTopic(MatMulUtils.JOB_EVENTS_TOPIC_NAME);
+        return new CannonJob(hazelcastInstance.getCluster(), 
+            executorService, executorServiceName, 
+            jobEvents, gridMembers, gridSize, subMatrixMultiplicatorFactory, 
+            C, A, B);
+    }
+    
+    @Override
+    public String toString()
+    {
+        return getClass().getSimpleName()+
+            "[subMatrixMultiplicatorFactory="+
+            subMatrixMultiplicatorFactory+"]";
+    }
+}
@@ -0,0 +1,397 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.hazelcast.cluster.Member;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IExecutorService;
+
+import de.javagl.hazelcast.matmul.ExecutorExtensions;
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+import de.javagl.hazelcast.matmul.Matrices;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+import de.javagl.hazelcast.matmul.MutableFloatMatrix2D;
+import de.javagl.hazelcast.matmul.Point;
+
+/**
+ * The state of a single member of the process grid of a Cannon matrix
+ * multiplication. <br />
+ * <br />
+ * The member holds one tile of A, one tile of B and one tile of C. In 
+ * each step, it sends its tile of A to its left neighbor and its tile
+ * of B to its upper neighbor, and adds the product of the tiles to its
+ * tile of C. The next step is started as soon as the tiles for the 
+ * next step have been received from the right and lower neighbor. 
+ * Since the neighbors may be faster, the tiles are buffered for each 
+ * step. After the last step, the tile of C is stored in the 
+ * accumulators of the {@link MatMulMemberContext}, and a 
+ * {@link JobEvent} is published. 
+ */
+final class CannonMemberState
+{
+    /**
+     * The logger used in this class
+     */
+    private static final Logger logger = 
+        Logger.getLogger(CannonMemberState.class.getName());
+    
+    /**
+     * The ID of the job
+     */
+    private final String jobId;
+    
+    /**
+     * The tiles of A that have been received, for each step
+     */
+    private final Map<Integer, FloatMatrix2D> tilesA;
+    
+    /**
+     * The tiles of B that have been received, for each step
+     */
+    private final Map<Integer, FloatMatrix2D> tilesB;
+    
+    /**
+     * The HazelcastInstance of this member
+     */
+    private HazelcastInstance hazelcastInstance;
+    
+    /**
+     * The executor service that the multiplications are performed with
+     */
+    private ExecutorService computeExecutor;
+    
+    /**
+     * The executor service that the tiles are sent to the neighbors with
+     */
+    private IExecutorService executorService;
+    
+    /**
+     * The number of rows and columns of the process grid, which is 
+     * also the number of steps
+     */
+    private int gridSize;
+    
+    /**
+     * The row of this member in the process grid
+     */
+    private int gridRow;
+    
+    /**
+     * The column of this member in the process grid
+     */
+    private int gridColumn;
+    
+    /**
+     * The member that the tiles of A are sent to
+     */
+    private Member leftMember;
+    
+    /**
+     * The member that the tiles of B are sent to
+     */
+    private Member upMember;
+    
+    /**
+     * The {@link MatrixMultiplicator} for the tiles
+     */
+    private MatrixMultiplicator matrixMultiplicator;
+    
+    /**
+     * The tile of C
+     */
+    private MutableFloatMatrix2D tileC;
+    
+    /**
+     * The step that will be computed next
+     */
+    private int nextStep;
+    
+    /**
+     * Whether {@link #start} has been called
+     */
+    private boolean started;
+    
+    /**
+     * Whether a step is currently computed
+     */
+    private boolean running;
+    
+    /**
+     * Whether the computation has been cancelled or failed
+     */
+    private boolean cancelled;
+    
+    /**
+     * Creates a new state for the job with the given ID
+     * 
+     * @param jobId The job ID
+     */
+    CannonMemberState(String jobId)
+    {
+        this.jobId = jobId;
+        this.tilesA = new HashMap<Integer, FloatMatrix2D>();
+        this.tilesB = new HashMap<Integer, FloatMatrix2D>();
+    }
+    
+    /**
+     * Start the computation on this member
+     * 
+     * @param hazelcastInstance The HazelcastInstance of this member
+     * @param computeExecutor The executor service for the multiplications
+     * @param executorServiceName The name of the executor service that
+     * is used for sending the tiles to the neighbors
+     * @param gridSize The number of rows and columns of the process grid
+     * @param gridRow The row of this member in the process grid
+     * @param gridColumn The column of this member in the process grid
+     * @param leftMember The member that the tiles of A are sent to
+     * @param upMember The member that the tiles of B are sent to
+     * @param tileA The initial tile of A
+     * @param tileB The initial tile of B
+     * @param matrixMultiplicatorFactory The {@link Factory} for the
+     * {@link MatrixMultiplicator} that will multiply the tiles
+     */
+    synchronized void start(HazelcastInstance hazelcastInstance,
+        ExecutorService computeExecutor, String executorServiceName, 
+        int gridSize, int gridRow, int gridColumn, 
+        Member leftMember, Member upMember, 
+        FloatMatrix2D tileA, FloatMatrix2D tileB,
+        Factory<MatrixMultiplicator> matrixMultiplicatorFactory)
+    {
+        this.hazelcastInstance = hazelcastInstance;
+        this.computeExecutor = computeExecutor;
+        this.executorService = 
+            hazelcastInstance.getExecutorService(executorServiceName);
+        this.gridSize = gridSize;
+        this.gridRow = gridRow;
+        this.gridColumn = gridColumn;
+        this.leftMember = leftMember;
+        this.upMember = upMember;
+        this.matrixMultiplicator = matrixMultiplicatorFactory.create();
+        this.tileC = Matrices.createFloatMatrix2D(
+            tileA.getNumRows(), tileB.getNumColumns());
+        tilesA.put(0, tileA);
+        tilesB.put(0, tileB);
+        started = true;
+        scheduleNextStep();
+    }
+    
+    /**
+     * Offer a tile that was received from a neighbor
+     * 
+     * @param step The step for which the tile is needed
+     * @param operandA Whether the tile is a tile of A
+     * @param tile The tile
+     */
+    synchronized void offer(int step, boolean operandA, FloatMatrix2D tile)
+    {
+        if (cancelled)
+        {
+            return;
+        }
+        if (operandA)
+        {
+            tilesA.put(step, tile);
+        }
+        else
+        {
+            tilesB.put(step, tile);
+        }
+        scheduleNextStep();
+    }
+    
+    /**
+     * Cancel the computation on this member
+     */
+    synchronized void cancel()
+    {
+        cancelled = true;
+        tilesA.clear();
+        tilesB.clear();
+    }
+    
+    /**
+     * Schedule the computation of the next step if this member has been 
+     * started, no other step is currently computed, and both tiles for
+     * the next step are available. 
+     * Must be called while holding the monitor of this object.
+     */
+    private void scheduleNextStep()
+    {
+        if (!started || running || cancelled || nextStep >= gridSize)
+        {
+            return;
+        }
+        final FloatMatrix2D tileA = tilesA.get(nextStep);
+        final FloatMatrix2D tileB = tilesB.get(nextStep);
+        if (tileA == null || tileB == null)
+        {
+            return;
+        }
+        tilesA.remove(nextStep);
+        tilesB.remove(nextStep);
+        running = true;
+        final int step = nextStep;
+        computeExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                computeStep(step, tileA, tileB);
+            }
+        });
+    }
+    
+    /**
+     * Compute the given step: Send the tiles to the neighbors, and 
+     * add their product to the tile of C.
+     * 
+     * @param step The step
+     * @param tileA The tile of A
+     * @param tileB The tile of B
+     */
+    private void computeStep(int step, FloatMatrix2D tileA, FloatMatrix2D tileB)
+    {
+        try
+        {
+            if (step < gridSize - 1)
+            {
+                send(new CannonShiftTask(jobId, step + 1, true, tileA), 
+                    leftMember);
+                send(new CannonShiftTask(jobId, step + 1, false, tileB), 
+                    upMember);
+            }
+            
+            final Level level = Level.FINE;
+            if (logger.isLoggable(level))
+            {
+                logger.log(level, "Cannon step " + step + " of job " + 
+                    jobId + " on grid member " + gridRow + "," + 
+                    gridColumn + " using " + matrixMultiplicator);
+            }
+            MutableFloatMatrix2D product = Matrices.createFloatMatrix2D(
+                tileA.getNumRows(), tileB.getNumColumns());
+            matrixMultiplicator.multiply(product, tileA, tileB);
+            Matrices.add(tileC, tileC, product);
+        }
+        catch (Throwable t)
+        {
+            fail(t);
+            return;
+        }
+        synchronized (this)
+        {
+            running = false;
+            nextStep++;
+            if (nextStep < gridSize)
+            {
+                scheduleNextStep();
+                return;
+            }
+            if (cancelled)
+            {
+                return;
+            }
+        }
+        ConcurrentMap<Point, MutableFloatMatrix2D> accumulators = 
+            MatMulMemberContext.get(hazelcastInstance).getAccumulators(jobId);
+        if (accumulators == null)
+        {
+            // The job was cancelled while the last step was running
+            return;
+        }
+        accumulators.put(new Point(gridRow, gridColumn), tileC);
+        publish(null);
+    }
+    
+    /**
+     * Send the given task to the given member, and report a failure 
+     * if it cannot be executed
+     * 
+     * @param task The task
+     * @param member The member
+     */
+    private void send(CannonShiftTask task, Member member)
+    {
+        CompletableFuture<Boolean> future = 
+            ExecutorExtensions.toCompletableFuture(
+                executorService.submitToMember(task, member));
+        future.whenComplete(new BiConsumer<Boolean, Throwable>()
+        {
+            @Override
+            public void accept(Boolean value, Throwable t)
+            {
+                if (t != null)
+                {
+                    fail(t);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Cancel the computation on this member, and publish a 
+     * {@link JobEvent} for the given error
+     * 
+     * @param t The error
+     */
+    private void fail(Throwable t)
+    {
+        synchronized (this)
+        {
+            if (cancelled)
+            {
+                return;
+            }
+            cancel();
+        }
+        logger.log(Level.WARNING, "Cannon job " + jobId + " failed on " + 
+            "grid member " + gridRow + "," + gridColumn, t);
+        publish(String.valueOf(t));
+    }
+    
+    /**
+     * Publish a {@link JobEvent} with the given error message
+     * 
+     * @param errorMessage The error message, or <code>null</code>
+     */
+    private void publish(String errorMessage)
+    {
+        hazelcastInstance.<JobEvent>getTopic(
+            MatMulUtils.JOB_EVENTS_TOPIC_NAME).publish(
+                new JobEvent(jobId, errorMessage));
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.util.concurrent.Callable;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.HazelcastInstanceAware;
+
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+
+/**
+ * A task that is sent from one member of the process grid of the 
+ * Cannon matrix multiplication to its neighbor, to pass on a tile 
+ * of A or B for the next step.
+ */
+final class CannonShiftTask implements Callable<Boolean>, HazelcastInstanceAware
+{
+    /**
+     * The ID of the job that this task belongs to
+     */
+    private final String jobId;
+    
+    /**
+     * The step for which the tile is needed
+     */
+    private final int step;
+    
+    /**
+     * Whether the tile is a tile of A. Otherwise, it is a tile of B.
+     */
+    private final boolean operandA;
+    
+    /**
+     * The tile
+     */
+    private final FloatMatrix2D tile;
+    
+    /**
+     * The HazelcastInstance of the member that executes this task
+     */
+    private transient HazelcastInstance hazelcastInstance;
+    
+    /**
+     * Creates a new task
+     * 
+     * @param jobId The ID of the job that this task belongs to
+     * @param step The step for which the tile is needed
+     * @param operandA Whether the tile is a tile of A. Otherwise, it 
+     * is a tile of B.
+     * @param tile The tile
+     */
+    CannonShiftTask(String jobId, int step, boolean operandA, 
+        FloatMatrix2D tile)
+    {
+        this.jobId = jobId;
+        this.step = step;
+        this.operandA = operandA;
+        this.tile = tile;
+    }
+    
+    @Override
+    public void setHazelcastInstance(HazelcastInstance hazelcastInstance)
+    {
+        this.hazelcastInstance = hazelcastInstance;
+    }
+    
+    /**
+     * Returns the ID of the job that this task belongs to
+     * 
+     * @return The job ID
+     */
+    String getJobId()
+    {
+        return jobId;
+    }
+    
+    /**
+     * Returns the step for which the tile is needed
+     * 
+     * @return The step
+     */
+    int getStep()
+    {
+        return step;
+    }
+    
+    /**
+     * Returns whether the tile is a tile of A
+     * 
+     * @return Whether the tile is a tile of A
+     */
+    boolean isOperandA()
+    {
+        return operandA;
+    }
+    
+    /**
+     * Returns the tile
+     * 
+     * @return The tile
+     */
+    FloatMatrix2D getTile()
+    {
+        return tile;
+    }
+    
+    @Override
+    public Boolean call()
+    {
+        MatMulMemberContext context = 
+            MatMulMemberContext.get(hazelcastInstance);
+        CannonMemberState state = context.getCannonMemberState(jobId);
+        if (state == null)
+        {
+            // The job was already cancelled
+            return Boolean.FALSE;
+        }
+        state.offer(step, operandA, tile);
+        return Boolean.TRUE;
+    }
+}
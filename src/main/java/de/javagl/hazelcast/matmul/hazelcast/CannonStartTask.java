@@ -0,0 +1,275 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+import com.hazelcast.cluster.Member;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.HazelcastInstanceAware;
+
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+
+/**
+ * A task that starts the Cannon matrix multiplication on one member of 
+ * the process grid. It contains the initial (skewed) tiles of A and B 
+ * for the member, and the information about the neighbors of the member
+ * in the process grid. The actual computation is performed 
+ * asynchronously by the {@link CannonMemberState} of the member.
+ */
+final class CannonStartTask implements Callable<Boolean>, HazelcastInstanceAware
+{
+    /**
+     * The ID of the job that this task belongs to
+     */
+    private final String jobId;
+    
+    /**
+     * The name of the executor service that is used for sending the
+     * tiles to the neighbors
+     */
+    private final String executorServiceName;
+    
+    /**
+     * The number of rows and columns of the process grid
+     */
+    private final int gridSize;
+    
+    /**
+     * The row of the member in the process grid
+     */
+    private final int gridRow;
+    
+    /**
+     * The column of the member in the process grid
+     */
+    private final int gridColumn;
+    
+    /**
+     * The UUID of the member that the tiles of A are sent to
+     */
+    private final UUID leftMemberUuid;
+    
+    /**
+     * The UUID of the member that the tiles of B are sent to
+     */
+    private final UUID upMemberUuid;
+    
+    /**
+     * The initial tile of A
+     */
+    private final FloatMatrix2D tileA;
+    
+    /**
+     * The initial tile of B
+     */
+    private final FloatMatrix2D tileB;
+    
+    /**
+     * The {@link Factory} that will be used to create the 
+     * {@link MatrixMultiplicator} for the multiplication
+     * of the tiles. 
+     */
+    private final Factory<MatrixMultiplicator> matrixMultiplicatorFactory;
+    
+    /**
+     * The HazelcastInstance of the member that executes this task
+     */
+    private transient HazelcastInstance hazelcastInstance;
+    
+    /**
+     * Creates a new task
+     * 
+     * @param jobId The ID of the job that this task belongs to
+     * @param executorServiceName The name of the executor service that 
+     * is used for sending the tiles to the neighbors
+     * @param gridSize The number of rows and columns of the process grid
+     * @param gridRow The row of the member in the process grid
+     * @param gridColumn The column of the member in the process grid
+     * @param leftMemberUuid The UUID of the left neighbor
+     * @param upMemberUuid The UUID of the upper neighbor
+     * @param tileA The initial tile of A
+     * @param tileB The initial tile of B
+     * @param matrixMultiplicatorFactory The {@link Factory} for the
+     * {@link MatrixMultiplicator} that will multiply the tiles
+     */
+    CannonStartTask(String jobId, String executorServiceName, 
+        int gridSize, int gridRow, int gridColumn, 
+        UUID leftMemberUuid, UUID upMemberUuid, 
+        FloatMatrix2D tileA, FloatMatrix2D tileB,
+        Factory<MatrixMultiplicator> matrixMultiplicatorFactory)
+    {
+        this.jobId = jobId;
+        this.executorServiceName = executorServiceName;
+        this.gridSize = gridSize;
+        this.gridRow = gridRow;
+        this.gridColumn = gridColumn;
+        this.leftMemberUuid = leftMemberUuid;
+        this.upMemberUuid = upMemberUuid;
+        this.tileA = tileA;
+        this.tileB = tileB;
+        this.matrixMultiplicatorFactory = matrixMultiplicatorFactory;
+    }
+    
+    @Override
+    public void setHazelcastInstance(HazelcastInstance hazelcastInstance)
+    {
+        this.hazelcastInstance = hazelcastInstance;
+    }
+    
+    /**
+     * Returns the ID of the job that this task belongs to
+     * 
+     * @return The job ID
+     */
+    String getJobId()
+    {
+        return jobId;
+    }
+    
+    /**
+     * Returns the name of the executor service that is used for sending 
+     * the tiles to the neighbors
+     * 
+     * @return The executor service name
+     */
+    String getExecutorServiceName()
+    {
+        return executorServiceName;
+    }
+    
+    /**
+     * Returns the number of rows and columns of the process grid
+     * 
+     * @return The grid size
+     */
+    int getGridSize()
+    {
+        return gridSize;
+    }
+    
+    /**
+     * Returns the row of the member in the process grid
+     * 
+     * @return The grid row
+     */
+    int getGridRow()
+    {
+        return gridRow;
+    }
+    
+    /**
+     * Returns the column of the member in the process grid
+     * 
+     * @return The grid column
+     */
+    int getGridColumn()
+    {
+        return gridColumn;
+    }
+    
+    /**
+     * Returns the UUID of the member that the tiles of A are sent to
+     * 
+     * @return The UUID
+     */
+    UUID getLeftMemberUuid()
+    {
+        return leftMemberUuid;
+    }
+    
+    /**
+     * Returns the UUID of the member that the tiles of B are sent to
+     * 
+     * @return The UUID
+     */
+    UUID getUpMemberUuid()
+    {
+        return upMemberUuid;
+    }
+    
+    /**
+     * Returns the initial tile of A
+     * 
+     * @return The tile
+     */
+    FloatMatrix2D getTileA()
+    {
+        return tileA;
+    }
+    
+    /**
+     * Returns the initial tile of B
+     * 
+     * @return The tile
+     */
+    FloatMatrix2D getTileB()
+    {
+        return tileB;
+    }
+    
+    /**
+     * Returns the {@link Factory} for the {@link MatrixMultiplicator}
+     * 
+     * @return The factory
+     */
+    Factory<MatrixMultiplicator> getMatrixMultiplicatorFactory()
+    {
+        return matrixMultiplicatorFactory;
+    }
+    
+    @Override
+    public Boolean call()
+    {
+        MatMulMemberContext context = 
+            MatMulMemberContext.get(hazelcastInstance);
+        Member leftMember = 
+            MatMulUtils.findMember(hazelcastInstance, leftMemberUuid);
+        Member upMember = 
+            MatMulUtils.findMember(hazelcastInstance, upMemberUuid);
+        if (leftMember == null || upMember == null)
+        {
+            throw new IllegalStateException(
+                "Neighbor of grid member " + gridRow + "," + gridColumn + 
+                " is no longer in the cluster");
+        }
+        CannonMemberState state = context.getCannonMemberState(jobId);
+        if (state == null)
+        {
+            // The job was already cancelled
+            return Boolean.FALSE;
+        }
+        state.start(hazelcastInstance, context.getComputeExecutor(), 
+            executorServiceName, gridSize, gridRow, gridColumn, 
+            leftMember, upMember, tileA, tileB, 
+            context.resolveFactory(matrixMultiplicatorFactory));
+        return Boolean.TRUE;
+    }
+}
@@ -0,0 +1,674 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+
+import de.javagl.hazelcast.matmul.AsyncExecutor;
+import de.javagl.hazelcast.matmul.ExecutorExtensions;
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+import de.javagl.hazelcast.matmul.Matrices;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+import de.javagl.hazelcast.matmul.MutableFloatMatrix2D;
+
+/**
+ * A class for matrices that are stored in the cluster under a name. <br />
+ * <br />
+ * Matrices may be uploaded once, and then be used as the factors of
+ * several multiplications. The results of the multiplications are 
+ * stored in the cluster as well, under the given name, and may again
+ * be used as factors. So a chain of products can be computed without
+ * sending the intermediate results to the client. The results may be 
+ * downloaded completely, or only individual blocks or sub-ranges of 
+ * them. <br />
+ * <br />
+ * The blocks of the matrices are stored in a distributed map, grouped 
+ * by rows, and the {@link ClusterMatrixInfo} of each matrix is stored
+ * in another distributed map. When a matrix is stored under a name 
+ * that was already used, then the blocks of the previous matrix are 
+ * removed after the new matrix was stored. A matrix should therefore 
+ * not be replaced while it is used as a factor of a multiplication.
+ */
+public final class ClusterMatrices
+{
+    /**
+     * The factory for the {@link AsyncExecutor}
+     */
+    private final Factory<AsyncExecutor> asyncExecutorFactory;
+    
+    /**
+     * The block size
+     */
+    private final int blockSize;
+    
+    /**
+     * The {@link Factory} for the {@link MatrixMultiplicator} instances
+     * that will multiply the blocks on the members
+     */
+    private final Factory<MatrixMultiplicator> subMatrixMultiplicatorFactory;
+    
+    /**
+     * The {@link OperandStore} that contains the blocks of the matrices
+     */
+    private final OperandStore operandStore;
+    
+    /**
+     * The map from matrix names to the {@link ClusterMatrixInfo}
+     */
+    private final IMap<String, ClusterMatrixInfo> infos;
+    
+    /**
+     * Creates a new instance
+     * 
+     * @param hazelcastInstance The HazelcastInstance
+     * @param asyncExecutorFactory The {@link Factory} for the
+     * {@link AsyncExecutor} that the tasks are submitted to
+     * @param blockSize The size of the blocks that the matrices are
+     * stored in
+     * @param subMatrixMultiplicatorFactory The {@link Factory} that 
+     * will be used to create the {@link MatrixMultiplicator} instances 
+     * for the blocks on the members
+     */
+    public ClusterMatrices(HazelcastInstance hazelcastInstance,
+        Factory<AsyncExecutor> asyncExecutorFactory, int blockSize,
+        Factory<MatrixMultiplicator> subMatrixMultiplicatorFactory)
+    {
+        this.asyncExecutorFactory = asyncExecutorFactory;
+        this.blockSize = blockSize;
+        this.subMatrixMultiplicatorFactory = subMatrixMultiplicatorFactory;
+        this.operandStore = new OperandStore(
+            hazelcastInstance, MatMulUtils.MATRICES_MAP_NAME);
+        this.infos = hazelcastInstance.getMap(
+            MatMulUtils.MATRIX_INFOS_MAP_NAME);
+    }
+    
+    /**
+     * Store the given matrix in the cluster under the given name
+     * 
+     * @param name The name
+     * @param m The matrix
+     * @return The {@link ClusterMatrixInfo}
+     */
+    public ClusterMatrixInfo upload(String name, FloatMatrix2D m)
+    {
+        return ExecutorExtensions.await(uploadAsync(name, m));
+    }
+    
+    /**
+     * Store the given matrix in the cluster under the given name
+     * 
+     * @param name The name
+     * @param m The matrix
+     * @return The future that will be completed with the 
+     * {@link ClusterMatrixInfo} when the matrix is stored
+     */
+    public CompletableFuture<ClusterMatrixInfo> uploadAsync(
+        final String name, FloatMatrix2D m)
+    {
+        final ClusterMatrixInfo info = 
+            createInfo(name, m.getNumRows(), m.getNumColumns());
+        CompletableFuture<Void> upload = operandStore.upload(
+            info.getStorageId(), m, blockSize, BlockKey.Grouping.ROW);
+        return upload.thenCompose(
+            new Function<Void, CompletionStage<ClusterMatrixInfo>>()
+        {
+            @Override
+            public CompletionStage<ClusterMatrixInfo> apply(Void value)
+            {
+                return publish(name, info);
+            }
+        }).whenComplete(createCleanup(info));
+    }
+    
+    /**
+     * Multiply the matrices with the given names, and store the result
+     * under the given name
+     * 
+     * @param nameA The name of the first factor
+     * @param nameB The name of the second factor
+     * @param nameC The name of the result
+     * @return The {@link ClusterMatrixInfo} of the result
+     */
+    public ClusterMatrixInfo multiply(
+        String nameA, String nameB, String nameC)
+    {
+        return ExecutorExtensions.await(multiplyAsync(nameA, nameB, nameC));
+    }
+    
+    /**
+     * Multiply the matrices with the given names, and store the result
+     * under the given name. The multiplication is performed in the 
+     * cluster, and no blocks are sent to the client. If the matrices
+     * do not exist, or their sizes do not match, then the returned
+     * future is completed with an <code>IllegalArgumentException</code>.
+     * 
+     * @param nameA The name of the first factor
+     * @param nameB The name of the second factor
+     * @param nameC The name of the result
+     * @return The future that will be completed with the 
+     * {@link ClusterMatrixInfo} of the result when it is stored
+     */
+    public CompletableFuture<ClusterMatrixInfo> multiplyAsync(
+        final String nameA, final String nameB, final String nameC)
+    {
+        CompletableFuture<ClusterMatrixInfo> infoA = getInfoAsync(nameA);
+        CompletableFuture<ClusterMatrixInfo> infoB = getInfoAsync(nameB);
+        CompletableFuture<ClusterProductJob> job = infoA.thenCombine(infoB,
+            new BiFunction<ClusterMatrixInfo, ClusterMatrixInfo, 
+                ClusterProductJob>()
+        {
+            @Override
+            public ClusterProductJob apply(
+                ClusterMatrixInfo a, ClusterMatrixInfo b)
+            {
+                validate(nameA, a);
+                validate(nameB, b);
+                if (a.getNumColumns() != b.getNumRows())
+                {
+                    throw new IllegalArgumentException(
+                        "Matrix '" + nameA + "' has " + a.getNumColumns() + 
+                        " columns, but matrix '" + nameB + "' has " + 
+                        b.getNumRows() + " rows");
+                }
+                ClusterMatrixInfo c = createInfo(
+                    nameC, a.getNumRows(), b.getNumColumns());
+                return new ClusterProductJob(operandStore, 
+                    asyncExecutorFactory.create(), 
+                    subMatrixMultiplicatorFactory, a, b, c);
+            }
+        });
+        return job.thenCompose(
+            new Function<ClusterProductJob, 
+                CompletionStage<ClusterMatrixInfo>>()
+        {
+            @Override
+            public CompletionStage<ClusterMatrixInfo> apply(
+                ClusterProductJob productJob)
+            {
+                return productJob.start().thenCompose(
+                    new Function<ClusterMatrixInfo, 
+                        CompletionStage<ClusterMatrixInfo>>()
+                {
+                    @Override
+                    public CompletionStage<ClusterMatrixInfo> apply(
+                        ClusterMatrixInfo infoC)
+                    {
+                        return publish(nameC, infoC)
+                            .whenComplete(createCleanup(infoC));
+                    }
+                });
+            }
+        });
+    }
+    
+    /**
+     * Returns the {@link ClusterMatrixInfo} of the matrix with the 
+     * given name
+     * 
+     * @param name The name
+     * @return The future that will be completed with the 
+     * {@link ClusterMatrixInfo}, or with an 
+     * <code>IllegalArgumentException</code> if no matrix with the 
+     * given name is stored
+     */
+    public CompletableFuture<ClusterMatrixInfo> getInfoAsync(
+        final String name)
+    {
+        return infos.getAsync(name).toCompletableFuture().thenApply(
+            new Function<ClusterMatrixInfo, ClusterMatrixInfo>()
+        {
+            @Override
+            public ClusterMatrixInfo apply(ClusterMatrixInfo info)
+            {
+                if (info == null)
+                {
+                    throw new IllegalArgumentException(
+                        "No matrix with name '" + name + "' is stored");
+                }
+                return info;
+            }
+        });
+    }
+    
+    /**
+     * Returns the specified block of the matrix with the given name
+     * 
+     * @param name The name
+     * @param r The row block index
+     * @param c The column block index
+     * @return The block
+     */
+    public FloatMatrix2D getBlock(String name, int r, int c)
+    {
+        return ExecutorExtensions.await(getBlockAsync(name, r, c));
+    }
+    
+    /**
+     * Returns the specified block of the matrix with the given name.
+     * The size of the blocks is given by the {@link ClusterMatrixInfo}
+     * of the matrix. The blocks in the last row and column may be 
+     * smaller.
+     * 
+     * @param name The name
+     * @param r The row block index
+     * @param c The column block index
+     * @return The future that will be completed with the block
+     */
+    public CompletableFuture<FloatMatrix2D> getBlockAsync(
+        String name, final int r, final int c)
+    {
+        return getInfoAsync(name).thenCompose(
+            new Function<ClusterMatrixInfo, CompletionStage<FloatMatrix2D>>()
+        {
+            @Override
+            public CompletionStage<FloatMatrix2D> apply(
+                ClusterMatrixInfo info)
+            {
+                return getBlockAsync(info, r, c);
+            }
+        });
+    }
+    
+    /**
+     * Download the matrix with the given name
+     * 
+     * @param name The name
+     * @return The matrix
+     */
+    public MutableFloatMatrix2D download(String name)
+    {
+        return ExecutorExtensions.await(downloadAsync(name));
+    }
+    
+    /**
+     * Download the matrix with the given name
+     * 
+     * @param name The name
+     * @return The future that will be completed with the matrix
+     */
+    public CompletableFuture<MutableFloatMatrix2D> downloadAsync(String name)
+    {
+        return getInfoAsync(name).thenCompose(
+            new Function<ClusterMatrixInfo, 
+                CompletionStage<MutableFloatMatrix2D>>()
+        {
+            @Override
+            public CompletionStage<MutableFloatMatrix2D> apply(
+                ClusterMatrixInfo info)
+            {
+                return downloadAsync(info, 
+                    0, 0, info.getNumRows(), info.getNumColumns());
+            }
+        });
+    }
+    
+    /**
+     * Download the specified sub-matrix of the matrix with the given name
+     * 
+     * @param name The name
+     * @param r0 The start row, inclusive
+     * @param c0 The start column, inclusive
+     * @param r1 The end row, exclusive
+     * @param c1 The end column, exclusive
+     * @return The sub-matrix
+     */
+    public MutableFloatMatrix2D download(
+        String name, int r0, int c0, int r1, int c1)
+    {
+        return ExecutorExtensions.await(
+            downloadAsync(name, r0, c0, r1, c1));
+    }
+    
+    /**
+     * Download the specified sub-matrix of the matrix with the given 
+     * name. Only the blocks that overlap the sub-matrix are sent to the
+     * client.
+     * 
+     * @param name The name
+     * @param r0 The start row, inclusive
+     * @param c0 The start column, inclusive
+     * @param r1 The end row, exclusive
+     * @param c1 The end column, exclusive
+     * @return The future that will be completed with the sub-matrix
+     */
+    public CompletableFuture<MutableFloatMatrix2D> downloadAsync(
+        String name, final int r0, final int c0, final int r1, final int c1)
+    {
+        return getInfoAsync(name).thenCompose(
+            new Function<ClusterMatrixInfo, 
+                CompletionStage<MutableFloatMatrix2D>>()
+        {
+            @Override
+            public CompletionStage<MutableFloatMatrix2D> apply(
+                ClusterMatrixInfo info)
+            {
+                return downloadAsync(info, r0, c0, r1, c1);
+            }
+        });
+    }
+    
+    /**
+     * Remove the matrix with the given name from the cluster. If no 
+     * matrix with the given name is stored, then this has no effect.
+     * 
+     * @param name The name
+     */
+    public void delete(String name)
+    {
+        ExecutorExtensions.await(deleteAsync(name));
+    }
+    
+    /**
+     * Remove the matrix with the given name from the cluster. If no 
+     * matrix with the given name is stored, then this has no effect.
+     * 
+     * @param name The name
+     * @return The future that will be completed when the matrix was
+     * removed
+     */
+    public CompletableFuture<Void> deleteAsync(String name)
+    {
+        return infos.removeAsync(name).toCompletableFuture().thenCompose(
+            new Function<ClusterMatrixInfo, CompletionStage<Void>>()
+        {
+            @Override
+            public CompletionStage<Void> apply(ClusterMatrixInfo info)
+            {
+                if (info == null)
+                {
+                    return CompletableFuture.completedFuture(null);
+                }
+                return removeBlocks(info);
+            }
+        });
+    }
+    
+    /**
+     * Create a new {@link ClusterMatrixInfo} for a matrix with the given
+     * name and size. The storage ID will be unique.
+     * 
+     * @param name The name
+     * @param numRows The number of rows
+     * @param numColumns The number of columns
+     * @return The {@link ClusterMatrixInfo}
+     */
+    private ClusterMatrixInfo createInfo(
+        String name, int numRows, int numColumns)
+    {
+        String storageId = name + "-" + UUID.randomUUID();
+        return new ClusterMatrixInfo(
+            storageId, numRows, numColumns, blockSize);
+    }
+    
+    /**
+     * Make sure that the given {@link ClusterMatrixInfo} was stored with
+     * the block size of this instance
+     * 
+     * @param name The name of the matrix
+     * @param info The {@link ClusterMatrixInfo}
+     * @throws IllegalArgumentException If the block size is different
+     */
+    private void validate(String name, ClusterMatrixInfo info)
+    {
+        if (info.getBlockSize() != blockSize)
+        {
+            throw new IllegalArgumentException(
+                "Matrix '" + name + "' was stored with a block size of " +
+                info.getBlockSize() + ", expected " + blockSize);
+        }
+    }
+    
+    /**
+     * Store the given {@link ClusterMatrixInfo} under the given name, 
+     * and remove the blocks of the matrix that was previously stored
+     * under this name
+     * 
+     * @param name The name
+     * @param info The {@link ClusterMatrixInfo}
+     * @return The future that will be completed with the given info
+     * when it was stored
+     */
+    private CompletableFuture<ClusterMatrixInfo> publish(
+        String name, final ClusterMatrixInfo info)
+    {
+        return infos.putAsync(name, info).toCompletableFuture().thenApply(
+            new Function<ClusterMatrixInfo, ClusterMatrixInfo>()
+        {
+            @Override
+            public ClusterMatrixInfo apply(ClusterMatrixInfo oldInfo)
+            {
+                if (oldInfo != null)
+                {
+                    removeBlocks(oldInfo);
+                }
+                return info;
+            }
+        });
+    }
+    
+    /**
+     * Create a consumer that removes the blocks of the matrix with the
+     * given {@link ClusterMatrixInfo} when it receives an exception,
+     * meaning that the matrix could not be stored
+     * 
+     * @param info The {@link ClusterMatrixInfo}
+     * @return The consumer
+     */
+    private BiConsumer<Object, Throwable> createCleanup(
+        final ClusterMatrixInfo info)
+    {
+        return new BiConsumer<Object, Throwable>()
+        {
+            @Override
+            public void accept(Object value, Throwable t)
+            {
+                if (t != null)
+                {
+                    removeBlocks(info);
+                }
+            }
+        };
+    }
+    
+    /**
+     * Remove the blocks of the matrix with the given 
+     * {@link ClusterMatrixInfo}
+     * 
+     * @param info The {@link ClusterMatrixInfo}
+     * @return The future that will be completed when the blocks are 
+     * removed
+     */
+    private CompletableFuture<Void> removeBlocks(ClusterMatrixInfo info)
+    {
+        return CompletableFuture.allOf(operandStore.remove(
+            info.getStorageId(), info.getNumRows(), info.getNumColumns(), 
+            info.getBlockSize(), BlockKey.Grouping.ROW));
+    }
+    
+    /**
+     * Returns the specified block of the matrix with the given 
+     * {@link ClusterMatrixInfo}
+     * 
+     * @param info The {@link ClusterMatrixInfo}
+     * @param r The row block index
+     * @param c The column block index
+     * @return The future that will be completed with the block
+     */
+    private CompletableFuture<FloatMatrix2D> getBlockAsync(
+        final ClusterMatrixInfo info, final int r, final int c)
+    {
+        if (r < 0 || r >= info.getNumRowBlocks() || 
+            c < 0 || c >= info.getNumColumnBlocks())
+        {
+            CompletableFuture<FloatMatrix2D> result = 
+                new CompletableFuture<FloatMatrix2D>();
+            result.completeExceptionally(new IndexOutOfBoundsException(
+                "Block " + r + "," + c + " is not in the range of " + 
+                info.getNumRowBlocks() + "x" + info.getNumColumnBlocks() + 
+                " blocks"));
+            return result;
+        }
+        BlockKey key = 
+            new BlockKey(info.getStorageId(), r, c, BlockKey.Grouping.ROW);
+        return operandStore.get(key).thenApply(
+            new Function<FloatMatrix2D, FloatMatrix2D>()
+        {
+            @Override
+            public FloatMatrix2D apply(FloatMatrix2D block)
+            {
+                if (block == null)
+                {
+                    throw new IllegalStateException("Block " + r + "," + 
+                        c + " of " + info + " is not stored in the cluster");
+                }
+                return block;
+            }
+        });
+    }
+    
+    /**
+     * Download the specified sub-matrix of the matrix with the given 
+     * {@link ClusterMatrixInfo}
+     * 
+     * @param info The {@link ClusterMatrixInfo}
+     * @param r0 The start row, inclusive
+     * @param c0 The start column, inclusive
+     * @param r1 The end row, exclusive
+     * @param c1 The end column, exclusive
+     * @return The future that will be completed with the sub-matrix
+     */
+    private CompletableFuture<MutableFloatMatrix2D> downloadAsync(
+        ClusterMatrixInfo info, final int r0, final int c0, 
+        final int r1, final int c1)
+    {
+        if (r0 < 0 || c0 < 0 || r1 < r0 || c1 < c0 || 
+            r1 > info.getNumRows() || c1 > info.getNumColumns())
+        {
+            CompletableFuture<MutableFloatMatrix2D> result = 
+                new CompletableFuture<MutableFloatMatrix2D>();
+            result.completeExceptionally(new IndexOutOfBoundsException(
+                "Range (" + r0 + "," + c0 + ")-(" + r1 + "," + c1 + 
+                ") is not in a matrix with size " + 
+                info.getNumRows() + "x" + info.getNumColumns()));
+            return result;
+        }
+        final MutableFloatMatrix2D result = 
+            Matrices.createFloatMatrix2D(r1 - r0, c1 - c0);
+        List<CompletableFuture<Void>> futures = 
+            new ArrayList<CompletableFuture<Void>>();
+        int rb0 = r0 / blockSize;
+        int cb0 = c0 / blockSize;
+        int rb1 = MatMulUtils.divCeil(r1, blockSize);
+        int cb1 = MatMulUtils.divCeil(c1, blockSize);
+        for (int rb = rb0; rb < rb1; rb++)
+        {
+            for (int cb = cb0; cb < cb1; cb++)
+            {
+                final int br0 = rb * blockSize;
+                final int bc0 = cb * blockSize;
+                futures.add(getBlockAsync(info, rb, cb).thenAccept(
+                    new Consumer<FloatMatrix2D>()
+                {
+                    @Override
+                    public void accept(FloatMatrix2D block)
+                    {
+                        copyOverlap(block, br0, bc0, result, r0, c0);
+                    }
+                }));
+            }
+        }
+        CompletableFuture<Void> all = CompletableFuture.allOf(
+            futures.toArray(new CompletableFuture<?>[futures.size()]));
+        return all.thenApply(new Function<Void, MutableFloatMatrix2D>()
+        {
+            @Override
+            public MutableFloatMatrix2D apply(Void value)
+            {
+                return result;
+            }
+        });
+    }
+    
+    /**
+     * Copy the overlapping region of the given source matrix (which
+     * starts at the given position in the whole matrix) into the given
+     * target matrix (which starts at the given position in the whole
+     * matrix)
+     * 
+     * @param source The source matrix
+     * @param sr0 The row of the source in the whole matrix
+     * @param sc0 The column of the source in the whole matrix
+     * @param target The target matrix
+     * @param tr0 The row of the target in the whole matrix
+     * @param tc0 The column of the target in the whole matrix
+     */
+    private static void copyOverlap(FloatMatrix2D source, int sr0, int sc0,
+        MutableFloatMatrix2D target, int tr0, int tc0)
+    {
+        int r0 = Math.max(sr0, tr0);
+        int c0 = Math.max(sc0, tc0);
+        int r1 = Math.min(sr0 + source.getNumRows(), 
+            tr0 + target.getNumRows());
+        int c1 = Math.min(sc0 + source.getNumColumns(), 
+            tc0 + target.getNumColumns());
+        if (r1 <= r0 || c1 <= c0)
+        {
+            return;
+        }
+        FloatMatrix2D sourceRegion = source.subMatrix(
+            r0 - sr0, c0 - sc0, r1 - sr0, c1 - sc0);
+        MutableFloatMatrix2D targetRegion = target.subMatrix(
+            r0 - tr0, c0 - tc0, r1 - tr0, c1 - tc0);
+        FloatBuffer values = FloatBuffer.allocate((r1 - r0) * (c1 - c0));
+        sourceRegion.getDataColumnMajor(values);
+        values.flip();
+        targetRegion.setDataColumnMajor(values);
+    }
+    
+    @Override
+    public String toString()
+    {
+        return getClass().getSimpleName()+
+            "[asyncExecutorFactory="+asyncExecutorFactory+","+
+            "subMatrixMultiplicatorFactory="+
+            subMatrixMultiplicatorFactory+","+
+            "blockSize="+blockSize+"]";
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+/**
+ * Information about a matrix that is stored in the cluster by 
+ * {@link ClusterMatrices}. <br />
+ * <br />
+ * The blocks of the matrix are stored under a storage ID that is 
+ * different for each version of a matrix with a certain name. This
+ * ensures that blocks of a previous version that are still contained
+ * in the {@link BlockCache} of a member are not used for the new one.
+ */
+public final class ClusterMatrixInfo
+{
+    /**
+     * The ID under which the blocks of the matrix are stored
+     */
+    private final String storageId;
+    
+    /**
+     * The number of rows
+     */
+    private final int numRows;
+    
+    /**
+     * The number of columns
+     */
+    private final int numColumns;
+    
+    /**
+     * The block size
+     */
+    private final int blockSize;
+    
+    /**
+     * Creates a new instance
+     * 
+     * @param storageId The ID under which the blocks are stored
+     * @param numRows The number of rows
+     * @param numColumns The number of columns
+     * @param blockSize The block size
+     */
+    ClusterMatrixInfo(String storageId, 
+        int numRows, int numColumns, int blockSize)
+    {
+        this.storageId = storageId;
+        this.numRows = numRows;
+        this.numColumns = numColumns;
+        this.blockSize = blockSize;
+    }
+    
+    /**
+     * Returns the ID under which the blocks of the matrix are stored
+     * 
+     * @return The storage ID
+     */
+    String getStorageId()
+    {
+        return storageId;
+    }
+    
+    /**
+     * Returns the number of rows of the matrix
+     * 
+     * @return The number of rows
+     */
+    public int getNumRows()
+    {
+        return numRows;
+    }
+    
+    /**
+     * Returns the number of columns of the matrix
+     * 
+     * @return The number of columns
+     */
+    public int getNumColumns()
+    {
+        return numColumns;
+    }
+    
+    /**
+     * Returns the size of the blocks that the matrix is stored in
+     * 
+     * @return The block size
+     */
+    public int getBlockSize()
+    {
+        return blockSize;
+    }
+    
+    /**
+     * Returns the number of rows of blocks of the matrix
+     * 
+     * @return The number of rows of blocks
+     */
+    public int getNumRowBlocks()
+    {
+        return MatMulUtils.divCeil(numRows, blockSize);
+    }
+    
+    /**
+     * Returns the number of columns of blocks of the matrix
+     * 
+     * @return The number of columns of blocks
+     */
+    public int getNumColumnBlocks()
+    {
+        return MatMulUtils.divCeil(numColumns, blockSize);
+    }
+    
+    @Override
+    public String toString()
+    {
+        return getClass().getSimpleName() + "[" + 
+            "storageId=" + storageId + "," +
+            "numRows=" + numRows + "," + 
+            "numColumns=" + numColumns + "," +
+            "blockSize=" + blockSize + "]";
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+import de.javagl.hazelcast.matmul.AsyncExecutor;
+import de.javagl.hazelcast.matmul.ExecutorExtensions;
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.Matrices;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+
+/**
+ * A single, asynchronous execution of a multiplication of two matrices 
+ * that are stored by {@link ClusterMatrices}, where the result is 
+ * stored in the cluster as well.<br />
+ * <br />
+ * The job dispatches one {@link StoredBlocksTask} for each block of the
+ * result matrix. The tasks read the blocks of the factors from the map,
+ * and store the resulting block in the map, so that no blocks are sent
+ * to the client. All matrices of {@link ClusterMatrices} are grouped by
+ * rows, and each task is sent to the owner of the row of the first 
+ * factor that it requires. If the job fails, the blocks of the result 
+ * that have already been stored are removed.
+ */
+final class ClusterProductJob
+{
+    /**
+     * The logger used in this class
+     */
+    private static final Logger logger = 
+        Logger.getLogger(ClusterProductJob.class.getName());
+    
+    /**
+     * The ID of this job
+     */
+    private final String jobId;
+    
+    /**
+     * The {@link OperandStore} that contains the blocks
+     */
+    private final OperandStore operandStore;
+    
+    /**
+     * The executor that the tasks are submitted to
+     */
+    private final AsyncExecutor executor;
+    
+    /**
+     * The {@link Factory} for the {@link MatrixMultiplicator} instances
+     * that will multiply the blocks on the members
+     */
+    private final Factory<MatrixMultiplicator> subMatrixMultiplicatorFactory;
+    
+    /**
+     * The information about the first factor
+     */
+    private final ClusterMatrixInfo infoA;
+    
+    /**
+     * The information about the second factor
+     */
+    private final ClusterMatrixInfo infoB;
+    
+    /**
+     * The information about the result
+     */
+    private final ClusterMatrixInfo infoC;
+    
+    /**
+     * The future that will be completed when this job is finished
+     */
+    private final CompletableFuture<ClusterMatrixInfo> future;
+    
+    /**
+     * The futures of the tasks that are currently executed
+     */
+    private final Set<CompletableFuture<?>> pendingFutures;
+    
+    /**
+     * The number of blocks of the result matrix that have not been
+     * computed yet
+     */
+    private final AtomicInteger remainingBlocks;
+    
+    /**
+     * Creates a new job
+     * 
+     * @param operandStore The {@link OperandStore} that contains the blocks
+     * @param executor The {@link AsyncExecutor}. This executor will be 
+     * shut down when the job is finished.
+     * @param subMatrixMultiplicatorFactory The {@link Factory} for the 
+     * {@link MatrixMultiplicator} that will multiply the blocks
+     * @param infoA The information about the first factor
+     * @param infoB The information about the second factor
+     * @param infoC The information about the result
+     */
+    ClusterProductJob(final OperandStore operandStore, 
+        final AsyncExecutor executor, 
+        Factory<MatrixMultiplicator> subMatrixMultiplicatorFactory,
+        ClusterMatrixInfo infoA, ClusterMatrixInfo infoB, 
+        final ClusterMatrixInfo infoC)
+    {
+        this.jobId = UUID.randomUUID().toString();
+        this.operandStore = operandStore;
+        this.executor = executor;
+        this.subMatrixMultiplicatorFactory = subMatrixMultiplicatorFactory;
+        this.infoA = infoA;
+        this.infoB = infoB;
+        this.infoC = infoC;
+        this.future = new CompletableFuture<ClusterMatrixInfo>();
+        this.pendingFutures = Collections.newSetFromMap(
+            new ConcurrentHashMap<CompletableFuture<?>, Boolean>());
+        this.remainingBlocks = new AtomicInteger();
+        
+        future.whenComplete(new BiConsumer<Object, Throwable>()
+        {
+            @Override
+            public void accept(Object value, Throwable t)
+            {
+                if (t != null)
+                {
+                    for (CompletableFuture<?> pendingFuture : pendingFutures)
+                    {
+                        pendingFuture.cancel(true);
+                    }
+                    operandStore.remove(infoC.getStorageId(), 
+                        infoC.getNumRows(), infoC.getNumColumns(), 
+                        infoC.getBlockSize(), BlockKey.Grouping.ROW);
+                }
+                executor.shutdown();
+            }
+        });
+    }
+    
+    /**
+     * Start this job
+     * 
+     * @return The future that will be completed with the information
+     * about the result when the job is finished
+     */
+    CompletableFuture<ClusterMatrixInfo> start()
+    {
+        int numRowBlocks = infoC.getNumRowBlocks();
+        int numColumnBlocks = infoC.getNumColumnBlocks();
+        int numOuterProducts = infoA.getNumColumnBlocks();
+        if (numRowBlocks * numColumnBlocks == 0)
+        {
+            future.complete(infoC);
+            return future;
+        }
+        if (numOuterProducts == 0)
+        {
+            storeZeroResult();
+            return future;
+        }
+        remainingBlocks.set(numRowBlocks * numColumnBlocks);
+        logger.fine("Dispatching " + remainingBlocks + " tasks for job " + 
+            jobId);
+        for (int r = 0; r < numRowBlocks; r++)
+        {
+            for (int c = 0; c < numColumnBlocks; c++)
+            {
+                if (future.isDone())
+                {
+                    return future;
+                }
+                BlockKey keysA[] = new BlockKey[numOuterProducts];
+                BlockKey keysB[] = new BlockKey[numOuterProducts];
+                for (int p = 0; p < numOuterProducts; p++)
+                {
+                    keysA[p] = new BlockKey(infoA.getStorageId(), 
+                        r, p, BlockKey.Grouping.ROW);
+                    keysB[p] = new BlockKey(infoB.getStorageId(), 
+                        p, c, BlockKey.Grouping.ROW);
+                }
+                BlockKey resultKey = new BlockKey(infoC.getStorageId(), 
+                    r, c, BlockKey.Grouping.ROW);
+                StoredBlocksTask task = new StoredBlocksTask(jobId, 
+                    operandStore.getMapName(), r, c, keysA, keysB, 
+                    resultKey, subMatrixMultiplicatorFactory);
+                submit(task, keysA[0]);
+            }
+        }
+        return future;
+    }
+    
+    /**
+     * Store the blocks of a result matrix that only contains zeros. 
+     * This is used when the factors have zero columns or rows.
+     */
+    private void storeZeroResult()
+    {
+        operandStore.upload(infoC.getStorageId(), 
+            Matrices.createFloatMatrix2D(
+                infoC.getNumRows(), infoC.getNumColumns()), 
+            infoC.getBlockSize(), BlockKey.Grouping.ROW).whenComplete(
+                new BiConsumer<Void, Throwable>()
+        {
+            @Override
+            public void accept(Void value, Throwable t)
+            {
+                if (t != null)
+                {
+                    future.completeExceptionally(
+                        ExecutorExtensions.unwrap(t));
+                    return;
+                }
+                future.complete(infoC);
+            }
+        });
+    }
+    
+    /**
+     * Submit the given task. If the executor is a 
+     * {@link HazelcastAsyncExecutor} or one of its job executors, then 
+     * the task is submitted to the owner of the given key.
+     * 
+     * @param task The task
+     * @param key The key of a block that is required by the task
+     */
+    private void submit(StoredBlocksTask task, BlockKey key)
+    {
+        final CompletableFuture<BlockResults> taskFuture = 
+            HazelcastAsyncExecutor.submitToKeyOwner(executor, task, key);
+        pendingFutures.add(taskFuture);
+        taskFuture.whenComplete(new BiConsumer<BlockResults, Throwable>()
+        {
+            @Override
+            public void accept(BlockResults results, Throwable t)
+            {
+                pendingFutures.remove(taskFuture);
+                if (t != null)
+                {
+                    future.completeExceptionally(
+                        ExecutorExtensions.unwrap(t));
+                    return;
+                }
+                if (remainingBlocks.decrementAndGet() == 0)
+                {
+                    future.complete(infoC);
+                }
+            }
+        });
+    }
+}
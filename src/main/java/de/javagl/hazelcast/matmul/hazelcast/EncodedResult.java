@@ -0,0 +1,101 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+/**
+ * The result of an {@link EncodedTask}
+ *
+ * @param <T> The type of the wrapped result
+ */
+final class EncodedResult<T>
+{
+    /**
+     * The wrapped result
+     */
+    private final T value;
+    
+    /**
+     * The {@link BlockEncoding} for writing the wrapped result
+     */
+    private final BlockEncoding blockEncoding;
+    
+    /**
+     * The maximum relative error that was caused by writing the 
+     * wrapped result
+     */
+    private final float maxRelativeError;
+    
+    /**
+     * Creates a new instance
+     * 
+     * @param value The wrapped result
+     * @param blockEncoding The {@link BlockEncoding} for writing the
+     * wrapped result. This is <code>null</code> for results that have 
+     * been read.
+     * @param maxRelativeError The maximum relative error that was caused
+     * by writing the wrapped result. This is 0.0 for results that have
+     * not been written yet.
+     */
+    EncodedResult(T value, BlockEncoding blockEncoding, 
+        float maxRelativeError)
+    {
+        this.value = value;
+        this.blockEncoding = blockEncoding;
+        this.maxRelativeError = maxRelativeError;
+    }
+    
+    /**
+     * Returns the wrapped result
+     * 
+     * @return The wrapped result
+     */
+    T getValue()
+    {
+        return value;
+    }
+    
+    /**
+     * Returns the {@link BlockEncoding} for writing the wrapped result
+     * 
+     * @return The {@link BlockEncoding}
+     */
+    BlockEncoding getBlockEncoding()
+    {
+        return blockEncoding;
+    }
+    
+    /**
+     * Returns the maximum relative error that was caused by writing the 
+     * wrapped result
+     * 
+     * @return The maximum relative error
+     */
+    float getMaxRelativeError()
+    {
+        return maxRelativeError;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.io.IOException;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.StreamSerializer;
+
+/**
+ * Serializer for {@link EncodedResult} instances. The matrices of the 
+ * wrapped result are written with the result precision of the 
+ * {@link BlockEncoding}, followed by the maximum relative error that 
+ * this caused.
+ */
+@SuppressWarnings("rawtypes")
+final class EncodedResultSerializer implements StreamSerializer<EncodedResult>
+{
+    @Override
+    public int getTypeId()
+    {
+        return 9876;
+    }
+
+    @Override
+    public void write(ObjectDataOutput out, EncodedResult result)
+        throws IOException
+    {
+        BlockEncoding blockEncoding = result.getBlockEncoding();
+        if (blockEncoding == null)
+        {
+            // The result has already been read, for example by a member 
+            // that forwards it to a client. Its matrices are written 
+            // as they are, together with the error of the first writing
+            FloatMatrix2DSerializer.writeObject(out, result.getValue(), 
+                BlockEncoding.NONE, BlockPrecision.FP32);
+            out.writeFloat(result.getMaxRelativeError());
+            return;
+        }
+        FloatMatrix2DSerializer.writeObject(out, result.getValue(), 
+            blockEncoding, blockEncoding.getResultPrecision());
+        out.writeFloat(blockEncoding.fetchMaxRelativeError());
+    }
+
+    @Override
+    public EncodedResult read(ObjectDataInput in) throws IOException
+    {
+        Object value = in.readObject();
+        float maxRelativeError = in.readFloat();
+        return new EncodedResult<Object>(value, null, maxRelativeError);
+    }
+
+    @Override
+    public void destroy()
+    {
+        // Not used
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.util.concurrent.Callable;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.HazelcastInstanceAware;
+
+import de.javagl.hazelcast.matmul.MatMulBatchTask;
+import de.javagl.hazelcast.matmul.MatMulTask;
+
+/**
+ * A task that wraps another task, together with the {@link BlockEncoding}
+ * of the job that the task belongs to. The matrices of the wrapped task
+ * are written with this encoding when this task is sent to a member, and
+ * the matrices of the result of the wrapped task are written with this
+ * encoding when the {@link EncodedResult} is returned to the caller.
+ * <br />
+ * <br />
+ * If the wrapped task is a {@link MatMulTask} or a 
+ * {@link MatMulBatchTask}, then its multiplication is performed with
+ * the {@link MatMulMemberContext#createMultiplicator(
+ * de.javagl.hazelcast.matmul.Factory) multiplicator of the member},
+ * so that all tasks on one member share the same compute threads.
+ *
+ * @param <T> The result type of the wrapped task
+ */
+final class EncodedTask<T> 
+    implements Callable<EncodedResult<T>>, HazelcastInstanceAware
+{
+    /**
+     * The wrapped task
+     */
+    private final Callable<T> callable;
+    
+    /**
+     * The {@link BlockEncoding}
+     */
+    private final BlockEncoding blockEncoding;
+    
+    /**
+     * The HazelcastInstance of the member that executes this task
+     */
+    private transient HazelcastInstance hazelcastInstance;
+    
+    /**
+     * Creates a new instance
+     * 
+     * @param callable The wrapped task
+     * @param blockEncoding The {@link BlockEncoding}
+     */
+    EncodedTask(Callable<T> callable, BlockEncoding blockEncoding)
+    {
+        this.callable = callable;
+        this.blockEncoding = blockEncoding;
+    }
+    
+    /**
+     * Returns the wrapped task
+     * 
+     * @return The wrapped task
+     */
+    Callable<T> getCallable()
+    {
+        return callable;
+    }
+    
+    /**
+     * Returns the {@link BlockEncoding}
+     * 
+     * @return The {@link BlockEncoding}
+     */
+    BlockEncoding getBlockEncoding()
+    {
+        return blockEncoding;
+    }
+    
+    @Override
+    public void setHazelcastInstance(HazelcastInstance hazelcastInstance)
+    {
+        this.hazelcastInstance = hazelcastInstance;
+        if (callable instanceof HazelcastInstanceAware)
+        {
+            ((HazelcastInstanceAware)callable).setHazelcastInstance(
+                hazelcastInstance);
+        }
+    }
+    
+    @Override
+    public EncodedResult<T> call() throws Exception
+    {
+        T result = computeResult();
+        return new EncodedResult<T>(result, blockEncoding, 0.0f);
+    }
+    
+    /**
+     * Compute the result of the wrapped task
+     * 
+     * @return The result
+     * @throws Exception If the wrapped task throws an exception
+     */
+    private T computeResult() throws Exception
+    {
+        if (hazelcastInstance == null)
+        {
+            return callable.call();
+        }
+        MatMulMemberContext context = 
+            MatMulMemberContext.get(hazelcastInstance);
+        if (callable instanceof MatMulTask)
+        {
+            MatMulTask task = (MatMulTask)callable;
+            // The callable is a MatMulTask, so T is MatMulResult
+            @SuppressWarnings("unchecked")
+            T result = (T)task.call(context.createMultiplicator(
+                task.getMatrixMultiplicatorFactory()));
+            return result;
+        }
+        if (callable instanceof MatMulBatchTask)
+        {
+            MatMulBatchTask task = (MatMulBatchTask)callable;
+            // The callable is a MatMulBatchTask, so T is MatMulBatchResult
+            @SuppressWarnings("unchecked")
+            T result = (T)task.call(context.createMultiplicator(
+                task.getMatrixMultiplicatorFactory()));
+            return result;
+        }
+        return callable.call();
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.StreamSerializer;
+
+/**
+ * Serializer for {@link EncodedTask} instances. The matrices of the 
+ * wrapped task are written with the operand precision of the 
+ * {@link BlockEncoding}.
+ */
+@SuppressWarnings("rawtypes")
+final class EncodedTaskSerializer implements StreamSerializer<EncodedTask>
+{
+    @Override
+    public int getTypeId()
+    {
+        return 10987;
+    }
+
+    @Override
+    public void write(ObjectDataOutput out, EncodedTask task)
+        throws IOException
+    {
+        BlockEncoding blockEncoding = task.getBlockEncoding();
+        out.writeByte(blockEncoding.getCompression().ordinal());
+        out.writeByte(blockEncoding.getOperandPrecision().ordinal());
+        out.writeByte(blockEncoding.getResultPrecision().ordinal());
+        FloatMatrix2DSerializer.writeObject(out, task.getCallable(), 
+            blockEncoding, blockEncoding.getOperandPrecision());
+    }
+
+    @Override
+    public EncodedTask read(ObjectDataInput in) throws IOException
+    {
+        BlockCompression compression = 
+            readValue(in, BlockCompression.values());
+        BlockPrecision operandPrecision = 
+            readValue(in, BlockPrecision.values());
+        BlockPrecision resultPrecision = 
+            readValue(in, BlockPrecision.values());
+        Callable<?> callable = in.readObject();
+        BlockEncoding blockEncoding = new BlockEncoding(
+            compression, operandPrecision, resultPrecision);
+        return createEncodedTask(callable, blockEncoding);
+    }
+    
+    /**
+     * Creates a new {@link EncodedTask}
+     * 
+     * @param <T> The result type
+     * @param callable The wrapped task
+     * @param blockEncoding The {@link BlockEncoding}
+     * @return The {@link EncodedTask}
+     */
+    private static <T> EncodedTask<T> createEncodedTask(
+        Callable<T> callable, BlockEncoding blockEncoding)
+    {
+        return new EncodedTask<T>(callable, blockEncoding);
+    }
+    
+    /**
+     * Reads the ordinal of an enum value from the given input, and 
+     * returns the corresponding value
+     * 
+     * @param <E> The enum type
+     * @param in The input
+     * @param values The enum values
+     * @return The value
+     * @throws IOException If an IO error occurs, or the ordinal is invalid
+     */
+    private static <E extends Enum<E>> E readValue(
+        ObjectDataInput in, E values[]) throws IOException
+    {
+        int ordinal = in.readByte();
+        if (ordinal < 0 || ordinal >= values.length)
+        {
+            throw new IOException("Invalid block encoding: " + ordinal);
+        }
+        return values[ordinal];
+    }
+
+    @Override
+    public void destroy()
+    {
+        // Not used
+    }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+/**
+ * Methods for converting float values to and from 16-bit floating
+ * point representations. The 16-bit values are stored in the lower 
+ * 16 bits of <code>int</code> values. The conversions to the 16-bit
+ * representations round to the nearest value, with ties to even.
+ */
+final class Float16Conversions
+{
+    /**
+     * Converts the given float value into a 16-bit "brain floating 
+     * point" value
+     * 
+     * @param value The value
+     * @return The bf16 value
+     */
+    static int toBFloat16(float value)
+    {
+        int bits = Float.floatToRawIntBits(value);
+        if ((bits & 0x7fffffff) > 0x7f800000)
+        {
+            // Keep NaN values quiet, even if the payload is truncated
+            return (bits >>> 16) | 0x0040;
+        }
+        int lsb = (bits >>> 16) & 1;
+        return (bits + 0x7fff + lsb) >>> 16;
+    }
+    
+    /**
+     * Converts the given 16-bit "brain floating point" value into a 
+     * float value
+     * 
+     * @param bf16 The bf16 value
+     * @return The float value
+     */
+    static float fromBFloat16(int bf16)
+    {
+        return Float.intBitsToFloat((bf16 & 0xffff) << 16);
+    }
+    
+    /**
+     * Converts the given float value into a 16-bit IEEE 754 half 
+     * precision value. Values that exceed the range of half precision
+     * values are converted into infinity.
+     * 
+     * @param value The value
+     * @return The fp16 value
+     */
+    static int toHalf(float value)
+    {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int abs = bits & 0x7fffffff;
+        if (abs > 0x7f800000)
+        {
+            return sign | 0x7e00;
+        }
+        if (abs >= 0x477ff000)
+        {
+            // Values that are at least 65520 are rounded to infinity
+            return sign | 0x7c00;
+        }
+        if (abs >= 0x38800000)
+        {
+            // Normal values. An overflow of the mantissa due to the 
+            // rounding correctly increases the exponent
+            int exponent = (abs >>> 23) - 112;
+            int mantissa = abs & 0x7fffff;
+            int half = (exponent << 10) | (mantissa >>> 13);
+            int remainder = mantissa & 0x1fff;
+            if (remainder > 0x1000 || 
+                (remainder == 0x1000 && (half & 1) != 0))
+            {
+                half++;
+            }
+            return sign | half;
+        }
+        if (abs <= 0x33000000)
+        {
+            // Values that are at most 2^-25 are rounded to zero
+            return sign;
+        }
+        // Subnormal values, which are multiples of 2^-24
+        float scaled = Float.intBitsToFloat(abs) * 16777216.0f;
+        return sign | (int)Math.rint(scaled);
+    }
+    
+    /**
+     * Converts the given 16-bit IEEE 754 half precision value into a 
+     * float value
+     * 
+     * @param half The fp16 value
+     * @return The float value
+     */
+    static float fromHalf(int half)
+    {
+        int sign = (half & 0x8000) << 16;
+        int exponent = (half >>> 10) & 0x1f;
+        int mantissa = half & 0x3ff;
+        if (exponent == 0)
+        {
+            float value = mantissa * 5.9604645E-8f;
+            return sign == 0 ? value : -value;
+        }
+        if (exponent == 0x1f)
+        {
+            return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+        }
+        return Float.intBitsToFloat(
+            sign | ((exponent + 112) << 23) | (mantissa << 13));
+    }
+    
+    /**
+     * Private constructor to prevent instantiation
+     */
+    private Float16Conversions()
+    {
+        // Private constructor to prevent instantiation
+    }
+}
@@ -29,6 +29,9 @@ package de.javagl.hazelcast.matmul.hazelcast;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import com.hazelcast.nio.ObjectDataInput;
 import com.hazelcast.nio.ObjectDataOutput;
@@ -36,13 +39,367 @@ import com.hazelcast.nio.serialization.StreamSerializer;
 
 import de.javagl.hazelcast.matmul.FloatMatrix2D;
 import de.javagl.hazelcast.matmul.Matrices;
+import de.javagl.hazelcast.matmul.MatrixPool;
 import de.javagl.hazelcast.matmul.MutableFloatMatrix2D;
 
 /**
- * A Hazelcast StreamSerializer for {@link FloatMatrix2D} objects.
+ * A Hazelcast StreamSerializer for {@link FloatMatrix2D} objects. <br />
+ * <br />
+ * By default, the elements are written exactly and without compression.
+ * The matrices that are contained in a task or result that is written 
+ * with {@link #writeObject} are compressed according to the 
+ * {@link BlockCompression} of the given {@link BlockEncoding}, and 
+ * written with the given {@link BlockPrecision}. Each serialized matrix
+ * contains the information about its encoding, so matrices can always 
+ * be read, regardless of the settings that are used for writing them.
  */
 public class FloatMatrix2DSerializer implements StreamSerializer<FloatMatrix2D>
 {
+    /**
+     * The maximum number of elements that are copied at once
+     */
+    private static final int CHUNK_SIZE = 8192;
+    
+    /**
+     * The maximum number of bytes for the elements of one matrix. 
+     * Hazelcast stores each serialized object in a single byte array,
+     * so the elements have to fit into such an array, together with
+     * the other data of the same object.
+     */
+    private static final long MAX_DATA_BYTES = Integer.MAX_VALUE - (1 << 20);
+    
+    /**
+     * The encoding of matrices whose elements are written as raw 
+     * float values. Other encodings are combinations of the flags 
+     * that are defined here.
+     */
+    private static final byte ENCODING_RAW = 0;
+    
+    /**
+     * The encoding flag for matrices whose elements are written in chunks 
+     * that are compressed as described in {@link BlockCompression#DEFLATE}.
+     * Each chunk is preceded by the number of bytes that follow. A 
+     * negative number indicates that the chunk was not compressed.
+     */
+    private static final byte ENCODING_DEFLATE = 1;
+    
+    /**
+     * The encoding flag for matrices whose elements are written as
+     * {@link BlockPrecision#BF16} values
+     */
+    private static final byte ENCODING_BF16 = 2;
+    
+    /**
+     * The encoding flag for matrices whose elements are written as
+     * {@link BlockPrecision#FP16} values
+     */
+    private static final byte ENCODING_FP16 = 4;
+    
+    /**
+     * The settings for writing the matrices that are contained in an 
+     * object that is written with {@link #writeObject}
+     */
+    private static final class WriteSettings
+    {
+        /**
+         * The encoding of the matrices
+         */
+        private final byte encoding;
+        
+        /**
+         * The {@link BlockEncoding} that the relative errors are
+         * recorded in
+         */
+        private final BlockEncoding blockEncoding;
+        
+        /**
+         * Creates a new instance
+         * 
+         * @param encoding The encoding
+         * @param blockEncoding The {@link BlockEncoding}
+         */
+        WriteSettings(byte encoding, BlockEncoding blockEncoding)
+        {
+            this.encoding = encoding;
+            this.blockEncoding = blockEncoding;
+        }
+    }
+    
+    /**
+     * A buffer for copying the elements of a matrix in chunks
+     */
+    private static final class ChunkBuffer
+    {
+        /**
+         * The bytes of the buffer
+         */
+        private final byte bytes[];
+        
+        /**
+         * The float view on the bytes
+         */
+        private final FloatBuffer floats;
+        
+        /**
+         * The buffer for the shuffled bytes
+         */
+        private final byte shuffled[];
+        
+        /**
+         * The buffer for the compressed bytes
+         */
+        private final byte compressed[];
+        
+        /**
+         * The deflater, created lazily
+         */
+        private Deflater deflater;
+        
+        /**
+         * The inflater, created lazily
+         */
+        private Inflater inflater;
+        
+        /**
+         * Default constructor
+         */
+        ChunkBuffer()
+        {
+            this.bytes = new byte[CHUNK_SIZE * 4];
+            this.floats = ByteBuffer.wrap(bytes).asFloatBuffer();
+            this.shuffled = new byte[CHUNK_SIZE * 4];
+            this.compressed = new byte[CHUNK_SIZE * 4];
+        }
+        
+        /**
+         * Write the given number of bytes from this buffer to the 
+         * given output, compressing them if this makes them smaller
+         * 
+         * @param out The output
+         * @param numBytes The number of bytes
+         * @param elementSize The size of one element, in bytes
+         * @throws IOException If an IO error occurs
+         */
+        void writeDeflated(ObjectDataOutput out, int numBytes, 
+            int elementSize) throws IOException
+        {
+            shuffle(bytes, shuffled, numBytes, elementSize);
+            if (deflater == null)
+            {
+                deflater = new Deflater(Deflater.BEST_SPEED);
+            }
+            deflater.reset();
+            deflater.setInput(shuffled, 0, numBytes);
+            deflater.finish();
+            int numCompressedBytes = 
+                deflater.deflate(compressed, 0, numBytes - 1);
+            if (!deflater.finished())
+            {
+                out.writeInt(-numBytes);
+                out.write(bytes, 0, numBytes);
+                return;
+            }
+            out.writeInt(numCompressedBytes);
+            out.write(compressed, 0, numCompressedBytes);
+        }
+        
+        /**
+         * Read the given number of bytes into this buffer from the given
+         * input, which was written with {@link #writeDeflated}
+         * 
+         * @param in The input
+         * @param numBytes The number of bytes
+         * @param elementSize The size of one element, in bytes
+         * @throws IOException If an IO error occurs
+         */
+        void readDeflated(ObjectDataInput in, int numBytes, 
+            int elementSize) throws IOException
+        {
+            int length = in.readInt();
+            if (length < 0)
+            {
+                in.readFully(bytes, 0, numBytes);
+                return;
+            }
+            in.readFully(compressed, 0, length);
+            if (inflater == null)
+            {
+                inflater = new Inflater();
+            }
+            inflater.reset();
+            inflater.setInput(compressed, 0, length);
+            try
+            {
+                int n = inflater.inflate(shuffled, 0, numBytes);
+                if (n != numBytes)
+                {
+                    throw new IOException("Expected " + numBytes + 
+                        " bytes in compressed chunk, but found " + n);
+                }
+            }
+            catch (DataFormatException e)
+            {
+                throw new IOException(e);
+            }
+            unshuffle(shuffled, bytes, numBytes, elementSize);
+        }
+        
+        /**
+         * Convert the given number of float values in this buffer into
+         * 16-bit values with the precision that is indicated by the 
+         * given encoding, in place, and return the maximum relative 
+         * error that was caused by the conversion. 
+         * 
+         * @param n The number of elements
+         * @param encoding The encoding
+         * @return The maximum relative error
+         */
+        float reducePrecision(int n, byte encoding)
+        {
+            boolean bf16 = (encoding & ENCODING_BF16) != 0;
+            float maxRelativeError = 0.0f;
+            
+            // The value at index i is read before the bytes at 2*i 
+            // are written, so the conversion can be done in place
+            for (int i = 0; i < n; i++)
+            {
+                float value = floats.get(i);
+                int reduced;
+                float restored;
+                if (bf16)
+                {
+                    reduced = Float16Conversions.toBFloat16(value);
+                    restored = Float16Conversions.fromBFloat16(reduced);
+                }
+                else
+                {
+                    reduced = Float16Conversions.toHalf(value);
+                    restored = Float16Conversions.fromHalf(reduced);
+                }
+                bytes[i * 2] = (byte)(reduced >>> 8);
+                bytes[i * 2 + 1] = (byte)reduced;
+                if (value != 0.0f && !Float.isNaN(value) && 
+                    !Float.isInfinite(value))
+                {
+                    float relativeError = 
+                        Math.abs((restored - value) / value);
+                    maxRelativeError = 
+                        Math.max(maxRelativeError, relativeError);
+                }
+            }
+            return maxRelativeError;
+        }
+        
+        /**
+         * Convert the given number of 16-bit values with the precision 
+         * that is indicated by the given encoding into float values, 
+         * in place. 
+         * 
+         * @param n The number of elements
+         * @param encoding The encoding
+         */
+        void expandPrecision(int n, byte encoding)
+        {
+            boolean bf16 = (encoding & ENCODING_BF16) != 0;
+            prepare(n);
+            
+            // The bytes at 2*i are read before the value at index i is 
+            // written, going backwards, so the conversion can be done 
+            // in place
+            for (int i = n - 1; i >= 0; i--)
+            {
+                int reduced = 
+                    ((bytes[i * 2] & 0xff) << 8) | (bytes[i * 2 + 1] & 0xff);
+                float value;
+                if (bf16)
+                {
+                    value = Float16Conversions.fromBFloat16(reduced);
+                }
+                else
+                {
+                    value = Float16Conversions.fromHalf(reduced);
+                }
+                floats.put(i, value);
+            }
+        }
+        
+        /**
+         * Prepare the float view on this buffer for the given number
+         * of elements, and return it
+         * 
+         * @param n The number of elements
+         * @return The float buffer
+         */
+        FloatBuffer prepare(int n)
+        {
+            floats.clear();
+            floats.limit(n);
+            return floats;
+        }
+    }
+    
+    /**
+     * The {@link ChunkBuffer} instances for the threads
+     */
+    private static final ThreadLocal<ChunkBuffer> CHUNK_BUFFERS = 
+        new ThreadLocal<ChunkBuffer>()
+    {
+        @Override
+        protected ChunkBuffer initialValue()
+        {
+            return new ChunkBuffer();
+        }
+    };
+    
+    /**
+     * The {@link WriteSettings} of the object that is currently written
+     * by each thread with {@link #writeObject}, if any
+     */
+    private static final ThreadLocal<WriteSettings> WRITE_SETTINGS = 
+        new ThreadLocal<WriteSettings>();
+    
+    /**
+     * Write the given object to the given output. The matrices that are
+     * written as part of this object (with {@link #writeImpl}) are 
+     * compressed according to the given {@link BlockEncoding}, and 
+     * written with the given {@link BlockPrecision}. The maximum 
+     * relative error that is caused by the precision is recorded in 
+     * the given {@link BlockEncoding}. <br />
+     * <br />
+     * The settings only apply while the calling thread is writing the
+     * given object. Matrices that are written independently of such an 
+     * object are always written exactly and without compression.
+     * 
+     * @param out The output
+     * @param object The object, usually a task or a result
+     * @param blockEncoding The {@link BlockEncoding}
+     * @param precision The {@link BlockPrecision}
+     * @throws IOException If an IO error occurs
+     */
+    static void writeObject(ObjectDataOutput out, Object object,
+        BlockEncoding blockEncoding, BlockPrecision precision) 
+        throws IOException
+    {
+        WriteSettings previous = WRITE_SETTINGS.get();
+        WRITE_SETTINGS.set(new WriteSettings(createEncoding(
+            blockEncoding.getCompression(), precision), blockEncoding));
+        try
+        {
+            out.writeObject(object);
+        }
+        finally
+        {
+            if (previous == null)
+            {
+                WRITE_SETTINGS.remove();
+            }
+            else
+            {
+                WRITE_SETTINGS.set(previous);
+            }
+        }
+    }
+    
     @Override
     public int getTypeId()
     {
@@ -57,7 +414,17 @@ public class FloatMatrix2DSerializer implements StreamSerializer<FloatMatrix2D>
     }
     
     /**
-     * Writes the given matrix to the given output
+     * Writes the given matrix to the given output. <br />
+     * <br />
+     * The elements are written in column-major order. They are copied 
+     * from the matrix into the output in chunks, using a small buffer 
+     * that is reused by the calling thread, so that no temporary copy 
+     * of the whole matrix has to be allocated. If the matrix is written 
+     * as part of an object that is written with {@link #writeObject}, 
+     * then the elements are written with the {@link BlockPrecision} that
+     * was given there, and each chunk is compressed according to the 
+     * {@link BlockCompression} of the {@link BlockEncoding}. Otherwise,
+     * the elements are written as raw float values.
      * 
      * @param out The output
      * @param matrix The matrix
@@ -66,12 +433,61 @@ public class FloatMatrix2DSerializer implements StreamSerializer<FloatMatrix2D>
     static void writeImpl(ObjectDataOutput out, FloatMatrix2D matrix)
         throws IOException
     {
-        out.writeInt(matrix.getNumRows());
-        out.writeInt(matrix.getNumColumns());
-        byte data[] = new byte[matrix.getNumRows()*matrix.getNumColumns()*4];
-        FloatBuffer buffer = ByteBuffer.wrap(data).asFloatBuffer();
-        matrix.getDataColumnMajor(buffer);
-        out.write(data);
+        int numRows = matrix.getNumRows();
+        int numColumns = matrix.getNumColumns();
+        out.writeInt(numRows);
+        out.writeInt(numColumns);
+        WriteSettings writeSettings = WRITE_SETTINGS.get();
+        byte encoding = ENCODING_RAW;
+        if (writeSettings != null)
+        {
+            encoding = writeSettings.encoding;
+        }
+        long maxNumBytes = maxDataBytes(numRows, numColumns, encoding);
+        if (maxNumBytes > MAX_DATA_BYTES)
+        {
+            throw new IOException("The elements of a matrix with size " + 
+                numRows + "x" + numColumns + " may require " + maxNumBytes + 
+                " bytes, which exceeds the maximum of " + MAX_DATA_BYTES + 
+                " bytes for a single object. Use a smaller block size.");
+        }
+        out.writeByte(encoding);
+        boolean deflate = (encoding & ENCODING_DEFLATE) != 0;
+        int elementSize = elementSize(encoding);
+        float maxRelativeError = 0.0f;
+        ChunkBuffer chunkBuffer = CHUNK_BUFFERS.get();
+        int rowsPerChunk = rowsPerChunk(numRows);
+        int columnsPerChunk = columnsPerChunk(numRows);
+        for (int c0 = 0; c0 < numColumns; c0 += columnsPerChunk)
+        {
+            int c1 = Math.min(numColumns, c0 + columnsPerChunk);
+            for (int r0 = 0; r0 < numRows; r0 += rowsPerChunk)
+            {
+                int r1 = Math.min(numRows, r0 + rowsPerChunk);
+                int n = (r1 - r0) * (c1 - c0);
+                FloatBuffer floats = chunkBuffer.prepare(n);
+                matrix.subMatrix(r0, c0, r1, c1).getDataColumnMajor(floats);
+                if (elementSize != 4)
+                {
+                    maxRelativeError = Math.max(maxRelativeError, 
+                        chunkBuffer.reducePrecision(n, encoding));
+                }
+                int numBytes = n * elementSize;
+                if (deflate)
+                {
+                    chunkBuffer.writeDeflated(out, numBytes, elementSize);
+                }
+                else
+                {
+                    out.write(chunkBuffer.bytes, 0, numBytes);
+                }
+            }
+        }
+        if (writeSettings != null)
+        {
+            writeSettings.blockEncoding.updateMaxRelativeError(
+                maxRelativeError);
+        }
     }
 
     @Override
@@ -88,18 +504,286 @@ public class FloatMatrix2DSerializer implements StreamSerializer<FloatMatrix2D>
      * @throws IOException If an IO error occurs
      */
     static MutableFloatMatrix2D readImpl(ObjectDataInput in) throws IOException
+    {
+        return readImpl(in, null);
+    }
+    
+    /**
+     * Reads a FloatMatrix2D from the given input, into a matrix that
+     * is obtained from the given {@link MatrixPool}
+     * 
+     * @param in The input
+     * @param pool The {@link MatrixPool}. If this is <code>null</code>,
+     * then a new matrix is created.
+     * @return The matrix
+     * @throws IOException If an IO error occurs
+     */
+    static MutableFloatMatrix2D readImpl(ObjectDataInput in, MatrixPool pool)
+        throws IOException
     {
         int numRows = in.readInt();
         int numColumns = in.readInt();
-        MutableFloatMatrix2D matrix = 
-            Matrices.createFloatMatrix2D(numRows, numColumns); 
-        byte data[] = new byte[matrix.getNumRows()*matrix.getNumColumns()*4];
-        FloatBuffer buffer = ByteBuffer.wrap(data).asFloatBuffer();
-        in.readFully(data);
-        matrix.setDataColumnMajor(buffer);
+        MutableFloatMatrix2D matrix;
+        if (pool == null)
+        {
+            matrix = Matrices.createFloatMatrix2D(numRows, numColumns);
+        }
+        else
+        {
+            matrix = pool.obtain(numRows, numColumns);
+        }
+        readDataImpl(in, matrix);
         return matrix;
     }
     
+    /**
+     * Reads the elements of a matrix with the size of the given matrix
+     * from the given input, in column-major order, and writes them into
+     * the given matrix. The elements are read in chunks, using a small 
+     * buffer that is reused by the calling thread.
+     * 
+     * @param in The input
+     * @param matrix The matrix
+     * @throws IOException If an IO error occurs
+     */
+    static void readDataImpl(ObjectDataInput in, MutableFloatMatrix2D matrix) 
+        throws IOException
+    {
+        byte encoding = readEncoding(in);
+        ChunkBuffer chunkBuffer = CHUNK_BUFFERS.get();
+        int numRows = matrix.getNumRows();
+        int numColumns = matrix.getNumColumns();
+        int rowsPerChunk = rowsPerChunk(numRows);
+        int columnsPerChunk = columnsPerChunk(numRows);
+        for (int c0 = 0; c0 < numColumns; c0 += columnsPerChunk)
+        {
+            int c1 = Math.min(numColumns, c0 + columnsPerChunk);
+            for (int r0 = 0; r0 < numRows; r0 += rowsPerChunk)
+            {
+                int r1 = Math.min(numRows, r0 + rowsPerChunk);
+                int n = (r1 - r0) * (c1 - c0);
+                readChunk(in, chunkBuffer, n, encoding);
+                FloatBuffer floats = chunkBuffer.prepare(n);
+                matrix.subMatrix(r0, c0, r1, c1).setDataColumnMajor(floats);
+            }
+        }
+    }
+    
+    /**
+     * Returns the number of chunks that the elements of a matrix with
+     * the given size are divided into
+     * 
+     * @param numRows The number of rows
+     * @param numColumns The number of columns
+     * @return The number of chunks
+     */
+    private static long numChunks(int numRows, int numColumns)
+    {
+        if (numRows == 0)
+        {
+            return 0;
+        }
+        int rowsPerChunk = rowsPerChunk(numRows);
+        int columnsPerChunk = columnsPerChunk(numRows);
+        long rowChunks = ((long)numRows + rowsPerChunk - 1) / rowsPerChunk;
+        long columnChunks = 
+            ((long)numColumns + columnsPerChunk - 1) / columnsPerChunk;
+        return rowChunks * columnChunks;
+    }
+    
+    /**
+     * Returns the number of rows of each chunk of a matrix with the given
+     * number of rows. The elements of a matrix are written in chunks that
+     * contain at most {@link #CHUNK_SIZE} elements, in column-major order.
+     * If the columns are short, then each chunk consists of several full
+     * columns. Otherwise, each column is divided into several chunks. 
+     * The last chunk in each direction may be smaller.
+     * 
+     * @param numRows The number of rows of the matrix
+     * @return The number of rows of each chunk
+     */
+    private static int rowsPerChunk(int numRows)
+    {
+        return Math.min(numRows, CHUNK_SIZE);
+    }
+    
+    /**
+     * Returns the number of columns of each chunk of a matrix with the 
+     * given number of rows
+     * 
+     * @param numRows The number of rows of the matrix
+     * @return The number of columns of each chunk
+     * @see #rowsPerChunk(int)
+     */
+    private static int columnsPerChunk(int numRows)
+    {
+        if (numRows >= CHUNK_SIZE)
+        {
+            return 1;
+        }
+        return CHUNK_SIZE / Math.max(1, numRows);
+    }
+    
+    /**
+     * Returns the maximum number of bytes that may be written for the
+     * elements of a matrix with the given size and encoding
+     * 
+     * @param numRows The number of rows
+     * @param numColumns The number of columns
+     * @param encoding The encoding
+     * @return The maximum number of bytes
+     */
+    private static long maxDataBytes(
+        int numRows, int numColumns, byte encoding)
+    {
+        long numBytes = (long)numRows * numColumns * elementSize(encoding);
+        if ((encoding & ENCODING_DEFLATE) != 0)
+        {
+            // Each chunk is preceded by its length
+            numBytes += numChunks(numRows, numColumns) * 4;
+        }
+        return numBytes;
+    }
+    
+    /**
+     * Creates the encoding for the elements of a matrix that are 
+     * written with the given settings
+     * 
+     * @param compression The {@link BlockCompression}
+     * @param precision The {@link BlockPrecision}
+     * @return The encoding
+     */
+    private static byte createEncoding(
+        BlockCompression compression, BlockPrecision precision)
+    {
+        byte encoding = ENCODING_RAW;
+        if (compression == BlockCompression.DEFLATE)
+        {
+            encoding |= ENCODING_DEFLATE;
+        }
+        if (precision == BlockPrecision.BF16)
+        {
+            encoding |= ENCODING_BF16;
+        }
+        else if (precision == BlockPrecision.FP16)
+        {
+            encoding |= ENCODING_FP16;
+        }
+        return encoding;
+    }
+    
+    /**
+     * Returns the size of one element, in bytes, for the given encoding
+     * 
+     * @param encoding The encoding
+     * @return The element size
+     */
+    private static int elementSize(byte encoding)
+    {
+        if ((encoding & (ENCODING_BF16 | ENCODING_FP16)) != 0)
+        {
+            return 2;
+        }
+        return 4;
+    }
+    
+    /**
+     * Reads the encoding of the elements of a matrix from the given input
+     * 
+     * @param in The input
+     * @return The encoding
+     * @throws IOException If an IO error occurs, or the encoding is invalid
+     */
+    private static byte readEncoding(ObjectDataInput in) throws IOException
+    {
+        byte encoding = in.readByte();
+        int validFlags = ENCODING_DEFLATE | ENCODING_BF16 | ENCODING_FP16;
+        boolean bf16 = (encoding & ENCODING_BF16) != 0;
+        boolean fp16 = (encoding & ENCODING_FP16) != 0;
+        if ((encoding & ~validFlags) != 0 || (bf16 && fp16))
+        {
+            throw new IOException("Invalid matrix encoding: " + encoding);
+        }
+        return encoding;
+    }
+    
+    /**
+     * Reads one chunk with the given number of elements from the given 
+     * input into the given buffer, as float values
+     * 
+     * @param in The input
+     * @param chunkBuffer The {@link ChunkBuffer}
+     * @param n The number of elements
+     * @param encoding The encoding
+     * @throws IOException If an IO error occurs
+     */
+    private static void readChunk(ObjectDataInput in, 
+        ChunkBuffer chunkBuffer, int n, byte encoding) 
+        throws IOException
+    {
+        int elementSize = elementSize(encoding);
+        int numBytes = n * elementSize;
+        if ((encoding & ENCODING_DEFLATE) != 0)
+        {
+            chunkBuffer.readDeflated(in, numBytes, elementSize);
+        }
+        else
+        {
+            in.readFully(chunkBuffer.bytes, 0, numBytes);
+        }
+        if (elementSize != 4)
+        {
+            chunkBuffer.expandPrecision(n, encoding);
+        }
+    }
+    
+    /**
+     * Shuffle the given number of bytes from the given source into the
+     * given target, so that the target contains the first bytes of all
+     * elements, followed by the second bytes of all elements, and so on.
+     * 
+     * @param source The source
+     * @param target The target
+     * @param numBytes The number of bytes
+     * @param elementSize The size of one element, in bytes
+     */
+    private static void shuffle(
+        byte source[], byte target[], int numBytes, int elementSize)
+    {
+        int n = numBytes / elementSize;
+        for (int k = 0; k < elementSize; k++)
+        {
+            int offset = k * n;
+            for (int i = 0; i < n; i++)
+            {
+                target[offset + i] = source[i * elementSize + k];
+            }
+        }
+    }
+    
+    /**
+     * Reverts the {@link #shuffle} of the given number of bytes from 
+     * the given source into the given target
+     * 
+     * @param source The source
+     * @param target The target
+     * @param numBytes The number of bytes
+     * @param elementSize The size of one element, in bytes
+     */
+    private static void unshuffle(
+        byte source[], byte target[], int numBytes, int elementSize)
+    {
+        int n = numBytes / elementSize;
+        for (int k = 0; k < elementSize; k++)
+        {
+            int offset = k * n;
+            for (int i = 0; i < n; i++)
+            {
+                target[i * elementSize + k] = source[offset + i];
+            }
+        }
+    }
+    
     @Override
     public void destroy()
     {
@@ -0,0 +1,124 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.HazelcastInstanceAware;
+
+import de.javagl.hazelcast.matmul.MatMulResult;
+import de.javagl.hazelcast.matmul.MutableFloatMatrix2D;
+import de.javagl.hazelcast.matmul.Point;
+
+/**
+ * A task that removes the blocks of the result matrix that have been
+ * accumulated on a member for one job from the {@link MatMulMemberContext},
+ * and returns them as {@link BlockResults}.
+ */
+final class GatherBlocksTask 
+    implements Callable<BlockResults>, HazelcastInstanceAware
+{
+    /**
+     * The ID of the job 
+     */
+    private final String jobId;
+    
+    /**
+     * Whether the blocks should only be discarded, and not be returned
+     */
+    private final boolean discard;
+    
+    /**
+     * The HazelcastInstance of the member that executes this task
+     */
+    private transient HazelcastInstance hazelcastInstance;
+    
+    /**
+     * Creates a new task 
+     * 
+     * @param jobId The ID of the job
+     * @param discard Whether the blocks should only be discarded, for
+     * example, when the job was cancelled. In this case, the task will
+     * return empty results.
+     */
+    GatherBlocksTask(String jobId, boolean discard)
+    {
+        this.jobId = jobId;
+        this.discard = discard;
+    }
+    
+    @Override
+    public void setHazelcastInstance(HazelcastInstance hazelcastInstance)
+    {
+        this.hazelcastInstance = hazelcastInstance;
+    }
+    
+    /**
+     * Returns the ID of the job
+     * 
+     * @return The job ID
+     */
+    String getJobId()
+    {
+        return jobId;
+    }
+    
+    /**
+     * Returns whether the blocks should only be discarded
+     * 
+     * @return Whether the blocks should only be discarded
+     */
+    boolean isDiscard()
+    {
+        return discard;
+    }
+
+    @Override
+    public BlockResults call()
+    {
+        MatMulMemberContext context = 
+            MatMulMemberContext.get(hazelcastInstance);
+        context.removeCannonMemberState(jobId);
+        Map<Point, MutableFloatMatrix2D> accumulators = 
+            context.removeAccumulators(jobId);
+        BlockResults blockResults = new BlockResults(jobId);
+        if (accumulators == null || discard)
+        {
+            return blockResults;
+        }
+        for (Entry<Point, MutableFloatMatrix2D> entry : 
+            accumulators.entrySet())
+        {
+            blockResults.getResults().add(
+                new MatMulResult(entry.getKey(), entry.getValue()));
+        }
+        return blockResults;
+    }
+}
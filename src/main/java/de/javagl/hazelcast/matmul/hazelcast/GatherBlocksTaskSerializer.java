@@ -0,0 +1,69 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.io.IOException;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.StreamSerializer;
+
+/**
+ * A Hazelcast StreamSerializer for {@link GatherBlocksTask} objects
+ */
+final class GatherBlocksTaskSerializer 
+    implements StreamSerializer<GatherBlocksTask>
+{
+    @Override
+    public int getTypeId()
+    {
+        return 56789;
+    }
+
+    @Override
+    public void write(ObjectDataOutput out, GatherBlocksTask task)
+        throws IOException
+    {
+        out.writeUTF(task.getJobId());
+        out.writeBoolean(task.isDiscard());
+    }
+
+    @Override
+    public GatherBlocksTask read(ObjectDataInput in) throws IOException
+    {
+        String jobId = in.readUTF();
+        boolean discard = in.readBoolean();
+        return new GatherBlocksTask(jobId, discard);
+    }
+
+    @Override
+    public void destroy()
+    {
+        // Not used
+    }
+
+}
@@ -0,0 +1,1546 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import com.hazelcast.cluster.Member;
+import com.hazelcast.cluster.MembershipEvent;
+import com.hazelcast.cluster.MembershipListener;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IExecutorService;
+import com.hazelcast.spi.exception.RetryableException;
+import com.hazelcast.spi.exception.TargetDisconnectedException;
+
+import de.javagl.hazelcast.matmul.AsyncExecutor;
+import de.javagl.hazelcast.matmul.ExecutorExtensions;
+import de.javagl.hazelcast.matmul.MatMulBatchTask;
+import de.javagl.hazelcast.matmul.MatMulResult;
+import de.javagl.hazelcast.matmul.MatMulTask;
+import de.javagl.hazelcast.matmul.MutableFloatMatrix2D;
+import de.javagl.hazelcast.matmul.Point;
+
+/**
+ * Implementation of an {@link AsyncExecutor} that submits the tasks
+ * to a Hazelcast IExecutorService. <br />
+ * <br />
+ * The IExecutorService is shared among all multiplications that are 
+ * performed by one client. Therefore, the {@link #shutdown()} method 
+ * of this class does <b>not</b> shut down the IExecutorService, so 
+ * that multiple multiplications may be executed concurrently in
+ * one cluster. <br />
+ * <br />
+ * Optionally, the number of tasks that are executed by each member at 
+ * the same time may be limited. Tasks that exceed this limit are kept
+ * in a queue on the client, and are only serialized and submitted to 
+ * the member with the least number of tasks in flight when an earlier 
+ * task completed. This limits the memory that is required for the 
+ * serialized tasks on the client, as well as the length of the queues 
+ * of the executor services on the members. <br />
+ * <br />
+ * Tasks may be {@link #submitToKeyOwner(Callable, Object) submitted to
+ * the owner of a key}, so that they are executed on the member where 
+ * the data that they require is stored. When the number of tasks is
+ * limited, then such a task is kept in a queue for its member. If 
+ * a member could execute further tasks, but no task is queued for it,
+ * then it takes a task from the longest queue of another member, so 
+ * that no member is idle while tasks are waiting. <br />
+ * <br />
+ * Tasks that fail because the member that executed them left the 
+ * cluster are submitted again, up to a maximum number of retries. 
+ * When the number of tasks is limited, then the latencies of the 
+ * completed tasks are recorded. If a task takes much longer than the
+ * median latency, and another member could execute further tasks, 
+ * then the task is submitted to this member as well, and the first 
+ * result is used. This requires the tasks to be free of side effects.
+ * <br />
+ * <br />
+ * The maximum number of tasks in flight for each member is weighted 
+ * with the {@link MemberCapacity} that the member published: A member
+ * with twice the average capacity may have twice as many tasks in 
+ * flight, and a task is submitted to the member with the smallest 
+ * number of tasks in flight relative to this maximum. <br />
+ * <br />
+ * When the number of tasks is limited, the executor listens to changes
+ * of the cluster membership: When a member joins the cluster, queued
+ * tasks are submitted to it immediately. When a member leaves the 
+ * cluster, the tasks that were queued for it are submitted to the 
+ * remaining members, and the tasks that it was executing are retried
+ * on other members. <br />
+ * <br />
+ * The executor may be given a {@link BlockEncoding}. Then the matrices 
+ * that are contained in the tasks and in their results are written with
+ * this encoding, and the maximum relative error that this causes is 
+ * recorded in the encoding. When the executor is shared by multiple 
+ * jobs, then each job may use its own 
+ * {@link #createJobExecutor(BlockEncoding) job executor}, which submits
+ * the tasks with this executor, but records the error in the encoding 
+ * of the job, and reports it when the job is finished.
+ * <br />
+ * <br />
+ * A {@link MatMulTask} whose blocks or result would exceed a maximum 
+ * message size is not sent directly. Instead, its blocks are stored in
+ * {@link BlockStrips}, and a {@link StripTask} that only contains the
+ * references to the strips is sent. The result is returned in strips
+ * as well. The strips are always written with full precision and 
+ * without compression.
+ */
+class HazelcastAsyncExecutor implements AsyncExecutor
+{
+    /**
+     * The logger used in this class
+     */
+    private static final Logger logger = 
+        Logger.getLogger(HazelcastAsyncExecutor.class.getName());
+    
+    /**
+     * The default maximum number of times that a task is submitted 
+     * again after it failed because its member left the cluster
+     */
+    static final int DEFAULT_MAX_RETRIES = 2;
+    
+    /**
+     * The default maximum number of bytes of the elements of the blocks 
+     * that are sent in a single task or result
+     */
+    static final long DEFAULT_MAX_MESSAGE_BYTES = 64L * 1024 * 1024;
+    
+    /**
+     * The number of latencies that are kept for computing the median
+     */
+    private static final int LATENCY_SAMPLES = 64;
+    
+    /**
+     * The minimum number of latencies that have to be recorded before
+     * tasks are executed speculatively
+     */
+    private static final int MIN_LATENCY_SAMPLES = 5;
+    
+    /**
+     * The delay for checking whether a task should be executed 
+     * speculatively, when not enough latencies have been recorded
+     * yet, in milliseconds
+     */
+    private static final long SPECULATION_CHECK_INTERVAL_MS = 500;
+    
+    /**
+     * The timer that is used for checking whether tasks should be 
+     * executed speculatively
+     */
+    private static final ScheduledExecutorService speculationTimer = 
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = 
+                    new Thread(r, "HazelcastAsyncExecutor-speculation");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    
+    /**
+     * A task that has been submitted to this executor. The fields of 
+     * this class may only be accessed while holding the monitor of the
+     * executor.
+     *
+     * @param <T> The result type
+     */
+    private static class QueuedTask<T>
+    {
+        /**
+         * The callable
+         */
+        private final Callable<T> callable;
+        
+        /**
+         * The key whose owner the task should be executed on. This may
+         * be <code>null</code>.
+         */
+        private final Object key;
+        
+        /**
+         * The member that the task should preferably be executed on. 
+         * This may be <code>null</code>.
+         */
+        private final Member preferredMember;
+        
+        /**
+         * The future that will be completed with the result
+         */
+        private final CompletableFuture<T> future;
+        
+        /**
+         * The futures of the executions of the task that are currently
+         * running, for each member
+         */
+        private final Map<Member, CompletableFuture<T>> attempts;
+        
+        /**
+         * The number of executions of the task that failed and
+         * caused a retry
+         */
+        private int retries;
+        
+        /**
+         * The members on which an execution of the task failed
+         */
+        private final Set<Member> failedMembers;
+        
+        /**
+         * Whether the task has been submitted speculatively
+         */
+        private boolean speculated;
+        
+        /**
+         * The {@link BlockEncoding} for the matrices in the task and
+         * its result
+         */
+        private final BlockEncoding blockEncoding;
+        
+        /**
+         * Creates a new instance
+         * 
+         * @param callable The callable
+         * @param key The key whose owner the task should be executed on.
+         * This may be <code>null</code>.
+         * @param preferredMember The member that the task should 
+         * preferably be executed on. This may be <code>null</code>.
+         * @param blockEncoding The {@link BlockEncoding}
+         */
+        QueuedTask(Callable<T> callable, Object key, Member preferredMember,
+            BlockEncoding blockEncoding)
+        {
+            this.callable = callable;
+            this.key = key;
+            this.preferredMember = preferredMember;
+            this.blockEncoding = blockEncoding;
+            this.future = new CompletableFuture<T>();
+            this.attempts = new LinkedHashMap<Member, CompletableFuture<T>>();
+            this.failedMembers = new HashSet<Member>();
+        }
+    }
+    
+    /**
+     * The HazelcastInstance
+     */
+    private final HazelcastInstance hazelcastInstance;
+    
+    /**
+     * The IExecutorService that the tasks are submitted to
+     */
+    private final IExecutorService executorService;
+    
+    /**
+     * The maximum number of tasks that are in flight for a member with
+     * an average capacity. If this is not positive, then the number is
+     * not limited.
+     */
+    private final int maxInFlightTasksPerMember;
+    
+    /**
+     * The maximum number of times that a task is submitted again after
+     * it failed because its member left the cluster
+     */
+    private final int maxRetries;
+    
+    /**
+     * The factor by which the latency of a task has to exceed the 
+     * median latency so that it is executed speculatively. If this
+     * is not positive, then no tasks are executed speculatively.
+     */
+    private final double speculationFactor;
+    
+    /**
+     * The {@link BlockEncoding} for the matrices in the tasks and results
+     */
+    private final BlockEncoding blockEncoding;
+    
+    /**
+     * The maximum number of bytes of the elements of the blocks that 
+     * are sent in a single task or result. If this is not positive,
+     * then the blocks are never sent in strips.
+     */
+    private final long maxMessageBytes;
+    
+    /**
+     * The latencies of the completed tasks
+     */
+    private final TaskLatencies latencies;
+    
+    /**
+     * The number of tasks that are currently in flight for each member
+     */
+    private final Map<Member, Integer> inFlightTasks;
+    
+    /**
+     * The tasks that have not been submitted to the IExecutorService yet,
+     * and that do not have a preferred member
+     */
+    private final Deque<QueuedTask<?>> queuedTasks;
+    
+    /**
+     * The tasks that have not been submitted to the IExecutorService yet,
+     * for each preferred member
+     */
+    private final Map<Member, Deque<QueuedTask<?>>> memberQueuedTasks;
+    
+    /**
+     * The tasks that failed because their member left the cluster, and
+     * that have to be submitted again, to a different member
+     */
+    private final Deque<QueuedTask<?>> retriedTasks;
+    
+    /**
+     * The data members of the cluster, as of the last change of the
+     * cluster membership. This is only maintained when the number of
+     * tasks is limited, and may only be accessed while holding the 
+     * monitor of this executor.
+     */
+    private List<Member> dataMembers;
+    
+    /**
+     * The weights of the {@link #dataMembers}, as computed from their
+     * {@link MemberCapacity}. The capacity is published in the member
+     * attributes, which do not change while the member is running, so
+     * the weights are only computed when the membership changes.
+     */
+    private double dataMemberWeights[];
+    
+    /**
+     * Creates a new executor that submits tasks to the given 
+     * IExecutorService, without limiting the number of tasks 
+     * that are in flight
+     * 
+     * @param executorService The IExecutorService
+     */
+    HazelcastAsyncExecutor(IExecutorService executorService)
+    {
+        this(null, executorService, 0);
+    }
+    
+    /**
+     * Creates a new executor that submits tasks to the given 
+     * IExecutorService, keeping at most the given number of tasks
+     * in flight for each data member of the cluster. Tasks that fail
+     * because their member left the cluster are retried up to
+     * {@link #DEFAULT_MAX_RETRIES} times. No tasks are executed 
+     * speculatively.
+     * 
+     * @param hazelcastInstance The HazelcastInstance. This may only be
+     * <code>null</code> if the number of tasks is not limited.
+     * @param executorService The IExecutorService
+     * @param maxInFlightTasksPerMember The maximum number of tasks that
+     * are in flight for each member. If this is not positive, then the 
+     * number is not limited.
+     */
+    HazelcastAsyncExecutor(HazelcastInstance hazelcastInstance,
+        IExecutorService executorService, int maxInFlightTasksPerMember)
+    {
+        this(hazelcastInstance, executorService, maxInFlightTasksPerMember,
+            DEFAULT_MAX_RETRIES, 0.0);
+    }
+    
+    /**
+     * Creates a new executor that submits tasks to the given 
+     * IExecutorService, keeping at most the given number of tasks
+     * in flight for each data member of the cluster. 
+     * 
+     * @param hazelcastInstance The HazelcastInstance. This may only be
+     * <code>null</code> if the number of tasks is not limited.
+     * @param executorService The IExecutorService
+     * @param maxInFlightTasksPerMember The maximum number of tasks that
+     * are in flight for each member. If this is not positive, then the 
+     * number is not limited.
+     * @param maxRetries The maximum number of times that a task is 
+     * submitted again after it failed because its member left the cluster
+     * @param speculationFactor The factor by which the latency of a task
+     * has to exceed the median latency of the completed tasks, so that
+     * the task is submitted to another member as well. If this is not
+     * positive, or the number of tasks is not limited, then no tasks 
+     * are executed speculatively.
+     */
+    HazelcastAsyncExecutor(HazelcastInstance hazelcastInstance,
+        IExecutorService executorService, int maxInFlightTasksPerMember,
+        int maxRetries, double speculationFactor)
+    {
+        this(hazelcastInstance, executorService, maxInFlightTasksPerMember,
+            maxRetries, speculationFactor, BlockEncoding.NONE);
+    }
+    
+    /**
+     * Creates a new executor that submits tasks to the given 
+     * IExecutorService, keeping at most the given number of tasks
+     * in flight for each data member of the cluster, and writing the 
+     * matrices of the tasks and their results with the given 
+     * {@link BlockEncoding}
+     * 
+     * @param hazelcastInstance The HazelcastInstance. This may only be
+     * <code>null</code> if the number of tasks is not limited.
+     * @param executorService The IExecutorService
+     * @param maxInFlightTasksPerMember The maximum number of tasks that
+     * are in flight for each member. If this is not positive, then the 
+     * number is not limited.
+     * @param maxRetries The maximum number of times that a task is 
+     * submitted again after it failed because its member left the cluster
+     * @param speculationFactor The factor by which the latency of a task
+     * has to exceed the median latency of the completed tasks, so that
+     * the task is submitted to another member as well. If this is not
+     * positive, or the number of tasks is not limited, then no tasks 
+     * are executed speculatively.
+     * @param blockEncoding The {@link BlockEncoding}
+     */
+    HazelcastAsyncExecutor(HazelcastInstance hazelcastInstance,
+        IExecutorService executorService, int maxInFlightTasksPerMember,
+        int maxRetries, double speculationFactor, 
+        BlockEncoding blockEncoding)
+    {
+        this(hazelcastInstance, executorService, maxInFlightTasksPerMember,
+            maxRetries, speculationFactor, blockEncoding, 
+            DEFAULT_MAX_MESSAGE_BYTES);
+    }
+    
+    /**
+     * Creates a new executor that submits tasks to the given 
+     * IExecutorService, keeping at most the given number of tasks
+     * in flight for each data member of the cluster, writing the 
+     * matrices of the tasks and their results with the given 
+     * {@link BlockEncoding}, and sending the blocks of tasks that
+     * exceed the given message size in {@link BlockStrips}
+     * 
+     * @param hazelcastInstance The HazelcastInstance. If this is 
+     * <code>null</code>, then the number of tasks is not limited, 
+     * and the blocks are never sent in strips.
+     * @param executorService The IExecutorService
+     * @param maxInFlightTasksPerMember The maximum number of tasks that
+     * are in flight for each member. If this is not positive, then the 
+     * number is not limited.
+     * @param maxRetries The maximum number of times that a task is 
+     * submitted again after it failed because its member left the cluster
+     * @param speculationFactor The factor by which the latency of a task
+     * has to exceed the median latency of the completed tasks, so that
+     * the task is submitted to another member as well. If this is not
+     * positive, or the number of tasks is not limited, then no tasks 
+     * are executed speculatively.
+     * @param blockEncoding The {@link BlockEncoding}
+     * @param maxMessageBytes The maximum number of bytes of the elements
+     * of the blocks that are sent in a single task or result. Larger 
+     * blocks are sent in strips of at most this size. If this is not
+     * positive, then the blocks are never sent in strips.
+     */
+    HazelcastAsyncExecutor(HazelcastInstance hazelcastInstance,
+        IExecutorService executorService, int maxInFlightTasksPerMember,
+        int maxRetries, double speculationFactor, 
+        BlockEncoding blockEncoding, long maxMessageBytes)
+    {
+        this.hazelcastInstance = hazelcastInstance;
+        this.executorService = executorService;
+        this.maxInFlightTasksPerMember = maxInFlightTasksPerMember;
+        this.maxRetries = Math.max(0, maxRetries);
+        this.speculationFactor = speculationFactor;
+        this.blockEncoding = blockEncoding;
+        this.maxMessageBytes = maxMessageBytes;
+        this.latencies = new TaskLatencies(LATENCY_SAMPLES);
+        this.inFlightTasks = new HashMap<Member, Integer>();
+        this.queuedTasks = new ArrayDeque<QueuedTask<?>>();
+        this.memberQueuedTasks = new HashMap<Member, Deque<QueuedTask<?>>>();
+        this.retriedTasks = new ArrayDeque<QueuedTask<?>>();
+        this.dataMembers = Collections.emptyList();
+        this.dataMemberWeights = new double[0];
+        if (hazelcastInstance != null && maxInFlightTasksPerMember > 0)
+        {
+            hazelcastInstance.getCluster().addMembershipListener(
+                new MembershipListener()
+            {
+                @Override
+                public void memberAdded(MembershipEvent membershipEvent)
+                {
+                    HazelcastAsyncExecutor.this.memberAdded(
+                        membershipEvent.getMember());
+                }
+
+                @Override
+                public void memberRemoved(MembershipEvent membershipEvent)
+                {
+                    HazelcastAsyncExecutor.this.memberRemoved(
+                        membershipEvent.getMember());
+                }
+            });
+            updateDataMembers();
+        }
+    }
+    
+    /**
+     * Update the {@link #dataMembers} and their weights, based on the
+     * current members of the cluster
+     */
+    private synchronized void updateDataMembers()
+    {
+        dataMembers = MatMulUtils.getDataMembers(hazelcastInstance);
+        dataMemberWeights = MemberCapacity.computeWeights(dataMembers);
+    }
+    
+    /**
+     * Called when the given member joined the cluster. Submits queued 
+     * tasks to the new member, including the ones that have been queued
+     * for other members.
+     * 
+     * @param member The member
+     */
+    private void memberAdded(Member member)
+    {
+        logger.info("Member " + member + " joined, submitting queued tasks");
+        updateDataMembers();
+        submitQueuedTasks();
+    }
+    
+    /**
+     * Called when the given member left the cluster. The tasks that 
+     * have been queued for this member are queued for any member. The 
+     * tasks that are currently executed by this member will fail, and
+     * be retried on other members. If no data member is left in the 
+     * cluster, then the tasks that are waiting to be retried are 
+     * completed exceptionally.
+     * 
+     * @param member The member
+     */
+    private void memberRemoved(Member member)
+    {
+        List<QueuedTask<?>> failedTasks = Collections.emptyList();
+        synchronized (this)
+        {
+            updateDataMembers();
+            Deque<QueuedTask<?>> queue = memberQueuedTasks.remove(member);
+            int n = queue == null ? 0 : queue.size();
+            logger.info("Member " + member + " left, requeueing " + n + 
+                " tasks that were queued for it");
+            if (queue != null)
+            {
+                queuedTasks.addAll(queue);
+            }
+            if (dataMembers.isEmpty())
+            {
+                failedTasks = new ArrayList<QueuedTask<?>>(retriedTasks);
+                retriedTasks.clear();
+            }
+        }
+        for (QueuedTask<?> failedTask : failedTasks)
+        {
+            failedTask.future.completeExceptionally(new IllegalStateException(
+                "No data member left in the cluster to retry the task"));
+        }
+        submitQueuedTasks();
+    }
+    
+    @Override
+    public <T> CompletableFuture<T> submit(Callable<T> callable)
+    {
+        return submit(callable, blockEncoding);
+    }
+    
+    /**
+     * Submit the given callable, writing the matrices in the task and
+     * its result with the given {@link BlockEncoding}
+     * 
+     * @param <T> The result type
+     * @param callable The callable
+     * @param blockEncoding The {@link BlockEncoding}
+     * @return The future that will be completed with the result
+     */
+    private <T> CompletableFuture<T> submit(
+        Callable<T> callable, BlockEncoding blockEncoding)
+    {
+        QueuedTask<T> queuedTask = 
+            new QueuedTask<T>(callable, null, null, blockEncoding);
+        if (maxInFlightTasksPerMember <= 0)
+        {
+            submitUnlimited(queuedTask);
+            return queuedTask.future;
+        }
+        return enqueue(queuedTask);
+    }
+    
+    /**
+     * Submit the given callable to the member that owns the given key.
+     * If the number of tasks in flight is limited, and this member 
+     * already has the maximum number of tasks in flight, then the task
+     * may be executed by another member that would otherwise be idle.
+     * 
+     * @param <T> The result type
+     * @param callable The callable
+     * @param key The key
+     * @return The future that will be completed with the result
+     */
+    <T> CompletableFuture<T> submitToKeyOwner(Callable<T> callable, Object key)
+    {
+        return submitToKeyOwner(callable, key, blockEncoding);
+    }
+    
+    /**
+     * Submit the given callable to the member that owns the given key,
+     * writing the matrices in the task and its result with the given 
+     * {@link BlockEncoding}
+     * 
+     * @param <T> The result type
+     * @param callable The callable
+     * @param key The key
+     * @param blockEncoding The {@link BlockEncoding}
+     * @return The future that will be completed with the result
+     */
+    private <T> CompletableFuture<T> submitToKeyOwner(
+        Callable<T> callable, Object key, BlockEncoding blockEncoding)
+    {
+        if (maxInFlightTasksPerMember <= 0)
+        {
+            QueuedTask<T> queuedTask = 
+                new QueuedTask<T>(callable, key, null, blockEncoding);
+            submitUnlimited(queuedTask);
+            return queuedTask.future;
+        }
+        Member owner = 
+            hazelcastInstance.getPartitionService().getPartition(key).getOwner();
+        return enqueue(
+            new QueuedTask<T>(callable, key, owner, blockEncoding));
+    }
+    
+    /**
+     * Submit the given callable to the member that owns the given key,
+     * if the given executor is a {@link HazelcastAsyncExecutor} or one
+     * of its {@link #createJobExecutor(BlockEncoding) job executors}. 
+     * Otherwise, the callable is submitted to the given executor.
+     * 
+     * @param <T> The result type
+     * @param executor The executor
+     * @param callable The callable
+     * @param key The key
+     * @return The future that will be completed with the result
+     */
+    static <T> CompletableFuture<T> submitToKeyOwner(
+        AsyncExecutor executor, Callable<T> callable, Object key)
+    {
+        if (executor instanceof HazelcastAsyncExecutor)
+        {
+            HazelcastAsyncExecutor hazelcastAsyncExecutor = 
+                (HazelcastAsyncExecutor)executor;
+            return hazelcastAsyncExecutor.submitToKeyOwner(callable, key);
+        }
+        if (executor instanceof JobExecutor)
+        {
+            JobExecutor jobExecutor = (JobExecutor)executor;
+            return jobExecutor.parent.submitToKeyOwner(
+                callable, key, jobExecutor.blockEncoding);
+        }
+        return executor.submit(callable);
+    }
+    
+    /**
+     * Create an executor for a single job. The returned executor submits 
+     * the tasks with this executor, so that the tasks of all jobs share 
+     * the limit of the tasks in flight, but writes the matrices in the 
+     * tasks and results with the given {@link BlockEncoding}. This way, 
+     * the maximum relative error is recorded for each job. When the 
+     * returned executor is shut down, which the job does when it is 
+     * finished, then this error is reported.
+     * 
+     * @param blockEncoding The {@link BlockEncoding} for the job
+     * @return The executor for the job
+     */
+    AsyncExecutor createJobExecutor(BlockEncoding blockEncoding)
+    {
+        return new JobExecutor(this, blockEncoding);
+    }
+    
+    /**
+     * An executor that submits the tasks of a single job with a shared
+     * {@link HazelcastAsyncExecutor}, writing them with the 
+     * {@link BlockEncoding} of the job
+     */
+    private static final class JobExecutor implements AsyncExecutor
+    {
+        /**
+         * The executor that the tasks are submitted with
+         */
+        private final HazelcastAsyncExecutor parent;
+        
+        /**
+         * The {@link BlockEncoding} of the job
+         */
+        private final BlockEncoding blockEncoding;
+        
+        /**
+         * Creates a new instance
+         * 
+         * @param parent The executor that the tasks are submitted with
+         * @param blockEncoding The {@link BlockEncoding} of the job
+         */
+        JobExecutor(HazelcastAsyncExecutor parent, 
+            BlockEncoding blockEncoding)
+        {
+            this.parent = parent;
+            this.blockEncoding = blockEncoding;
+        }
+        
+        @Override
+        public <T> CompletableFuture<T> submit(Callable<T> callable)
+        {
+            return parent.submit(callable, blockEncoding);
+        }
+        
+        @Override
+        public void shutdown()
+        {
+            if (blockEncoding.isExact())
+            {
+                return;
+            }
+            logger.info("Max. relative error of the elements of the job " + 
+                "sent with " + blockEncoding + ": " + 
+                blockEncoding.fetchMaxRelativeError());
+        }
+        
+        @Override
+        public String toString()
+        {
+            return "JobExecutor[" + parent + "," + 
+                "blockEncoding=" + blockEncoding + "]";
+        }
+    }
+    
+    /**
+     * Submit the given task directly to the IExecutorService, and submit 
+     * it again if it fails because its member left the cluster
+     * 
+     * @param <T> The result type
+     * @param queuedTask The task
+     */
+    private <T> void submitUnlimited(final QueuedTask<T> queuedTask)
+    {
+        if (queuedTask.future.isDone())
+        {
+            return;
+        }
+        final CompletableFuture<T> attempt = submitAttempt(queuedTask, null);
+        attempt.whenComplete(new BiConsumer<T, Throwable>()
+        {
+            @Override
+            public void accept(T value, Throwable t)
+            {
+                if (t == null)
+                {
+                    queuedTask.future.complete(value);
+                    return;
+                }
+                boolean retry = false;
+                synchronized (HazelcastAsyncExecutor.this)
+                {
+                    if (isRetryable(t) && queuedTask.retries < maxRetries)
+                    {
+                        queuedTask.retries++;
+                        retry = true;
+                    }
+                }
+                if (retry)
+                {
+                    logger.warning("Retrying task after " + t);
+                    submitUnlimited(queuedTask);
+                }
+                else
+                {
+                    queuedTask.future.completeExceptionally(t);
+                }
+            }
+        });
+        queuedTask.future.whenComplete(new BiConsumer<T, Throwable>()
+        {
+            @Override
+            public void accept(T value, Throwable t)
+            {
+                if (queuedTask.future.isCancelled())
+                {
+                    attempt.cancel(true);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Add the given task to the queue, and submit queued tasks to 
+     * the members that have less than the maximum number of tasks
+     * in flight
+     * 
+     * @param <T> The result type
+     * @param queuedTask The task
+     * @return The future of the task
+     */
+    private <T> CompletableFuture<T> enqueue(final QueuedTask<T> queuedTask)
+    {
+        synchronized (this)
+        {
+            getQueue(queuedTask.preferredMember).add(queuedTask);
+        }
+        queuedTask.future.whenComplete(new BiConsumer<T, Throwable>()
+        {
+            @Override
+            public void accept(T value, Throwable t)
+            {
+                List<CompletableFuture<T>> attempts = null;
+                synchronized (HazelcastAsyncExecutor.this)
+                {
+                    if (queuedTask.future.isCancelled())
+                    {
+                        removeQueuedTask(queuedTask);
+                    }
+                    attempts = new ArrayList<CompletableFuture<T>>(
+                        queuedTask.attempts.values());
+                }
+                // Cancel the executions that are still running. These 
+                // are either speculative ones whose result is no longer
+                // needed, or all of them if the task was cancelled
+                for (CompletableFuture<T> attempt : attempts)
+                {
+                    attempt.cancel(true);
+                }
+            }
+        });
+        submitQueuedTasks();
+        return queuedTask.future;
+    }
+    
+    /**
+     * Remove the given task from all queues. Must be called while 
+     * holding the monitor of this object.
+     * 
+     * @param queuedTask The task
+     */
+    private void removeQueuedTask(QueuedTask<?> queuedTask)
+    {
+        Deque<QueuedTask<?>> ownQueue = 
+            memberQueuedTasks.get(queuedTask.preferredMember);
+        if (ownQueue != null)
+        {
+            ownQueue.remove(queuedTask);
+        }
+        queuedTasks.remove(queuedTask);
+        retriedTasks.remove(queuedTask);
+    }
+    
+    /**
+     * Returns the queue for tasks with the given preferred member, 
+     * creating it if necessary. Must be called while holding the 
+     * monitor of this object.
+     * 
+     * @param member The member. This may be <code>null</code>.
+     * @return The queue
+     */
+    private Deque<QueuedTask<?>> getQueue(Member member)
+    {
+        if (member == null)
+        {
+            return queuedTasks;
+        }
+        Deque<QueuedTask<?>> queue = memberQueuedTasks.get(member);
+        if (queue == null)
+        {
+            queue = new ArrayDeque<QueuedTask<?>>();
+            memberQueuedTasks.put(member, queue);
+        }
+        return queue;
+    }
+    
+    /**
+     * Removes and returns the next task that should be executed by the
+     * given member, or <code>null</code> if no tasks are queued. These 
+     * are the tasks that have to be retried and did not fail on the 
+     * given member (or failed on all members of the cluster), then the
+     * tasks for which the given member is the preferred member, then 
+     * the tasks without a preferred member, and finally the tasks from 
+     * the longest queue of another member. Must be called while holding
+     * the monitor of this object.
+     * 
+     * @param member The member
+     * @return The task
+     */
+    private QueuedTask<?> pollQueuedTask(Member member)
+    {
+        List<Member> members = null;
+        Iterator<QueuedTask<?>> iterator = retriedTasks.iterator();
+        while (iterator.hasNext())
+        {
+            QueuedTask<?> retriedTask = iterator.next();
+            if (!retriedTask.failedMembers.contains(member))
+            {
+                iterator.remove();
+                return retriedTask;
+            }
+            if (members == null)
+            {
+                members = MatMulUtils.getDataMembers(hazelcastInstance);
+            }
+            if (retriedTask.failedMembers.containsAll(members))
+            {
+                // The task failed on all members that are still part of
+                // the cluster, so it may be retried on any of them
+                retriedTask.failedMembers.clear();
+                iterator.remove();
+                return retriedTask;
+            }
+        }
+        Deque<QueuedTask<?>> ownQueue = memberQueuedTasks.get(member);
+        if (ownQueue != null && !ownQueue.isEmpty())
+        {
+            return ownQueue.poll();
+        }
+        if (!queuedTasks.isEmpty())
+        {
+            return queuedTasks.poll();
+        }
+        Deque<QueuedTask<?>> longestQueue = null;
+        for (Deque<QueuedTask<?>> queue : memberQueuedTasks.values())
+        {
+            if (longestQueue == null || queue.size() > longestQueue.size())
+            {
+                longestQueue = queue;
+            }
+        }
+        if (longestQueue == null)
+        {
+            return null;
+        }
+        // Take the task from the end, which is the one that the
+        // preferred member would execute last
+        return longestQueue.pollLast();
+    }
+    
+    /**
+     * Submit queued tasks to the IExecutorService, as long as there are 
+     * members that have less than the maximum number of tasks in flight
+     */
+    private void submitQueuedTasks()
+    {
+        Collection<Member> noMembers = Collections.emptySet();
+        while (true)
+        {
+            QueuedTask<?> queuedTask = null;
+            Member member = null;
+            synchronized (this)
+            {
+                member = selectMember(true, noMembers);
+                if (member == null)
+                {
+                    member = selectMember(false, noMembers);
+                }
+                if (member == null)
+                {
+                    return;
+                }
+                queuedTask = pollQueuedTask(member);
+                if (queuedTask == null)
+                {
+                    return;
+                }
+                inFlightTasks.put(member, getInFlightTasks(member) + 1);
+            }
+            submit(queuedTask, member);
+        }
+    }
+    
+    /**
+     * Returns the data member with the least number of tasks in flight,
+     * relative to the maximum number of tasks in flight for the member,
+     * or <code>null</code> if all members have the maximum number of 
+     * tasks in flight. Must be called while holding the monitor of
+     * this object.
+     * 
+     * @param withQueuedTasks Whether only members should be considered
+     * for which tasks are queued that should preferably be executed by
+     * this member
+     * @param excludedMembers The members that should not be considered
+     * @return The member
+     */
+    private Member selectMember(boolean withQueuedTasks, 
+        Collection<Member> excludedMembers)
+    {
+        Member result = null;
+        double minLoad = 1.0;
+        List<Member> members = dataMembers;
+        double weights[] = dataMemberWeights;
+        for (int i = 0; i < members.size(); i++)
+        {
+            Member member = members.get(i);
+            if (excludedMembers.contains(member))
+            {
+                continue;
+            }
+            if (withQueuedTasks)
+            {
+                Deque<QueuedTask<?>> queue = memberQueuedTasks.get(member);
+                if (queue == null || queue.isEmpty())
+                {
+                    continue;
+                }
+            }
+            int maxInFlightTasks = Math.max(1, 
+                (int)Math.round(maxInFlightTasksPerMember * weights[i]));
+            double load = (double)getInFlightTasks(member) / maxInFlightTasks;
+            if (load < minLoad)
+            {
+                minLoad = load;
+                result = member;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Returns the number of tasks that are in flight for the given member.
+     * Must be called while holding the monitor of this object.
+     * 
+     * @param member The member
+     * @return The number of tasks
+     */
+    private int getInFlightTasks(Member member)
+    {
+        Integer n = inFlightTasks.get(member);
+        if (n == null)
+        {
+            return 0;
+        }
+        return n;
+    }
+    
+    /**
+     * Submit the given task to the given member, and submit further 
+     * queued tasks when it is completed
+     * 
+     * @param <T> The result type
+     * @param queuedTask The task
+     * @param member The member
+     */
+    private <T> void submit(final QueuedTask<T> queuedTask, 
+        final Member member)
+    {
+        if (queuedTask.future.isDone())
+        {
+            release(member);
+            return;
+        }
+        final long startNanos = System.nanoTime();
+        final CompletableFuture<T> attempt = submitAttempt(queuedTask, member);
+        synchronized (this)
+        {
+            queuedTask.attempts.put(member, attempt);
+        }
+        attempt.whenComplete(new BiConsumer<T, Throwable>()
+        {
+            @Override
+            public void accept(T value, Throwable t)
+            {
+                release(member);
+                complete(queuedTask, member, startNanos, value, t);
+                submitQueuedTasks();
+            }
+        });
+        if (queuedTask.future.isDone())
+        {
+            // The task was completed or cancelled while it was submitted
+            attempt.cancel(true);
+            return;
+        }
+        if (speculationFactor > 0)
+        {
+            scheduleSpeculation(queuedTask, member, startNanos, 
+                computeSpeculationDelayNanos());
+        }
+    }
+    
+    /**
+     * Submit the given task to the IExecutorService. If a member is 
+     * given, then the task is executed on this member. Otherwise, it is 
+     * executed on the owner of the key of the task, or on any member if
+     * the task does not have a key. If the {@link BlockEncoding} of the
+     * task is not {@link BlockEncoding#NONE}, or the task is a 
+     * {@link MatMulTask} or a {@link MatMulBatchTask} that should be
+     * computed with the compute threads of the member, then the task 
+     * is sent as an {@link EncodedTask}. If the task is a 
+     * {@link MatMulTask} whose blocks or result exceed the maximum 
+     * message size, then it is sent as a {@link StripTask}.
+     * 
+     * @param <T> The result type
+     * @param queuedTask The task
+     * @param member The member. This may be <code>null</code>.
+     * @return The future of the execution
+     */
+    private <T> CompletableFuture<T> submitAttempt(
+        QueuedTask<T> queuedTask, Member member)
+    {
+        if (requiresStrips(queuedTask.callable))
+        {
+            // The callable is a MatMulTask, so T is MatMulResult
+            @SuppressWarnings("unchecked")
+            CompletableFuture<T> attempt = 
+                (CompletableFuture<T>)(CompletableFuture<?>)
+                submitStripAttempt((MatMulTask)queuedTask.callable, 
+                    queuedTask.key, member);
+            return attempt;
+        }
+        final BlockEncoding blockEncoding = queuedTask.blockEncoding;
+        if (blockEncoding.isNone() && 
+            !(queuedTask.callable instanceof MatMulTask) &&
+            !(queuedTask.callable instanceof MatMulBatchTask))
+        {
+            return ExecutorExtensions.toCompletableFuture(
+                submitCallable(queuedTask.callable, queuedTask.key, member));
+        }
+        final CompletableFuture<EncodedResult<T>> encodedAttempt = 
+            ExecutorExtensions.toCompletableFuture(submitCallable(
+                new EncodedTask<T>(queuedTask.callable, blockEncoding), 
+                queuedTask.key, member));
+        final CompletableFuture<T> attempt = new CompletableFuture<T>();
+        encodedAttempt.whenComplete(
+            new BiConsumer<EncodedResult<T>, Throwable>()
+        {
+            @Override
+            public void accept(EncodedResult<T> encodedResult, Throwable t)
+            {
+                if (t != null)
+                {
+                    attempt.completeExceptionally(t);
+                    return;
+                }
+                blockEncoding.updateMaxRelativeError(
+                    encodedResult.getMaxRelativeError());
+                attempt.complete(encodedResult.getValue());
+            }
+        });
+        attempt.whenComplete(new BiConsumer<T, Throwable>()
+        {
+            @Override
+            public void accept(T value, Throwable t)
+            {
+                if (attempt.isCancelled())
+                {
+                    encodedAttempt.cancel(true);
+                }
+            }
+        });
+        return attempt;
+    }
+    
+    /**
+     * Returns whether the given callable is a {@link MatMulTask} whose
+     * blocks or result exceed the maximum message size
+     * 
+     * @param callable The callable
+     * @return Whether the task has to be sent in strips
+     */
+    private boolean requiresStrips(Callable<?> callable)
+    {
+        if (hazelcastInstance == null || maxMessageBytes <= 0 || 
+            !(callable instanceof MatMulTask))
+        {
+            return false;
+        }
+        MatMulTask task = (MatMulTask)callable;
+        long numBytes0 = BlockStrips.computeNumBytes(
+            task.getM0().getNumRows(), task.getM0().getNumColumns());
+        long numBytes1 = BlockStrips.computeNumBytes(
+            task.getM1().getNumRows(), task.getM1().getNumColumns());
+        long resultBytes = BlockStrips.computeNumBytes(
+            task.getM0().getNumRows(), task.getM1().getNumColumns());
+        return numBytes0 + numBytes1 > maxMessageBytes || 
+            resultBytes > maxMessageBytes;
+    }
+    
+    /**
+     * Submit the given task as a {@link StripTask}: The blocks of the
+     * task are stored in {@link BlockStrips}, one strip after the other,
+     * and the {@link StripTask} is submitted when all strips have been 
+     * stored. The result is then reassembled from its strips. The strips
+     * of the blocks are removed when the execution is finished.
+     * 
+     * @param task The task
+     * @param key The key whose owner the task should be executed on. 
+     * This may be <code>null</code>.
+     * @param member The member that the task should be executed on.
+     * If this is not <code>null</code>, then the key is ignored.
+     * @return The future of the execution
+     */
+    private CompletableFuture<MatMulResult> submitStripAttempt(
+        final MatMulTask task, final Object key, final Member member)
+    {
+        final BlockStrips blockStrips = new BlockStrips(
+            hazelcastInstance, BlockStrips.DEFAULT_MAP_NAME);
+        final StripReference m0 = 
+            BlockStrips.createReference(task.getM0(), maxMessageBytes);
+        final StripReference m1 = 
+            BlockStrips.createReference(task.getM1(), maxMessageBytes);
+        final StripTask stripTask = new StripTask(blockStrips.getMapName(),
+            task.getJobId(), task.getSlice(), 
+            task.getRowBlockIndex(), task.getColumnBlockIndex(), m0, m1,
+            task.getMatrixMultiplicatorFactory(), maxMessageBytes);
+        final AtomicReference<Future<StripReference>> submitted = 
+            new AtomicReference<Future<StripReference>>();
+        final CompletableFuture<MatMulResult> attempt = 
+            new CompletableFuture<MatMulResult>();
+        blockStrips.upload(m0, task.getM0()).thenCompose(
+            new Function<Void, CompletableFuture<Void>>()
+        {
+            @Override
+            public CompletableFuture<Void> apply(Void v)
+            {
+                return blockStrips.upload(m1, task.getM1());
+            }
+        }).thenCompose(
+            new Function<Void, CompletableFuture<StripReference>>()
+        {
+            @Override
+            public CompletableFuture<StripReference> apply(Void v)
+            {
+                Future<StripReference> future = 
+                    submitCallable(stripTask, key, member);
+                submitted.set(future);
+                if (attempt.isCancelled())
+                {
+                    future.cancel(true);
+                }
+                return ExecutorExtensions.toCompletableFuture(future);
+            }
+        }).thenCompose(
+            new Function<StripReference, 
+                CompletableFuture<MutableFloatMatrix2D>>()
+        {
+            @Override
+            public CompletableFuture<MutableFloatMatrix2D> apply(
+                StripReference reference)
+            {
+                return blockStrips.download(reference);
+            }
+        }).whenComplete(new BiConsumer<MutableFloatMatrix2D, Throwable>()
+        {
+            @Override
+            public void accept(MutableFloatMatrix2D matrix, Throwable t)
+            {
+                blockStrips.remove(m0);
+                blockStrips.remove(m1);
+                if (t != null)
+                {
+                    attempt.completeExceptionally(t);
+                    return;
+                }
+                Point point = new Point(
+                    task.getRowBlockIndex(), task.getColumnBlockIndex());
+                attempt.complete(new MatMulResult(task.getJobId(), 
+                    task.getSlice(), point, matrix, null));
+            }
+        });
+        attempt.whenComplete(new BiConsumer<MatMulResult, Throwable>()
+        {
+            @Override
+            public void accept(MatMulResult value, Throwable t)
+            {
+                Future<StripReference> future = submitted.get();
+                if (attempt.isCancelled() && future != null)
+                {
+                    future.cancel(true);
+                }
+            }
+        });
+        return attempt;
+    }
+    
+    /**
+     * Submit the given callable to the IExecutorService
+     * 
+     * @param <T> The result type
+     * @param callable The callable
+     * @param key The key whose owner the callable should be executed 
+     * on. This may be <code>null</code>.
+     * @param member The member that the callable should be executed on.
+     * If this is not <code>null</code>, then the key is ignored.
+     * @return The future
+     */
+    private <T> Future<T> submitCallable(
+        Callable<T> callable, Object key, Member member)
+    {
+        if (member != null)
+        {
+            return executorService.submitToMember(callable, member);
+        }
+        if (key != null)
+        {
+            return executorService.submitToKeyOwner(callable, key);
+        }
+        return executorService.submit(callable);
+    }
+    
+    /**
+     * Handle the completion of the execution of the given task on the 
+     * given member. If the execution was successful, the future of the
+     * task is completed with the given value. If it failed, and other
+     * executions of the task are still running, then nothing is done.
+     * Otherwise, the task is queued again if the failure was caused by
+     * the member leaving the cluster (or the member is no longer part of
+     * the cluster), the maximum number of retries has not been reached
+     * yet, and there still is a data member in the cluster that the task
+     * can be submitted to. Otherwise, the future of the task is completed
+     * exceptionally.
+     * 
+     * @param <T> The result type
+     * @param queuedTask The task
+     * @param member The member
+     * @param startNanos The time when the execution was started
+     * @param value The result value
+     * @param t The error
+     */
+    private <T> void complete(QueuedTask<T> queuedTask, Member member, 
+        long startNanos, T value, Throwable t)
+    {
+        synchronized (this)
+        {
+            queuedTask.attempts.remove(member);
+            if (queuedTask.future.isDone())
+            {
+                return;
+            }
+            if (t != null)
+            {
+                if (!queuedTask.attempts.isEmpty())
+                {
+                    return;
+                }
+                List<Member> members = 
+                    MatMulUtils.getDataMembers(hazelcastInstance);
+                boolean retryable = isRetryable(t) || 
+                    !members.contains(member);
+                if (retryable && queuedTask.retries < maxRetries &&
+                    !members.isEmpty())
+                {
+                    queuedTask.retries++;
+                    queuedTask.failedMembers.add(member);
+                    // Members that left the cluster will not be selected
+                    // anyhow. If the task failed on all remaining members,
+                    // then it may be retried on any of them
+                    queuedTask.failedMembers.retainAll(members);
+                    if (queuedTask.failedMembers.containsAll(members))
+                    {
+                        queuedTask.failedMembers.clear();
+                    }
+                    retriedTasks.add(queuedTask);
+                    logger.warning("Retrying task that failed on " + 
+                        member + ": " + t);
+                    return;
+                }
+            }
+        }
+        if (t != null)
+        {
+            queuedTask.future.completeExceptionally(t);
+        }
+        else
+        {
+            latencies.record(System.nanoTime() - startNanos);
+            queuedTask.future.complete(value);
+        }
+    }
+    
+    /**
+     * Returns the delay after which it should be checked whether a task
+     * that has just been submitted should be executed speculatively
+     * 
+     * @return The delay, in nanoseconds
+     */
+    private long computeSpeculationDelayNanos()
+    {
+        long median = latencies.computeMedian(MIN_LATENCY_SAMPLES);
+        if (median < 0)
+        {
+            return TimeUnit.MILLISECONDS.toNanos(
+                SPECULATION_CHECK_INTERVAL_MS);
+        }
+        return Math.max(1, (long)(median * speculationFactor));
+    }
+    
+    /**
+     * Schedule a check whether the execution of the given task on the
+     * given member is running much longer than the median latency, and
+     * should be executed on another member as well
+     * 
+     * @param <T> The result type
+     * @param queuedTask The task
+     * @param member The member
+     * @param startNanos The time when the execution was started
+     * @param delayNanos The delay for the check
+     */
+    private <T> void scheduleSpeculation(final QueuedTask<T> queuedTask, 
+        final Member member, final long startNanos, long delayNanos)
+    {
+        speculationTimer.schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                speculate(queuedTask, member, startNanos);
+            }
+        }, delayNanos, TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * Check whether the execution of the given task on the given member
+     * is running much longer than the median latency. If this is the 
+     * case, and another member has less than the maximum number of tasks
+     * in flight, then submit the task to this member as well. Otherwise,
+     * schedule another check, unless the execution is finished.
+     * 
+     * @param <T> The result type
+     * @param queuedTask The task
+     * @param member The member
+     * @param startNanos The time when the execution was started
+     */
+    private <T> void speculate(QueuedTask<T> queuedTask, Member member, 
+        long startNanos)
+    {
+        long median = latencies.computeMedian(MIN_LATENCY_SAMPLES);
+        long thresholdNanos = (long)(median * speculationFactor);
+        long elapsedNanos = System.nanoTime() - startNanos;
+        Member otherMember = null;
+        synchronized (this)
+        {
+            if (queuedTask.future.isDone() || queuedTask.speculated ||
+                !queuedTask.attempts.containsKey(member))
+            {
+                return;
+            }
+            if (median >= 0 && elapsedNanos >= thresholdNanos)
+            {
+                otherMember = selectMember(
+                    false, queuedTask.attempts.keySet());
+            }
+            if (otherMember != null)
+            {
+                queuedTask.speculated = true;
+                inFlightTasks.put(
+                    otherMember, getInFlightTasks(otherMember) + 1);
+            }
+        }
+        if (otherMember == null)
+        {
+            long delayNanos = computeSpeculationDelayNanos();
+            if (median >= 0 && elapsedNanos < thresholdNanos)
+            {
+                delayNanos = thresholdNanos - elapsedNanos;
+            }
+            scheduleSpeculation(queuedTask, member, startNanos, delayNanos);
+            return;
+        }
+        logger.info("Task on " + member + " is running for " + 
+            TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + " ms, median is " +
+            TimeUnit.NANOSECONDS.toMillis(median) + " ms. Submitting it " + 
+            "to " + otherMember + " as well");
+        submit(queuedTask, otherMember);
+    }
+    
+    /**
+     * Returns whether the given throwable indicates that a task failed
+     * because the member that executed it left the cluster, so that it
+     * may be submitted again
+     * 
+     * @param t The throwable
+     * @return Whether the task may be submitted again
+     */
+    private static boolean isRetryable(Throwable t)
+    {
+        Throwable current = t;
+        while (current != null)
+        {
+            if (current instanceof RetryableException ||
+                current instanceof TargetDisconnectedException)
+            {
+                return true;
+            }
+            current = current.getCause();
+        }
+        return false;
+    }
+    
+    /**
+     * Decrease the number of tasks that are in flight for the given member
+     * 
+     * @param member The member
+     */
+    private synchronized void release(Member member)
+    {
+        int n = getInFlightTasks(member) - 1;
+        if (n <= 0)
+        {
+            inFlightTasks.remove(member);
+        }
+        else
+        {
+            inFlightTasks.put(member, n);
+        }
+    }
+
+    @Override
+    public void shutdown()
+    {
+        // The IExecutorService is shared, and not shut down here
+    }
+    
+    @Override
+    public String toString()
+    {
+        return getClass().getSimpleName() + 
+            "[" + executorService.getName() + "," +
+            "maxInFlightTasksPerMember=" + maxInFlightTasksPerMember + "," +
+            "maxRetries=" + maxRetries + "," +
+            "speculationFactor=" + speculationFactor + "," +
+            "blockEncoding=" + blockEncoding + "]";
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+/**
+ * An event that is published by a member via the topic with the name
+ * {@link MatMulUtils#JOB_EVENTS_TOPIC_NAME}, to inform the client that
+ * the member finished its part of a job, or that an error occurred.
+ */
+final class JobEvent
+{
+    /**
+     * The ID of the job
+     */
+    private final String jobId;
+    
+    /**
+     * The error message, or <code>null</code> if the member finished
+     * its part of the job successfully
+     */
+    private final String errorMessage;
+    
+    /**
+     * Creates a new event
+     * 
+     * @param jobId The ID of the job
+     * @param errorMessage The error message, or <code>null</code> if
+     * the member finished its part of the job successfully
+     */
+    JobEvent(String jobId, String errorMessage)
+    {
+        this.jobId = jobId;
+        this.errorMessage = errorMessage;
+    }
+    
+    /**
+     * Returns the ID of the job
+     * 
+     * @return The job ID
+     */
+    String getJobId()
+    {
+        return jobId;
+    }
+    
+    /**
+     * Returns the error message, or <code>null</code> if the member 
+     * finished its part of the job successfully
+     * 
+     * @return The error message
+     */
+    String getErrorMessage()
+    {
+        return errorMessage;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return "JobEvent[jobId=" + jobId + 
+            ",errorMessage=" + errorMessage + "]";
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.StreamSerializer;
+
+import de.javagl.hazelcast.matmul.MatMulBatchResult;
+import de.javagl.hazelcast.matmul.MatMulResult;
+import de.javagl.hazelcast.matmul.MatrixPool;
+
+/**
+ * A Hazelcast StreamSerializer for {@link MatMulBatchResult} objects.
+ * The matrices of the results are read into matrices from the given
+ * {@link MatrixPool}, as in the {@link MatMulResultSerializer}.
+ */
+final class MatMulBatchResultSerializer 
+    implements StreamSerializer<MatMulBatchResult>
+{
+    /**
+     * The pool for the matrices of the results. This may be 
+     * <code>null</code>.
+     */
+    private final MatrixPool pool;
+    
+    /**
+     * Creates a new serializer
+     * 
+     * @param pool The {@link MatrixPool}. This may be <code>null</code>.
+     */
+    MatMulBatchResultSerializer(MatrixPool pool)
+    {
+        this.pool = pool;
+    }
+    
+    @Override
+    public int getTypeId()
+    {
+        return 43210;
+    }
+
+    @Override
+    public void write(ObjectDataOutput out, MatMulBatchResult batchResult)
+        throws IOException
+    {
+        out.writeLong(batchResult.getComputeNanos());
+        List<MatMulResult> results = batchResult.getResults();
+        out.writeInt(results.size());
+        for (MatMulResult result : results)
+        {
+            MatMulResultSerializer.writeResult(out, result);
+        }
+    }
+
+    @Override
+    public MatMulBatchResult read(ObjectDataInput in) throws IOException
+    {
+        long computeNanos = in.readLong();
+        int n = in.readInt();
+        List<MatMulResult> results = new ArrayList<MatMulResult>(n);
+        for (int i = 0; i < n; i++)
+        {
+            results.add(MatMulResultSerializer.readResult(in, pool));
+        }
+        return new MatMulBatchResult(results, computeNanos);
+    }
+
+    @Override
+    public void destroy()
+    {
+        // Not used
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.io.IOException;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.StreamSerializer;
+
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+import de.javagl.hazelcast.matmul.MatMulBatchTask;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+
+/**
+ * A Hazelcast StreamSerializer for {@link MatMulBatchTask} objects
+ */
+final class MatMulBatchTaskSerializer 
+    implements StreamSerializer<MatMulBatchTask>
+{
+    @Override
+    public int getTypeId()
+    {
+        return 54321;
+    }
+
+    @Override
+    public void write(ObjectDataOutput out, MatMulBatchTask task)
+        throws IOException
+    {
+        out.writeUTF(task.getJobId());
+        out.writeInt(task.getSlice());
+        SummaStepTaskSerializer.writeBlocks(
+            out, task.getRowBlockIndices(), task.getRowBlocks());
+        SummaStepTaskSerializer.writeBlocks(
+            out, task.getColumnBlockIndices(), task.getColumnBlocks());
+        MatrixMultiplicatorFactoryCodecs.write(
+            out, task.getMatrixMultiplicatorFactory());
+    }
+
+    @Override
+    public MatMulBatchTask read(ObjectDataInput in) throws IOException
+    {
+        String jobId = in.readUTF();
+        int slice = in.readInt();
+        int rowBlockIndices[] = in.readIntArray();
+        FloatMatrix2D rowBlocks[] = SummaStepTaskSerializer.readBlocks(
+            in, rowBlockIndices.length);
+        int columnBlockIndices[] = in.readIntArray();
+        FloatMatrix2D columnBlocks[] = SummaStepTaskSerializer.readBlocks(
+            in, columnBlockIndices.length);
+        Factory<MatrixMultiplicator> matrixMultiplicatorFactory = 
+            MatrixMultiplicatorFactoryCodecs.read(in);
+        return new MatMulBatchTask(jobId, slice, 
+            rowBlockIndices, rowBlocks, columnBlockIndices, columnBlocks, 
+            matrixMultiplicatorFactory);
+    }
+
+    @Override
+    public void destroy()
+    {
+        // Not used
+    }
+
+}
@@ -25,10 +25,13 @@
  * OTHER DEALINGS IN THE SOFTWARE.
  */
 package de.javagl.hazelcast.matmul.hazelcast;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -38,9 +41,12 @@ import java.util.logging.Logger;
 
 import com.hazelcast.client.HazelcastClient;
 import com.hazelcast.client.config.ClientConfig;
+import com.hazelcast.cluster.Member;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.IExecutorService;
 
+import de.javagl.hazelcast.matmul.AsyncExecutor;
+import de.javagl.hazelcast.matmul.AsyncMatrixMultiplicator;
 import de.javagl.hazelcast.matmul.Factory;
 import de.javagl.hazelcast.matmul.MatMulResult;
 import de.javagl.hazelcast.matmul.MatMulTask;
@@ -92,6 +98,94 @@ public class MatMulClient
      */
     private static int nodeProcessorBlockSize = 50;
     
+    /**
+     * The maximum number of slices of the reduction dimension (the 
+     * columns of A and the rows of B) that are processed concurrently
+     * in the cluster
+     */
+    private static int reductionSplit = 1;
+    
+    /**
+     * The maximum number of tasks that are in flight for each cluster
+     * node. If this is not positive, then all tasks of one outer product
+     * are submitted at once.
+     */
+    private static int maxInFlightTasksPerMember = 0;
+    
+    /**
+     * The maximum number of block products that are combined into one
+     * task for the "outerProduct" algorithm. The actual number is chosen
+     * based on the measured round trip times of the tasks.
+     */
+    private static int maxProductsPerTask = 1;
+    
+    /**
+     * The maximum number of times that a task is submitted again after
+     * it failed because its cluster node left the cluster
+     */
+    private static int maxTaskRetries = 
+        HazelcastAsyncExecutor.DEFAULT_MAX_RETRIES;
+    
+    /**
+     * The factor by which the latency of a task has to exceed the median
+     * latency of the completed tasks so that it is submitted to another
+     * cluster node as well. If this is not positive, then no tasks are 
+     * executed speculatively. This requires the tasks to be free of 
+     * side effects, and is therefore disabled by default.
+     */
+    private static double speculationFactor = 0.0;
+    
+    /**
+     * The maximum size of the blocks that are sent in a single task or
+     * result of the "outerProduct" algorithm, in MB. Larger blocks are
+     * sent in strips of at most this size.
+     */
+    private static int maxMessageSizeMB = (int)
+        (HazelcastAsyncExecutor.DEFAULT_MAX_MESSAGE_BYTES / (1024 * 1024));
+    
+    /**
+     * The directory for the checkpoint files of the "outerProduct" 
+     * algorithm. If this is empty, then no checkpoints are written.
+     */
+    private static String checkpointDirectory = "";
+    
+    /**
+     * The ID of the job. The checkpoint file is named after this ID, 
+     * so that a client that is started again with the same ID can 
+     * continue the multiplication from the last checkpoint.
+     */
+    private static String jobId = "matMulJob";
+    
+    /**
+     * The minimum time between two checkpoints, in seconds
+     */
+    private static int checkpointIntervalSeconds = 60;
+    
+    /**
+     * The algorithm that is used for the distributed multiplication.
+     * Either "outerProduct", "memberReduction", "storedOperands", 
+     * "broadcastOperand", "summa" or "cannon"
+     */
+    private static String algorithm = "outerProduct";
+    
+    /**
+     * The {@link BlockCompression} that is used for the blocks that
+     * are sent to the cluster and back
+     */
+    private static BlockCompression blockCompression = BlockCompression.NONE;
+    
+    /**
+     * The {@link BlockPrecision} that is used for the blocks that
+     * are sent to the cluster
+     */
+    private static BlockPrecision blockPrecision = BlockPrecision.FP32;
+    
+    /**
+     * The {@link BlockPrecision} that is used for the result blocks
+     * that are sent back by the cluster
+     */
+    private static BlockPrecision resultPrecision = BlockPrecision.FP32;
+    
     /**
      * The comma-separated list of server addresses
      */
@@ -157,28 +251,96 @@ public class MatMulClient
             columnsB, maxColumnsB, benchmarkStepSize,
             benchmarkRuns,
             multiplicator0, multiplicator1);
+        if (algorithm.equalsIgnoreCase("storedOperands"))
+        {
+            logBlockCacheStatistics();
+        }
 
         hazelcastInstance.getLifecycleService().shutdown();
     }
     
+    /**
+     * Log the statistics of the {@link BlockCache} of each member
+     */
+    private static void logBlockCacheStatistics()
+    {
+        IExecutorService executorService = 
+            hazelcastInstance.getExecutorService("matMulExecutorService");
+        Map<Member, Future<String>> futures = 
+            executorService.submitToAllMembers(
+                new BlockCacheStatisticsTask());
+        for (Entry<Member, Future<String>> entry : futures.entrySet())
+        {
+            try
+            {
+                logger.info("Block cache of " + entry.getKey() + ": " + 
+                    entry.getValue().get());
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            catch (ExecutionException e)
+            {
+                logger.log(Level.WARNING, 
+                    "Could not obtain block cache statistics", e);
+            }
+        }
+    }
+    
     
     /**
-     * Create a {@link MatrixMultiplicator} using Hazelcast
+     * Create a {@link MatrixMultiplicator} using Hazelcast. The returned
+     * multiplicator may also be used for asynchronous multiplications.
+     * Multiple asynchronous multiplications may be executed concurrently,
+     * sharing the same executor service in the cluster.
      * 
      * @return The {@link MatrixMultiplicator}
      */
-    private static MatrixMultiplicator createHazelcastMatrixMultiplicator()
+    private static AsyncMatrixMultiplicator createHazelcastMatrixMultiplicator()
     {
-        Factory<ExecutorService> executorServiceFactory = 
-            new Factory<ExecutorService>()
+        if (algorithm.equalsIgnoreCase("cannon"))
+        {
+            return new CannonMatrixMultiplicator(
+                hazelcastInstance, "matMulExecutorService", 
+                MatrixMultiplicators.createParallelFactory(
+                    nodeProcessorBlockSize));
+        }
+        if (algorithm.equalsIgnoreCase("memberReduction"))
+        {
+            return new MemberReductionMatrixMultiplicator(
+                hazelcastInstance, "matMulExecutorService", 
+                clusterNodeBlockSize, 
+                MatrixMultiplicators.createParallelFactory(
+                    nodeProcessorBlockSize));
+        }
+        if (algorithm.equalsIgnoreCase("summa"))
+        {
+            return new SummaMatrixMultiplicator(
+                hazelcastInstance, "matMulExecutorService", 
+                clusterNodeBlockSize, 
+                MatrixMultiplicators.createParallelFactory(
+                    nodeProcessorBlockSize));
+        }
+        // The executor is shared among all multiplications, so that the
+        // number of tasks in flight is limited for all of them together
+        IExecutorService executorService = 
+            hazelcastInstance.getExecutorService("matMulExecutorService");
+        final HazelcastAsyncExecutor asyncExecutor = 
+            new HazelcastAsyncExecutor(hazelcastInstance, executorService, 
+                maxInFlightTasksPerMember, maxTaskRetries, speculationFactor, 
+                BlockEncoding.NONE, maxMessageSizeMB * 1024L * 1024L);
+        // Each multiplication uses its own encoding, so that the error
+        // is recorded and reported for each multiplication
+        Factory<AsyncExecutor> asyncExecutorFactory = 
+            new Factory<AsyncExecutor>()
         {
             @Override
-            public ExecutorService create()
+            public AsyncExecutor create()
             {
-                IExecutorService executorService = 
-                    hazelcastInstance.getExecutorService(
-                        "matMulExecutorService");
-                return executorService;
+                return asyncExecutor.createJobExecutor(new BlockEncoding(
+                    blockCompression, blockPrecision, resultPrecision));
             }
             
             @Override
@@ -188,13 +350,38 @@ public class MatMulClient
             }
         };
         
-        // Creates a MatrixMultiplicator that will dispatch MatMulTask objects 
-        // to the executor service. 
         Factory<MatrixMultiplicator> subMatrixMultiplicatorFactory =
             MatrixMultiplicators.createParallelFactory(nodeProcessorBlockSize);
-        MatrixMultiplicator multiplicator = 
-            MatrixMultiplicators.createParallel(
-                executorServiceFactory, clusterNodeBlockSize,
+        if (algorithm.equalsIgnoreCase("storedOperands"))
+        {
+            return new StoredOperandsMatrixMultiplicator(
+                hazelcastInstance, asyncExecutorFactory, 
+                clusterNodeBlockSize, subMatrixMultiplicatorFactory);
+        }
+        if (algorithm.equalsIgnoreCase("broadcastOperand"))
+        {
+            return new BroadcastOperandMatrixMultiplicator(
+                hazelcastInstance, asyncExecutorFactory, 
+                clusterNodeBlockSize, 
+                BroadcastOperandMatrixMultiplicator.DEFAULT_MAX_VERSIONS,
+                subMatrixMultiplicatorFactory);
+        }
+        
+        File checkpointFile = null;
+        if (!checkpointDirectory.isEmpty())
+        {
+            checkpointFile = 
+                new File(checkpointDirectory, jobId + ".checkpoint");
+            logger.info("Using checkpoint file " + checkpointFile);
+        }
+        
+        // Creates a MatrixMultiplicator that will dispatch MatMulTask objects 
+        // to the executor service. 
+        AsyncMatrixMultiplicator multiplicator = 
+            MatrixMultiplicators.createAsync(
+                asyncExecutorFactory, clusterNodeBlockSize, reductionSplit,
+                maxProductsPerTask, checkpointFile, 
+                checkpointIntervalSeconds * 1000L, 
                 subMatrixMultiplicatorFactory);
         return multiplicator;
     }
@@ -264,6 +451,38 @@ public class MatMulClient
         nodeProcessorBlockSize = 
             parseInt(
                 properties, "nodeProcessorBlockSize", nodeProcessorBlockSize);
+        reductionSplit = parseInt(
+            properties, "reductionSplit", reductionSplit);
+        maxInFlightTasksPerMember = parseInt(
+            properties, "maxInFlightTasksPerMember", 
+            maxInFlightTasksPerMember);
+        maxProductsPerTask = parseInt(
+            properties, "maxProductsPerTask", maxProductsPerTask);
+        maxTaskRetries = parseInt(
+            properties, "maxTaskRetries", maxTaskRetries);
+        speculationFactor = parseDouble(
+            properties, "speculationFactor", speculationFactor);
+        maxMessageSizeMB = parseInt(
+            properties, "maxMessageSizeMB", maxMessageSizeMB);
+        checkpointDirectory = properties.getProperty(
+            "checkpointDirectory", checkpointDirectory).trim();
+        logger.info("checkpointDirectory="+checkpointDirectory);
+        jobId = properties.getProperty("jobId", jobId).trim();
+        logger.info("jobId="+jobId);
+        checkpointIntervalSeconds = parseInt(
+            properties, "checkpointIntervalSeconds", 
+            checkpointIntervalSeconds);
+        algorithm = properties.getProperty("algorithm", algorithm);
+        logger.info("algorithm="+algorithm);
+        blockCompression = BlockCompression.parse(properties.getProperty(
+            "blockCompression", blockCompression.name()));
+        logger.info("blockCompression="+blockCompression);
+        blockPrecision = BlockPrecision.parse(properties.getProperty(
+            "blockPrecision", blockPrecision.name()));
+        logger.info("blockPrecision="+blockPrecision);
+        resultPrecision = BlockPrecision.parse(properties.getProperty(
+            "resultPrecision", resultPrecision.name()));
+        logger.info("resultPrecision="+resultPrecision);
         serverURLs = properties.getProperty("serverURLs", serverURLs);
         benchmarkSteps = parseInt(
             properties, "benchmarkSteps", benchmarkSteps);
@@ -315,6 +534,54 @@ public class MatMulClient
         }
     }
     
+    /**
+     * Parse a double value from the specified properties, returning 
+     * the given default value if no value could be parsed.
+     * 
+     * @param properties The properties
+     * @param name The property name
+     * @param defaultValue The default value
+     * @return The parsed double value
+     */
+    private static double parseDouble(
+        Properties properties, String name, double defaultValue)
+    {
+        return parseDouble(name, properties.getProperty(name), defaultValue);
+    }
+    
+    /**
+     * Parse a double value from the given string, returning the given
+     * default value if no value could be parsed.
+     * 
+     * @param name The name of the field
+     * @param string The string containing the double value
+     * @param defaultValue The default value
+     * @return The parsed double value
+     */
+    private static double parseDouble(
+        String name, String string, double defaultValue)
+    {
+        if (string == null)
+        {
+            logger.warning(
+                "No value for "+name+". Using default ("+defaultValue+")");
+            return defaultValue;
+        }
+        try
+        {
+            double result = Double.parseDouble(string);
+            logger.info(name+"="+result);
+            return result;
+        }
+        catch (NumberFormatException e)
+        {
+            logger.warning(
+                "Invalid value for "+name+": "+string+". " +
+                "Using default ("+defaultValue+")");
+            return defaultValue;
+        }
+    }
+    
 
 
     /**
@@ -0,0 +1,532 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.HazelcastInstance;
+
+import de.javagl.hazelcast.matmul.ExecutorExtensions;
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+import de.javagl.hazelcast.matmul.MatrixMultiplicators;
+import de.javagl.hazelcast.matmul.MatrixMultiplicators.ParallelMatrixMultiplicatorFactory;
+import de.javagl.hazelcast.matmul.MatrixMultiplicators.SimpleMatrixMultiplicatorFactory;
+import de.javagl.hazelcast.matmul.MutableFloatMatrix2D;
+import de.javagl.hazelcast.matmul.Point;
+
+/**
+ * The state that is kept on a single cluster member for the matrix
+ * multiplications that keep data on the members between tasks. 
+ * The context is stored in the user context of the HazelcastInstance
+ * of the member.
+ */
+final class MatMulMemberContext
+{
+    /**
+     * The key under which the context is stored in the user context
+     */
+    private static final String KEY = MatMulMemberContext.class.getName();
+    
+    /**
+     * Returns the {@link MatMulMemberContext} of the given 
+     * HazelcastInstance, creating it if necessary
+     * 
+     * @param hazelcastInstance The HazelcastInstance
+     * @return The {@link MatMulMemberContext}
+     */
+    static MatMulMemberContext get(HazelcastInstance hazelcastInstance)
+    {
+        ConcurrentMap<String, Object> userContext = 
+            hazelcastInstance.getUserContext();
+        Object context = userContext.get(KEY);
+        if (context == null)
+        {
+            MatMulMemberContext newContext = new MatMulMemberContext();
+            context = userContext.putIfAbsent(KEY, newContext);
+            if (context == null)
+            {
+                context = newContext;
+            }
+        }
+        return (MatMulMemberContext)context;
+    }
+    
+    /**
+     * Store a {@link MatMulMemberContext} with the given settings in the
+     * user context of the given configuration, so that it is used by 
+     * the HazelcastInstance that is created from this configuration
+     * 
+     * @param config The configuration
+     * @param blockCacheSize The maximum size of the {@link BlockCache}, 
+     * in bytes. If this is negative, then one quarter of the maximum heap
+     * size is used.
+     * @param computeThreads The number of threads that are shared by 
+     * all tasks on the member for the multiplications of the blocks.
+     * If this is not positive, then the number of available processors
+     * is used.
+     * @param computeQueueCapacity The maximum number of blocks that are 
+     * waiting to be multiplied by the compute threads. If this is not 
+     * positive, then {@link #DEFAULT_COMPUTE_QUEUE_FACTOR} times the 
+     * number of compute threads is used.
+     * @param kernelFactory The factory for the {@link MatrixMultiplicator}
+     * that is used instead of the built-in factories that are sent 
+     * along with the tasks. If this is <code>null</code>, then the 
+     * factories of the tasks are used.
+     */
+    static void configure(Config config, long blockCacheSize, 
+        int computeThreads, int computeQueueCapacity,
+        Factory<MatrixMultiplicator> kernelFactory)
+    {
+        if (blockCacheSize < 0)
+        {
+            blockCacheSize = DEFAULT_BLOCK_CACHE_SIZE;
+        }
+        if (computeThreads <= 0)
+        {
+            computeThreads = Runtime.getRuntime().availableProcessors();
+        }
+        if (computeQueueCapacity <= 0)
+        {
+            computeQueueCapacity = 
+                DEFAULT_COMPUTE_QUEUE_FACTOR * computeThreads;
+        }
+        config.getUserContext().put(KEY, new MatMulMemberContext(
+            blockCacheSize, computeThreads, computeQueueCapacity, 
+            kernelFactory));
+    }
+    
+    /**
+     * The default maximum size of the {@link BlockCache}, in bytes: 
+     * One quarter of the maximum heap size
+     */
+    private static final long DEFAULT_BLOCK_CACHE_SIZE = 
+        Runtime.getRuntime().maxMemory() / 4;
+    
+    /**
+     * The default capacity of the queue of the compute executor, as 
+     * a multiple of the number of compute threads
+     */
+    static final int DEFAULT_COMPUTE_QUEUE_FACTOR = 4;
+    
+    /**
+     * The blocks of result matrices that are accumulated on this member,
+     * for each job ID
+     */
+    private final ConcurrentMap<String, 
+        ConcurrentMap<Point, MutableFloatMatrix2D>> accumulators;
+    
+    /**
+     * The {@link CannonMemberState} instances for each job ID
+     */
+    private final ConcurrentMap<String, CannonMemberState> cannonStates;
+    
+    /**
+     * The maximum number of job IDs that are kept in the 
+     * {@link #finishedJobIds}
+     */
+    private static final int MAX_FINISHED_JOB_IDS = 1000;
+    
+    /**
+     * The IDs of the jobs whose state has already been removed from this
+     * member, with the oldest ones being evicted. Tasks of these jobs 
+     * that are still running or arrive late may not create the state 
+     * again, because nobody would remove it afterwards. All accesses 
+     * are synchronized on this map.
+     */
+    private final Map<String, Boolean> finishedJobIds;
+    
+    /**
+     * The executor service for the multiplications of the blocks that
+     * are performed on this member. Created lazily.
+     */
+    private ExecutorService computeExecutor;
+    
+    /**
+     * The number of threads of the {@link #computeExecutor}
+     */
+    private final int computeThreads;
+    
+    /**
+     * The capacity of the queue of the {@link #computeExecutor}
+     */
+    private final int computeQueueCapacity;
+    
+    /**
+     * The factory that replaces the built-in factories of the tasks,
+     * or <code>null</code> if the factories of the tasks are used
+     */
+    private final Factory<MatrixMultiplicator> kernelFactory;
+    
+    /**
+     * The {@link BlockCache} for blocks from the {@link OperandStore}
+     */
+    private final BlockCache blockCache;
+    
+    /**
+     * Private constructor. Instances are obtained with 
+     * {@link #get(HazelcastInstance)}.
+     */
+    private MatMulMemberContext()
+    {
+        this(DEFAULT_BLOCK_CACHE_SIZE, 
+            Runtime.getRuntime().availableProcessors(),
+            DEFAULT_COMPUTE_QUEUE_FACTOR * 
+                Runtime.getRuntime().availableProcessors(), null);
+    }
+    
+    /**
+     * Private constructor. Instances are obtained with 
+     * {@link #get(HazelcastInstance)}.
+     * 
+     * @param blockCacheSize The maximum size of the {@link BlockCache}, 
+     * in bytes
+     * @param computeThreads The number of compute threads
+     * @param computeQueueCapacity The capacity of the compute queue
+     * @param kernelFactory The factory that replaces the built-in 
+     * factories of the tasks. This may be <code>null</code>.
+     */
+    private MatMulMemberContext(long blockCacheSize, int computeThreads,
+        int computeQueueCapacity, Factory<MatrixMultiplicator> kernelFactory)
+    {
+        this.computeThreads = computeThreads;
+        this.computeQueueCapacity = computeQueueCapacity;
+        this.kernelFactory = kernelFactory;
+        this.accumulators = new ConcurrentHashMap<String, 
+            ConcurrentMap<Point, MutableFloatMatrix2D>>();
+        this.cannonStates = 
+            new ConcurrentHashMap<String, CannonMemberState>();
+        this.blockCache = new BlockCache(blockCacheSize);
+        this.finishedJobIds = new LinkedHashMap<String, Boolean>()
+        {
+            /**
+             * Serial UID
+             */
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, Boolean> eldest)
+            {
+                return size() > MAX_FINISHED_JOB_IDS;
+            }
+        };
+    }
+    
+    /**
+     * Returns the {@link BlockCache} for blocks from the 
+     * {@link OperandStore}
+     * 
+     * @return The {@link BlockCache}
+     */
+    BlockCache getBlockCache()
+    {
+        return blockCache;
+    }
+    
+    /**
+     * Returns the number of threads of the compute executor
+     * 
+     * @return The number of compute threads
+     */
+    int getComputeThreads()
+    {
+        return computeThreads;
+    }
+    
+    /**
+     * Returns the capacity of the queue of the compute executor
+     * 
+     * @return The capacity of the compute queue
+     */
+    int getComputeQueueCapacity()
+    {
+        return computeQueueCapacity;
+    }
+    
+    /**
+     * Returns the factory that replaces the built-in factories of the
+     * tasks, or <code>null</code> if the factories of the tasks are used
+     * 
+     * @return The kernel factory
+     */
+    Factory<MatrixMultiplicator> getKernelFactory()
+    {
+        return kernelFactory;
+    }
+    
+    /**
+     * Returns the executor service for the multiplications of the blocks
+     * that are performed on this member, creating it if necessary. <br />
+     * <br />
+     * The queue of this executor is bounded: Threads that submit blocks 
+     * while the queue is full are blocked until the compute threads 
+     * have caught up. Together with the bounded queue of the executor 
+     * service of Hazelcast, this limits the number of tasks whose 
+     * operands have been received, but that have not been computed yet.
+     * 
+     * @return The executor service
+     */
+    synchronized ExecutorService getComputeExecutor()
+    {
+        if (computeExecutor == null)
+        {
+            computeExecutor = ExecutorExtensions.newBoundedFixedThreadPool(
+                computeThreads, computeQueueCapacity, 
+                createComputeThreadFactory());
+        }
+        return computeExecutor;
+    }
+    
+    /**
+     * Create the thread factory for the compute executor. The threads
+     * are daemon threads, so that they do not prevent the JVM from 
+     * shutting down when the member is shut down.
+     * 
+     * @return The thread factory
+     */
+    private static ThreadFactory createComputeThreadFactory()
+    {
+        return new ThreadFactory()
+        {
+            private final AtomicInteger counter = new AtomicInteger();
+            
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, 
+                    "MatMulMemberContext-compute-" + 
+                    counter.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+    
+    /**
+     * Returns the factory that should be used on this member, given the
+     * factory that was sent along with a task. If a kernel factory was
+     * configured for this member, then it replaces the built-in simple
+     * and parallel factories. Factories of other classes have been 
+     * chosen explicitly by the client, and are always used as they are.
+     * 
+     * @param matrixMultiplicatorFactory The factory from the task
+     * @return The factory that should be used
+     */
+    Factory<MatrixMultiplicator> resolveFactory(
+        Factory<MatrixMultiplicator> matrixMultiplicatorFactory)
+    {
+        if (kernelFactory == null)
+        {
+            return matrixMultiplicatorFactory;
+        }
+        if (matrixMultiplicatorFactory instanceof 
+                SimpleMatrixMultiplicatorFactory ||
+            matrixMultiplicatorFactory instanceof 
+                ParallelMatrixMultiplicatorFactory)
+        {
+            return kernelFactory;
+        }
+        return matrixMultiplicatorFactory;
+    }
+    
+    /**
+     * Create the {@link MatrixMultiplicator} that should be used for 
+     * a multiplication on this member, given the factory that was sent
+     * along with the task. The factory is 
+     * {@link #resolveFactory(Factory) resolved} first. <br />
+     * <br />
+     * For a parallel multiplicator, the blocks are multiplied with the
+     * {@link #getComputeExecutor() compute executor} that is shared by 
+     * all tasks on this member, instead of a thread pool that is created
+     * for each task. Other multiplicators are created with the factory.
+     * 
+     * @param matrixMultiplicatorFactory The factory from the task
+     * @return The {@link MatrixMultiplicator}
+     */
+    MatrixMultiplicator createMultiplicator(
+        Factory<MatrixMultiplicator> matrixMultiplicatorFactory)
+    {
+        Factory<MatrixMultiplicator> factory = 
+            resolveFactory(matrixMultiplicatorFactory);
+        if (factory instanceof ParallelMatrixMultiplicatorFactory)
+        {
+            ParallelMatrixMultiplicatorFactory parallelFactory = 
+                (ParallelMatrixMultiplicatorFactory)factory;
+            return MatrixMultiplicators.createParallelShared(
+                getComputeExecutor(), parallelFactory.getBlockSize());
+        }
+        return factory.create();
+    }
+    
+    /**
+     * Returns whether the state of the job with the given ID has already
+     * been removed from this member, because the job was finished or
+     * cancelled
+     * 
+     * @param jobId The job ID
+     * @return Whether the job is finished
+     */
+    boolean isFinished(String jobId)
+    {
+        synchronized (finishedJobIds)
+        {
+            return finishedJobIds.containsKey(jobId);
+        }
+    }
+    
+    /**
+     * Returns the map from block indices to the blocks of the result
+     * matrix that are accumulated on this member for the job with the
+     * given ID, creating it if necessary. If the accumulated blocks 
+     * of the job have already been removed with 
+     * {@link #removeAccumulators(String)}, then <code>null</code> is 
+     * returned.
+     * 
+     * @param jobId The job ID
+     * @return The accumulated blocks, or <code>null</code> if the job
+     * is finished
+     */
+    ConcurrentMap<Point, MutableFloatMatrix2D> getAccumulators(String jobId)
+    {
+        ConcurrentMap<Point, MutableFloatMatrix2D> result = 
+            accumulators.get(jobId);
+        if (result != null)
+        {
+            return result;
+        }
+        synchronized (finishedJobIds)
+        {
+            if (finishedJobIds.containsKey(jobId))
+            {
+                return null;
+            }
+            result = accumulators.get(jobId);
+            if (result == null)
+            {
+                result = new ConcurrentHashMap<Point, MutableFloatMatrix2D>();
+                accumulators.put(jobId, result);
+            }
+            return result;
+        }
+    }
+    
+    /**
+     * Returns the IDs of the jobs for which blocks of the result matrix
+     * are currently accumulated on this member
+     * 
+     * @return The job IDs
+     */
+    Set<String> getAccumulatorJobIds()
+    {
+        return new LinkedHashSet<String>(accumulators.keySet());
+    }
+    
+    /**
+     * Removes and returns the blocks of the result matrix that have been
+     * accumulated on this member for the job with the given ID. Afterwards,
+     * {@link #getAccumulators(String)} will no longer create new blocks
+     * for this job.
+     * 
+     * @param jobId The job ID
+     * @return The accumulated blocks, or <code>null</code> if there 
+     * have not been any blocks for the given job
+     */
+    ConcurrentMap<Point, MutableFloatMatrix2D> removeAccumulators(
+        String jobId)
+    {
+        synchronized (finishedJobIds)
+        {
+            finishedJobIds.put(jobId, Boolean.TRUE);
+            return accumulators.remove(jobId);
+        }
+    }
+    
+    /**
+     * Returns the {@link CannonMemberState} for the job with the given 
+     * ID, creating it if necessary. If the state of the job has already
+     * been removed with {@link #removeCannonMemberState(String)}, then 
+     * <code>null</code> is returned.
+     * 
+     * @param jobId The job ID
+     * @return The {@link CannonMemberState}, or <code>null</code> if
+     * the job is finished
+     */
+    CannonMemberState getCannonMemberState(String jobId)
+    {
+        CannonMemberState result = cannonStates.get(jobId);
+        if (result != null)
+        {
+            return result;
+        }
+        synchronized (finishedJobIds)
+        {
+            if (finishedJobIds.containsKey(jobId))
+            {
+                return null;
+            }
+            result = cannonStates.get(jobId);
+            if (result == null)
+            {
+                result = new CannonMemberState(jobId);
+                cannonStates.put(jobId, result);
+            }
+            return result;
+        }
+    }
+    
+    /**
+     * Removes the {@link CannonMemberState} for the job with the given 
+     * ID, and cancels it. Afterwards, 
+     * {@link #getCannonMemberState(String)} will no longer create a 
+     * new state for this job.
+     * 
+     * @param jobId The job ID
+     */
+    void removeCannonMemberState(String jobId)
+    {
+        CannonMemberState state = null;
+        synchronized (finishedJobIds)
+        {
+            finishedJobIds.put(jobId, Boolean.TRUE);
+            state = cannonStates.remove(jobId);
+        }
+        if (state != null)
+        {
+            state.cancel();
+        }
+    }
+}
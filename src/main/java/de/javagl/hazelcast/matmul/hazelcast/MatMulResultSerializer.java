@@ -32,15 +32,46 @@ import com.hazelcast.nio.ObjectDataOutput;
 import com.hazelcast.nio.serialization.StreamSerializer;
 
 import de.javagl.hazelcast.matmul.MatMulResult;
+import de.javagl.hazelcast.matmul.MatrixPool;
 import de.javagl.hazelcast.matmul.MutableFloatMatrix2D;
 import de.javagl.hazelcast.matmul.Point;
 
 /**
- * A Hazelcast StreamSerializer for {@link MatMulResult} objects
+ * A Hazelcast StreamSerializer for {@link MatMulResult} objects. <br />
+ * <br />
+ * When the serializer is given a {@link MatrixPool}, then the matrices
+ * of the results are read into matrices from this pool. The receiver 
+ * may return them to the pool with {@link MatMulResult#release()}.
  */
 public final class MatMulResultSerializer 
     implements StreamSerializer<MatMulResult>
 {
+    /**
+     * The pool for the matrices of the results. This may be 
+     * <code>null</code>.
+     */
+    private final MatrixPool pool;
+    
+    /**
+     * Creates a new serializer that creates a new matrix for each 
+     * result that is read
+     */
+    public MatMulResultSerializer()
+    {
+        this(null);
+    }
+    
+    /**
+     * Creates a new serializer that reads the matrices of the results
+     * into matrices that are obtained from the given pool
+     * 
+     * @param pool The {@link MatrixPool}. This may be <code>null</code>.
+     */
+    public MatMulResultSerializer(MatrixPool pool)
+    {
+        this.pool = pool;
+    }
+    
     @Override
     public int getTypeId()
     {
@@ -51,6 +82,21 @@ public final class MatMulResultSerializer
     public void write(ObjectDataOutput out, MatMulResult result)
         throws IOException
     {
+        writeResult(out, result);
+    }
+    
+    /**
+     * Write the given result to the given output
+     * 
+     * @param out The output
+     * @param result The result
+     * @throws IOException If an IO error occurs
+     */
+    static void writeResult(ObjectDataOutput out, MatMulResult result)
+        throws IOException
+    {
+        out.writeUTF(result.getJobId());
+        out.writeInt(result.getSlice());
         out.writeInt(result.getPoint().r);
         out.writeInt(result.getPoint().c);
         FloatMatrix2DSerializer.writeImpl(out, result.getMatrix());
@@ -59,11 +105,28 @@ public final class MatMulResultSerializer
     @Override
     public MatMulResult read(ObjectDataInput in) throws IOException
     {
+        return readResult(in, pool);
+    }
+    
+    /**
+     * Read a result from the given input, which was written with 
+     * {@link #writeResult(ObjectDataOutput, MatMulResult)}
+     * 
+     * @param in The input
+     * @param pool The optional {@link MatrixPool} for the matrix
+     * @return The result
+     * @throws IOException If an IO error occurs
+     */
+    static MatMulResult readResult(ObjectDataInput in, MatrixPool pool)
+        throws IOException
+    {
+        String jobId = in.readUTF();
+        int slice = in.readInt();
         int rowBlockIndex = in.readInt();
         int columnBlockIndex = in.readInt();
-        MutableFloatMatrix2D m0 = FloatMatrix2DSerializer.readImpl(in);
+        MutableFloatMatrix2D m0 = FloatMatrix2DSerializer.readImpl(in, pool);
         Point point = new Point(rowBlockIndex, columnBlockIndex);
-        return new MatMulResult(point, m0);
+        return new MatMulResult(jobId, slice, point, m0, pool);
     }
 
     @Override
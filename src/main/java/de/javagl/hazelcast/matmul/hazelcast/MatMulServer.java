@@ -25,35 +25,319 @@
  * OTHER DEALINGS IN THE SOFTWARE.
  */
 package de.javagl.hazelcast.matmul.hazelcast;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.hazelcast.config.Config;
+import com.hazelcast.config.ExecutorConfig;
 import com.hazelcast.core.Hazelcast;
 import com.hazelcast.core.HazelcastInstance;
 
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+import de.javagl.hazelcast.matmul.MatrixMultiplicators;
 import de.javagl.hazelcast.matmul.util.LoggerUtil;
 
 /**
- * A Hazelcast matrix multiplication server
+ * A Hazelcast matrix multiplication server. <br />
+ * <br />
+ * The resources that the server uses may be configured in a file
+ * <code>MatMulServer.properties</code>, so that each member can be 
+ * adjusted to the machine that it is running on. <br />
+ * <br />
+ * When the server is started, it measures its {@link MemberCapacity}, 
+ * and publishes it as attributes of the member, so that clients may
+ * assign more work to members with a larger capacity. 
  */
 public class MatMulServer
 {
+    /**
+     * The logger used in this class
+     */
+    private static final Logger logger = 
+        Logger.getLogger(MatMulServer.class.getName());
+    
+    /**
+     * The name of the properties file that is read when no file name
+     * is given
+     */
+    private static final String DEFAULT_PROPERTIES_FILE_NAME = 
+        "MatMulServer.properties";
+    
+    /**
+     * The number of threads of the executor service that executes the
+     * tasks. If this is not positive, then the default pool size of 
+     * Hazelcast is used.
+     */
+    private int executorPoolSize = 0;
+    
+    /**
+     * The maximum number of tasks that are waiting in the queue of
+     * the executor service. If this is not positive, then the queue 
+     * is not bounded.
+     */
+    private int executorQueueCapacity = 0;
+    
+    /**
+     * Whether the statistics of the executor service are enabled
+     */
+    private boolean executorStatisticsEnabled = true;
+    
+    /**
+     * The number of threads that are used for the multiplications of 
+     * the blocks. If this is not positive, then the number of available
+     * processors is used.
+     */
+    private int computeThreads = 0;
+    
+    /**
+     * The maximum number of blocks that are waiting to be multiplied by
+     * the compute threads. If this is not positive, then four times the 
+     * number of compute threads is used.
+     */
+    private int computeQueueCapacity = 0;
+    
+    /**
+     * The maximum size of the {@link BlockCache}, in MB. If this is
+     * negative, then one quarter of the maximum heap size is used.
+     */
+    private int blockCacheSizeMB = -1;
+    
+    /**
+     * The kernel that is used for the multiplications of the blocks. 
+     * Either "client" (use the one that was chosen by the client), 
+     * "simple" or "parallel".
+     */
+    private String kernel = "client";
+    
+    /**
+     * The block size for the "parallel" kernel
+     */
+    private int kernelBlockSize = 50;
+    
+    /**
+     * Creates a new server with the default settings
+     */
+    MatMulServer()
+    {
+        // Default constructor
+    }
+    
     /**
      * Starts the server
      * 
-     * @param args Not used
+     * @param args When no arguments are given, then the settings are
+     * read from a file <code>MatMulServer.properties</code>, if it 
+     * exists, and default settings are used otherwise. When an argument
+     * is given, then it is assumed to be the name of a properties file 
+     * with the settings.
      */
     public static void main(String[] args) 
     {
         Logger logger = Logger.getLogger("");
         LoggerUtil.configureDefault(logger);
         
-        Config config = new Config();
-        //config.setProperty("hazelcast.logging.type", "none");
-        MatMulUtils.initSerializers(config.getSerializationConfig());
+        MatMulServer server = new MatMulServer();
+        if (args.length != 0)
+        {
+            server.readProperties(args[0]);
+        }
+        else if (new File(DEFAULT_PROPERTIES_FILE_NAME).exists())
+        {
+            server.readProperties(DEFAULT_PROPERTIES_FILE_NAME);
+        }
+        else
+        {
+            logger.info("No properties file '" + 
+                DEFAULT_PROPERTIES_FILE_NAME + "' found. Using defaults");
+        }
+        
+        Config config = server.createConfig();
         
         @SuppressWarnings("unused")
         HazelcastInstance hazelcastInstance = 
             Hazelcast.newHazelcastInstance(config);
     }
+    
+    /**
+     * Create the configuration for the HazelcastInstance of this server.
+     * Settings that have not been configured keep the defaults of 
+     * Hazelcast and of this library.
+     * 
+     * @return The configuration
+     */
+    Config createConfig()
+    {
+        Config config = new Config();
+        //config.setProperty("hazelcast.logging.type", "none");
+        MatMulUtils.initSerializers(config.getSerializationConfig());
+        
+        ExecutorConfig executorConfig = 
+            config.getExecutorConfig("matMulExecutorService");
+        if (executorPoolSize > 0)
+        {
+            executorConfig.setPoolSize(executorPoolSize);
+        }
+        if (executorQueueCapacity > 0)
+        {
+            executorConfig.setQueueCapacity(executorQueueCapacity);
+        }
+        executorConfig.setStatisticsEnabled(executorStatisticsEnabled);
+        logger.info("Using " + executorConfig);
+        
+        long blockCacheSize = blockCacheSizeMB < 0 ? 
+            -1 : blockCacheSizeMB * 1024L * 1024L;
+        Factory<MatrixMultiplicator> kernelFactory = createKernelFactory();
+        MatMulMemberContext.configure(config, blockCacheSize, 
+            computeThreads, computeQueueCapacity, kernelFactory);
+        logger.info("Using " + (computeThreads > 0 ? 
+            computeThreads + " compute threads" : 
+            "one compute thread per processor") + 
+            ", a block cache size of " + (blockCacheSize < 0 ? 
+                "one quarter of the heap" : blockCacheSize + " bytes") + 
+            " and the kernel " + (kernelFactory == null ? 
+                "chosen by the client" : kernelFactory));
+        
+        MemberCapacity capacity = computeThreads > 0 ? 
+            MemberCapacity.calibrate(computeThreads) : 
+            MemberCapacity.calibrate();
+        capacity.applyTo(config.getMemberAttributeConfig());
+        return config;
+    }
+    
+    /**
+     * Create the {@link Factory} for the {@link MatrixMultiplicator} 
+     * instances that should be used for the multiplications of the 
+     * blocks, based on the {@link #kernel} setting
+     * 
+     * @return The factory, or <code>null</code> if the factory that
+     * was chosen by the client should be used
+     */
+    private Factory<MatrixMultiplicator> createKernelFactory()
+    {
+        if (kernel.equalsIgnoreCase("simple"))
+        {
+            return MatrixMultiplicators.createSimpleFactory();
+        }
+        if (kernel.equalsIgnoreCase("parallel"))
+        {
+            return MatrixMultiplicators.createParallelFactory(
+                kernelBlockSize);
+        }
+        if (!kernel.equalsIgnoreCase("client"))
+        {
+            logger.warning("Invalid kernel: " + kernel + ". " + 
+                "Using the one that was chosen by the client");
+        }
+        return null;
+    }
+    
+    /**
+     * Read the given properties file, and assign the values to the
+     * respective fields
+     * 
+     * @param fileName The name of the properties file
+     */
+    private void readProperties(String fileName)
+    {
+        logger.info("Reading properties file '"+fileName+"'");
+
+        Properties properties = new Properties();
+        InputStream inputStream = null;
+        try 
+        {
+            inputStream = new FileInputStream(fileName);
+            properties.load(inputStream);
+        } 
+        catch (IOException e) 
+        {
+            logger.severe(
+                "Could not read properties file '"+fileName+"'. " +
+                "Using defaults");
+            logger.log(Level.SEVERE, e.getMessage(), e);
+            return;
+        }    
+        finally
+        {
+            if (inputStream != null)
+            {
+                try
+                {
+                    inputStream.close();
+                }
+                catch (IOException e)
+                {
+                    logger.warning("Could not close stream");
+                    e.printStackTrace();
+                }
+            }
+        }
+        applyProperties(properties);
+    }
+    
+    /**
+     * Assign the values of the given properties to the respective 
+     * fields. Fields whose property is missing or invalid keep their 
+     * current values.
+     * 
+     * @param properties The properties
+     */
+    void applyProperties(Properties properties)
+    {
+        executorPoolSize = parseInt(
+            properties, "executorPoolSize", executorPoolSize);
+        executorQueueCapacity = parseInt(
+            properties, "executorQueueCapacity", executorQueueCapacity);
+        executorStatisticsEnabled = Boolean.parseBoolean(
+            properties.getProperty("executorStatisticsEnabled", 
+                String.valueOf(executorStatisticsEnabled)).trim());
+        logger.info("executorStatisticsEnabled="+executorStatisticsEnabled);
+        computeThreads = parseInt(
+            properties, "computeThreads", computeThreads);
+        computeQueueCapacity = parseInt(
+            properties, "computeQueueCapacity", computeQueueCapacity);
+        blockCacheSizeMB = parseInt(
+            properties, "blockCacheSizeMB", blockCacheSizeMB);
+        kernel = properties.getProperty("kernel", kernel).trim();
+        logger.info("kernel="+kernel);
+        kernelBlockSize = parseInt(
+            properties, "kernelBlockSize", kernelBlockSize);
+    }
+
+    /**
+     * Parse an integer value from the specified properties, returning 
+     * the given default value if no value could be parsed.
+     * 
+     * @param properties The properties
+     * @param name The property name
+     * @param defaultValue The default value
+     * @return The parsed integer value
+     */
+    private static int parseInt(
+        Properties properties, String name, int defaultValue)
+    {
+        String string = properties.getProperty(name);
+        if (string == null)
+        {
+            return defaultValue;
+        }
+        try
+        {
+            int result = Integer.parseInt(string.trim());
+            logger.info(name+"="+result);
+            return result;
+        }
+        catch (NumberFormatException e)
+        {
+            logger.warning(
+                "Invalid value for "+name+": "+string+". " +
+                "Using default ("+defaultValue+")");
+            return defaultValue;
+        }
+    }
 }
@@ -51,23 +51,28 @@ public final class MatMulTaskSerializer implements StreamSerializer<MatMulTask>
     public void write(ObjectDataOutput out, MatMulTask task)
         throws IOException
     {
+        out.writeUTF(task.getJobId());
+        out.writeInt(task.getSlice());
         out.writeInt(task.getRowBlockIndex());
         out.writeInt(task.getColumnBlockIndex());
         FloatMatrix2DSerializer.writeImpl(out, task.getM0());
         FloatMatrix2DSerializer.writeImpl(out, task.getM1());
-        out.writeObject(task.getMatrixMultiplicatorFactory());
+        MatrixMultiplicatorFactoryCodecs.write(
+            out, task.getMatrixMultiplicatorFactory());
     }
 
     @Override
     public MatMulTask read(ObjectDataInput in) throws IOException
     {
+        String jobId = in.readUTF();
+        int slice = in.readInt();
         int rowBlockIndex = in.readInt();
         int columnBlockIndex = in.readInt();
         FloatMatrix2D m0 = FloatMatrix2DSerializer.readImpl(in);
         FloatMatrix2D m1 = FloatMatrix2DSerializer.readImpl(in);
         Factory<MatrixMultiplicator> matrixMultiplicatorFactory = 
-            in.readObject();
-        MatMulTask task = new MatMulTask(
+            MatrixMultiplicatorFactoryCodecs.read(in);
+        MatMulTask task = new MatMulTask(jobId, slice,
             rowBlockIndex, columnBlockIndex, m0, m1,
             matrixMultiplicatorFactory);
         return task;
@@ -287,6 +287,7 @@ public class MatMulTests
         final float EPSILON = 1e-3f; 
         boolean passed = Matrices.equal(C0, C1, EPSILON);
         logger.info("Passed? "+passed);
+        logger.info("Max. relative error: "+computeMaxRelativeError(C0, C1));
         if (!passed)
         {
             int printedSize = 6;
@@ -299,6 +300,35 @@ public class MatMulTests
         }
     }
 
+    /**
+     * Computes the maximum relative error of the elements of the given
+     * actual matrix, compared to the given expected matrix
+     * 
+     * @param expected The expected matrix
+     * @param actual The actual matrix
+     * @return The maximum relative error
+     */
+    private static float computeMaxRelativeError(
+        FloatMatrix2D expected, FloatMatrix2D actual)
+    {
+        float maxRelativeError = 0.0f;
+        for (int r = 0; r < expected.getNumRows(); r++)
+        {
+            for (int c = 0; c < expected.getNumColumns(); c++)
+            {
+                float e = expected.get(r, c);
+                float a = actual.get(r, c);
+                if (e != a)
+                {
+                    float relativeError = Math.abs((a - e) / e);
+                    maxRelativeError = 
+                        Math.max(maxRelativeError, relativeError);
+                }
+            }
+        }
+        return maxRelativeError;
+    }
+    
     /**
      * Private constructor to prevent instantiation
      */
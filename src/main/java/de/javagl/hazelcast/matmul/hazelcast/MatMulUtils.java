@@ -26,13 +26,23 @@
  */
 package de.javagl.hazelcast.matmul.hazelcast;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import com.hazelcast.cluster.Member;
 import com.hazelcast.config.SerializationConfig;
 import com.hazelcast.config.SerializerConfig;
+import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.nio.serialization.StreamSerializer;
 
 import de.javagl.hazelcast.matmul.FloatMatrix2D;
+import de.javagl.hazelcast.matmul.MatMulBatchResult;
+import de.javagl.hazelcast.matmul.MatMulBatchTask;
 import de.javagl.hazelcast.matmul.MatMulResult;
 import de.javagl.hazelcast.matmul.MatMulTask;
+import de.javagl.hazelcast.matmul.Matrices;
+import de.javagl.hazelcast.matmul.MatrixPool;
 import de.javagl.hazelcast.matmul.MutableFloatMatrix2D;
 
 /**
@@ -41,12 +51,53 @@ import de.javagl.hazelcast.matmul.MutableFloatMatrix2D;
 class MatMulUtils
 {
     /**
-     * Initialize the StreamSerializers for the matrix multiplication
+     * The name of the topic via which the members publish 
+     * {@link JobEvent} messages
+     */
+    static final String JOB_EVENTS_TOPIC_NAME = "matMulJobEvents";
+    
+    /**
+     * The name of the map that is used by the {@link OperandStore}
+     */
+    static final String OPERANDS_MAP_NAME = "matMulOperands";
+    
+    /**
+     * The name of the map that contains the blocks of the matrices 
+     * that are stored by {@link ClusterMatrices}
+     */
+    static final String MATRICES_MAP_NAME = "matMulMatrices";
+    
+    /**
+     * The name of the map that contains the {@link ClusterMatrixInfo}
+     * objects of the matrices that are stored by {@link ClusterMatrices}
+     */
+    static final String MATRIX_INFOS_MAP_NAME = "matMulMatrixInfos";
+    
+    /**
+     * The name of the replicated map that is used by the 
+     * {@link BroadcastOperandStore}
+     */
+    static final String BROADCAST_OPERANDS_MAP_NAME = 
+        "matMulBroadcastOperands";
+    
+    /**
+     * The maximum number of bytes of the matrices that are kept in the
+     * {@link MatrixPool} for receiving result blocks
+     */
+    private static final long RECEIVE_POOL_BYTES = 
+        Runtime.getRuntime().maxMemory() / 16;
+    
+    /**
+     * Initialize the StreamSerializers for the matrix multiplication. 
+     * The serializers for the results share one {@link MatrixPool}, 
+     * so that the matrices of results that have been accumulated may
+     * be reused for receiving further results.
      * 
      * @param serializationConfig The SerializationConfig
      */
     static void initSerializers(SerializationConfig serializationConfig)
     {
+        MatrixPool receivePool = new MatrixPool(RECEIVE_POOL_BYTES);
         MatMulUtils.addSerializer(serializationConfig, 
             MatMulTask.class, new MatMulTaskSerializer());
         MatMulUtils.addSerializer(serializationConfig, 
@@ -54,7 +105,46 @@ class MatMulUtils
         MatMulUtils.addSerializer(serializationConfig, 
             MutableFloatMatrix2D.class, new FloatMatrix2DSerializer());
         MatMulUtils.addSerializer(serializationConfig, 
-            MatMulResult.class, new MatMulResultSerializer());
+            MatMulResult.class, new MatMulResultSerializer(receivePool));
+        MatMulUtils.addSerializer(serializationConfig, 
+            SummaStepTask.class, new SummaStepTaskSerializer());
+        MatMulUtils.addSerializer(serializationConfig, 
+            GatherBlocksTask.class, new GatherBlocksTaskSerializer());
+        MatMulUtils.addSerializer(serializationConfig, 
+            JobEvent.class, new JobEventSerializer());
+        MatMulUtils.addSerializer(serializationConfig, 
+            CannonStartTask.class, new CannonStartTaskSerializer());
+        MatMulUtils.addSerializer(serializationConfig, 
+            CannonShiftTask.class, new CannonShiftTaskSerializer());
+        MatMulUtils.addSerializer(serializationConfig, 
+            BlockKey.class, new BlockKeySerializer());
+        MatMulUtils.addSerializer(serializationConfig, 
+            StoredBlocksTask.class, new StoredBlocksTaskSerializer());
+        MatMulUtils.addSerializer(serializationConfig, 
+            BlockCacheStatisticsTask.class, 
+            new BlockCacheStatisticsTaskSerializer());
+        MatMulUtils.addSerializer(serializationConfig, 
+            AccumulateBlockTask.class, new AccumulateBlockTaskSerializer());
+        MatMulUtils.addSerializer(serializationConfig, 
+            BlockResults.class, new BlockResultsSerializer(receivePool));
+        MatMulUtils.addSerializer(serializationConfig, 
+            MatMulBatchTask.class, new MatMulBatchTaskSerializer());
+        MatMulUtils.addSerializer(serializationConfig, 
+            MatMulBatchResult.class, 
+            new MatMulBatchResultSerializer(receivePool));
+        MatMulUtils.addSerializer(serializationConfig, 
+            ClusterMatrixInfo.class, new ClusterMatrixInfoSerializer());
+        MatMulUtils.addSerializer(serializationConfig, 
+            BroadcastOperandTask.class, 
+            new BroadcastOperandTaskSerializer());
+        MatMulUtils.addSerializer(serializationConfig, 
+            EncodedTask.class, new EncodedTaskSerializer());
+        MatMulUtils.addSerializer(serializationConfig, 
+            EncodedResult.class, new EncodedResultSerializer());
+        MatMulUtils.addSerializer(serializationConfig, 
+            StripReference.class, new StripReferenceSerializer());
+        MatMulUtils.addSerializer(serializationConfig, 
+            StripTask.class, new StripTaskSerializer());
     }
     
     /**
@@ -75,6 +165,96 @@ class MatMulUtils
         serializationConfig.addSerializerConfig(serializerConfig);    
     }
 
+    /**
+     * Creates a sub-matrix of the given matrix from the given block
+     * coordinates, using the given block size 
+     *  
+     * @param m The input matrix
+     * @param blockSize The block size
+     * @param rb0 The start row block of the sub-matrix, inclusive
+     * @param cb0 The start column block of the sub-matrix, inclusive
+     * @param rb1 The end row block of the sub-matrix, exclusive
+     * @param cb1 The end column block of the sub-matrix, exclusive
+     * @return The sub-matrix
+     */
+    static FloatMatrix2D createBlockSubMatrix(FloatMatrix2D m, 
+        int blockSize, int rb0, int cb0, int rb1, int cb1)
+    {
+        return Matrices.createSubMatrixClamping(
+            m, rb0*blockSize, cb0*blockSize, rb1*blockSize, cb1*blockSize);
+    }
+
+    /**
+     * Creates a sub-matrix of the given matrix from the given block
+     * coordinates, using the given block size 
+     *  
+     * @param m The input matrix
+     * @param blockSize The block size
+     * @param rb0 The start row block of the sub-matrix, inclusive
+     * @param cb0 The start column block of the sub-matrix, inclusive
+     * @param rb1 The end row block of the sub-matrix, exclusive
+     * @param cb1 The end column block of the sub-matrix, exclusive
+     * @return The sub-matrix
+     */
+    static MutableFloatMatrix2D createBlockSubMatrix(MutableFloatMatrix2D m, 
+        int blockSize, int rb0, int cb0, int rb1, int cb1)
+    {
+        return Matrices.createSubMatrixClamping(
+            m, rb0*blockSize, cb0*blockSize, rb1*blockSize, cb1*blockSize);
+    }
+    
+    /**
+     * Returns ceil(a/b)
+     * 
+     * @param a The dividend
+     * @param b The divisor
+     * @return The result
+     */
+    static int divCeil(int a, int b)
+    {
+        return (a + b - 1) / b;
+    }
+    
+    /**
+     * Returns the list of all data members (that is, all members that
+     * are not lite members) of the cluster of the given instance
+     * 
+     * @param hazelcastInstance The HazelcastInstance
+     * @return The data members
+     */
+    static List<Member> getDataMembers(HazelcastInstance hazelcastInstance)
+    {
+        List<Member> members = new ArrayList<Member>();
+        for (Member member : hazelcastInstance.getCluster().getMembers())
+        {
+            if (!member.isLiteMember())
+            {
+                members.add(member);
+            }
+        }
+        return members;
+    }
+    
+    /**
+     * Returns the member of the cluster of the given instance that has
+     * the given UUID, or <code>null</code> if there is no such member
+     * 
+     * @param hazelcastInstance The HazelcastInstance
+     * @param uuid The UUID
+     * @return The member
+     */
+    static Member findMember(HazelcastInstance hazelcastInstance, UUID uuid)
+    {
+        for (Member member : hazelcastInstance.getCluster().getMembers())
+        {
+            if (member.getUuid().equals(uuid))
+            {
+                return member;
+            }
+        }
+        return null;
+    }
+
     /**
      * Private constructor to prevent instantiation
      */
@@ -0,0 +1,66 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.io.IOException;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+
+/**
+ * Interface for classes that can write and read a certain type of 
+ * {@link Factory} for {@link MatrixMultiplicator} instances in a 
+ * compact form. Instances of this interface may be registered in the
+ * {@link MatrixMultiplicatorFactoryCodecs}.
+ * 
+ * @param <F> The type of the factory
+ */
+public interface MatrixMultiplicatorFactoryCodec<
+    F extends Factory<MatrixMultiplicator>>
+{
+    /**
+     * Write the parameters of the given factory to the given output
+     * 
+     * @param out The output
+     * @param factory The factory
+     * @throws IOException If an IO error occurs
+     */
+    void write(ObjectDataOutput out, F factory) throws IOException;
+    
+    /**
+     * Read the parameters of a factory from the given input, and 
+     * return the factory
+     * 
+     * @param in The input
+     * @return The factory
+     * @throws IOException If an IO error occurs
+     */
+    F read(ObjectDataInput in) throws IOException;
+}
@@ -0,0 +1,248 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+import de.javagl.hazelcast.matmul.MatrixMultiplicators;
+import de.javagl.hazelcast.matmul.MatrixMultiplicators.ParallelMatrixMultiplicatorFactory;
+import de.javagl.hazelcast.matmul.MatrixMultiplicators.SimpleMatrixMultiplicatorFactory;
+
+/**
+ * A registry of {@link MatrixMultiplicatorFactoryCodec} instances. <br />
+ * <br />
+ * The factories for the {@link MatrixMultiplicator} instances are sent
+ * along with each task. The factories that are created with the 
+ * {@link MatrixMultiplicators} class are written with a compact, 
+ * ID-based encoding. Codecs for custom factories may be registered with 
+ * {@link #register(int, Class, MatrixMultiplicatorFactoryCodec)}. This 
+ * has to be done on the client and on all members, before any task is
+ * sent or received. Factories of other classes are written using the 
+ * default serialization of Hazelcast.
+ */
+public final class MatrixMultiplicatorFactoryCodecs
+{
+    /**
+     * The ID that indicates that a factory was written with the default
+     * serialization
+     */
+    private static final int DEFAULT_SERIALIZATION_ID = 0;
+    
+    /**
+     * The ID for {@link SimpleMatrixMultiplicatorFactory} instances
+     */
+    private static final int SIMPLE_FACTORY_ID = 1;
+    
+    /**
+     * The ID for {@link ParallelMatrixMultiplicatorFactory} instances
+     */
+    private static final int PARALLEL_FACTORY_ID = 2;
+    
+    /**
+     * The smallest ID that may be used for custom codecs
+     */
+    public static final int MIN_CUSTOM_ID = 1000;
+    
+    /**
+     * The IDs of the codecs, for each factory class
+     */
+    private static final ConcurrentMap<Class<?>, Integer> ids = 
+        new ConcurrentHashMap<Class<?>, Integer>();
+    
+    /**
+     * The codecs, for each ID
+     */
+    private static final ConcurrentMap<Integer, 
+        MatrixMultiplicatorFactoryCodec<?>> codecs = new ConcurrentHashMap<
+            Integer, MatrixMultiplicatorFactoryCodec<?>>();
+    
+    static
+    {
+        registerImpl(SIMPLE_FACTORY_ID, SimpleMatrixMultiplicatorFactory.class,
+            new MatrixMultiplicatorFactoryCodec<
+                SimpleMatrixMultiplicatorFactory>()
+        {
+            @Override
+            public void write(ObjectDataOutput out, 
+                SimpleMatrixMultiplicatorFactory factory)
+            {
+                // No parameters
+            }
+
+            @Override
+            public SimpleMatrixMultiplicatorFactory read(ObjectDataInput in)
+            {
+                return (SimpleMatrixMultiplicatorFactory)
+                    MatrixMultiplicators.createSimpleFactory();
+            }
+        });
+        registerImpl(PARALLEL_FACTORY_ID, 
+            ParallelMatrixMultiplicatorFactory.class,
+            new MatrixMultiplicatorFactoryCodec<
+                ParallelMatrixMultiplicatorFactory>()
+        {
+            @Override
+            public void write(ObjectDataOutput out, 
+                ParallelMatrixMultiplicatorFactory factory) 
+                throws IOException
+            {
+                out.writeInt(factory.getBlockSize());
+            }
+
+            @Override
+            public ParallelMatrixMultiplicatorFactory read(ObjectDataInput in)
+                throws IOException
+            {
+                int blockSize = in.readInt();
+                return (ParallelMatrixMultiplicatorFactory)
+                    MatrixMultiplicators.createParallelFactory(blockSize);
+            }
+        });
+    }
+    
+    /**
+     * Register the given codec for factories of the given type. The 
+     * codec will be used for factories whose class is exactly the
+     * given class. 
+     * 
+     * @param <F> The type of the factory
+     * @param id The ID of the codec. This must be at least 
+     * {@link #MIN_CUSTOM_ID}, and has to be the same on the client 
+     * and on all members.
+     * @param factoryClass The class of the factories
+     * @param codec The codec
+     * @throws IllegalArgumentException If the ID is smaller than 
+     * {@link #MIN_CUSTOM_ID}, or if a codec was already registered 
+     * for the given ID or the given class
+     */
+    public static <F extends Factory<MatrixMultiplicator>> void register(
+        int id, Class<F> factoryClass, MatrixMultiplicatorFactoryCodec<F> codec)
+    {
+        if (id < MIN_CUSTOM_ID)
+        {
+            throw new IllegalArgumentException(
+                "The ID must be at least " + MIN_CUSTOM_ID + ", but is " + id);
+        }
+        registerImpl(id, factoryClass, codec);
+    }
+    
+    /**
+     * Implementation of 
+     * {@link #register(int, Class, MatrixMultiplicatorFactoryCodec)}
+     * 
+     * @param id The ID of the codec
+     * @param factoryClass The class of the factories
+     * @param codec The codec
+     * @throws IllegalArgumentException If a codec was already registered 
+     * for the given ID or the given class
+     */
+    private static synchronized void registerImpl(int id, 
+        Class<?> factoryClass, MatrixMultiplicatorFactoryCodec<?> codec)
+    {
+        if (codecs.containsKey(id))
+        {
+            throw new IllegalArgumentException(
+                "A codec was already registered for ID " + id);
+        }
+        if (ids.containsKey(factoryClass))
+        {
+            throw new IllegalArgumentException(
+                "A codec was already registered for " + factoryClass);
+        }
+        codecs.put(id, codec);
+        ids.put(factoryClass, id);
+    }
+    
+    /**
+     * Write the given factory to the given output
+     * 
+     * @param out The output
+     * @param factory The factory
+     * @throws IOException If an IO error occurs
+     */
+    static void write(ObjectDataOutput out, 
+        Factory<MatrixMultiplicator> factory) throws IOException
+    {
+        Integer id = null;
+        if (factory != null)
+        {
+            id = ids.get(factory.getClass());
+        }
+        if (id == null)
+        {
+            out.writeInt(DEFAULT_SERIALIZATION_ID);
+            out.writeObject(factory);
+            return;
+        }
+        out.writeInt(id);
+        @SuppressWarnings("unchecked")
+        MatrixMultiplicatorFactoryCodec<Factory<MatrixMultiplicator>> codec = 
+            (MatrixMultiplicatorFactoryCodec<Factory<MatrixMultiplicator>>)
+            codecs.get(id);
+        codec.write(out, factory);
+    }
+    
+    /**
+     * Read a factory from the given input
+     * 
+     * @param in The input
+     * @return The factory
+     * @throws IOException If an IO error occurs, or the factory was 
+     * written with a codec that is not registered in this JVM
+     */
+    static Factory<MatrixMultiplicator> read(ObjectDataInput in) 
+        throws IOException
+    {
+        int id = in.readInt();
+        if (id == DEFAULT_SERIALIZATION_ID)
+        {
+            return in.readObject();
+        }
+        MatrixMultiplicatorFactoryCodec<?> codec = codecs.get(id);
+        if (codec == null)
+        {
+            throw new IOException(
+                "No codec was registered for the factory with ID " + id);
+        }
+        return codec.read(in);
+    }
+    
+    /**
+     * Private constructor to prevent instantiation
+     */
+    private MatrixMultiplicatorFactoryCodecs()
+    {
+        // Private constructor to prevent instantiation
+    }
+}
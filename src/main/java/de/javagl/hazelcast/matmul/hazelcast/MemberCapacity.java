@@ -0,0 +1,308 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+import com.hazelcast.cluster.Member;
+import com.hazelcast.config.MemberAttributeConfig;
+
+import de.javagl.hazelcast.matmul.Matrices;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+import de.javagl.hazelcast.matmul.MatrixMultiplicators;
+import de.javagl.hazelcast.matmul.MutableFloatMatrix2D;
+
+/**
+ * The computing capacity of a member. <br />
+ * <br />
+ * The capacity is determined by {@link #calibrate() calibration} when a
+ * {@link MatMulServer} is started, and published as attributes of the 
+ * member, so that clients may obtain it from the Member objects, and 
+ * assign more work to members with a larger capacity.
+ */
+final class MemberCapacity
+{
+    /**
+     * The logger used in this class
+     */
+    private static final Logger logger = 
+        Logger.getLogger(MemberCapacity.class.getName());
+    
+    /**
+     * The name of the member attribute for the number of cores
+     */
+    private static final String CORES_ATTRIBUTE = "matmul.cores";
+    
+    /**
+     * The name of the member attribute for the GFLOPS per core
+     */
+    private static final String GFLOPS_PER_CORE_ATTRIBUTE = 
+        "matmul.gflopsPerCore";
+    
+    /**
+     * The name of the member attribute for the free heap memory
+     */
+    private static final String FREE_HEAP_ATTRIBUTE = "matmul.freeHeapBytes";
+    
+    /**
+     * The size of the matrices that are multiplied for the calibration
+     */
+    private static final int CALIBRATION_SIZE = 200;
+    
+    /**
+     * The minimum duration of the calibration, in milliseconds
+     */
+    private static final long CALIBRATION_DURATION_MS = 250;
+    
+    /**
+     * The number of cores
+     */
+    private final int cores;
+    
+    /**
+     * The measured GFLOPS per core
+     */
+    private final double gflopsPerCore;
+    
+    /**
+     * The free heap memory, in bytes
+     */
+    private final long freeHeapBytes;
+    
+    /**
+     * Creates a new instance
+     * 
+     * @param cores The number of cores
+     * @param gflopsPerCore The GFLOPS per core
+     * @param freeHeapBytes The free heap memory, in bytes
+     */
+    MemberCapacity(int cores, double gflopsPerCore, long freeHeapBytes)
+    {
+        this.cores = cores;
+        this.gflopsPerCore = gflopsPerCore;
+        this.freeHeapBytes = freeHeapBytes;
+    }
+    
+    /**
+     * Determine the capacity of the local machine. The GFLOPS per core
+     * are measured by repeatedly multiplying two matrices with a single
+     * thread, after one run for warming up.
+     * 
+     * @return The {@link MemberCapacity}
+     */
+    static MemberCapacity calibrate()
+    {
+        return calibrate(Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * Determine the capacity of the local machine, as in 
+     * {@link #calibrate()}, but with the given number of cores. This 
+     * may be used when only some of the cores are used for the 
+     * multiplications.
+     * 
+     * @param cores The number of cores
+     * @return The {@link MemberCapacity}
+     */
+    static MemberCapacity calibrate(int cores)
+    {
+        int n = CALIBRATION_SIZE;
+        MutableFloatMatrix2D A = Matrices.createFloatMatrix2D(n, n);
+        MutableFloatMatrix2D B = Matrices.createFloatMatrix2D(n, n);
+        MutableFloatMatrix2D C = Matrices.createFloatMatrix2D(n, n);
+        Matrices.fillRandom(A);
+        Matrices.fillRandom(B);
+        MatrixMultiplicator multiplicator = 
+            MatrixMultiplicators.createSimple();
+        multiplicator.multiply(C, A, B);
+        
+        long durationNanos = CALIBRATION_DURATION_MS * 1000000L;
+        long before = System.nanoTime();
+        long elapsedNanos = 0;
+        int runs = 0;
+        while (elapsedNanos < durationNanos)
+        {
+            multiplicator.multiply(C, A, B);
+            runs++;
+            elapsedNanos = System.nanoTime() - before;
+        }
+        double flops = 2.0 * n * n * n * runs;
+        double gflopsPerCore = flops / elapsedNanos;
+        
+        Runtime runtime = Runtime.getRuntime();
+        long usedHeapBytes = runtime.totalMemory() - runtime.freeMemory();
+        long freeHeapBytes = runtime.maxMemory() - usedHeapBytes;
+        MemberCapacity capacity = 
+            new MemberCapacity(cores, gflopsPerCore, freeHeapBytes);
+        logger.info("Calibrated " + capacity);
+        return capacity;
+    }
+    
+    /**
+     * Store this capacity in the given configuration
+     * 
+     * @param memberAttributeConfig The MemberAttributeConfig
+     */
+    void applyTo(MemberAttributeConfig memberAttributeConfig)
+    {
+        memberAttributeConfig.setAttribute(
+            CORES_ATTRIBUTE, String.valueOf(cores));
+        memberAttributeConfig.setAttribute(
+            GFLOPS_PER_CORE_ATTRIBUTE, String.valueOf(gflopsPerCore));
+        memberAttributeConfig.setAttribute(
+            FREE_HEAP_ATTRIBUTE, String.valueOf(freeHeapBytes));
+    }
+    
+    /**
+     * Returns the capacity that the given member published, or 
+     * <code>null</code> if the member did not publish its capacity
+     * 
+     * @param member The member
+     * @return The {@link MemberCapacity}
+     */
+    static MemberCapacity of(Member member)
+    {
+        String coresString = member.getAttribute(CORES_ATTRIBUTE);
+        String gflopsString = member.getAttribute(GFLOPS_PER_CORE_ATTRIBUTE);
+        String freeHeapString = member.getAttribute(FREE_HEAP_ATTRIBUTE);
+        if (coresString == null || gflopsString == null)
+        {
+            return null;
+        }
+        try
+        {
+            int cores = Integer.parseInt(coresString);
+            double gflopsPerCore = Double.parseDouble(gflopsString);
+            long freeHeapBytes = freeHeapString == null ? 
+                -1 : Long.parseLong(freeHeapString);
+            return new MemberCapacity(cores, gflopsPerCore, freeHeapBytes);
+        }
+        catch (NumberFormatException e)
+        {
+            logger.warning("Invalid capacity of " + member + ": " + e);
+            return null;
+        }
+    }
+    
+    /**
+     * Computes the relative weights of the given members, based on the
+     * GFLOPS that they published. The weights are normalized so that 
+     * their mean is 1.0. Members that did not publish their capacity 
+     * receive a weight of 1.0. If none of the members published its 
+     * capacity, then all weights are 1.0.
+     * 
+     * @param members The members
+     * @return The weights
+     */
+    static double[] computeWeights(List<Member> members)
+    {
+        int n = members.size();
+        double weights[] = new double[n];
+        double sum = 0.0;
+        int known = 0;
+        for (int i = 0; i < n; i++)
+        {
+            MemberCapacity capacity = of(members.get(i));
+            if (capacity != null && capacity.getGflops() > 0)
+            {
+                weights[i] = capacity.getGflops();
+                sum += weights[i];
+                known++;
+            }
+        }
+        if (known == 0)
+        {
+            Arrays.fill(weights, 1.0);
+            return weights;
+        }
+        double mean = sum / known;
+        for (int i = 0; i < n; i++)
+        {
+            if (weights[i] > 0)
+            {
+                weights[i] /= mean;
+            }
+            else
+            {
+                weights[i] = 1.0;
+            }
+        }
+        return weights;
+    }
+    
+    /**
+     * Returns the number of cores
+     * 
+     * @return The number of cores
+     */
+    int getCores()
+    {
+        return cores;
+    }
+    
+    /**
+     * Returns the measured GFLOPS per core
+     * 
+     * @return The GFLOPS per core
+     */
+    double getGflopsPerCore()
+    {
+        return gflopsPerCore;
+    }
+    
+    /**
+     * Returns the GFLOPS of all cores
+     * 
+     * @return The GFLOPS
+     */
+    double getGflops()
+    {
+        return cores * gflopsPerCore;
+    }
+    
+    /**
+     * Returns the free heap memory, in bytes, or -1 if it is not known
+     * 
+     * @return The free heap memory
+     */
+    long getFreeHeapBytes()
+    {
+        return freeHeapBytes;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return getClass().getSimpleName() + "[" + 
+            "cores=" + cores + "," + 
+            "gflopsPerCore=" + String.format(Locale.ENGLISH, "%.3f", gflopsPerCore) + "," +
+            "freeHeapBytes=" + freeHeapBytes + "]";
+    }
+}
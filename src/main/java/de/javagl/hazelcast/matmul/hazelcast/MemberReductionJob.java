@@ -0,0 +1,437 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+import com.hazelcast.cluster.Member;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IExecutorService;
+
+import de.javagl.hazelcast.matmul.ExecutorExtensions;
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+import de.javagl.hazelcast.matmul.MatMulResult;
+import de.javagl.hazelcast.matmul.Matrices;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+import de.javagl.hazelcast.matmul.MutableFloatMatrix2D;
+import de.javagl.hazelcast.matmul.Point;
+
+/**
+ * A single, asynchronous execution of a multiplication by a 
+ * {@link MemberReductionMatrixMultiplicator}. <br />
+ * <br />
+ * The job dispatches one {@link AccumulateBlockTask} for each block 
+ * product of one outer product after the other. The task for a block 
+ * of the result matrix is always sent to the owner of the partition
+ * of a key that is derived from the block indices, so that all 
+ * partial products of one block are accumulated on the same member. 
+ * When all outer products have been computed, the blocks of the 
+ * result matrix are gathered with a {@link GatherBlocksTask}. <br />
+ * <br />
+ * When a member joins the cluster during the job, then partitions may 
+ * migrate to this member, and the remaining tasks for a block are sent
+ * to the new owner. So the partial sums of one block may be distributed
+ * over several members, and are gathered from every member that 
+ * executed one of the tasks. When such a member leaves the cluster 
+ * before its blocks have been gathered, then its partial sums are lost, 
+ * and the job fails.
+ */
+final class MemberReductionJob
+{
+    /**
+     * The logger used in this class
+     */
+    private static final Logger logger = 
+        Logger.getLogger(MemberReductionJob.class.getName());
+    
+    /**
+     * The ID of this job
+     */
+    private final String jobId;
+    
+    /**
+     * The HazelcastInstance that is used to look up the members
+     */
+    private final HazelcastInstance hazelcastInstance;
+    
+    /**
+     * The executor service that the tasks are submitted to
+     */
+    private final IExecutorService executorService;
+    
+    /**
+     * The UUIDs of the members that accumulated blocks of the result 
+     * matrix, and that the blocks have to be gathered from
+     */
+    private final Set<UUID> accumulatingMembers;
+    
+    /**
+     * The block size
+     */
+    private final int blockSize;
+    
+    /**
+     * The {@link Factory} for the {@link MatrixMultiplicator} instances
+     * that will multiply the blocks on the members
+     */
+    private final Factory<MatrixMultiplicator> subMatrixMultiplicatorFactory;
+    
+    /**
+     * The result matrix
+     */
+    private final MutableFloatMatrix2D C;
+    
+    /**
+     * The first factor
+     */
+    private final FloatMatrix2D A;
+    
+    /**
+     * The second factor
+     */
+    private final FloatMatrix2D B;
+    
+    /**
+     * The number of outer products that have to be computed
+     */
+    private final int numOuterProducts;
+    
+    /**
+     * The future that will be completed when this job is finished
+     */
+    private final CompletableFuture<MutableFloatMatrix2D> future;
+    
+    /**
+     * The futures of the tasks that are currently executed
+     */
+    private final Set<CompletableFuture<?>> pendingFutures;
+    
+    /**
+     * The number of members that the blocks have not been gathered 
+     * from yet
+     */
+    private final AtomicInteger remainingMembers;
+    
+    /**
+     * Creates a new job
+     * 
+     * @param hazelcastInstance The HazelcastInstance
+     * @param executorService The executor service
+     * @param blockSize The block size
+     * @param subMatrixMultiplicatorFactory The {@link Factory} for the 
+     * {@link MatrixMultiplicator} that will multiply the blocks
+     * @param C The result matrix
+     * @param A The first factor
+     * @param B The second factor
+     */
+    MemberReductionJob(HazelcastInstance hazelcastInstance,
+        IExecutorService executorService, int blockSize, 
+        Factory<MatrixMultiplicator> subMatrixMultiplicatorFactory,
+        MutableFloatMatrix2D C, FloatMatrix2D A, FloatMatrix2D B)
+    {
+        this.jobId = UUID.randomUUID().toString();
+        this.hazelcastInstance = hazelcastInstance;
+        this.executorService = executorService;
+        this.accumulatingMembers = Collections.newSetFromMap(
+            new ConcurrentHashMap<UUID, Boolean>());
+        this.blockSize = blockSize;
+        this.subMatrixMultiplicatorFactory = subMatrixMultiplicatorFactory;
+        this.C = C;
+        this.A = A;
+        this.B = B;
+        this.numOuterProducts = 
+            MatMulUtils.divCeil(A.getNumColumns(), blockSize);
+        this.future = new CompletableFuture<MutableFloatMatrix2D>();
+        this.pendingFutures = Collections.newSetFromMap(
+            new ConcurrentHashMap<CompletableFuture<?>, Boolean>());
+        this.remainingMembers = new AtomicInteger();
+        
+        future.whenComplete(new BiConsumer<Object, Throwable>()
+        {
+            @Override
+            public void accept(Object value, Throwable t)
+            {
+                if (t != null)
+                {
+                    cancel();
+                }
+            }
+        });
+    }
+    
+    /**
+     * Start this job
+     * 
+     * @return The future that will be completed when the job is finished
+     */
+    CompletableFuture<MutableFloatMatrix2D> start()
+    {
+        Matrices.fill(C, 0.0f);
+        dispatch(0);
+        return future;
+    }
+    
+    /**
+     * Start this job with the given deadline. 
+     * 
+     * @param timeout The timeout
+     * @param unit The time unit
+     * @return The future that will be completed when the job is finished
+     * @see ExecutorExtensions#failAfter(CompletableFuture, long, TimeUnit)
+     */
+    CompletableFuture<MutableFloatMatrix2D> start(
+        long timeout, TimeUnit unit)
+    {
+        ExecutorExtensions.failAfter(future, timeout, unit);
+        return start();
+    }
+    
+    /**
+     * Dispatch the tasks for the outer product with the given index,
+     * or gather the blocks of the result matrix from the members if 
+     * all outer products have been computed. 
+     * 
+     * @param p The index of the outer product
+     */
+    private void dispatch(final int p)
+    {
+        if (future.isDone())
+        {
+            return;
+        }
+        if (p >= numOuterProducts)
+        {
+            gatherAll();
+            return;
+        }
+        int numRowBlocks = MatMulUtils.divCeil(A.getNumRows(), blockSize);
+        int numColumnBlocks = 
+            MatMulUtils.divCeil(B.getNumColumns(), blockSize);
+        if (numRowBlocks * numColumnBlocks == 0)
+        {
+            future.complete(C);
+            return;
+        }
+        final AtomicInteger remaining = 
+            new AtomicInteger(numRowBlocks * numColumnBlocks);
+        logger.fine("Dispatching " + remaining + " tasks for " + p);
+        for (int r = 0; r < numRowBlocks; r++)
+        {
+            FloatMatrix2D Arp = MatMulUtils.createBlockSubMatrix(
+                A, blockSize, r, p, r + 1, p + 1);
+            for (int c = 0; c < numColumnBlocks; c++)
+            {
+                if (future.isDone())
+                {
+                    return;
+                }
+                FloatMatrix2D Bpc = MatMulUtils.createBlockSubMatrix(
+                    B, blockSize, p, c, p + 1, c + 1);
+                AccumulateBlockTask task = new AccumulateBlockTask(
+                    jobId, r, c, Arp, Bpc, subMatrixMultiplicatorFactory);
+                submit(task, new BlockKey(jobId, r, c), new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        if (remaining.decrementAndGet() == 0)
+                        {
+                            dispatch(p + 1);
+                        }
+                    }
+                });
+            }
+        }
+    }
+    
+    /**
+     * Submit the given task to the owner of the given key, and run the 
+     * given continuation when it completed successfully. The member that
+     * executed the task is recorded as one of the members that the 
+     * blocks have to be gathered from.
+     * 
+     * @param task The task
+     * @param key The key
+     * @param continuation The continuation
+     */
+    private void submit(AccumulateBlockTask task, BlockKey key, 
+        final Runnable continuation)
+    {
+        final CompletableFuture<UUID> taskFuture = 
+            ExecutorExtensions.toCompletableFuture(
+                executorService.submitToKeyOwner(task, key));
+        pendingFutures.add(taskFuture);
+        taskFuture.whenComplete(new BiConsumer<UUID, Throwable>()
+        {
+            @Override
+            public void accept(UUID memberUuid, Throwable t)
+            {
+                pendingFutures.remove(taskFuture);
+                if (t != null)
+                {
+                    future.completeExceptionally(t);
+                    return;
+                }
+                if (memberUuid != null)
+                {
+                    accumulatingMembers.add(memberUuid);
+                }
+                try
+                {
+                    continuation.run();
+                }
+                catch (Throwable e)
+                {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Gather the blocks of the result matrix from all members that 
+     * accumulated blocks, and complete the future of this job when
+     * all blocks have been gathered. If one of these members already 
+     * left the cluster, then the future is completed exceptionally.
+     */
+    private void gatherAll()
+    {
+        List<Member> members = new ArrayList<Member>();
+        for (UUID memberUuid : accumulatingMembers)
+        {
+            Member member = 
+                MatMulUtils.findMember(hazelcastInstance, memberUuid);
+            if (member == null)
+            {
+                future.completeExceptionally(new IllegalStateException(
+                    "Member " + memberUuid + " left the cluster, and the "
+                    + "blocks that have been accumulated there are lost"));
+                return;
+            }
+            members.add(member);
+        }
+        if (members.isEmpty())
+        {
+            future.complete(C);
+            return;
+        }
+        remainingMembers.set(members.size());
+        for (Member member : members)
+        {
+            gather(member);
+        }
+    }
+    
+    /**
+     * Gather the blocks of the result matrix from the given member, and
+     * complete the future of this job if this was the last member.
+     * 
+     * @param member The member
+     */
+    private void gather(Member member)
+    {
+        final CompletableFuture<BlockResults> gatherFuture = 
+            ExecutorExtensions.toCompletableFuture(
+                executorService.submitToMember(
+                    new GatherBlocksTask(jobId, false), member));
+        pendingFutures.add(gatherFuture);
+        gatherFuture.whenComplete(
+            new BiConsumer<BlockResults, Throwable>()
+        {
+            @Override
+            public void accept(BlockResults results, Throwable t)
+            {
+                pendingFutures.remove(gatherFuture);
+                if (t != null)
+                {
+                    future.completeExceptionally(t);
+                    return;
+                }
+                try
+                {
+                    // When a partition migrated during the job, then the 
+                    // partial sums of one block are distributed over 
+                    // several members, so the results are added here
+                    synchronized (C)
+                    {
+                        for (MatMulResult result : results.getResults())
+                        {
+                            Point point = result.getPoint();
+                            MutableFloatMatrix2D Crc = 
+                                MatMulUtils.createBlockSubMatrix(
+                                    C, blockSize, point.r, point.c, 
+                                    point.r + 1, point.c + 1);
+                            Matrices.add(Crc, Crc, result.getMatrix());
+                            result.release();
+                        }
+                    }
+                    if (remainingMembers.decrementAndGet() == 0)
+                    {
+                        future.complete(C);
+                    }
+                }
+                catch (Throwable e)
+                {
+                    // An exception that is thrown in this callback would be
+                    // swallowed by the CompletableFuture, and the job would
+                    // never be completed
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Cancel all pending tasks, and discard the blocks of the result 
+     * matrix that have been accumulated on the members. This is sent
+     * to all data members, because tasks that did not report their
+     * member yet may already have accumulated blocks there.
+     */
+    private void cancel()
+    {
+        for (CompletableFuture<?> pendingFuture : pendingFutures)
+        {
+            pendingFuture.cancel(true);
+        }
+        for (Member member : MatMulUtils.getDataMembers(hazelcastInstance))
+        {
+            executorService.submitToMember(
+                new GatherBlocksTask(jobId, true), member);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IExecutorService;
+
+import de.javagl.hazelcast.matmul.AsyncMatrixMultiplicator;
+import de.javagl.hazelcast.matmul.ExecutorExtensions;
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+import de.javagl.hazelcast.matmul.MutableFloatMatrix2D;
+
+/**
+ * Implementation of an {@link AsyncMatrixMultiplicator} that computes 
+ * the outer products of the blocks in a Hazelcast cluster, and sums up
+ * the partial products on the members. <br />
+ * <br />
+ * Each block of the result matrix is assigned to the owner of the 
+ * partition of a key that is derived from the block indices. All 
+ * partial products of this block are computed and accumulated on this
+ * member. So instead of one block of the result matrix for each block
+ * product, the client only receives each block of the result matrix 
+ * once, after the last outer product has been computed.
+ */
+public final class MemberReductionMatrixMultiplicator 
+    implements AsyncMatrixMultiplicator
+{
+    /**
+     * The HazelcastInstance
+     */
+    private final HazelcastInstance hazelcastInstance;
+    
+    /**
+     * The name of the executor service
+     */
+    private final String executorServiceName;
+    
+    /**
+     * The block size for the matrices
+     */
+    private final int blockSize;
+    
+    /**
+     * The {@link Factory} that will be used to create 
+     * {@link MatrixMultiplicator} instances for the 
+     * blocks on the members.
+     */
+    private final Factory<MatrixMultiplicator> subMatrixMultiplicatorFactory;
+    
+    /**
+     * Creates a new matrix multiplicator that sums up the partial 
+     * products on the members
+     * 
+     * @param hazelcastInstance The HazelcastInstance
+     * @param executorServiceName The name of the executor service
+     * @param blockSize The block size
+     * @param subMatrixMultiplicatorFactory The {@link Factory} that will be 
+     * used to create {@link MatrixMultiplicator} instances for the blocks
+     * on the members
+     */
+    public MemberReductionMatrixMultiplicator(
+        HazelcastInstance hazelcastInstance,
+        String executorServiceName, int blockSize,
+        Factory<MatrixMultiplicator> subMatrixMultiplicatorFactory)
+    {
+        this.hazelcastInstance = hazelcastInstance;
+        this.executorServiceName = executorServiceName;
+        this.blockSize = blockSize;
+        this.subMatrixMultiplicatorFactory = subMatrixMultiplicatorFactory;
+    }
+
+    @Override
+    public void multiply(
+        MutableFloatMatrix2D C, FloatMatrix2D A, FloatMatrix2D B)
+    {
+        ExecutorExtensions.await(multiplyAsync(C, A, B));
+    }
+
+    @Override
+    public CompletableFuture<MutableFloatMatrix2D> multiplyAsync(
+        MutableFloatMatrix2D C, FloatMatrix2D A, FloatMatrix2D B)
+    {
+        return createJob(C, A, B).start();
+    }
+
+    @Override
+    public CompletableFuture<MutableFloatMatrix2D> multiplyAsync(
+        MutableFloatMatrix2D C, FloatMatrix2D A, FloatMatrix2D B,
+        long timeout, TimeUnit unit)
+    {
+        return createJob(C, A, B).start(timeout, unit);
+    }
+    
+    /**
+     * Create the {@link MemberReductionJob} for the given matrices
+     * 
+     * @param C The result matrix
+     * @param A The first factor
+     * @param B The second factor
+     * @return The job
+     */
+    private MemberReductionJob createJob(
+        MutableFloatMatrix2D C, FloatMatrix2D A, FloatMatrix2D B)
+    {
+        if (MatMulUtils.getDataMembers(hazelcastInstance).isEmpty())
+        {
+            throw new IllegalStateException("No data members in cluster");
+        }
+        IExecutorService executorService = 
+            hazelcastInstance.getExecutorService(executorServiceName);
+        return new MemberReductionJob(hazelcastInstance, executorService,
+            blockSize, subMatrixMultiplicatorFactory, C, A, B);
+    }
+    
+    @Override
+    public String toString()
+    {
+        return getClass().getSimpleName()+
+            "[subMatrixMultiplicatorFactory="+
+            subMatrixMultiplicatorFactory+","+
+            "blockSize="+blockSize+"]";
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.EntryProcessor;
+import com.hazelcast.map.IMap;
+
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+
+/**
+ * A store for the blocks of matrices that are used as the operands of
+ * multiplications. The blocks are stored in a distributed map, using
+ * {@link BlockKey} instances as the keys. This allows sending each 
+ * block to the cluster only once, and sending only the keys of the
+ * blocks in the tasks. The {@link BlockKey.Grouping} that is given 
+ * when the blocks are stored determines which blocks are stored in 
+ * the same partition.
+ */
+final class OperandStore
+{
+    /**
+     * An entry processor that removes the entries that it is applied to
+     */
+    static final class RemoveEntryProcessor 
+        implements EntryProcessor<BlockKey, FloatMatrix2D, Object>
+    {
+        /**
+         * Serial UID
+         */
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Object process(Entry<BlockKey, FloatMatrix2D> entry)
+        {
+            entry.setValue(null);
+            return null;
+        }
+    }
+    
+    /**
+     * The map that contains the blocks
+     */
+    private final IMap<BlockKey, FloatMatrix2D> blocks;
+    
+    /**
+     * Creates a new store that uses the map with the given name
+     * 
+     * @param hazelcastInstance The HazelcastInstance
+     * @param mapName The name of the map
+     */
+    OperandStore(HazelcastInstance hazelcastInstance, String mapName)
+    {
+        this.blocks = hazelcastInstance.getMap(mapName);
+    }
+    
+    /**
+     * Returns the name of the map that contains the blocks
+     * 
+     * @return The map name
+     */
+    String getMapName()
+    {
+        return blocks.getName();
+    }
+    
+    /**
+     * Store the blocks of the given matrix under the given ID
+     * 
+     * @param matrixId The matrix ID
+     * @param m The matrix
+     * @param blockSize The block size
+     * @param grouping The {@link BlockKey.Grouping} of the blocks
+     * @return The future that will be completed when all blocks are stored
+     */
+    CompletableFuture<Void> upload(String matrixId, FloatMatrix2D m, 
+        int blockSize, BlockKey.Grouping grouping)
+    {
+        int numRowBlocks = MatMulUtils.divCeil(m.getNumRows(), blockSize);
+        int numColumnBlocks = 
+            MatMulUtils.divCeil(m.getNumColumns(), blockSize);
+        Map<BlockKey, FloatMatrix2D> entries = 
+            new HashMap<BlockKey, FloatMatrix2D>();
+        for (int r = 0; r < numRowBlocks; r++)
+        {
+            for (int c = 0; c < numColumnBlocks; c++)
+            {
+                FloatMatrix2D block = MatMulUtils.createBlockSubMatrix(
+                    m, blockSize, r, c, r + 1, c + 1);
+                entries.put(new BlockKey(matrixId, r, c, grouping), block);
+            }
+        }
+        return blocks.putAllAsync(entries).toCompletableFuture();
+    }
+    
+    /**
+     * Remove the blocks of the given matrix that have been stored under
+     * the given ID
+     * 
+     * @param matrixId The matrix ID
+     * @param m The matrix
+     * @param blockSize The block size
+     * @param grouping The {@link BlockKey.Grouping} that was used for
+     * storing the blocks
+     * @return The future that will be completed when all blocks are removed
+     */
+    CompletableFuture<?> remove(String matrixId, FloatMatrix2D m, 
+        int blockSize, BlockKey.Grouping grouping)
+    {
+        return remove(matrixId, m.getNumRows(), m.getNumColumns(), 
+            blockSize, grouping);
+    }
+    
+    /**
+     * Remove the blocks of a matrix with the given size that have been
+     * stored under the given ID
+     * 
+     * @param matrixId The matrix ID
+     * @param numRows The number of rows of the matrix
+     * @param numColumns The number of columns of the matrix
+     * @param blockSize The block size
+     * @param grouping The {@link BlockKey.Grouping} that was used for
+     * storing the blocks
+     * @return The future that will be completed when all blocks are removed
+     */
+    CompletableFuture<?> remove(String matrixId, int numRows, 
+        int numColumns, int blockSize, BlockKey.Grouping grouping)
+    {
+        int numRowBlocks = MatMulUtils.divCeil(numRows, blockSize);
+        int numColumnBlocks = MatMulUtils.divCeil(numColumns, blockSize);
+        Set<BlockKey> keys = new LinkedHashSet<BlockKey>();
+        for (int r = 0; r < numRowBlocks; r++)
+        {
+            for (int c = 0; c < numColumnBlocks; c++)
+            {
+                keys.add(new BlockKey(matrixId, r, c, grouping));
+            }
+        }
+        if (keys.isEmpty())
+        {
+            return CompletableFuture.completedFuture(null);
+        }
+        return blocks.submitToKeys(
+            keys, new RemoveEntryProcessor()).toCompletableFuture();
+    }
+    
+    /**
+     * Obtain the block with the given key
+     * 
+     * @param key The key
+     * @return The future that will be completed with the block, or with
+     * <code>null</code> if no block is stored under the given key
+     */
+    CompletableFuture<FloatMatrix2D> get(BlockKey key)
+    {
+        return blocks.getAsync(key).toCompletableFuture();
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.HazelcastInstanceAware;
+import com.hazelcast.map.IMap;
+
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+import de.javagl.hazelcast.matmul.MatMulResult;
+import de.javagl.hazelcast.matmul.Matrices;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+import de.javagl.hazelcast.matmul.MutableFloatMatrix2D;
+import de.javagl.hazelcast.matmul.Point;
+
+/**
+ * A task that computes one block of a result matrix from blocks that
+ * are stored in the {@link OperandStore}. The task only contains the 
+ * keys of the blocks, and the blocks are obtained from the distributed 
+ * map on the member that executes the task. Blocks that have already 
+ * been obtained by earlier tasks are taken from the {@link BlockCache}
+ * of the member. The result is returned as {@link BlockResults}. 
+ * <br />
+ * <br />
+ * If a result key is given, then the result is not returned, but 
+ * stored in the map under this key, and the returned 
+ * {@link BlockResults} are empty.
+ */
+final class StoredBlocksTask 
+    implements Callable<BlockResults>, HazelcastInstanceAware
+{
+    /**
+     * The logger used in this class
+     */
+    private static final Logger logger = 
+        Logger.getLogger(StoredBlocksTask.class.getName());
+    
+    /**
+     * The ID of the job
+     */
+    private final String jobId;
+    
+    /**
+     * The name of the map that contains the blocks
+     */
+    private final String mapName;
+    
+    /**
+     * The row block index of the result matrix
+     */
+    private final int rowBlockIndex;
+    
+    /**
+     * The column block index of the result matrix
+     */
+    private final int columnBlockIndex;
+    
+    /**
+     * The keys of the blocks of the first factor
+     */
+    private final BlockKey keysA[];
+    
+    /**
+     * The keys of the blocks of the second factor
+     */
+    private final BlockKey keysB[];
+    
+    /**
+     * The key under which the result should be stored. This may be
+     * <code>null</code>.
+     */
+    private final BlockKey resultKey;
+    
+    /**
+     * The {@link Factory} that will be used to create the 
+     * {@link MatrixMultiplicator} for the multiplication
+     * of the blocks. 
+     */
+    private final Factory<MatrixMultiplicator> matrixMultiplicatorFactory;
+    
+    /**
+     * The HazelcastInstance of the member that executes this task
+     */
+    private transient HazelcastInstance hazelcastInstance;
+    
+    /**
+     * Creates a new task that computes the sum of the products of the
+     * blocks with the given keys
+     * 
+     * @param jobId The ID of the job
+     * @param mapName The name of the map that contains the blocks
+     * @param rowBlockIndex The row block index of the result matrix
+     * @param columnBlockIndex The column block index of the result matrix
+     * @param keysA The keys of the blocks of the first factor
+     * @param keysB The keys of the blocks of the second factor. This 
+     * must have the same length as the keys of the first factor.
+     * @param resultKey The key under which the result should be stored
+     * in the map. If this is <code>null</code>, then the result will be
+     * returned.
+     * @param matrixMultiplicatorFactory The {@link Factory} for the
+     * {@link MatrixMultiplicator} that will multiply the blocks
+     */
+    StoredBlocksTask(String jobId, String mapName, 
+        int rowBlockIndex, int columnBlockIndex,
+        BlockKey keysA[], BlockKey keysB[], BlockKey resultKey,
+        Factory<MatrixMultiplicator> matrixMultiplicatorFactory)
+    {
+        this.jobId = jobId;
+        this.mapName = mapName;
+        this.rowBlockIndex = rowBlockIndex;
+        this.columnBlockIndex = columnBlockIndex;
+        this.keysA = keysA;
+        this.keysB = keysB;
+        this.resultKey = resultKey;
+        this.matrixMultiplicatorFactory = matrixMultiplicatorFactory;
+    }
+    
+    @Override
+    public void setHazelcastInstance(HazelcastInstance hazelcastInstance)
+    {
+        this.hazelcastInstance = hazelcastInstance;
+    }
+    
+    /**
+     * Returns the ID of the job
+     * 
+     * @return The job ID
+     */
+    String getJobId()
+    {
+        return jobId;
+    }
+    
+    /**
+     * Returns the name of the map that contains the blocks
+     * 
+     * @return The map name
+     */
+    String getMapName()
+    {
+        return mapName;
+    }
+    
+    /**
+     * Returns the row block index of the result matrix
+     * 
+     * @return The row block index
+     */
+    int getRowBlockIndex()
+    {
+        return rowBlockIndex;
+    }
+    
+    /**
+     * Returns the column block index of the result matrix
+     * 
+     * @return The column block index
+     */
+    int getColumnBlockIndex()
+    {
+        return columnBlockIndex;
+    }
+    
+    /**
+     * Returns the keys of the blocks of the first factor
+     * 
+     * @return The keys
+     */
+    BlockKey[] getKeysA()
+    {
+        return keysA;
+    }
+    
+    /**
+     * Returns the keys of the blocks of the second factor
+     * 
+     * @return The keys
+     */
+    BlockKey[] getKeysB()
+    {
+        return keysB;
+    }
+    
+    /**
+     * Returns the key under which the result should be stored
+     * 
+     * @return The result key. This may be <code>null</code>.
+     */
+    BlockKey getResultKey()
+    {
+        return resultKey;
+    }
+    
+    /**
+     * Returns the {@link Factory} for the {@link MatrixMultiplicator}
+     * 
+     * @return The factory
+     */
+    Factory<MatrixMultiplicator> getMatrixMultiplicatorFactory()
+    {
+        return matrixMultiplicatorFactory;
+    }
+    
+    @Override
+    public BlockResults call()
+    {
+        IMap<BlockKey, FloatMatrix2D> blocks = 
+            hazelcastInstance.getMap(mapName);
+        BlockCache blockCache = 
+            MatMulMemberContext.get(hazelcastInstance).getBlockCache();
+        MatrixMultiplicator matrixMultiplicator = 
+            MatMulMemberContext.get(hazelcastInstance).createMultiplicator(
+                matrixMultiplicatorFactory);
+        
+        final Level level = Level.FINE;
+        if (logger.isLoggable(level))
+        {
+            logger.log(level, "Computing block " + rowBlockIndex + "," + 
+                columnBlockIndex + " from " + keysA.length + 
+                " stored block products using " + matrixMultiplicator);
+        }
+        MutableFloatMatrix2D result = null;
+        MutableFloatMatrix2D product = null;
+        for (int p = 0; p < keysA.length; p++)
+        {
+            FloatMatrix2D Arp = getBlock(blocks, blockCache, keysA[p]);
+            FloatMatrix2D Bpc = getBlock(blocks, blockCache, keysB[p]);
+            if (result == null)
+            {
+                result = Matrices.createFloatMatrix2D(
+                    Arp.getNumRows(), Bpc.getNumColumns());
+                product = Matrices.createFloatMatrix2D(
+                    Arp.getNumRows(), Bpc.getNumColumns());
+            }
+            matrixMultiplicator.multiply(product, Arp, Bpc);
+            Matrices.add(result, result, product);
+        }
+        BlockResults blockResults = new BlockResults(jobId);
+        if (resultKey != null)
+        {
+            blocks.set(resultKey, result);
+            blockCache.put(resultKey, result);
+            return blockResults;
+        }
+        blockResults.getResults().add(new MatMulResult(
+            new Point(rowBlockIndex, columnBlockIndex), result));
+        return blockResults;
+    }
+    
+    /**
+     * Returns the block with the given key from the given cache, or 
+     * from the given map if it is not contained in the cache
+     * 
+     * @param blocks The map
+     * @param blockCache The {@link BlockCache}
+     * @param key The key
+     * @return The block
+     * @throws IllegalStateException If the block is not contained 
+     * in the map
+     */
+    private static FloatMatrix2D getBlock(
+        IMap<BlockKey, FloatMatrix2D> blocks, BlockCache blockCache, 
+        BlockKey key)
+    {
+        FloatMatrix2D block = blockCache.get(key);
+        if (block != null)
+        {
+            return block;
+        }
+        block = blocks.get(key);
+        if (block == null)
+        {
+            throw new IllegalStateException(
+                "Block " + key + " is not stored in the cluster");
+        }
+        blockCache.put(key, block);
+        return block;
+    }
+}
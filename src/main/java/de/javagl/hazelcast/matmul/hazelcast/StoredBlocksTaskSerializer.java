@@ -0,0 +1,132 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.io.IOException;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.StreamSerializer;
+
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+
+/**
+ * A Hazelcast StreamSerializer for {@link StoredBlocksTask} objects
+ */
+final class StoredBlocksTaskSerializer 
+    implements StreamSerializer<StoredBlocksTask>
+{
+    @Override
+    public int getTypeId()
+    {
+        return 98765;
+    }
+
+    @Override
+    public void write(ObjectDataOutput out, StoredBlocksTask task)
+        throws IOException
+    {
+        out.writeUTF(task.getJobId());
+        out.writeUTF(task.getMapName());
+        out.writeInt(task.getRowBlockIndex());
+        out.writeInt(task.getColumnBlockIndex());
+        writeKeys(out, task.getKeysA());
+        writeKeys(out, task.getKeysB());
+        BlockKey resultKey = task.getResultKey();
+        out.writeBoolean(resultKey != null);
+        if (resultKey != null)
+        {
+            BlockKeySerializer.writeImpl(out, resultKey);
+        }
+        MatrixMultiplicatorFactoryCodecs.write(
+            out, task.getMatrixMultiplicatorFactory());
+    }
+
+    @Override
+    public StoredBlocksTask read(ObjectDataInput in) throws IOException
+    {
+        String jobId = in.readUTF();
+        String mapName = in.readUTF();
+        int rowBlockIndex = in.readInt();
+        int columnBlockIndex = in.readInt();
+        BlockKey keysA[] = readKeys(in);
+        BlockKey keysB[] = readKeys(in);
+        BlockKey resultKey = null;
+        if (in.readBoolean())
+        {
+            resultKey = BlockKeySerializer.readImpl(in);
+        }
+        Factory<MatrixMultiplicator> matrixMultiplicatorFactory = 
+            MatrixMultiplicatorFactoryCodecs.read(in);
+        return new StoredBlocksTask(jobId, mapName, 
+            rowBlockIndex, columnBlockIndex, 
+            keysA, keysB, resultKey, matrixMultiplicatorFactory);
+    }
+    
+    /**
+     * Write the given keys to the given output
+     * 
+     * @param out The output
+     * @param keys The keys
+     * @throws IOException If an IO error occurs
+     */
+    private static void writeKeys(ObjectDataOutput out, BlockKey keys[])
+        throws IOException
+    {
+        out.writeInt(keys.length);
+        for (BlockKey key : keys)
+        {
+            BlockKeySerializer.writeImpl(out, key);
+        }
+    }
+    
+    /**
+     * Read keys from the given input
+     * 
+     * @param in The input
+     * @return The keys
+     * @throws IOException If an IO error occurs
+     */
+    private static BlockKey[] readKeys(ObjectDataInput in) throws IOException
+    {
+        int n = in.readInt();
+        BlockKey keys[] = new BlockKey[n];
+        for (int i = 0; i < n; i++)
+        {
+            keys[i] = BlockKeySerializer.readImpl(in);
+        }
+        return keys;
+    }
+
+    @Override
+    public void destroy()
+    {
+        // Not used
+    }
+
+}
@@ -0,0 +1,434 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import de.javagl.hazelcast.matmul.AsyncExecutor;
+import de.javagl.hazelcast.matmul.ExecutorExtensions;
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+import de.javagl.hazelcast.matmul.MatMulResult;
+import de.javagl.hazelcast.matmul.Matrices;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+import de.javagl.hazelcast.matmul.MutableFloatMatrix2D;
+import de.javagl.hazelcast.matmul.Point;
+
+/**
+ * A single, asynchronous execution of a multiplication by a 
+ * {@link StoredOperandsMatrixMultiplicator}. <br />
+ * <br />
+ * The job stores the blocks of both factors in the {@link OperandStore}.
+ * Then it dispatches one {@link StoredBlocksTask} for each block of the
+ * result matrix. These tasks only contain the keys of the blocks that 
+ * are required for computing the respective block. When the job is 
+ * finished, the blocks are removed from the {@link OperandStore}. <br />
+ * <br />
+ * The blocks of A are grouped by rows, and the blocks of B are grouped
+ * by columns, so that all blocks of one row of A (or one column of B) 
+ * are stored in the same partition. The task for a block of the result
+ * matrix is sent to the owner of the row of A or the column of B that
+ * it requires, so that this half of its input is read locally. The 
+ * factor with the larger number of rows or columns of blocks is used 
+ * for this, because the blocks of the other factor are then required 
+ * by more tasks on each member, and are more likely to be found in the 
+ * {@link BlockCache} of the member. <br />
+ * <br />
+ * When the job is created with a consumer instead of a result matrix,
+ * then each block of the result matrix is passed to the consumer when
+ * the task for this block is finished, and the result matrix is never 
+ * stored as a whole on the client.
+ */
+final class StoredOperandsJob
+{
+    /**
+     * The logger used in this class
+     */
+    private static final Logger logger = 
+        Logger.getLogger(StoredOperandsJob.class.getName());
+    
+    /**
+     * The ID of this job
+     */
+    private final String jobId;
+    
+    /**
+     * The {@link OperandStore}
+     */
+    private final OperandStore operandStore;
+    
+    /**
+     * The executor that the tasks are submitted to
+     */
+    private final AsyncExecutor executor;
+    
+    /**
+     * The block size
+     */
+    private final int blockSize;
+    
+    /**
+     * The {@link Factory} for the {@link MatrixMultiplicator} instances
+     * that will multiply the blocks on the members
+     */
+    private final Factory<MatrixMultiplicator> subMatrixMultiplicatorFactory;
+    
+    /**
+     * The result matrix. This is <code>null</code> if the blocks of the
+     * result matrix are passed to the {@link #consumer}
+     */
+    private final MutableFloatMatrix2D C;
+    
+    /**
+     * The optional consumer that receives the blocks of the result matrix
+     */
+    private final Consumer<? super MatMulResult> consumer;
+    
+    /**
+     * The first factor
+     */
+    private final FloatMatrix2D A;
+    
+    /**
+     * The second factor
+     */
+    private final FloatMatrix2D B;
+    
+    /**
+     * The future that will be completed when this job is finished
+     */
+    private final CompletableFuture<MutableFloatMatrix2D> future;
+    
+    /**
+     * The futures of the tasks that are currently executed
+     */
+    private final Set<CompletableFuture<?>> pendingFutures;
+    
+    /**
+     * The number of blocks of the result matrix that have not been
+     * computed yet
+     */
+    private final AtomicInteger remainingBlocks;
+    
+    /**
+     * Creates a new job
+     * 
+     * @param operandStore The {@link OperandStore}
+     * @param executor The {@link AsyncExecutor}. This executor will be 
+     * shut down when the job is finished.
+     * @param blockSize The block size
+     * @param subMatrixMultiplicatorFactory The {@link Factory} for the 
+     * {@link MatrixMultiplicator} that will multiply the blocks
+     * @param C The result matrix. This may be <code>null</code> if a
+     * consumer is given.
+     * @param A The first factor
+     * @param B The second factor
+     * @param consumer The optional consumer that receives the blocks of
+     * the result matrix. If this is not <code>null</code>, then the 
+     * future of the job will be completed with <code>null</code>.
+     */
+    StoredOperandsJob(OperandStore operandStore, final AsyncExecutor executor,
+        int blockSize, 
+        Factory<MatrixMultiplicator> subMatrixMultiplicatorFactory,
+        MutableFloatMatrix2D C, FloatMatrix2D A, FloatMatrix2D B,
+        Consumer<? super MatMulResult> consumer)
+    {
+        this.jobId = UUID.randomUUID().toString();
+        this.operandStore = operandStore;
+        this.executor = executor;
+        this.blockSize = blockSize;
+        this.subMatrixMultiplicatorFactory = subMatrixMultiplicatorFactory;
+        this.C = C;
+        this.A = A;
+        this.B = B;
+        this.consumer = consumer;
+        this.future = new CompletableFuture<MutableFloatMatrix2D>();
+        this.pendingFutures = Collections.newSetFromMap(
+            new ConcurrentHashMap<CompletableFuture<?>, Boolean>());
+        this.remainingBlocks = new AtomicInteger();
+        
+        future.whenComplete(new BiConsumer<Object, Throwable>()
+        {
+            @Override
+            public void accept(Object value, Throwable t)
+            {
+                if (t != null)
+                {
+                    for (CompletableFuture<?> pendingFuture : pendingFutures)
+                    {
+                        pendingFuture.cancel(true);
+                    }
+                }
+                removeOperands();
+                executor.shutdown();
+            }
+        });
+    }
+    
+    /**
+     * Returns the ID under which the first factor is stored
+     * 
+     * @return The ID
+     */
+    private String getMatrixIdA()
+    {
+        return jobId + "-A";
+    }
+    
+    /**
+     * Returns the ID under which the second factor is stored
+     * 
+     * @return The ID
+     */
+    private String getMatrixIdB()
+    {
+        return jobId + "-B";
+    }
+    
+    /**
+     * Start this job
+     * 
+     * @return The future that will be completed when the job is finished
+     */
+    CompletableFuture<MutableFloatMatrix2D> start()
+    {
+        if (C != null)
+        {
+            Matrices.fill(C, 0.0f);
+        }
+        logger.fine("Storing operands of job " + jobId);
+        CompletableFuture<Void> uploadA = 
+            operandStore.upload(getMatrixIdA(), A, blockSize, 
+                BlockKey.Grouping.ROW);
+        CompletableFuture<Void> uploadB = 
+            operandStore.upload(getMatrixIdB(), B, blockSize, 
+                BlockKey.Grouping.COLUMN);
+        CompletableFuture.allOf(uploadA, uploadB).whenComplete(
+            new BiConsumer<Void, Throwable>()
+        {
+            @Override
+            public void accept(Void value, Throwable t)
+            {
+                if (t != null)
+                {
+                    future.completeExceptionally(
+                        ExecutorExtensions.unwrap(t));
+                    return;
+                }
+                try
+                {
+                    dispatch();
+                }
+                catch (Throwable e)
+                {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+        return future;
+    }
+    
+    /**
+     * Start this job with the given deadline. 
+     * 
+     * @param timeout The timeout
+     * @param unit The time unit
+     * @return The future that will be completed when the job is finished
+     * @see ExecutorExtensions#failAfter(CompletableFuture, long, TimeUnit)
+     */
+    CompletableFuture<MutableFloatMatrix2D> start(
+        long timeout, TimeUnit unit)
+    {
+        ExecutorExtensions.failAfter(future, timeout, unit);
+        return start();
+    }
+    
+    /**
+     * Dispatch the tasks for all blocks of the result matrix
+     */
+    private void dispatch()
+    {
+        int numRowBlocks = MatMulUtils.divCeil(A.getNumRows(), blockSize);
+        int numColumnBlocks = 
+            MatMulUtils.divCeil(B.getNumColumns(), blockSize);
+        int numOuterProducts = 
+            MatMulUtils.divCeil(A.getNumColumns(), blockSize);
+        if (numRowBlocks * numColumnBlocks == 0 || numOuterProducts == 0)
+        {
+            future.complete(C);
+            return;
+        }
+        boolean routeByRows = numRowBlocks >= numColumnBlocks;
+        remainingBlocks.set(numRowBlocks * numColumnBlocks);
+        logger.fine("Dispatching " + remainingBlocks + " tasks for job " + 
+            jobId);
+        for (int r = 0; r < numRowBlocks; r++)
+        {
+            for (int c = 0; c < numColumnBlocks; c++)
+            {
+                if (future.isDone())
+                {
+                    return;
+                }
+                BlockKey keysA[] = new BlockKey[numOuterProducts];
+                BlockKey keysB[] = new BlockKey[numOuterProducts];
+                for (int p = 0; p < numOuterProducts; p++)
+                {
+                    keysA[p] = new BlockKey(
+                        getMatrixIdA(), r, p, BlockKey.Grouping.ROW);
+                    keysB[p] = new BlockKey(
+                        getMatrixIdB(), p, c, BlockKey.Grouping.COLUMN);
+                }
+                BlockKey key = routeByRows ? keysA[0] : keysB[0];
+                StoredBlocksTask task = new StoredBlocksTask(jobId, 
+                    operandStore.getMapName(), r, c, keysA, keysB, null, 
+                    subMatrixMultiplicatorFactory);
+                submit(task, key);
+            }
+        }
+    }
+    
+    /**
+     * Submit the given task, and store its result in the result matrix.
+     * If the executor is a {@link HazelcastAsyncExecutor} or one of its
+     * job executors, then the task is submitted to the owner of the 
+     * given key.
+     * 
+     * @param task The task
+     * @param key The key of a block that is required by the task
+     */
+    private void submit(StoredBlocksTask task, BlockKey key)
+    {
+        final CompletableFuture<BlockResults> taskFuture = 
+            HazelcastAsyncExecutor.submitToKeyOwner(executor, task, key);
+        pendingFutures.add(taskFuture);
+        taskFuture.whenComplete(new BiConsumer<BlockResults, Throwable>()
+        {
+            @Override
+            public void accept(BlockResults results, Throwable t)
+            {
+                pendingFutures.remove(taskFuture);
+                if (t != null)
+                {
+                    future.completeExceptionally(
+                        ExecutorExtensions.unwrap(t));
+                    return;
+                }
+                try
+                {
+                    if (future.isDone())
+                    {
+                        return;
+                    }
+                    if (consumer != null)
+                    {
+                        if (!consume(results))
+                        {
+                            return;
+                        }
+                    }
+                    else
+                    {
+                        for (MatMulResult result : results.getResults())
+                        {
+                            Point point = result.getPoint();
+                            MutableFloatMatrix2D Crc = 
+                                MatMulUtils.createBlockSubMatrix(
+                                    C, blockSize, point.r, point.c, 
+                                    point.r + 1, point.c + 1);
+                            Matrices.add(Crc, Crc, result.getMatrix());
+                            result.release();
+                        }
+                    }
+                    if (remainingBlocks.decrementAndGet() == 0)
+                    {
+                        future.complete(C);
+                    }
+                }
+                catch (Throwable e)
+                {
+                    // An exception that is thrown in this callback would be
+                    // swallowed by the CompletableFuture, and the job would
+                    // never be completed
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Pass the given results to the consumer. The consumer is not called
+     * concurrently. If the consumer throws an exception, then the job
+     * is completed exceptionally with this exception.
+     * 
+     * @param results The results
+     * @return Whether the results have been consumed successfully
+     */
+    private boolean consume(BlockResults results)
+    {
+        synchronized (consumer)
+        {
+            try
+            {
+                for (MatMulResult result : results.getResults())
+                {
+                    if (future.isDone())
+                    {
+                        return false;
+                    }
+                    consumer.accept(result);
+                }
+                return true;
+            }
+            catch (RuntimeException e)
+            {
+                future.completeExceptionally(e);
+                return false;
+            }
+        }
+    }
+    
+    /**
+     * Remove the blocks of the factors from the {@link OperandStore}
+     */
+    private void removeOperands()
+    {
+        operandStore.remove(getMatrixIdA(), A, blockSize, 
+            BlockKey.Grouping.ROW);
+        operandStore.remove(getMatrixIdB(), B, blockSize, 
+            BlockKey.Grouping.COLUMN);
+    }
+}
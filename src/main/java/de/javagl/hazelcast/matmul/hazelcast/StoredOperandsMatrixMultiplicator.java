@@ -0,0 +1,247 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import com.hazelcast.core.HazelcastInstance;
+
+import de.javagl.hazelcast.matmul.AsyncExecutor;
+import de.javagl.hazelcast.matmul.AsyncMatrixMultiplicator;
+import de.javagl.hazelcast.matmul.ExecutorExtensions;
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+import de.javagl.hazelcast.matmul.MatMulResult;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+import de.javagl.hazelcast.matmul.MutableFloatMatrix2D;
+import de.javagl.hazelcast.matmul.StreamingMatrixMultiplicator;
+
+/**
+ * Implementation of an {@link AsyncMatrixMultiplicator} that stores the
+ * blocks of the factors in a distributed map of a Hazelcast cluster. <br />
+ * <br />
+ * Each block of A and B is sent to the cluster exactly once, and stored
+ * in the map under a key that consists of an ID of the matrix and the 
+ * block indices. The tasks for the blocks of the result matrix only 
+ * contain these keys. The members obtain the blocks from the map, which
+ * is a local access for the blocks in the partitions that they own.
+ * <br />
+ * <br />
+ * Since each task computes one complete block of the result matrix, 
+ * this class also implements the {@link StreamingMatrixMultiplicator}
+ * interface: The blocks may be passed to a consumer as soon as they
+ * are received, without storing the whole result matrix on the client.
+ */
+public final class StoredOperandsMatrixMultiplicator 
+    implements AsyncMatrixMultiplicator, StreamingMatrixMultiplicator
+{
+    /**
+     * The HazelcastInstance
+     */
+    private final HazelcastInstance hazelcastInstance;
+    
+    /**
+     * The {@link Factory} for the {@link AsyncExecutor} that the tasks
+     * are submitted to
+     */
+    private final Factory<AsyncExecutor> asyncExecutorFactory;
+    
+    /**
+     * The block size for the matrices
+     */
+    private final int blockSize;
+    
+    /**
+     * The {@link Factory} that will be used to create 
+     * {@link MatrixMultiplicator} instances for the 
+     * blocks on the members.
+     */
+    private final Factory<MatrixMultiplicator> subMatrixMultiplicatorFactory;
+    
+    /**
+     * Creates a new matrix multiplicator that stores the operands in 
+     * the cluster
+     * 
+     * @param hazelcastInstance The HazelcastInstance
+     * @param asyncExecutorFactory The {@link Factory} for the 
+     * {@link AsyncExecutor} that the tasks are submitted to. The executor
+     * will be shut down when the multiplication is finished.
+     * @param blockSize The block size
+     * @param subMatrixMultiplicatorFactory The {@link Factory} that will be 
+     * used to create {@link MatrixMultiplicator} instances for the blocks
+     * on the members
+     */
+    public StoredOperandsMatrixMultiplicator(
+        HazelcastInstance hazelcastInstance,
+        Factory<AsyncExecutor> asyncExecutorFactory, int blockSize,
+        Factory<MatrixMultiplicator> subMatrixMultiplicatorFactory)
+    {
+        this.hazelcastInstance = hazelcastInstance;
+        this.asyncExecutorFactory = asyncExecutorFactory;
+        this.blockSize = blockSize;
+        this.subMatrixMultiplicatorFactory = subMatrixMultiplicatorFactory;
+    }
+
+    @Override
+    public void multiply(
+        MutableFloatMatrix2D C, FloatMatrix2D A, FloatMatrix2D B)
+    {
+        ExecutorExtensions.await(multiplyAsync(C, A, B));
+    }
+
+    @Override
+    public CompletableFuture<MutableFloatMatrix2D> multiplyAsync(
+        MutableFloatMatrix2D C, FloatMatrix2D A, FloatMatrix2D B)
+    {
+        return createJob(C, A, B).start();
+    }
+
+    @Override
+    public CompletableFuture<MutableFloatMatrix2D> multiplyAsync(
+        MutableFloatMatrix2D C, FloatMatrix2D A, FloatMatrix2D B,
+        long timeout, TimeUnit unit)
+    {
+        return createJob(C, A, B).start(timeout, unit);
+    }
+    
+    @Override
+    public int getBlockSize()
+    {
+        return blockSize;
+    }
+    
+    @Override
+    public CompletableFuture<Void> multiplyStreaming(
+        FloatMatrix2D A, FloatMatrix2D B, 
+        Consumer<? super MatMulResult> consumer)
+    {
+        return toVoidFuture(createJob(A, B, consumer).start());
+    }
+    
+    @Override
+    public CompletableFuture<Void> multiplyStreaming(
+        FloatMatrix2D A, FloatMatrix2D B, 
+        Consumer<? super MatMulResult> consumer, 
+        long timeout, TimeUnit unit)
+    {
+        return toVoidFuture(createJob(A, B, consumer).start(timeout, unit));
+    }
+    
+    /**
+     * Returns a future that is completed when the given future of a 
+     * streaming job is completed. When the returned future is 
+     * cancelled or completed exceptionally, then the job will be 
+     * cancelled as well.
+     * 
+     * @param jobFuture The future of the job
+     * @return The future
+     */
+    private static CompletableFuture<Void> toVoidFuture(
+        final CompletableFuture<MutableFloatMatrix2D> jobFuture)
+    {
+        final CompletableFuture<Void> result = new CompletableFuture<Void>();
+        jobFuture.whenComplete(
+            new BiConsumer<MutableFloatMatrix2D, Throwable>()
+        {
+            @Override
+            public void accept(MutableFloatMatrix2D value, Throwable t)
+            {
+                if (t != null)
+                {
+                    result.completeExceptionally(
+                        ExecutorExtensions.unwrap(t));
+                }
+                else
+                {
+                    result.complete(null);
+                }
+            }
+        });
+        result.whenComplete(new BiConsumer<Void, Throwable>()
+        {
+            @Override
+            public void accept(Void value, Throwable t)
+            {
+                if (t != null)
+                {
+                    jobFuture.completeExceptionally(t);
+                }
+            }
+        });
+        return result;
+    }
+    
+    /**
+     * Create the {@link StoredOperandsJob} for the given matrices
+     * 
+     * @param C The result matrix
+     * @param A The first factor
+     * @param B The second factor
+     * @return The job
+     */
+    private StoredOperandsJob createJob(
+        MutableFloatMatrix2D C, FloatMatrix2D A, FloatMatrix2D B)
+    {
+        OperandStore operandStore = new OperandStore(
+            hazelcastInstance, MatMulUtils.OPERANDS_MAP_NAME);
+        return new StoredOperandsJob(operandStore, 
+            asyncExecutorFactory.create(), blockSize, 
+            subMatrixMultiplicatorFactory, C, A, B, null);
+    }
+    
+    /**
+     * Create the {@link StoredOperandsJob} that passes the blocks of the
+     * product of the given matrices to the given consumer
+     * 
+     * @param A The first factor
+     * @param B The second factor
+     * @param consumer The consumer
+     * @return The job
+     */
+    private StoredOperandsJob createJob(FloatMatrix2D A, FloatMatrix2D B,
+        Consumer<? super MatMulResult> consumer)
+    {
+        OperandStore operandStore = new OperandStore(
+            hazelcastInstance, MatMulUtils.OPERANDS_MAP_NAME);
+        return new StoredOperandsJob(operandStore, 
+            asyncExecutorFactory.create(), blockSize, 
+            subMatrixMultiplicatorFactory, null, A, B, consumer);
+    }
+    
+    @Override
+    public String toString()
+    {
+        return getClass().getSimpleName()+
+            "[asyncExecutorFactory="+asyncExecutorFactory+","+
+            "subMatrixMultiplicatorFactory="+
+            subMatrixMultiplicatorFactory+","+
+            "blockSize="+blockSize+"]";
+    }
+}
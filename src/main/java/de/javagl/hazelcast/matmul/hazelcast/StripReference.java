@@ -0,0 +1,131 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+/**
+ * A reference to a matrix that has been stored in {@link BlockStrips}.
+ * The matrix is stored in strips, each containing a range of columns,
+ * so that no single entry of the map exceeds a certain size.
+ */
+final class StripReference
+{
+    /**
+     * The ID of the transfer that the strips belong to
+     */
+    private final String transferId;
+    
+    /**
+     * The number of rows of the matrix
+     */
+    private final int numRows;
+    
+    /**
+     * The number of columns of the matrix
+     */
+    private final int numColumns;
+    
+    /**
+     * The number of columns of each strip. The last strip may contain 
+     * fewer columns.
+     */
+    private final int columnsPerStrip;
+    
+    /**
+     * Creates a new instance
+     * 
+     * @param transferId The ID of the transfer that the strips belong to
+     * @param numRows The number of rows of the matrix
+     * @param numColumns The number of columns of the matrix
+     * @param columnsPerStrip The number of columns of each strip
+     */
+    StripReference(String transferId, 
+        int numRows, int numColumns, int columnsPerStrip)
+    {
+        this.transferId = transferId;
+        this.numRows = numRows;
+        this.numColumns = numColumns;
+        this.columnsPerStrip = columnsPerStrip;
+    }
+    
+    /**
+     * Returns the ID of the transfer that the strips belong to
+     * 
+     * @return The transfer ID
+     */
+    String getTransferId()
+    {
+        return transferId;
+    }
+    
+    /**
+     * Returns the number of rows of the matrix
+     * 
+     * @return The number of rows
+     */
+    int getNumRows()
+    {
+        return numRows;
+    }
+    
+    /**
+     * Returns the number of columns of the matrix
+     * 
+     * @return The number of columns
+     */
+    int getNumColumns()
+    {
+        return numColumns;
+    }
+    
+    /**
+     * Returns the number of columns of each strip. The last strip may 
+     * contain fewer columns.
+     * 
+     * @return The number of columns per strip
+     */
+    int getColumnsPerStrip()
+    {
+        return columnsPerStrip;
+    }
+    
+    /**
+     * Returns the number of strips
+     * 
+     * @return The number of strips
+     */
+    int getNumStrips()
+    {
+        return MatMulUtils.divCeil(numColumns, columnsPerStrip);
+    }
+    
+    @Override
+    public String toString()
+    {
+        return "StripReference[" + transferId + ", " + numRows + "x" + 
+            numColumns + ", columnsPerStrip=" + columnsPerStrip + "]";
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.io.IOException;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.StreamSerializer;
+
+/**
+ * A Hazelcast StreamSerializer for {@link StripReference} objects
+ */
+final class StripReferenceSerializer 
+    implements StreamSerializer<StripReference>
+{
+    @Override
+    public int getTypeId()
+    {
+        return 8765;
+    }
+
+    @Override
+    public void write(ObjectDataOutput out, StripReference reference)
+        throws IOException
+    {
+        writeImpl(out, reference);
+    }
+    
+    /**
+     * Write the given reference to the given output
+     * 
+     * @param out The output
+     * @param reference The reference
+     * @throws IOException If an IO error occurs
+     */
+    static void writeImpl(ObjectDataOutput out, StripReference reference)
+        throws IOException
+    {
+        out.writeUTF(reference.getTransferId());
+        out.writeInt(reference.getNumRows());
+        out.writeInt(reference.getNumColumns());
+        out.writeInt(reference.getColumnsPerStrip());
+    }
+
+    @Override
+    public StripReference read(ObjectDataInput in) throws IOException
+    {
+        return readImpl(in);
+    }
+    
+    /**
+     * Read a reference from the given input
+     * 
+     * @param in The input
+     * @return The reference
+     * @throws IOException If an IO error occurs
+     */
+    static StripReference readImpl(ObjectDataInput in) throws IOException
+    {
+        String transferId = in.readUTF();
+        int numRows = in.readInt();
+        int numColumns = in.readInt();
+        int columnsPerStrip = in.readInt();
+        return new StripReference(
+            transferId, numRows, numColumns, columnsPerStrip);
+    }
+
+    @Override
+    public void destroy()
+    {
+        // Not used
+    }
+
+}
@@ -0,0 +1,253 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.util.concurrent.Callable;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.HazelcastInstanceAware;
+
+import de.javagl.hazelcast.matmul.ExecutorExtensions;
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+import de.javagl.hazelcast.matmul.MatMulResult;
+import de.javagl.hazelcast.matmul.MatMulTask;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+
+/**
+ * A task that computes the product of two blocks that have been stored
+ * in {@link BlockStrips}, because they are too large to be sent in a
+ * single {@link MatMulTask}. The blocks are reassembled from their 
+ * strips on the member, and the product is stored in strips as well. 
+ * The task returns the {@link StripReference} of the product. <br />
+ * <br />
+ * The strips of the blocks are not removed by this task, so that the
+ * task may be executed again when its member left the cluster. They 
+ * are removed by the caller when the task is finished.
+ */
+final class StripTask 
+    implements Callable<StripReference>, HazelcastInstanceAware
+{
+    /**
+     * The name of the map that contains the strips
+     */
+    private final String mapName;
+    
+    /**
+     * The ID of the job that this task belongs to
+     */
+    private final String jobId;
+    
+    /**
+     * The slice of the job that this task belongs to
+     */
+    private final int slice;
+    
+    /**
+     * The row block index of the result matrix
+     */
+    private final int rowBlockIndex;
+    
+    /**
+     * The column block index of the result matrix
+     */
+    private final int columnBlockIndex;
+    
+    /**
+     * The reference to the first factor
+     */
+    private final StripReference m0;
+    
+    /**
+     * The reference to the second factor
+     */
+    private final StripReference m1;
+    
+    /**
+     * The {@link Factory} that will be used to create the 
+     * {@link MatrixMultiplicator} for the multiplication
+     * of the blocks. 
+     */
+    private final Factory<MatrixMultiplicator> matrixMultiplicatorFactory;
+    
+    /**
+     * The maximum number of bytes of each strip of the product
+     */
+    private final long maxStripBytes;
+    
+    /**
+     * The HazelcastInstance of the member that executes this task
+     */
+    private transient HazelcastInstance hazelcastInstance;
+    
+    /**
+     * Creates a new task
+     * 
+     * @param mapName The name of the map that contains the strips
+     * @param jobId The ID of the job that this task belongs to
+     * @param slice The slice of the job that this task belongs to
+     * @param rowBlockIndex The row block index of the result matrix
+     * @param columnBlockIndex The column block index of the result matrix
+     * @param m0 The reference to the first factor
+     * @param m1 The reference to the second factor
+     * @param matrixMultiplicatorFactory The {@link Factory} for the
+     * {@link MatrixMultiplicator} that will multiply the blocks
+     * @param maxStripBytes The maximum number of bytes of each strip
+     * of the product
+     */
+    StripTask(String mapName, String jobId, int slice, 
+        int rowBlockIndex, int columnBlockIndex, 
+        StripReference m0, StripReference m1,
+        Factory<MatrixMultiplicator> matrixMultiplicatorFactory,
+        long maxStripBytes)
+    {
+        this.mapName = mapName;
+        this.jobId = jobId;
+        this.slice = slice;
+        this.rowBlockIndex = rowBlockIndex;
+        this.columnBlockIndex = columnBlockIndex;
+        this.m0 = m0;
+        this.m1 = m1;
+        this.matrixMultiplicatorFactory = matrixMultiplicatorFactory;
+        this.maxStripBytes = maxStripBytes;
+    }
+    
+    @Override
+    public void setHazelcastInstance(HazelcastInstance hazelcastInstance)
+    {
+        this.hazelcastInstance = hazelcastInstance;
+    }
+    
+    /**
+     * Returns the name of the map that contains the strips
+     * 
+     * @return The map name
+     */
+    String getMapName()
+    {
+        return mapName;
+    }
+    
+    /**
+     * Returns the ID of the job that this task belongs to
+     * 
+     * @return The job ID
+     */
+    String getJobId()
+    {
+        return jobId;
+    }
+    
+    /**
+     * Returns the slice of the job that this task belongs to
+     * 
+     * @return The slice
+     */
+    int getSlice()
+    {
+        return slice;
+    }
+    
+    /**
+     * Returns the row block index of the result matrix
+     * 
+     * @return The row block index
+     */
+    int getRowBlockIndex()
+    {
+        return rowBlockIndex;
+    }
+    
+    /**
+     * Returns the column block index of the result matrix
+     * 
+     * @return The column block index
+     */
+    int getColumnBlockIndex()
+    {
+        return columnBlockIndex;
+    }
+    
+    /**
+     * Returns the reference to the first factor
+     * 
+     * @return The reference
+     */
+    StripReference getM0()
+    {
+        return m0;
+    }
+    
+    /**
+     * Returns the reference to the second factor
+     * 
+     * @return The reference
+     */
+    StripReference getM1()
+    {
+        return m1;
+    }
+    
+    /**
+     * Returns the {@link Factory} for the {@link MatrixMultiplicator}
+     * 
+     * @return The factory
+     */
+    Factory<MatrixMultiplicator> getMatrixMultiplicatorFactory()
+    {
+        return matrixMultiplicatorFactory;
+    }
+    
+    /**
+     * Returns the maximum number of bytes of each strip of the product
+     * 
+     * @return The maximum number of bytes
+     */
+    long getMaxStripBytes()
+    {
+        return maxStripBytes;
+    }
+    
+    @Override
+    public StripReference call()
+    {
+        BlockStrips blockStrips = new BlockStrips(hazelcastInstance, mapName);
+        FloatMatrix2D a = blockStrips.read(m0);
+        FloatMatrix2D b = blockStrips.read(m1);
+        MatMulTask task = new MatMulTask(jobId, slice, 
+            rowBlockIndex, columnBlockIndex, a, b, 
+            matrixMultiplicatorFactory);
+        MatMulResult result = task.call(
+            MatMulMemberContext.get(hazelcastInstance).createMultiplicator(
+                matrixMultiplicatorFactory));
+        StripReference reference = BlockStrips.createReference(
+            result.getMatrix(), maxStripBytes);
+        ExecutorExtensions.await(
+            blockStrips.upload(reference, result.getMatrix()));
+        return reference;
+    }
+}
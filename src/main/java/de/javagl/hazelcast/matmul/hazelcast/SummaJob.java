@@ -0,0 +1,497 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+import com.hazelcast.cluster.Member;
+import com.hazelcast.core.IExecutorService;
+
+import de.javagl.hazelcast.matmul.ExecutorExtensions;
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+import de.javagl.hazelcast.matmul.MatMulResult;
+import de.javagl.hazelcast.matmul.Matrices;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+import de.javagl.hazelcast.matmul.MutableFloatMatrix2D;
+import de.javagl.hazelcast.matmul.Point;
+
+/**
+ * A single, asynchronous execution of a multiplication by a 
+ * {@link SummaMatrixMultiplicator}. <br />
+ * <br />
+ * The members are arranged in a process grid. For each member of the
+ * grid, the job dispatches one {@link SummaStepTask} for each outer 
+ * product, where the task for the next outer product is dispatched 
+ * as soon as the member finished the previous one. When a member has 
+ * finished all outer products, its blocks of the result matrix are 
+ * gathered with a {@link GatherBlocksTask}. <br />
+ * <br />
+ * The rows and columns of blocks of the result matrix are distributed
+ * among the rows and columns of the process grid in an interleaved way,
+ * where the share of each row and column of the grid is proportional 
+ * to the {@link MemberCapacity} of its members. Members with a larger
+ * capacity thus own more blocks, and receive larger tasks in each 
+ * step, instead of more tasks.
+ */
+final class SummaJob
+{
+    /**
+     * The logger used in this class
+     */
+    private static final Logger logger = 
+        Logger.getLogger(SummaJob.class.getName());
+    
+    /**
+     * The ID of this job
+     */
+    private final String jobId;
+    
+    /**
+     * The executor service that the tasks are submitted to
+     */
+    private final IExecutorService executorService;
+    
+    /**
+     * The members of the process grid, in row-major order
+     */
+    private final List<Member> gridMembers;
+    
+    /**
+     * The number of rows of the process grid
+     */
+    private final int gridRows;
+    
+    /**
+     * The number of columns of the process grid
+     */
+    private final int gridColumns;
+    
+    /**
+     * The block size
+     */
+    private final int blockSize;
+    
+    /**
+     * The {@link Factory} for the {@link MatrixMultiplicator} instances
+     * that will multiply the blocks on the members
+     */
+    private final Factory<MatrixMultiplicator> subMatrixMultiplicatorFactory;
+    
+    /**
+     * The result matrix
+     */
+    private final MutableFloatMatrix2D C;
+    
+    /**
+     * The first factor
+     */
+    private final FloatMatrix2D A;
+    
+    /**
+     * The second factor
+     */
+    private final FloatMatrix2D B;
+    
+    /**
+     * The number of outer products that have to be computed
+     */
+    private final int numOuterProducts;
+    
+    /**
+     * The future that will be completed when this job is finished
+     */
+    private final CompletableFuture<MutableFloatMatrix2D> future;
+    
+    /**
+     * The futures of the tasks that are currently executed
+     */
+    private final Set<CompletableFuture<?>> pendingFutures;
+    
+    /**
+     * The members that participate in this job
+     */
+    private final List<Member> participatingMembers;
+    
+    /**
+     * The number of members that did not finish yet
+     */
+    private final AtomicInteger remainingMembers;
+    
+    /**
+     * Creates a new job
+     * 
+     * @param executorService The executor service
+     * @param gridMembers The members of the process grid, in row-major 
+     * order. The size of this list must be gridRows * gridColumns.
+     * @param gridRows The number of rows of the process grid
+     * @param gridColumns The number of columns of the process grid
+     * @param blockSize The block size
+     * @param subMatrixMultiplicatorFactory The {@link Factory} for the 
+     * {@link MatrixMultiplicator} that will multiply the blocks
+     * @param C The result matrix
+     * @param A The first factor
+     * @param B The second factor
+     */
+    SummaJob(IExecutorService executorService, 
+        List<Member> gridMembers, int gridRows, int gridColumns,
+        int blockSize, 
+        Factory<MatrixMultiplicator> subMatrixMultiplicatorFactory,
+        MutableFloatMatrix2D C, FloatMatrix2D A, FloatMatrix2D B)
+    {
+        this.jobId = UUID.randomUUID().toString();
+        this.executorService = executorService;
+        this.gridMembers = gridMembers;
+        this.gridRows = gridRows;
+        this.gridColumns = gridColumns;
+        this.blockSize = blockSize;
+        this.subMatrixMultiplicatorFactory = subMatrixMultiplicatorFactory;
+        this.C = C;
+        this.A = A;
+        this.B = B;
+        this.numOuterProducts = 
+            MatMulUtils.divCeil(A.getNumColumns(), blockSize);
+        this.future = new CompletableFuture<MutableFloatMatrix2D>();
+        this.pendingFutures = Collections.newSetFromMap(
+            new ConcurrentHashMap<CompletableFuture<?>, Boolean>());
+        this.participatingMembers = new ArrayList<Member>();
+        this.remainingMembers = new AtomicInteger();
+        
+        future.whenComplete(new BiConsumer<Object, Throwable>()
+        {
+            @Override
+            public void accept(Object value, Throwable t)
+            {
+                if (t != null)
+                {
+                    cancel();
+                }
+            }
+        });
+    }
+    
+    /**
+     * Start this job
+     * 
+     * @return The future that will be completed when the job is finished
+     */
+    CompletableFuture<MutableFloatMatrix2D> start()
+    {
+        Matrices.fill(C, 0.0f);
+        int numRowBlocks = MatMulUtils.divCeil(A.getNumRows(), blockSize);
+        int numColumnBlocks = 
+            MatMulUtils.divCeil(B.getNumColumns(), blockSize);
+        double memberWeights[] = MemberCapacity.computeWeights(gridMembers);
+        double gridRowWeights[] = new double[gridRows];
+        double gridColumnWeights[] = new double[gridColumns];
+        for (int i = 0; i < gridRows; i++)
+        {
+            for (int j = 0; j < gridColumns; j++)
+            {
+                double weight = memberWeights[i * gridColumns + j];
+                gridRowWeights[i] += weight;
+                gridColumnWeights[j] += weight;
+            }
+        }
+        int ownedRowBlocks[][] = 
+            computeOwnedBlockIndices(gridRowWeights, numRowBlocks);
+        int ownedColumnBlocks[][] = 
+            computeOwnedBlockIndices(gridColumnWeights, numColumnBlocks);
+        List<int[]> memberRowBlocks = new ArrayList<int[]>();
+        List<int[]> memberColumnBlocks = new ArrayList<int[]>();
+        for (int i = 0; i < gridRows; i++)
+        {
+            for (int j = 0; j < gridColumns; j++)
+            {
+                int rowBlocks[] = ownedRowBlocks[i];
+                int columnBlocks[] = ownedColumnBlocks[j];
+                if (rowBlocks.length > 0 && columnBlocks.length > 0)
+                {
+                    participatingMembers.add(
+                        gridMembers.get(i * gridColumns + j));
+                    memberRowBlocks.add(rowBlocks);
+                    memberColumnBlocks.add(columnBlocks);
+                }
+            }
+        }
+        logger.fine("Starting SUMMA job " + jobId + " on a " + 
+            gridRows + "x" + gridColumns + " process grid with " + 
+            participatingMembers.size() + " participating members");
+        
+        remainingMembers.set(participatingMembers.size());
+        if (participatingMembers.isEmpty())
+        {
+            future.complete(C);
+            return future;
+        }
+        for (int m = 0; m < participatingMembers.size(); m++)
+        {
+            dispatch(participatingMembers.get(m), 
+                memberRowBlocks.get(m), memberColumnBlocks.get(m), 0);
+        }
+        return future;
+    }
+    
+    /**
+     * Start this job with the given deadline. 
+     * 
+     * @param timeout The timeout
+     * @param unit The time unit
+     * @return The future that will be completed when the job is finished
+     * @see ExecutorExtensions#failAfter(CompletableFuture, long, TimeUnit)
+     */
+    CompletableFuture<MutableFloatMatrix2D> start(
+        long timeout, TimeUnit unit)
+    {
+        ExecutorExtensions.failAfter(future, timeout, unit);
+        return start();
+    }
+    
+    /**
+     * Computes the indices of the blocks that are owned by the rows or 
+     * columns of the process grid. The blocks are assigned one after 
+     * another, each to the row or column of the grid that has the 
+     * largest difference between the number of blocks that it should
+     * own according to its weight, and the number of blocks that it 
+     * already owns. For equal weights, this is a block-cyclic 
+     * distribution.
+     * 
+     * @param weights The weights of the rows or columns of the grid
+     * @param numBlocks The number of blocks
+     * @return The block indices, for each row or column of the grid
+     */
+    private static int[][] computeOwnedBlockIndices(
+        double weights[], int numBlocks)
+    {
+        int gridSize = weights.length;
+        double totalWeight = 0.0;
+        for (int g = 0; g < gridSize; g++)
+        {
+            totalWeight += weights[g];
+        }
+        int owners[] = new int[numBlocks];
+        int counts[] = new int[gridSize];
+        for (int b = 0; b < numBlocks; b++)
+        {
+            int owner = 0;
+            double maxDeficit = Double.NEGATIVE_INFINITY;
+            for (int g = 0; g < gridSize; g++)
+            {
+                double deficit = 
+                    weights[g] * (b + 1) / totalWeight - counts[g];
+                if (deficit > maxDeficit + 1e-9)
+                {
+                    maxDeficit = deficit;
+                    owner = g;
+                }
+            }
+            owners[b] = owner;
+            counts[owner]++;
+        }
+        int result[][] = new int[gridSize][];
+        for (int g = 0; g < gridSize; g++)
+        {
+            result[g] = new int[counts[g]];
+            counts[g] = 0;
+        }
+        for (int b = 0; b < numBlocks; b++)
+        {
+            int owner = owners[b];
+            result[owner][counts[owner]++] = b;
+        }
+        return result;
+    }
+    
+    /**
+     * Dispatch the {@link SummaStepTask} for the given outer product
+     * to the given member, or gather the blocks of the result matrix
+     * from the member if all outer products have been computed. 
+     * 
+     * @param member The member
+     * @param rowBlockIndices The row blocks that are owned by the member
+     * @param columnBlockIndices The column blocks that are owned by the 
+     * member
+     * @param p The index of the outer product
+     */
+    private void dispatch(final Member member, 
+        final int rowBlockIndices[], final int columnBlockIndices[], 
+        final int p)
+    {
+        if (future.isDone())
+        {
+            return;
+        }
+        if (p >= numOuterProducts)
+        {
+            gather(member);
+            return;
+        }
+        FloatMatrix2D rowBlocks[] = new FloatMatrix2D[rowBlockIndices.length];
+        for (int i = 0; i < rowBlockIndices.length; i++)
+        {
+            int rb = rowBlockIndices[i];
+            rowBlocks[i] = MatMulUtils.createBlockSubMatrix(
+                A, blockSize, rb, p, rb + 1, p + 1);
+        }
+        FloatMatrix2D columnBlocks[] = 
+            new FloatMatrix2D[columnBlockIndices.length];
+        for (int j = 0; j < columnBlockIndices.length; j++)
+        {
+            int cb = columnBlockIndices[j];
+            columnBlocks[j] = MatMulUtils.createBlockSubMatrix(
+                B, blockSize, p, cb, p + 1, cb + 1);
+        }
+        SummaStepTask task = new SummaStepTask(jobId, p, 
+            rowBlockIndices, rowBlocks, columnBlockIndices, columnBlocks,
+            subMatrixMultiplicatorFactory);
+        submit(task, member, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                dispatch(member, rowBlockIndices, columnBlockIndices, p + 1);
+            }
+        });
+    }
+    
+    /**
+     * Gather the blocks of the result matrix from the given member, and
+     * complete the future of this job if this was the last member.
+     * 
+     * @param member The member
+     */
+    private void gather(Member member)
+    {
+        final CompletableFuture<BlockResults> gatherFuture = 
+            ExecutorExtensions.toCompletableFuture(
+                executorService.submitToMember(
+                    new GatherBlocksTask(jobId, false), member));
+        pendingFutures.add(gatherFuture);
+        gatherFuture.whenComplete(
+            new BiConsumer<BlockResults, Throwable>()
+        {
+            @Override
+            public void accept(BlockResults results, Throwable t)
+            {
+                pendingFutures.remove(gatherFuture);
+                if (t != null)
+                {
+                    future.completeExceptionally(t);
+                    return;
+                }
+                try
+                {
+                    for (MatMulResult result : results.getResults())
+                    {
+                        Point point = result.getPoint();
+                        MutableFloatMatrix2D Crc = 
+                            MatMulUtils.createBlockSubMatrix(C, blockSize, 
+                                point.r, point.c, point.r + 1, point.c + 1);
+                        Matrices.add(Crc, Crc, result.getMatrix());
+                        result.release();
+                    }
+                    if (remainingMembers.decrementAndGet() == 0)
+                    {
+                        future.complete(C);
+                    }
+                }
+                catch (Throwable e)
+                {
+                    // An exception that is thrown in this callback would be
+                    // swallowed by the CompletableFuture, and the job would
+                    // never be completed
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Submit the given task to the given member, and run the given 
+     * continuation when it completed successfully
+     * 
+     * @param task The task
+     * @param member The member
+     * @param continuation The continuation
+     */
+    private void submit(SummaStepTask task, Member member, 
+        final Runnable continuation)
+    {
+        final CompletableFuture<Integer> taskFuture = 
+            ExecutorExtensions.toCompletableFuture(
+                executorService.submitToMember(task, member));
+        pendingFutures.add(taskFuture);
+        taskFuture.whenComplete(new BiConsumer<Integer, Throwable>()
+        {
+            @Override
+            public void accept(Integer value, Throwable t)
+            {
+                pendingFutures.remove(taskFuture);
+                if (t != null)
+                {
+                    future.completeExceptionally(t);
+                    return;
+                }
+                try
+                {
+                    continuation.run();
+                }
+                catch (Throwable e)
+                {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Cancel all pending tasks, and discard the blocks of the result 
+     * matrix that have been accumulated on the members
+     */
+    private void cancel()
+    {
+        for (CompletableFuture<?> pendingFuture : pendingFutures)
+        {
+            pendingFuture.cancel(true);
+        }
+        for (Member member : participatingMembers)
+        {
+            executorService.submitToMember(
+                new GatherBlocksTask(jobId, true), member);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.hazelcast.cluster.Member;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IExecutorService;
+
+import de.javagl.hazelcast.matmul.AsyncMatrixMultiplicator;
+import de.javagl.hazelcast.matmul.ExecutorExtensions;
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+import de.javagl.hazelcast.matmul.MutableFloatMatrix2D;
+
+/**
+ * Implementation of an {@link AsyncMatrixMultiplicator} that uses the
+ * SUMMA matrix multiplication algorithm in a Hazelcast cluster:
+ * http://www.cs.utexas.edu/ftp/techreports/tr95-13.pdf <br />
+ * <br />
+ * The data members of the cluster are arranged in a logical process 
+ * grid with <code>gr</code> rows and <code>gc</code> columns. The 
+ * member at <code>(i,j)</code> owns all blocks <code>Crc</code> of 
+ * the result matrix with <code>r mod gr = i</code> and 
+ * <code>c mod gc = j</code>, and accumulates them locally. <br />
+ * <br />
+ * For each outer product <code>p</code>, every member receives the
+ * blocks <code>Arp</code> of the block rows that it owns, and the 
+ * blocks <code>Bpc</code> of the block columns that it owns, exactly 
+ * once. So each block of A is only sent to the <code>gc</code> 
+ * members of one grid row, and each block of B is only sent to the 
+ * <code>gr</code> members of one grid column, instead of being sent 
+ * once for each block of the result matrix. The blocks of the result 
+ * matrix are gathered from the members after the last outer product.
+ */
+public final class SummaMatrixMultiplicator implements AsyncMatrixMultiplicator
+{
+    /**
+     * The HazelcastInstance
+     */
+    private final HazelcastInstance hazelcastInstance;
+    
+    /**
+     * The name of the executor service
+     */
+    private final String executorServiceName;
+    
+    /**
+     * The block size for the matrices
+     */
+    private final int blockSize;
+    
+    /**
+     * The {@link Factory} that will be used to create 
+     * {@link MatrixMultiplicator} instances for the 
+     * blocks on the members.
+     */
+    private final Factory<MatrixMultiplicator> subMatrixMultiplicatorFactory;
+    
+    /**
+     * Creates a new SUMMA matrix multiplicator 
+     * 
+     * @param hazelcastInstance The HazelcastInstance
+     * @param executorServiceName The name of the executor service
+     * @param blockSize The block size
+     * @param subMatrixMultiplicatorFactory The {@link Factory} that will be 
+     * used to create {@link MatrixMultiplicator} instances for the blocks
+     * on the members
+     */
+    public SummaMatrixMultiplicator(HazelcastInstance hazelcastInstance,
+        String executorServiceName, int blockSize,
+        Factory<MatrixMultiplicator> subMatrixMultiplicatorFactory)
+    {
+        this.hazelcastInstance = hazelcastInstance;
+        this.executorServiceName = executorServiceName;
+        this.blockSize = blockSize;
+        this.subMatrixMultiplicatorFactory = subMatrixMultiplicatorFactory;
+    }
+
+    @Override
+    public void multiply(
+        MutableFloatMatrix2D C, FloatMatrix2D A, FloatMatrix2D B)
+    {
+        ExecutorExtensions.await(multiplyAsync(C, A, B));
+    }
+
+    @Override
+    public CompletableFuture<MutableFloatMatrix2D> multiplyAsync(
+        MutableFloatMatrix2D C, FloatMatrix2D A, FloatMatrix2D B)
+    {
+        return createJob(C, A, B).start();
+    }
+
+    @Override
+    public CompletableFuture<MutableFloatMatrix2D> multiplyAsync(
+        MutableFloatMatrix2D C, FloatMatrix2D A, FloatMatrix2D B,
+        long timeout, TimeUnit unit)
+    {
+        return createJob(C, A, B).start(timeout, unit);
+    }
+    
+    /**
+     * Create the {@link SummaJob} for the given matrices, using a process
+     * grid that consists of the current data members of the cluster
+     * 
+     * @param C The result matrix
+     * @param A The first factor
+     * @param B The second factor
+     * @return The job
+     */
+    private SummaJob createJob(
+        MutableFloatMatrix2D C, FloatMatrix2D A, FloatMatrix2D B)
+    {
+        List<Member> members = MatMulUtils.getDataMembers(hazelcastInstance);
+        if (members.isEmpty())
+        {
+            throw new IllegalStateException("No data members in cluster");
+        }
+        int numRowBlocks = MatMulUtils.divCeil(A.getNumRows(), blockSize);
+        int numColumnBlocks = 
+            MatMulUtils.divCeil(B.getNumColumns(), blockSize);
+        
+        // Use a process grid that is as square as possible, but does 
+        // not have more rows or columns than there are blocks
+        int gridRows = (int)Math.sqrt(members.size());
+        gridRows = Math.max(1, Math.min(gridRows, numRowBlocks));
+        int gridColumns = members.size() / gridRows;
+        gridColumns = Math.max(1, Math.min(gridColumns, numColumnBlocks));
+        List<Member> gridMembers = sortByCapacity(members).subList(
+            0, gridRows * gridColumns);
+        
+        IExecutorService executorService = 
+            hazelcastInstance.getExecutorService(executorServiceName);
+        return new SummaJob(executorService, gridMembers, 
+            gridRows, gridColumns, blockSize, subMatrixMultiplicatorFactory, 
+            C, A, B);
+    }
+    
+    /**
+     * Returns a new list containing the given members, sorted by their
+     * {@link MemberCapacity} in descending order, so that the members
+     * with the smallest capacity are the ones that are omitted when 
+     * not all members fit into the process grid
+     * 
+     * @param members The members
+     * @return The sorted members
+     */
+    private static List<Member> sortByCapacity(List<Member> members)
+    {
+        double weights[] = MemberCapacity.computeWeights(members);
+        final Map<Member, Double> memberWeights = 
+            new HashMap<Member, Double>();
+        for (int i = 0; i < members.size(); i++)
+        {
+            memberWeights.put(members.get(i), weights[i]);
+        }
+        List<Member> result = new ArrayList<Member>(members);
+        Collections.sort(result, new Comparator<Member>()
+        {
+            @Override
+            public int compare(Member m0, Member m1)
+            {
+                return Double.compare(
+                    memberWeights.get(m1), memberWeights.get(m0));
+            }
+        });
+        return result;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return getClass().getSimpleName()+
+            "[subMatrixMultiplicatorFactory="+
+            subMatrixMultiplicatorFactory+","+
+            "blockSize="+blockSize+"]";
+    }
+}
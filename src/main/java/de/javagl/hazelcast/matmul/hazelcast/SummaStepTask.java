@@ -0,0 +1,259 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.HazelcastInstanceAware;
+
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+import de.javagl.hazelcast.matmul.Matrices;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+import de.javagl.hazelcast.matmul.MutableFloatMatrix2D;
+import de.javagl.hazelcast.matmul.Point;
+
+/**
+ * A task for one step of the SUMMA matrix multiplication on one member
+ * of the process grid. It contains the blocks <code>Arp</code> of the
+ * block rows <code>r</code> that are owned by the member, and the blocks 
+ * <code>Bpc</code> of the block columns <code>c</code> that are owned by 
+ * the member, for one outer product <code>p</code>. When it is executed,
+ * it computes <code>Crc += Arp * Bpc</code> for all these blocks, and
+ * accumulates the results in the {@link MatMulMemberContext}.
+ */
+final class SummaStepTask implements Callable<Integer>, HazelcastInstanceAware
+{
+    /**
+     * The logger used in this class
+     */
+    private static final Logger logger = 
+        Logger.getLogger(SummaStepTask.class.getName());
+    
+    /**
+     * The ID of the job that this task belongs to
+     */
+    private final String jobId;
+    
+    /**
+     * The index of the outer product
+     */
+    private final int outerProductIndex;
+    
+    /**
+     * The row block indices of the blocks of A
+     */
+    private final int rowBlockIndices[];
+    
+    /**
+     * The blocks of A, one for each row block index
+     */
+    private final FloatMatrix2D rowBlocks[];
+
+    /**
+     * The column block indices of the blocks of B
+     */
+    private final int columnBlockIndices[];
+    
+    /**
+     * The blocks of B, one for each column block index
+     */
+    private final FloatMatrix2D columnBlocks[];
+
+    /**
+     * The {@link Factory} that will be used to create the 
+     * {@link MatrixMultiplicator} for the multiplication
+     * of the blocks. 
+     */
+    private final Factory<MatrixMultiplicator> matrixMultiplicatorFactory;
+    
+    /**
+     * The HazelcastInstance of the member that executes this task
+     */
+    private transient HazelcastInstance hazelcastInstance;
+    
+    /**
+     * Creates a new task
+     * 
+     * @param jobId The ID of the job that this task belongs to
+     * @param outerProductIndex The index of the outer product
+     * @param rowBlockIndices The row block indices of the blocks of A
+     * @param rowBlocks The blocks of A
+     * @param columnBlockIndices The column block indices of the blocks of B
+     * @param columnBlocks The blocks of B
+     * @param matrixMultiplicatorFactory The {@link Factory} for the
+     * {@link MatrixMultiplicator} that will multiply the blocks
+     */
+    SummaStepTask(String jobId, int outerProductIndex,
+        int rowBlockIndices[], FloatMatrix2D rowBlocks[],
+        int columnBlockIndices[], FloatMatrix2D columnBlocks[],
+        Factory<MatrixMultiplicator> matrixMultiplicatorFactory)
+    {
+        this.jobId = jobId;
+        this.outerProductIndex = outerProductIndex;
+        this.rowBlockIndices = rowBlockIndices;
+        this.rowBlocks = rowBlocks;
+        this.columnBlockIndices = columnBlockIndices;
+        this.columnBlocks = columnBlocks;
+        this.matrixMultiplicatorFactory = matrixMultiplicatorFactory;
+    }
+    
+    @Override
+    public void setHazelcastInstance(HazelcastInstance hazelcastInstance)
+    {
+        this.hazelcastInstance = hazelcastInstance;
+    }
+    
+    /**
+     * Returns the ID of the job that this task belongs to
+     * 
+     * @return The job ID
+     */
+    String getJobId()
+    {
+        return jobId;
+    }
+    
+    /**
+     * Returns the index of the outer product
+     * 
+     * @return The index of the outer product
+     */
+    int getOuterProductIndex()
+    {
+        return outerProductIndex;
+    }
+    
+    /**
+     * Returns the row block indices of the blocks of A
+     * 
+     * @return The row block indices
+     */
+    int[] getRowBlockIndices()
+    {
+        return rowBlockIndices;
+    }
+    
+    /**
+     * Returns the blocks of A
+     * 
+     * @return The blocks of A
+     */
+    FloatMatrix2D[] getRowBlocks()
+    {
+        return rowBlocks;
+    }
+    
+    /**
+     * Returns the column block indices of the blocks of B
+     * 
+     * @return The column block indices
+     */
+    int[] getColumnBlockIndices()
+    {
+        return columnBlockIndices;
+    }
+    
+    /**
+     * Returns the blocks of B
+     * 
+     * @return The blocks of B
+     */
+    FloatMatrix2D[] getColumnBlocks()
+    {
+        return columnBlocks;
+    }
+    
+    /**
+     * Returns the {@link Factory} for the {@link MatrixMultiplicator}
+     * 
+     * @return The factory
+     */
+    Factory<MatrixMultiplicator> getMatrixMultiplicatorFactory()
+    {
+        return matrixMultiplicatorFactory;
+    }
+    
+    @Override
+    public Integer call()
+    {
+        MatMulMemberContext context = 
+            MatMulMemberContext.get(hazelcastInstance);
+        ConcurrentMap<Point, MutableFloatMatrix2D> accumulators = 
+            context.getAccumulators(jobId);
+        if (accumulators == null)
+        {
+            // The job was already cancelled
+            return 0;
+        }
+        MatrixMultiplicator matrixMultiplicator = 
+            context.createMultiplicator(matrixMultiplicatorFactory);
+        
+        final Level level = Level.FINE;
+        if (logger.isLoggable(level))
+        {
+            logger.log(level, "SUMMA step " + outerProductIndex + 
+                " of job " + jobId + " for " + rowBlocks.length + " row " +
+                "blocks and " + columnBlocks.length + " column blocks " +
+                "using " + matrixMultiplicator);
+        }
+        int numProducts = 0;
+        for (int i = 0; i < rowBlocks.length; i++)
+        {
+            if (context.isFinished(jobId))
+            {
+                // The job was cancelled while this step was running
+                return numProducts;
+            }
+            FloatMatrix2D Arp = rowBlocks[i];
+            for (int j = 0; j < columnBlocks.length; j++)
+            {
+                FloatMatrix2D Bpc = columnBlocks[j];
+                Point point = 
+                    new Point(rowBlockIndices[i], columnBlockIndices[j]);
+                MutableFloatMatrix2D Crc = accumulators.get(point);
+                MutableFloatMatrix2D product = Matrices.createFloatMatrix2D(
+                    Arp.getNumRows(), Bpc.getNumColumns());
+                matrixMultiplicator.multiply(product, Arp, Bpc);
+                if (Crc == null)
+                {
+                    accumulators.put(point, product);
+                }
+                else
+                {
+                    Matrices.add(Crc, Crc, product);
+                }
+                numProducts++;
+            }
+        }
+        return numProducts;
+    }
+}
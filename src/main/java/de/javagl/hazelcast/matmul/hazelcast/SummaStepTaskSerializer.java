@@ -0,0 +1,122 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.io.IOException;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.StreamSerializer;
+
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+
+/**
+ * A Hazelcast StreamSerializer for {@link SummaStepTask} objects
+ */
+final class SummaStepTaskSerializer implements StreamSerializer<SummaStepTask>
+{
+    @Override
+    public int getTypeId()
+    {
+        return 45678;
+    }
+
+    @Override
+    public void write(ObjectDataOutput out, SummaStepTask task)
+        throws IOException
+    {
+        out.writeUTF(task.getJobId());
+        out.writeInt(task.getOuterProductIndex());
+        writeBlocks(out, task.getRowBlockIndices(), task.getRowBlocks());
+        writeBlocks(out, task.getColumnBlockIndices(), task.getColumnBlocks());
+        MatrixMultiplicatorFactoryCodecs.write(
+            out, task.getMatrixMultiplicatorFactory());
+    }
+    
+    /**
+     * Writes the given block indices and blocks to the given output
+     * 
+     * @param out The output
+     * @param indices The block indices
+     * @param blocks The blocks
+     * @throws IOException If an IO error occurs
+     */
+    static void writeBlocks(ObjectDataOutput out, 
+        int indices[], FloatMatrix2D blocks[]) throws IOException
+    {
+        out.writeIntArray(indices);
+        for (FloatMatrix2D block : blocks)
+        {
+            FloatMatrix2DSerializer.writeImpl(out, block);
+        }
+    }
+
+    @Override
+    public SummaStepTask read(ObjectDataInput in) throws IOException
+    {
+        String jobId = in.readUTF();
+        int outerProductIndex = in.readInt();
+        int rowBlockIndices[] = in.readIntArray();
+        FloatMatrix2D rowBlocks[] = readBlocks(in, rowBlockIndices.length);
+        int columnBlockIndices[] = in.readIntArray();
+        FloatMatrix2D columnBlocks[] = 
+            readBlocks(in, columnBlockIndices.length);
+        Factory<MatrixMultiplicator> matrixMultiplicatorFactory = 
+            MatrixMultiplicatorFactoryCodecs.read(in);
+        return new SummaStepTask(jobId, outerProductIndex, 
+            rowBlockIndices, rowBlocks, columnBlockIndices, columnBlocks, 
+            matrixMultiplicatorFactory);
+    }
+    
+    /**
+     * Reads the given number of blocks from the given input
+     * 
+     * @param in The input
+     * @param n The number of blocks
+     * @return The blocks
+     * @throws IOException If an IO error occurs
+     */
+    static FloatMatrix2D[] readBlocks(ObjectDataInput in, int n) 
+        throws IOException
+    {
+        FloatMatrix2D blocks[] = new FloatMatrix2D[n];
+        for (int i = 0; i < n; i++)
+        {
+            blocks[i] = FloatMatrix2DSerializer.readImpl(in);
+        }
+        return blocks;
+    }
+
+    @Override
+    public void destroy()
+    {
+        // Not used
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * www.javagl.de - Hazelcast Matrix Multiplication
+ *
+ * Copyright (c) 2013 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.util.Arrays;
+
+/**
+ * A class that records the latencies of the most recently completed 
+ * tasks, and allows computing their median
+ */
+final class TaskLatencies
+{
+    /**
+     * The recorded latencies, in nanoseconds, used as a ring buffer
+     */
+    private final long samples[];
+    
+    /**
+     * The number of valid samples
+     */
+    private int numSamples;
+    
+    /**
+     * The index where the next sample will be stored
+     */
+    private int index;
+    
+    /**
+     * Creates a new instance that keeps the given number of samples
+     * 
+     * @param capacity The number of samples
+     */
+    TaskLatencies(int capacity)
+    {
+        this.samples = new long[capacity];
+    }
+    
+    /**
+     * Record the given latency
+     * 
+     * @param nanos The latency, in nanoseconds
+     */
+    synchronized void record(long nanos)
+    {
+        samples[index] = nanos;
+        index = (index + 1) % samples.length;
+        numSamples = Math.min(numSamples + 1, samples.length);
+    }
+    
+    /**
+     * Returns the median of the recorded latencies, in nanoseconds, or
+     * -1 if fewer than the given number of latencies have been recorded
+     * 
+     * @param minSamples The minimum number of samples
+     * @return The median
+     */
+    synchronized long computeMedian(int minSamples)
+    {
+        if (numSamples == 0 || numSamples < minSamples)
+        {
+            return -1;
+        }
+        long sorted[] = Arrays.copyOf(samples, numSamples);
+        Arrays.sort(sorted);
+        return sorted[numSamples / 2];
+    }
+}
@@ -0,0 +1,112 @@
+package de.javagl.hazelcast.matmul;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class ExecutorExtensionsTest extends TestCase
+{
+    public void testBoundedPoolBlocksSubmitter() throws Exception
+    {
+        final ExecutorService executor = 
+            ExecutorExtensions.newBoundedFixedThreadPool(
+                1, 2, Executors.defaultThreadFactory());
+        final CountDownLatch gate = new CountDownLatch(1);
+        final AtomicInteger executed = new AtomicInteger();
+        Runnable blocked = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    gate.await();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                executed.incrementAndGet();
+            }
+        };
+        
+        // One task is running, and two are waiting in the queue. 
+        // Submitting the fourth one has to wait for the gate
+        for (int i = 0; i < 3; i++)
+        {
+            executor.submit(blocked);
+        }
+        final CountDownLatch submitted = new CountDownLatch(1);
+        Thread submitter = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                executor.submit(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        executed.incrementAndGet();
+                    }
+                });
+                submitted.countDown();
+            }
+        });
+        submitter.start();
+        assertFalse(submitted.await(200, TimeUnit.MILLISECONDS));
+        
+        gate.countDown();
+        assertTrue(submitted.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(4, executed.get());
+    }
+    
+    public void testBoundedPoolRunsNestedTasksInline() throws Exception
+    {
+        final ExecutorService executor = 
+            ExecutorExtensions.newBoundedFixedThreadPool(
+                1, 1, Executors.defaultThreadFactory());
+        
+        // The only pool thread submits more tasks than the queue can
+        // hold. The first one is queued, and the others are executed 
+        // directly, instead of waiting for the pool thread itself
+        Future<Integer> future = executor.submit(new Callable<Integer>()
+        {
+            @Override
+            public Integer call() throws Exception
+            {
+                Future<?> futures[] = new Future<?>[5];
+                for (int i = 0; i < futures.length; i++)
+                {
+                    futures[i] = executor.submit(new Callable<Integer>()
+                    {
+                        @Override
+                        public Integer call()
+                        {
+                            return 1;
+                        }
+                    });
+                }
+                int done = 0;
+                for (int i = 0; i < futures.length; i++)
+                {
+                    if (futures[i].isDone())
+                    {
+                        done++;
+                    }
+                }
+                return done;
+            }
+        });
+        assertEquals(4, (int)future.get(10, TimeUnit.SECONDS));
+        executor.shutdownNow();
+    }
+}
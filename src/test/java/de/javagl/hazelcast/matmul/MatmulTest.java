@@ -1,6 +1,13 @@
 package de.javagl.hazelcast.matmul;
 
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.TestCase;
 
@@ -86,4 +93,311 @@ public class MatmulTest extends TestCase
         
         assertTrue(Matrices.equal(result0, result1, 1e-5f));
     }
+    
+    public void testParallelAsync() throws Exception
+    {
+        MutableFloatMatrix2D m0 = Matrices.createFloatMatrix2D(20, 30);
+        Matrices.fillContiguous(m0);
+        MutableFloatMatrix2D m1 = Matrices.createFloatMatrix2D(30, 40);
+        Matrices.fillContiguous(m1);
+        MutableFloatMatrix2D result0 = 
+            Matrices.createFloatMatrix2D(m0.getNumRows(), m1.getNumColumns());
+        MutableFloatMatrix2D result1 = 
+            Matrices.createFloatMatrix2D(m0.getNumRows(), m1.getNumColumns());
+        MutableFloatMatrix2D result2 = 
+            Matrices.createFloatMatrix2D(m0.getNumRows(), m1.getNumColumns());
+
+        MatrixMultiplicator multiplicator0 = 
+            MatrixMultiplicators.createSimple();
+        multiplicator0.multiply(result0, m0, m1);
+
+        AsyncMatrixMultiplicator multiplicator1 = 
+            MatrixMultiplicators.createParallelDefault(10);
+        CompletableFuture<MutableFloatMatrix2D> future1 = 
+            multiplicator1.multiplyAsync(result1, m0, m1);
+        CompletableFuture<MutableFloatMatrix2D> future2 = 
+            multiplicator1.multiplyAsync(result2, m0, m1, 1, TimeUnit.MINUTES);
+        
+        assertTrue(Matrices.equal(result0, future1.get(), 1e-5f));
+        assertTrue(Matrices.equal(result0, future2.get(), 1e-5f));
+    }
+    
+    public void testParallelAsyncTimeout() throws Exception
+    {
+        MutableFloatMatrix2D m0 = Matrices.createFloatMatrix2D(20, 30);
+        MutableFloatMatrix2D m1 = Matrices.createFloatMatrix2D(30, 40);
+        MutableFloatMatrix2D result = 
+            Matrices.createFloatMatrix2D(m0.getNumRows(), m1.getNumColumns());
+        
+        Factory<MatrixMultiplicator> slowMultiplicatorFactory = 
+            new Factory<MatrixMultiplicator>()
+        {
+            @Override
+            public MatrixMultiplicator create()
+            {
+                return new MatrixMultiplicator()
+                {
+                    @Override
+                    public void multiply(MutableFloatMatrix2D result,
+                        FloatMatrix2D m0, FloatMatrix2D m1)
+                    {
+                        try
+                        {
+                            Thread.sleep(1000);
+                        }
+                        catch (InterruptedException e)
+                        {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                };
+            }
+        };
+        Factory<ExecutorService> executorServiceFactory = 
+            new Factory<ExecutorService>()
+        {
+            @Override
+            public ExecutorService create()
+            {
+                return ExecutorExtensions.newExceptionAwareFixedThreadPool(2);
+            }
+        };
+        AsyncMatrixMultiplicator multiplicator = 
+            MatrixMultiplicators.createParallel(executorServiceFactory, 
+                10, slowMultiplicatorFactory);
+        CompletableFuture<MutableFloatMatrix2D> future = 
+            multiplicator.multiplyAsync(
+                result, m0, m1, 50, TimeUnit.MILLISECONDS);
+        try
+        {
+            future.get();
+            fail("Expected a timeout");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+    }
+    
+    public void testParallelAsyncCallbackException() throws Exception
+    {
+        MutableFloatMatrix2D m0 = Matrices.createFloatMatrix2D(20, 30);
+        MutableFloatMatrix2D m1 = Matrices.createFloatMatrix2D(30, 40);
+        MutableFloatMatrix2D result = 
+            Matrices.createFloatMatrix2D(m0.getNumRows(), m1.getNumColumns());
+        
+        // An executor that returns results with blocks that do not
+        // match the blocks of the result matrix
+        Factory<AsyncExecutor> asyncExecutorFactory = 
+            new Factory<AsyncExecutor>()
+        {
+            @Override
+            public AsyncExecutor create()
+            {
+                return new AsyncExecutor()
+                {
+                    @Override
+                    public <T> CompletableFuture<T> submit(
+                        Callable<T> callable)
+                    {
+                        MatMulResult invalidResult = new MatMulResult(
+                            new Point(0, 0), 
+                            Matrices.createFloatMatrix2D(1, 1));
+                        @SuppressWarnings("unchecked")
+                        T t = (T)invalidResult;
+                        return CompletableFuture.completedFuture(t);
+                    }
+
+                    @Override
+                    public void shutdown()
+                    {
+                        // Nothing to do here
+                    }
+                };
+            }
+        };
+        AsyncMatrixMultiplicator multiplicator = 
+            MatrixMultiplicators.createAsync(asyncExecutorFactory, 
+                10, 1, MatrixMultiplicators.createSimpleFactory());
+        CompletableFuture<MutableFloatMatrix2D> future = 
+            multiplicator.multiplyAsync(result, m0, m1);
+        try
+        {
+            future.get(10, TimeUnit.SECONDS);
+            fail("Expected the job to fail");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof RuntimeException);
+        }
+    }
+    
+    public void testParallelReductionSplit() throws Exception
+    {
+        MutableFloatMatrix2D m0 = Matrices.createFloatMatrix2D(10, 200);
+        Matrices.fillRandom(m0);
+        MutableFloatMatrix2D m1 = Matrices.createFloatMatrix2D(200, 10);
+        Matrices.fillRandom(m1);
+        MutableFloatMatrix2D result0 = 
+            Matrices.createFloatMatrix2D(m0.getNumRows(), m1.getNumColumns());
+        MutableFloatMatrix2D result1 = 
+            Matrices.createFloatMatrix2D(m0.getNumRows(), m1.getNumColumns());
+
+        MatrixMultiplicator multiplicator0 = 
+            MatrixMultiplicators.createSimple();
+        multiplicator0.multiply(result0, m0, m1);
+
+        Factory<AsyncExecutor> asyncExecutorFactory = 
+            new Factory<AsyncExecutor>()
+        {
+            @Override
+            public AsyncExecutor create()
+            {
+                return ExecutorExtensions.asAsyncExecutor(
+                    ExecutorExtensions.newExceptionAwareFixedThreadPool(4));
+            }
+        };
+        AsyncMatrixMultiplicator multiplicator1 = 
+            MatrixMultiplicators.createAsync(asyncExecutorFactory, 
+                10, 7, MatrixMultiplicators.createSimpleFactory());
+        multiplicator1.multiply(result1, m0, m1);
+        
+        assertTrue(Matrices.equal(result0, result1, 1e-4f));
+    }
+    
+    public void testReductionSplitLimitedBySizeOfResult()
+    {
+        // Clamped to the number of outer products
+        assertEquals(3, MatMulJob.computeNumSlices(8, 3, 10, 10, 
+            Long.MAX_VALUE));
+        assertEquals(1, MatMulJob.computeNumSlices(0, 3, 10, 10, 
+            Long.MAX_VALUE));
+        
+        // Each additional slice requires 10*10*4 bytes
+        assertEquals(3, MatMulJob.computeNumSlices(8, 20, 10, 10, 800));
+        assertEquals(3, MatMulJob.computeNumSlices(8, 20, 10, 10, 1199));
+        assertEquals(1, MatMulJob.computeNumSlices(8, 20, 10, 10, 0));
+        
+        // No overflow for large result matrices
+        assertEquals(1, MatMulJob.computeNumSlices(8, 20, 
+            100000, 100000, 1L << 30));
+    }
+    
+    public void testParallelCoarsening()
+    {
+        MutableFloatMatrix2D m0 = Matrices.createFloatMatrix2D(95, 60);
+        Matrices.fillRandom(m0);
+        MutableFloatMatrix2D m1 = Matrices.createFloatMatrix2D(60, 85);
+        Matrices.fillRandom(m1);
+        MutableFloatMatrix2D result0 = 
+            Matrices.createFloatMatrix2D(m0.getNumRows(), m1.getNumColumns());
+        MutableFloatMatrix2D result1 = 
+            Matrices.createFloatMatrix2D(m0.getNumRows(), m1.getNumColumns());
+
+        MatrixMultiplicator multiplicator0 = 
+            MatrixMultiplicators.createSimple();
+        multiplicator0.multiply(result0, m0, m1);
+
+        Factory<AsyncExecutor> asyncExecutorFactory = 
+            new Factory<AsyncExecutor>()
+        {
+            @Override
+            public AsyncExecutor create()
+            {
+                return ExecutorExtensions.asAsyncExecutor(
+                    ExecutorExtensions.newExceptionAwareFixedThreadPool(4));
+            }
+        };
+        AsyncMatrixMultiplicator multiplicator1 = 
+            MatrixMultiplicators.createAsync(asyncExecutorFactory, 
+                10, 1, 16, MatrixMultiplicators.createSimpleFactory());
+        multiplicator1.multiply(result1, m0, m1);
+        
+        assertTrue(Matrices.equal(result0, result1, 1e-4f));
+    }
+    
+    public void testParallelCheckpoint() throws Exception
+    {
+        MutableFloatMatrix2D m0 = Matrices.createFloatMatrix2D(20, 30);
+        Matrices.fillContiguous(m0);
+        MutableFloatMatrix2D m1 = Matrices.createFloatMatrix2D(30, 40);
+        Matrices.fillContiguous(m1);
+        MutableFloatMatrix2D result0 = 
+            Matrices.createFloatMatrix2D(m0.getNumRows(), m1.getNumColumns());
+        MutableFloatMatrix2D result1 = 
+            Matrices.createFloatMatrix2D(m0.getNumRows(), m1.getNumColumns());
+
+        MatrixMultiplicator multiplicator0 = 
+            MatrixMultiplicators.createSimple();
+        multiplicator0.multiply(result0, m0, m1);
+        
+        // An executor that executes the tasks directly, and fails 
+        // after the given number of tasks, for the first job
+        final AtomicInteger numTasks = new AtomicInteger();
+        final AtomicInteger maxTasks = new AtomicInteger(12);
+        Factory<AsyncExecutor> asyncExecutorFactory = 
+            new Factory<AsyncExecutor>()
+        {
+            @Override
+            public AsyncExecutor create()
+            {
+                return new AsyncExecutor()
+                {
+                    @Override
+                    public <T> CompletableFuture<T> submit(
+                        Callable<T> callable)
+                    {
+                        CompletableFuture<T> future = 
+                            new CompletableFuture<T>();
+                        if (numTasks.incrementAndGet() > maxTasks.get())
+                        {
+                            future.completeExceptionally(
+                                new IllegalStateException("Terminated"));
+                            return future;
+                        }
+                        try
+                        {
+                            future.complete(callable.call());
+                        }
+                        catch (Exception e)
+                        {
+                            future.completeExceptionally(e);
+                        }
+                        return future;
+                    }
+
+                    @Override
+                    public void shutdown()
+                    {
+                        // Nothing to do here
+                    }
+                };
+            }
+        };
+        File checkpointFile = File.createTempFile("matmul", ".checkpoint");
+        checkpointFile.deleteOnExit();
+        AsyncMatrixMultiplicator multiplicator1 = 
+            MatrixMultiplicators.createAsync(asyncExecutorFactory, 
+                10, 1, 1, checkpointFile, 0, 
+                MatrixMultiplicators.createSimpleFactory());
+        try
+        {
+            multiplicator1.multiplyAsync(result1, m0, m1).get();
+            fail("Expected the first job to fail");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertTrue(checkpointFile.exists());
+        
+        // The first outer product (with 2*4 tasks) was saved, so the 
+        // second job only has to compute the remaining two
+        numTasks.set(0);
+        maxTasks.set(Integer.MAX_VALUE);
+        multiplicator1.multiplyAsync(result1, m0, m1).get();
+        assertEquals(16, numTasks.get());
+        assertTrue(Matrices.equal(result0, result1, 1e-5f));
+        assertFalse(checkpointFile.exists());
+    }
 }
@@ -126,6 +126,28 @@ public class MatricesTest extends TestCase
         
         assertTrue(Matrices.equal(mSub0, m1, 1e-5f));
     }
+    
+    public void testCreateMatrixWithInvalidSize()
+    {
+        try
+        {
+            Matrices.createFloatMatrix2D(-1, 4);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // Expected
+        }
+        try
+        {
+            Matrices.createFloatMatrix2D(50000, 50000);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // Expected
+        }
+    }
 	
     
 	
@@ -0,0 +1,84 @@
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+import de.javagl.hazelcast.matmul.Matrices;
+
+import junit.framework.TestCase;
+
+public class BlockCacheTest extends TestCase
+{
+    private static BlockKey key(int index)
+    {
+        return new BlockKey("A", index, 0);
+    }
+    
+    // A block with 10 x 10 floats, which are 400 bytes
+    private static FloatMatrix2D block()
+    {
+        return Matrices.createFloatMatrix2D(10, 10);
+    }
+    
+    public void testLeastRecentlyUsedIsEvicted()
+    {
+        BlockCache blockCache = new BlockCache(1200);
+        blockCache.put(key(0), block());
+        blockCache.put(key(1), block());
+        blockCache.put(key(2), block());
+        assertEquals(1200, blockCache.getSizeInBytes());
+        
+        // Accessing block 0 makes block 1 the least recently used one
+        assertNotNull(blockCache.get(key(0)));
+        blockCache.put(key(3), block());
+        
+        assertEquals(1200, blockCache.getSizeInBytes());
+        assertEquals(400, blockCache.getEvictedBytes());
+        assertNull(blockCache.get(key(1)));
+        assertNotNull(blockCache.get(key(0)));
+        assertNotNull(blockCache.get(key(2)));
+        assertNotNull(blockCache.get(key(3)));
+    }
+    
+    public void testEvictionBySize()
+    {
+        BlockCache blockCache = new BlockCache(1000);
+        blockCache.put(key(0), block());
+        blockCache.put(key(1), block());
+        
+        // A block of 800 bytes requires evicting both other blocks
+        blockCache.put(key(2), Matrices.createFloatMatrix2D(20, 10));
+        assertEquals(800, blockCache.getSizeInBytes());
+        assertEquals(800, blockCache.getEvictedBytes());
+        assertNull(blockCache.get(key(0)));
+        assertNull(blockCache.get(key(1)));
+        assertNotNull(blockCache.get(key(2)));
+    }
+    
+    public void testReplaceAndOversizedBlock()
+    {
+        BlockCache blockCache = new BlockCache(1000);
+        blockCache.put(key(0), block());
+        blockCache.put(key(0), block());
+        assertEquals(400, blockCache.getSizeInBytes());
+        assertEquals(0, blockCache.getEvictedBytes());
+        
+        // A block that is larger than the cache is not stored at all
+        blockCache.put(key(1), Matrices.createFloatMatrix2D(30, 10));
+        assertEquals(400, blockCache.getSizeInBytes());
+        assertNull(blockCache.get(key(1)));
+        assertNotNull(blockCache.get(key(0)));
+    }
+    
+    public void testHitRate()
+    {
+        BlockCache blockCache = new BlockCache(1000);
+        assertEquals(0.0, blockCache.getHitRate(), 0.0);
+        blockCache.put(key(0), block());
+        blockCache.get(key(0));
+        blockCache.get(key(0));
+        blockCache.get(key(0));
+        blockCache.get(key(1));
+        assertEquals(3, blockCache.getHitCount());
+        assertEquals(1, blockCache.getMissCount());
+        assertEquals(0.75, blockCache.getHitRate(), 1e-9);
+    }
+}
@@ -0,0 +1,160 @@
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+import de.javagl.hazelcast.matmul.MatMulResult;
+import de.javagl.hazelcast.matmul.MatMulTask;
+import de.javagl.hazelcast.matmul.Matrices;
+import de.javagl.hazelcast.matmul.MatrixMultiplicators;
+import de.javagl.hazelcast.matmul.MutableFloatMatrix2D;
+
+import junit.framework.TestCase;
+
+public class BlockStripsTest extends TestCase
+{
+    private final List<HazelcastInstance> members =
+        new ArrayList<HazelcastInstance>();
+
+    private HazelcastInstance createMember()
+    {
+        Config config = new Config();
+        config.setClusterName(getClass().getSimpleName());
+        config.setProperty("hazelcast.logging.type", "none");
+        config.getNetworkConfig().getJoin().getMulticastConfig()
+            .setEnabled(false);
+        config.getNetworkConfig().getJoin().getTcpIpConfig()
+            .setEnabled(true).addMember("127.0.0.1");
+        MatMulUtils.initSerializers(config.getSerializationConfig());
+        HazelcastInstance member = Hazelcast.newHazelcastInstance(config);
+        members.add(member);
+        return member;
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        for (HazelcastInstance member : members)
+        {
+            member.getLifecycleService().terminate();
+        }
+        members.clear();
+    }
+
+    private static MutableFloatMatrix2D createRandom(int rows, int columns)
+    {
+        MutableFloatMatrix2D matrix =
+            Matrices.createFloatMatrix2D(rows, columns);
+        Matrices.fillRandom(matrix);
+        return matrix;
+    }
+
+    public void testUploadReadAndDownload() throws Exception
+    {
+        HazelcastInstance member = createMember();
+        createMember();
+        BlockStrips blockStrips = new BlockStrips(member, "strips");
+        IMap<BlockKey, FloatMatrix2D> map = member.getMap("strips");
+
+        MutableFloatMatrix2D matrix = createRandom(37, 53);
+        StripReference reference =
+            BlockStrips.createReference(matrix, 37 * 4 * 10);
+        assertEquals(10, reference.getColumnsPerStrip());
+        assertEquals(6, reference.getNumStrips());
+
+        blockStrips.upload(reference, matrix).get(30, TimeUnit.SECONDS);
+        assertEquals(6, map.size());
+        for (FloatMatrix2D strip : map.values())
+        {
+            assertEquals(37, strip.getNumRows());
+            assertTrue(strip.getNumColumns() <= 10);
+        }
+
+        FloatMatrix2D read = blockStrips.read(reference);
+        assertTrue(Matrices.equal(matrix, read, 0.0f));
+        assertEquals(6, map.size());
+
+        FloatMatrix2D downloaded =
+            blockStrips.download(reference).get(30, TimeUnit.SECONDS);
+        assertTrue(Matrices.equal(matrix, downloaded, 0.0f));
+        assertEquals(0, map.size());
+    }
+
+    public void testUploadSubMatrix() throws Exception
+    {
+        HazelcastInstance member = createMember();
+        BlockStrips blockStrips = new BlockStrips(member, "strips");
+
+        MutableFloatMatrix2D matrix = createRandom(50, 60);
+        FloatMatrix2D subMatrix = matrix.subMatrix(5, 7, 45, 52);
+        StripReference reference =
+            BlockStrips.createReference(subMatrix, 40 * 4 * 8);
+        blockStrips.upload(reference, subMatrix).get(30, TimeUnit.SECONDS);
+
+        FloatMatrix2D read = blockStrips.read(reference);
+        assertTrue(Matrices.equal(subMatrix, read, 0.0f));
+
+        blockStrips.remove(reference).get(30, TimeUnit.SECONDS);
+        assertEquals(0, member.getMap("strips").size());
+    }
+
+    public void testMissingStrip() throws Exception
+    {
+        HazelcastInstance member = createMember();
+        BlockStrips blockStrips = new BlockStrips(member, "strips");
+
+        MutableFloatMatrix2D matrix = createRandom(10, 10);
+        StripReference reference =
+            BlockStrips.createReference(matrix, 10 * 4 * 3);
+        try
+        {
+            blockStrips.read(reference);
+            fail("Expected an IllegalStateException");
+        }
+        catch (IllegalStateException e)
+        {
+            // Expected
+        }
+    }
+
+    public void testTaskSentInStrips() throws Exception
+    {
+        HazelcastInstance member = createMember();
+        createMember();
+        HazelcastAsyncExecutor executor = new HazelcastAsyncExecutor(
+            member, member.getExecutorService("strips"), 0,
+            HazelcastAsyncExecutor.DEFAULT_MAX_RETRIES, 0.0,
+            BlockEncoding.NONE, 2000);
+
+        MutableFloatMatrix2D A = createRandom(40, 30);
+        MutableFloatMatrix2D B = createRandom(30, 50);
+        MatMulTask task = new MatMulTask("job", 1, 2, 3, A, B,
+            MatrixMultiplicators.createSimpleFactory());
+        MatMulResult result =
+            executor.submit(task).get(30, TimeUnit.SECONDS);
+
+        MutableFloatMatrix2D expected = Matrices.createFloatMatrix2D(40, 50);
+        MatrixMultiplicators.createSimple().multiply(expected, A, B);
+        assertTrue(Matrices.equal(expected, result.getMatrix(), 1e-4f));
+        assertEquals("job", result.getJobId());
+        assertEquals(1, result.getSlice());
+        assertEquals(2, result.getPoint().r);
+        assertEquals(3, result.getPoint().c);
+
+        // The strips of the blocks are removed asynchronously
+        IMap<?, ?> map = member.getMap(BlockStrips.DEFAULT_MAP_NAME);
+        long deadline = System.currentTimeMillis() + 30000;
+        while (map.size() > 0)
+        {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
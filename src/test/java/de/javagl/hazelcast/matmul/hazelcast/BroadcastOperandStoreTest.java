@@ -0,0 +1,274 @@
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import com.hazelcast.replicatedmap.ReplicatedMap;
+
+import de.javagl.hazelcast.matmul.AsyncExecutor;
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+import de.javagl.hazelcast.matmul.Matrices;
+import de.javagl.hazelcast.matmul.MatrixMultiplicators;
+import de.javagl.hazelcast.matmul.MutableFloatMatrix2D;
+
+import junit.framework.TestCase;
+
+public class BroadcastOperandStoreTest extends TestCase
+{
+    private final List<HazelcastInstance> members =
+        new ArrayList<HazelcastInstance>();
+
+    private HazelcastInstance createMember()
+    {
+        Config config = new Config();
+        config.setClusterName(getClass().getSimpleName());
+        config.setProperty("hazelcast.logging.type", "none");
+        config.getNetworkConfig().getJoin().getMulticastConfig()
+            .setEnabled(false);
+        config.getNetworkConfig().getJoin().getTcpIpConfig()
+            .setEnabled(true).addMember("127.0.0.1");
+        MatMulUtils.initSerializers(config.getSerializationConfig());
+        HazelcastInstance member = Hazelcast.newHazelcastInstance(config);
+        members.add(member);
+        return member;
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        for (HazelcastInstance member : members)
+        {
+            member.getLifecycleService().terminate();
+        }
+        members.clear();
+    }
+
+    private static MutableFloatMatrix2D createRandom(int rows, int columns)
+    {
+        MutableFloatMatrix2D matrix =
+            Matrices.createFloatMatrix2D(rows, columns);
+        Matrices.fillRandom(matrix);
+        return matrix;
+    }
+
+    private static MutableFloatMatrix2D multiplySimple(
+        FloatMatrix2D A, FloatMatrix2D B)
+    {
+        MutableFloatMatrix2D C =
+            Matrices.createFloatMatrix2D(A.getNumRows(), B.getNumColumns());
+        MatrixMultiplicators.createSimple().multiply(C, A, B);
+        return C;
+    }
+
+    private static void assertStored(ReplicatedMap<BlockKey, FloatMatrix2D>
+        blocks, String versionId, FloatMatrix2D m, int blockSize)
+    {
+        int numRowBlocks = MatMulUtils.divCeil(m.getNumRows(), blockSize);
+        int numColumnBlocks =
+            MatMulUtils.divCeil(m.getNumColumns(), blockSize);
+        for (int r = 0; r < numRowBlocks; r++)
+        {
+            for (int c = 0; c < numColumnBlocks; c++)
+            {
+                FloatMatrix2D expected = MatMulUtils.createBlockSubMatrix(
+                    m, blockSize, r, c, r + 1, c + 1);
+                FloatMatrix2D actual =
+                    blocks.get(new BlockKey(versionId, r, c));
+                assertNotNull(actual);
+                assertTrue(Matrices.equal(expected, actual, 0.0f));
+            }
+        }
+    }
+
+    public void testVersionIsSharedByStores() throws Exception
+    {
+        HazelcastInstance member0 = createMember();
+        HazelcastInstance member1 = createMember();
+        BroadcastOperandStore store0 =
+            new BroadcastOperandStore(member0, "broadcast", 4);
+        BroadcastOperandStore store1 =
+            new BroadcastOperandStore(member1, "broadcast", 4);
+
+        MutableFloatMatrix2D m = createRandom(25, 35);
+        String versionId0 = store0.acquire(m, 10);
+        String versionId1 = store1.acquire(m, 10);
+        assertEquals(versionId0, versionId1);
+        assertEquals(
+            BroadcastOperandStore.computeVersionId(m, 10), versionId0);
+        assertEquals(12, member0.getReplicatedMap("broadcast").size());
+        assertEquals(Integer.valueOf(2),
+            member0.getMap("broadcast.leases").get(versionId0));
+
+        store0.release(versionId0);
+        store1.release(versionId1);
+        assertEquals(Integer.valueOf(0),
+            member0.getMap("broadcast.leases").get(versionId0));
+    }
+
+    public void testHashCollisionIsDetected() throws Exception
+    {
+        HazelcastInstance member = createMember();
+        ReplicatedMap<BlockKey, FloatMatrix2D> blocks =
+            member.getReplicatedMap("broadcast");
+        BroadcastOperandStore store0 =
+            new BroadcastOperandStore(member, "broadcast", 4);
+        BroadcastOperandStore store1 =
+            new BroadcastOperandStore(member, "broadcast", 4);
+
+        // Simulate a collision: Another operand is stored and used
+        // under the version ID that is computed for the given operand
+        MutableFloatMatrix2D other = createRandom(20, 20);
+        MutableFloatMatrix2D m = createRandom(20, 20);
+        String otherVersionId = store0.acquire(other, 10);
+        String versionId = BroadcastOperandStore.computeVersionId(m, 10);
+        for (int r = 0; r < 2; r++)
+        {
+            for (int c = 0; c < 2; c++)
+            {
+                blocks.put(new BlockKey(versionId, r, c), blocks.get(
+                    new BlockKey(otherVersionId, r, c)));
+            }
+        }
+        member.getMap("broadcast.leases").put(versionId, 1);
+
+        String acquiredVersionId = store1.acquire(m, 10);
+        assertFalse(versionId.equals(acquiredVersionId));
+        assertStored(blocks, acquiredVersionId, m, 10);
+        assertStored(blocks, versionId, other, 10);
+    }
+
+    public void testUnusedVersionsAreRemoved() throws Exception
+    {
+        HazelcastInstance member = createMember();
+        ReplicatedMap<BlockKey, FloatMatrix2D> blocks =
+            member.getReplicatedMap("broadcast");
+        BroadcastOperandStore store =
+            new BroadcastOperandStore(member, "broadcast", 1);
+
+        MutableFloatMatrix2D m0 = createRandom(20, 20);
+        MutableFloatMatrix2D m1 = createRandom(20, 20);
+        String versionId0 = store.acquire(m0, 10);
+        store.release(versionId0);
+        String versionId1 = store.acquire(m1, 10);
+        assertEquals(4, blocks.size());
+        assertStored(blocks, versionId1, m1, 10);
+        assertNull(blocks.get(new BlockKey(versionId0, 0, 0)));
+    }
+
+    public void testVersionUsedByOtherStoreIsNotRemoved() throws Exception
+    {
+        HazelcastInstance member0 = createMember();
+        HazelcastInstance member1 = createMember();
+        ReplicatedMap<BlockKey, FloatMatrix2D> blocks =
+            member0.getReplicatedMap("broadcast");
+        BroadcastOperandStore store0 =
+            new BroadcastOperandStore(member0, "broadcast", 1);
+        BroadcastOperandStore store1 =
+            new BroadcastOperandStore(member1, "broadcast", 1);
+
+        MutableFloatMatrix2D m0 = createRandom(20, 20);
+        MutableFloatMatrix2D m1 = createRandom(20, 20);
+        String versionId0 = store0.acquire(m0, 10);
+        String sharedVersionId0 = store1.acquire(m0, 10);
+        store0.release(versionId0);
+
+        // The first store exceeds its maximum number of versions, but
+        // the first version is still used by the second store
+        String versionId1 = store0.acquire(m1, 10);
+        store0.release(versionId1);
+        assertStored(blocks, versionId0, m0, 10);
+
+        store1.release(sharedVersionId0);
+        String versionId2 = store0.acquire(m1, 10);
+        assertEquals(versionId1, versionId2);
+        assertNull(blocks.get(new BlockKey(versionId0, 0, 0)));
+    }
+
+    public void testGetBlockWaitsForBlock() throws Exception
+    {
+        HazelcastInstance member = createMember();
+        final ReplicatedMap<BlockKey, FloatMatrix2D> blocks =
+            member.getReplicatedMap("broadcast");
+        final BlockKey key = new BlockKey("version", 0, 0);
+        final MutableFloatMatrix2D block = createRandom(10, 10);
+        Thread thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep(200);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                blocks.put(key, block);
+            }
+        });
+        thread.start();
+        FloatMatrix2D result =
+            BroadcastOperandTask.getBlock(blocks, key, 30000);
+        thread.join();
+        assertTrue(Matrices.equal(block, result, 0.0f));
+    }
+
+    public void testGetBlockTimesOut() throws Exception
+    {
+        HazelcastInstance member = createMember();
+        ReplicatedMap<BlockKey, FloatMatrix2D> blocks =
+            member.getReplicatedMap("broadcast");
+        try
+        {
+            BroadcastOperandTask.getBlock(
+                blocks, new BlockKey("version", 0, 0), 100);
+            fail("Expected an IllegalStateException");
+        }
+        catch (IllegalStateException e)
+        {
+            // Expected
+        }
+    }
+
+    public void testMultiply() throws Exception
+    {
+        final HazelcastInstance member = createMember();
+        createMember();
+        Factory<AsyncExecutor> asyncExecutorFactory =
+            new Factory<AsyncExecutor>()
+        {
+            @Override
+            public AsyncExecutor create()
+            {
+                return new HazelcastAsyncExecutor(member,
+                    member.getExecutorService("broadcast"), 0);
+            }
+        };
+        BroadcastOperandMatrixMultiplicator multiplicator =
+            new BroadcastOperandMatrixMultiplicator(member,
+                asyncExecutorFactory, 20, 2,
+                MatrixMultiplicators.createSimpleFactory());
+
+        MutableFloatMatrix2D A = createRandom(70, 50);
+        MutableFloatMatrix2D B = createRandom(50, 60);
+        MutableFloatMatrix2D C0 = Matrices.createFloatMatrix2D(70, 60);
+        MutableFloatMatrix2D C1 = Matrices.createFloatMatrix2D(70, 60);
+        multiplicator.multiplyAsync(C0, A, B).get(60, TimeUnit.SECONDS);
+        multiplicator.multiplyAsync(C1, A, B).get(60, TimeUnit.SECONDS);
+
+        MutableFloatMatrix2D expected = multiplySimple(A, B);
+        assertTrue(Matrices.equal(expected, C0, 1e-3f));
+        assertTrue(Matrices.equal(expected, C1, 1e-3f));
+        IMap<String, Integer> leases = member.getMap(
+            MatMulUtils.BROADCAST_OPERANDS_MAP_NAME + ".leases");
+        assertEquals(1, leases.size());
+        assertEquals(Integer.valueOf(0), leases.values().iterator().next());
+    }
+}
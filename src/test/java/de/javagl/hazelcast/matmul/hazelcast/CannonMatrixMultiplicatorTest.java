@@ -0,0 +1,180 @@
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+import de.javagl.hazelcast.matmul.Matrices;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+import de.javagl.hazelcast.matmul.MatrixMultiplicators;
+import de.javagl.hazelcast.matmul.MutableFloatMatrix2D;
+
+import junit.framework.TestCase;
+
+public class CannonMatrixMultiplicatorTest extends TestCase
+{
+    private static final AtomicInteger products = new AtomicInteger();
+
+    private static volatile int productsBeforeGate;
+
+    private static volatile CountDownLatch gate;
+
+    private static class GatedFactory
+        implements Factory<MatrixMultiplicator>, Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public MatrixMultiplicator create()
+        {
+            final MatrixMultiplicator delegate = 
+                MatrixMultiplicators.createSimple();
+            return new MatrixMultiplicator()
+            {
+                @Override
+                public void multiply(
+                    MutableFloatMatrix2D C, FloatMatrix2D A, FloatMatrix2D B)
+                {
+                    if (products.incrementAndGet() > productsBeforeGate)
+                    {
+                        try
+                        {
+                            gate.await();
+                        }
+                        catch (InterruptedException e)
+                        {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    delegate.multiply(C, A, B);
+                }
+            };
+        }
+    }
+
+    private final List<HazelcastInstance> members =
+        new ArrayList<HazelcastInstance>();
+
+    private HazelcastInstance createMember()
+    {
+        Config config = new Config();
+        config.setClusterName(getClass().getSimpleName());
+        config.setProperty("hazelcast.logging.type", "none");
+        config.getNetworkConfig().getJoin().getMulticastConfig()
+            .setEnabled(false);
+        config.getNetworkConfig().getJoin().getTcpIpConfig()
+            .setEnabled(true).addMember("127.0.0.1");
+        MatMulUtils.initSerializers(config.getSerializationConfig());
+        HazelcastInstance member = Hazelcast.newHazelcastInstance(config);
+        members.add(member);
+        return member;
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        products.set(0);
+        productsBeforeGate = Integer.MAX_VALUE;
+        gate = new CountDownLatch(0);
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        gate.countDown();
+        for (HazelcastInstance member : members)
+        {
+            member.getLifecycleService().terminate();
+        }
+        members.clear();
+    }
+
+    private static MutableFloatMatrix2D createRandom(int rows, int columns)
+    {
+        MutableFloatMatrix2D matrix =
+            Matrices.createFloatMatrix2D(rows, columns);
+        Matrices.fillRandom(matrix);
+        return matrix;
+    }
+
+    private static MutableFloatMatrix2D multiplySimple(
+        FloatMatrix2D A, FloatMatrix2D B)
+    {
+        MutableFloatMatrix2D C =
+            Matrices.createFloatMatrix2D(A.getNumRows(), B.getNumColumns());
+        MatrixMultiplicators.createSimple().multiply(C, A, B);
+        return C;
+    }
+
+    public void testMultiplyOnTwoByTwoGrid() throws Exception
+    {
+        HazelcastInstance member = createMember();
+        for (int i = 1; i < 4; i++)
+        {
+            createMember();
+        }
+
+        MutableFloatMatrix2D A = createRandom(57, 43);
+        MutableFloatMatrix2D B = createRandom(43, 71);
+        MutableFloatMatrix2D C = Matrices.createFloatMatrix2D(57, 71);
+        CannonMatrixMultiplicator multiplicator =
+            new CannonMatrixMultiplicator(member, "cannon",
+                MatrixMultiplicators.createSimpleFactory());
+        multiplicator.multiplyAsync(C, A, B).get(60, TimeUnit.SECONDS);
+
+        assertTrue(Matrices.equal(C, multiplySimple(A, B), 1e-3f));
+    }
+
+    public void testMemberLeavesDuringJob() throws Exception
+    {
+        HazelcastInstance member = createMember();
+        for (int i = 1; i < 4; i++)
+        {
+            createMember();
+        }
+
+        // Each of the 4 members computes its first step, and the second
+        // steps are blocked until a member has left the cluster
+        productsBeforeGate = 4;
+        gate = new CountDownLatch(1);
+
+        MutableFloatMatrix2D A = createRandom(57, 43);
+        MutableFloatMatrix2D B = createRandom(43, 71);
+        MutableFloatMatrix2D C = Matrices.createFloatMatrix2D(57, 71);
+        CannonMatrixMultiplicator multiplicator =
+            new CannonMatrixMultiplicator(member, "cannon", 
+                new GatedFactory());
+        CompletableFuture<MutableFloatMatrix2D> future =
+            multiplicator.multiplyAsync(C, A, B);
+
+        long deadline = System.currentTimeMillis() + 30000;
+        while (products.get() <= productsBeforeGate)
+        {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        members.remove(3).getLifecycleService().terminate();
+        
+        // Without a deadline, the job has to fail by itself
+        try
+        {
+            future.get(30, TimeUnit.SECONDS);
+            fail("Expected an ExecutionException");
+        }
+        catch (ExecutionException e)
+        {
+            // Expected
+        }
+    }
+}
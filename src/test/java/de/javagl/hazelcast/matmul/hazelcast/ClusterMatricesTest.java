@@ -0,0 +1,311 @@
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+
+import de.javagl.hazelcast.matmul.AsyncExecutor;
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+import de.javagl.hazelcast.matmul.Matrices;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+import de.javagl.hazelcast.matmul.MatrixMultiplicators;
+import de.javagl.hazelcast.matmul.MutableFloatMatrix2D;
+
+import junit.framework.TestCase;
+
+public class ClusterMatricesTest extends TestCase
+{
+    private static final AtomicInteger products = new AtomicInteger();
+
+    private static volatile int productsBeforeFailure;
+
+    private static class FailingFactory
+        implements Factory<MatrixMultiplicator>, Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public MatrixMultiplicator create()
+        {
+            if (products.incrementAndGet() > productsBeforeFailure)
+            {
+                throw new IllegalStateException("Product failed");
+            }
+            return MatrixMultiplicators.createSimple();
+        }
+    }
+
+    private final List<HazelcastInstance> members =
+        new ArrayList<HazelcastInstance>();
+
+    private HazelcastInstance createMember()
+    {
+        Config config = new Config();
+        config.setClusterName(getClass().getSimpleName());
+        config.setProperty("hazelcast.logging.type", "none");
+        config.getNetworkConfig().getJoin().getMulticastConfig()
+            .setEnabled(false);
+        config.getNetworkConfig().getJoin().getTcpIpConfig()
+            .setEnabled(true).addMember("127.0.0.1");
+        MatMulUtils.initSerializers(config.getSerializationConfig());
+        HazelcastInstance member = Hazelcast.newHazelcastInstance(config);
+        members.add(member);
+        return member;
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        products.set(0);
+        productsBeforeFailure = Integer.MAX_VALUE;
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        for (HazelcastInstance member : members)
+        {
+            member.getLifecycleService().terminate();
+        }
+        members.clear();
+    }
+
+    private static MutableFloatMatrix2D createRandom(int rows, int columns)
+    {
+        MutableFloatMatrix2D matrix =
+            Matrices.createFloatMatrix2D(rows, columns);
+        Matrices.fillRandom(matrix);
+        return matrix;
+    }
+
+    private static MutableFloatMatrix2D multiplySimple(
+        FloatMatrix2D A, FloatMatrix2D B)
+    {
+        MutableFloatMatrix2D C =
+            Matrices.createFloatMatrix2D(A.getNumRows(), B.getNumColumns());
+        MatrixMultiplicators.createSimple().multiply(C, A, B);
+        return C;
+    }
+
+    private static ClusterMatrices createClusterMatrices(
+        final HazelcastInstance member, final int maxInFlightTasksPerMember,
+        Factory<MatrixMultiplicator> subMatrixMultiplicatorFactory)
+    {
+        Factory<AsyncExecutor> asyncExecutorFactory =
+            new Factory<AsyncExecutor>()
+        {
+            @Override
+            public AsyncExecutor create()
+            {
+                return new HazelcastAsyncExecutor(member,
+                    member.getExecutorService("matrices"),
+                    maxInFlightTasksPerMember);
+            }
+        };
+        return new ClusterMatrices(member, asyncExecutorFactory, 10,
+            subMatrixMultiplicatorFactory);
+    }
+
+    private static int countBlocks(FloatMatrix2D m)
+    {
+        return MatMulUtils.divCeil(m.getNumRows(), 10) *
+            MatMulUtils.divCeil(m.getNumColumns(), 10);
+    }
+
+    private static void awaitSize(IMap<?, ?> map, int size) throws Exception
+    {
+        // Blocks are removed asynchronously
+        long deadline = System.currentTimeMillis() + 30000;
+        while (map.size() != size)
+        {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    public void testUploadAndDownload() throws Exception
+    {
+        HazelcastInstance member = createMember();
+        createMember();
+        ClusterMatrices clusterMatrices = createClusterMatrices(member, 0,
+            MatrixMultiplicators.createSimpleFactory());
+
+        MutableFloatMatrix2D A = createRandom(35, 27);
+        ClusterMatrixInfo info = clusterMatrices.upload("A", A);
+        assertEquals(35, info.getNumRows());
+        assertEquals(27, info.getNumColumns());
+        assertEquals(10, info.getBlockSize());
+        assertEquals(12, member.getMap(MatMulUtils.MATRICES_MAP_NAME).size());
+
+        assertTrue(Matrices.equal(A, clusterMatrices.download("A"), 0.0f));
+        assertTrue(Matrices.equal(A.subMatrix(7, 3, 31, 25),
+            clusterMatrices.download("A", 7, 3, 31, 25), 0.0f));
+        assertTrue(Matrices.equal(A.subMatrix(10, 20, 20, 27),
+            clusterMatrices.getBlock("A", 1, 2), 0.0f));
+        assertTrue(Matrices.equal(A.subMatrix(30, 0, 35, 10),
+            clusterMatrices.getBlock("A", 3, 0), 0.0f));
+
+        try
+        {
+            clusterMatrices.getBlockAsync("A", 4, 0).get(30, TimeUnit.SECONDS);
+            fail("Expected an ExecutionException");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof IndexOutOfBoundsException);
+        }
+        try
+        {
+            clusterMatrices.downloadAsync("A", 0, 0, 36, 27)
+                .get(30, TimeUnit.SECONDS);
+            fail("Expected an ExecutionException");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof IndexOutOfBoundsException);
+        }
+        try
+        {
+            clusterMatrices.downloadAsync("X").get(30, TimeUnit.SECONDS);
+            fail("Expected an ExecutionException");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    public void testMultiplyChain() throws Exception
+    {
+        HazelcastInstance member = createMember();
+        createMember();
+        ClusterMatrices clusterMatrices = createClusterMatrices(member, 4,
+            MatrixMultiplicators.createSimpleFactory());
+
+        MutableFloatMatrix2D A = createRandom(35, 27);
+        MutableFloatMatrix2D B = createRandom(27, 41);
+        MutableFloatMatrix2D C = createRandom(41, 18);
+        clusterMatrices.upload("A", A);
+        clusterMatrices.upload("B", B);
+        clusterMatrices.upload("C", C);
+
+        ClusterMatrixInfo infoAB = clusterMatrices.multiply("A", "B", "AB");
+        assertEquals(35, infoAB.getNumRows());
+        assertEquals(41, infoAB.getNumColumns());
+        ClusterMatrixInfo infoABC =
+            clusterMatrices.multiply("AB", "C", "ABC");
+        assertEquals(35, infoABC.getNumRows());
+        assertEquals(18, infoABC.getNumColumns());
+
+        MutableFloatMatrix2D AB = multiplySimple(A, B);
+        assertTrue(Matrices.equal(AB, clusterMatrices.download("AB"), 1e-3f));
+        assertTrue(Matrices.equal(multiplySimple(AB, C),
+            clusterMatrices.download("ABC"), 1e-2f));
+        assertEquals(countBlocks(A) + countBlocks(B) + countBlocks(C) +
+            countBlocks(AB) + countBlocks(multiplySimple(AB, C)),
+            member.getMap(MatMulUtils.MATRICES_MAP_NAME).size());
+    }
+
+    public void testInvalidMultiplication() throws Exception
+    {
+        HazelcastInstance member = createMember();
+        ClusterMatrices clusterMatrices = createClusterMatrices(member, 0,
+            MatrixMultiplicators.createSimpleFactory());
+
+        clusterMatrices.upload("A", createRandom(20, 30));
+        clusterMatrices.upload("B", createRandom(20, 30));
+        String names[][] = { { "A", "B" }, { "A", "X" }, { "X", "B" } };
+        for (String pair[] : names)
+        {
+            try
+            {
+                clusterMatrices.multiplyAsync(pair[0], pair[1], "C")
+                    .get(30, TimeUnit.SECONDS);
+                fail("Expected an ExecutionException");
+            }
+            catch (ExecutionException e)
+            {
+                assertTrue(e.getCause() instanceof IllegalArgumentException);
+            }
+        }
+        assertNull(member.getMap(MatMulUtils.MATRIX_INFOS_MAP_NAME).get("C"));
+        assertEquals(12, member.getMap(MatMulUtils.MATRICES_MAP_NAME).size());
+    }
+
+    public void testReplaceAndDelete() throws Exception
+    {
+        HazelcastInstance member = createMember();
+        createMember();
+        ClusterMatrices clusterMatrices = createClusterMatrices(member, 0,
+            MatrixMultiplicators.createSimpleFactory());
+        IMap<?, ?> blocks = member.getMap(MatMulUtils.MATRICES_MAP_NAME);
+
+        MutableFloatMatrix2D A0 = createRandom(35, 27);
+        MutableFloatMatrix2D A1 = createRandom(12, 8);
+        ClusterMatrixInfo info0 = clusterMatrices.upload("A", A0);
+        ClusterMatrixInfo info1 = clusterMatrices.upload("A", A1);
+        assertFalse(info0.getStorageId().equals(info1.getStorageId()));
+        assertTrue(Matrices.equal(A1, clusterMatrices.download("A"), 0.0f));
+        awaitSize(blocks, countBlocks(A1));
+
+        clusterMatrices.delete("A");
+        awaitSize(blocks, 0);
+        assertNull(member.getMap(MatMulUtils.MATRIX_INFOS_MAP_NAME).get("A"));
+        try
+        {
+            clusterMatrices.getInfoAsync("A").get(30, TimeUnit.SECONDS);
+            fail("Expected an ExecutionException");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+
+        // Deleting a matrix that does not exist has no effect
+        clusterMatrices.delete("A");
+    }
+
+    public void testFailedMultiplicationIsRemoved() throws Exception
+    {
+        HazelcastInstance member = createMember();
+
+        // With a single member and a single task in flight, the first
+        // result blocks are stored before the fourth product fails
+        productsBeforeFailure = 3;
+        ClusterMatrices clusterMatrices =
+            createClusterMatrices(member, 1, new FailingFactory());
+        IMap<?, ?> blocks = member.getMap(MatMulUtils.MATRICES_MAP_NAME);
+
+        MutableFloatMatrix2D A = createRandom(35, 27);
+        MutableFloatMatrix2D B = createRandom(27, 41);
+        MutableFloatMatrix2D C = createRandom(35, 41);
+        clusterMatrices.upload("A", A);
+        clusterMatrices.upload("B", B);
+        clusterMatrices.upload("C", C);
+        try
+        {
+            clusterMatrices.multiplyAsync("A", "B", "C")
+                .get(30, TimeUnit.SECONDS);
+            fail("Expected an ExecutionException");
+        }
+        catch (ExecutionException e)
+        {
+            // Expected
+        }
+        assertEquals(4, products.get());
+
+        // The partial result is removed, and the previous matrix that
+        // was stored under the name of the result is kept
+        awaitSize(blocks, countBlocks(A) + countBlocks(B) + countBlocks(C));
+        assertTrue(Matrices.equal(C, clusterMatrices.download("C"), 0.0f));
+    }
+}
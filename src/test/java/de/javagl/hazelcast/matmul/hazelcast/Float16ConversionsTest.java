@@ -0,0 +1,146 @@
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import junit.framework.TestCase;
+
+public class Float16ConversionsTest extends TestCase
+{
+    private static float bits(int bits)
+    {
+        return Float.intBitsToFloat(bits);
+    }
+    
+    public void testHalfSpecialValues()
+    {
+        assertEquals(0x0000, Float16Conversions.toHalf(0.0f));
+        assertEquals(0x8000, Float16Conversions.toHalf(-0.0f));
+        assertEquals(0x3c00, Float16Conversions.toHalf(1.0f));
+        assertEquals(0xc000, Float16Conversions.toHalf(-2.0f));
+        assertEquals(0x7c00, Float16Conversions.toHalf(
+            Float.POSITIVE_INFINITY));
+        assertEquals(0xfc00, Float16Conversions.toHalf(
+            Float.NEGATIVE_INFINITY));
+        assertTrue(Float.isNaN(Float16Conversions.fromHalf(
+            Float16Conversions.toHalf(Float.NaN))));
+        assertTrue(Float.isNaN(Float16Conversions.fromHalf(
+            Float16Conversions.toHalf(bits(0x7f800001)))));
+        assertEquals(Float.floatToRawIntBits(-0.0f), 
+            Float.floatToRawIntBits(Float16Conversions.fromHalf(0x8000)));
+    }
+    
+    public void testHalfRange()
+    {
+        // The largest half value, and values that are rounded to it
+        assertEquals(0x7bff, Float16Conversions.toHalf(65504.0f));
+        assertEquals(0x7bff, Float16Conversions.toHalf(65519.0f));
+        assertEquals(65504.0f, Float16Conversions.fromHalf(0x7bff), 0.0f);
+        
+        // Values that are rounded to infinity
+        assertEquals(0x7c00, Float16Conversions.toHalf(65520.0f));
+        assertEquals(0xfc00, Float16Conversions.toHalf(-1.0e10f));
+        assertEquals(0x7c00, Float16Conversions.toHalf(Float.MAX_VALUE));
+    }
+    
+    public void testHalfSubnormals()
+    {
+        float minSubnormal = (float)Math.pow(2, -24);
+        float minNormal = (float)Math.pow(2, -14);
+        assertEquals(0x0001, Float16Conversions.toHalf(minSubnormal));
+        assertEquals(0x03ff, Float16Conversions.toHalf(1023 * minSubnormal));
+        assertEquals(0x0400, Float16Conversions.toHalf(minNormal));
+        assertEquals(minSubnormal, Float16Conversions.fromHalf(0x0001), 0.0f);
+        assertEquals(minNormal, Float16Conversions.fromHalf(0x0400), 0.0f);
+        
+        // Half of the smallest subnormal is a tie, rounded to zero, and
+        // anything above that is rounded to the smallest subnormal
+        assertEquals(0x0000, Float16Conversions.toHalf(minSubnormal / 2));
+        assertEquals(0x8000, Float16Conversions.toHalf(-minSubnormal / 2));
+        assertEquals(0x0001, Float16Conversions.toHalf(minSubnormal * 0.75f));
+        assertEquals(0x0000, Float16Conversions.toHalf(Float.MIN_VALUE));
+        
+        // Ties between subnormals are rounded to even
+        assertEquals(0x0002, Float16Conversions.toHalf(minSubnormal * 1.5f));
+        assertEquals(0x0002, Float16Conversions.toHalf(minSubnormal * 2.5f));
+    }
+    
+    public void testHalfRounding()
+    {
+        float ulp = (float)Math.pow(2, -10);
+        
+        // Ties are rounded to even
+        assertEquals(0x3c00, Float16Conversions.toHalf(1.0f + ulp * 0.5f));
+        assertEquals(0x3c02, Float16Conversions.toHalf(1.0f + ulp * 1.5f));
+        
+        // Values that are not ties are rounded to the nearest value
+        assertEquals(0x3c01, Float16Conversions.toHalf(1.0f + ulp * 0.51f));
+        assertEquals(0x3c01, Float16Conversions.toHalf(1.0f + ulp * 1.49f));
+        
+        // An overflow of the mantissa increases the exponent
+        assertEquals(0x4000, Float16Conversions.toHalf(2.0f - ulp * 0.5f));
+    }
+    
+    public void testHalfRoundTrip()
+    {
+        for (int half = 0; half <= 0xffff; half++)
+        {
+            float value = Float16Conversions.fromHalf(half);
+            if (Float.isNaN(value))
+            {
+                continue;
+            }
+            assertEquals("Value " + value, half, 
+                Float16Conversions.toHalf(value));
+        }
+    }
+    
+    public void testBFloat16SpecialValues()
+    {
+        assertEquals(0x3f80, Float16Conversions.toBFloat16(1.0f));
+        assertEquals(0x8000, Float16Conversions.toBFloat16(-0.0f));
+        assertEquals(0x7f80, Float16Conversions.toBFloat16(
+            Float.POSITIVE_INFINITY));
+        assertEquals(0xff80, Float16Conversions.toBFloat16(
+            Float.NEGATIVE_INFINITY));
+        
+        // A NaN whose payload is only in the lower bits must not become
+        // infinity
+        assertTrue(Float.isNaN(Float16Conversions.fromBFloat16(
+            Float16Conversions.toBFloat16(bits(0x7f800001)))));
+        assertTrue(Float.isNaN(Float16Conversions.fromBFloat16(
+            Float16Conversions.toBFloat16(bits(0xff800001)))));
+        
+        // The largest float values are rounded to infinity
+        assertEquals(0x7f80, Float16Conversions.toBFloat16(Float.MAX_VALUE));
+        
+        // Subnormals are kept
+        assertEquals(0x0001, Float16Conversions.toBFloat16(bits(0x00010000)));
+        assertEquals(0x0000, Float16Conversions.toBFloat16(Float.MIN_VALUE));
+    }
+    
+    public void testBFloat16Rounding()
+    {
+        // Ties are rounded to even
+        assertEquals(0x3f80, Float16Conversions.toBFloat16(bits(0x3f808000)));
+        assertEquals(0x3f82, Float16Conversions.toBFloat16(bits(0x3f818000)));
+        
+        // Values that are not ties are rounded to the nearest value
+        assertEquals(0x3f81, Float16Conversions.toBFloat16(bits(0x3f808001)));
+        assertEquals(0x3f81, Float16Conversions.toBFloat16(bits(0x3f817fff)));
+        
+        // An overflow of the mantissa increases the exponent
+        assertEquals(0x4000, Float16Conversions.toBFloat16(bits(0x3fffc000)));
+    }
+    
+    public void testBFloat16RoundTrip()
+    {
+        for (int bf16 = 0; bf16 <= 0xffff; bf16++)
+        {
+            float value = Float16Conversions.fromBFloat16(bf16);
+            if (Float.isNaN(value))
+            {
+                continue;
+            }
+            assertEquals("Value " + value, bf16, 
+                Float16Conversions.toBFloat16(value));
+        }
+    }
+}
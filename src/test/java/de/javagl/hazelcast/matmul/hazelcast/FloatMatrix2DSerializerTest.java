@@ -0,0 +1,280 @@
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.nio.FloatBuffer;
+
+import com.hazelcast.config.SerializationConfig;
+import com.hazelcast.internal.serialization.InternalSerializationService;
+import com.hazelcast.internal.serialization.impl.DefaultSerializationServiceBuilder;
+import com.hazelcast.nio.serialization.HazelcastSerializationException;
+
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+import de.javagl.hazelcast.matmul.MatMulResult;
+import de.javagl.hazelcast.matmul.MatMulTask;
+import de.javagl.hazelcast.matmul.Matrices;
+import de.javagl.hazelcast.matmul.MutableFloatMatrix2D;
+import de.javagl.hazelcast.matmul.Point;
+
+import junit.framework.TestCase;
+
+public class FloatMatrix2DSerializerTest extends TestCase
+{
+    private static InternalSerializationService createSerializationService()
+    {
+        SerializationConfig serializationConfig = new SerializationConfig();
+        MatMulUtils.initSerializers(serializationConfig);
+        return new DefaultSerializationServiceBuilder()
+            .setConfig(serializationConfig).build();
+    }
+    
+    private static final InternalSerializationService serializationService =
+        createSerializationService();
+    
+    private static MutableFloatMatrix2D createMatrix(
+        int numRows, int numColumns)
+    {
+        MutableFloatMatrix2D m = 
+            Matrices.createFloatMatrix2D(numRows, numColumns);
+        Matrices.fillRandom(m);
+        
+        // Some low-entropy columns, for the compression
+        for (int r = 0; r < numRows; r++)
+        {
+            m.set(r, 0, 0.0f);
+            m.set(r, 1, 1.0f);
+        }
+        return m;
+    }
+    
+    private static float tolerance(BlockPrecision precision)
+    {
+        if (precision == BlockPrecision.BF16)
+        {
+            return 1.0f / 256;
+        }
+        if (precision == BlockPrecision.FP16)
+        {
+            return 1.0f / 2048;
+        }
+        return 0.0f;
+    }
+    
+    public void testPlainMatrixIsExact()
+    {
+        MutableFloatMatrix2D m = createMatrix(300, 200);
+        FloatMatrix2D sub = m.subMatrix(3, 5, 290, 199);
+        FloatMatrix2D read = 
+            serializationService.toObject(serializationService.toData(sub));
+        assertTrue(Matrices.equal(sub, read, 0.0f));
+    }
+    
+    public void testEmptyAndLongColumns()
+    {
+        FloatMatrix2D empty = Matrices.createFloatMatrix2D(0, 7);
+        FloatMatrix2D readEmpty = 
+            serializationService.toObject(serializationService.toData(empty));
+        assertEquals(0, readEmpty.getNumRows());
+        assertEquals(7, readEmpty.getNumColumns());
+        
+        // Columns that are longer than one chunk
+        MutableFloatMatrix2D m = createMatrix(20000, 3);
+        FloatMatrix2D read = 
+            serializationService.toObject(serializationService.toData(m));
+        assertTrue(Matrices.equal(m, read, 0.0f));
+    }
+    
+    public void testOversizedMatrixIsRejected()
+    {
+        // A matrix whose elements do not fit into a single object
+        FloatMatrix2D huge = new FloatMatrix2D()
+        {
+            @Override
+            public int getNumRows()
+            {
+                return 30000;
+            }
+
+            @Override
+            public int getNumColumns()
+            {
+                return 30000;
+            }
+
+            @Override
+            public float get(int r, int c)
+            {
+                return 0.0f;
+            }
+
+            @Override
+            public FloatMatrix2D subMatrix(int r0, int c0, int r1, int c1)
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void getDataColumnMajor(FloatBuffer values)
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+        try
+        {
+            serializationService.toData(huge);
+            fail("Expected HazelcastSerializationException");
+        }
+        catch (HazelcastSerializationException e)
+        {
+            // Expected
+        }
+    }
+    
+    public void testEncodedTaskRoundTrip()
+    {
+        MutableFloatMatrix2D m0 = createMatrix(300, 200);
+        MutableFloatMatrix2D m1 = createMatrix(200, 100);
+        for (BlockCompression compression : BlockCompression.values())
+        {
+            for (BlockPrecision precision : BlockPrecision.values())
+            {
+                String message = compression + " " + precision;
+                BlockEncoding blockEncoding = new BlockEncoding(
+                    compression, precision, BlockPrecision.FP32);
+                MatMulTask task = new MatMulTask(2, 3, 
+                    m0.subMatrix(3, 5, 290, 199), m1, null);
+                EncodedTask<MatMulResult> encodedTask = 
+                    new EncodedTask<MatMulResult>(task, blockEncoding);
+                EncodedTask<?> readEncodedTask = serializationService.toObject(
+                    serializationService.toData(encodedTask));
+                MatMulTask readTask = 
+                    (MatMulTask)readEncodedTask.getCallable();
+                
+                float tolerance = tolerance(precision);
+                assertEquals(message, 3, readTask.getColumnBlockIndex());
+                assertTrue(message, Matrices.equal(
+                    task.getM0(), readTask.getM0(), tolerance));
+                assertTrue(message, Matrices.equal(
+                    task.getM1(), readTask.getM1(), tolerance));
+                
+                float maxRelativeError = blockEncoding.fetchMaxRelativeError();
+                assertTrue(message, maxRelativeError <= tolerance);
+                if (precision == BlockPrecision.FP32)
+                {
+                    assertEquals(message, 0.0f, maxRelativeError, 0.0f);
+                }
+                else
+                {
+                    assertTrue(message, maxRelativeError > 0.0f);
+                }
+                assertEquals(message, 0.0f, 
+                    blockEncoding.fetchMaxRelativeError(), 0.0f);
+            }
+        }
+    }
+    
+    public void testEncodedResultRoundTrip()
+    {
+        MutableFloatMatrix2D m = createMatrix(100, 50);
+        for (BlockCompression compression : BlockCompression.values())
+        {
+            for (BlockPrecision precision : BlockPrecision.values())
+            {
+                String message = compression + " " + precision;
+                BlockEncoding blockEncoding = new BlockEncoding(
+                    compression, BlockPrecision.FP32, precision);
+                MatMulResult result = new MatMulResult(new Point(1, 2), m);
+                EncodedResult<MatMulResult> encodedResult = 
+                    new EncodedResult<MatMulResult>(
+                        result, blockEncoding, 0.0f);
+                EncodedResult<?> readEncodedResult = 
+                    serializationService.toObject(
+                        serializationService.toData(encodedResult));
+                MatMulResult readResult = 
+                    (MatMulResult)readEncodedResult.getValue();
+                
+                float tolerance = tolerance(precision);
+                assertTrue(message, Matrices.equal(
+                    m, readResult.getMatrix(), tolerance));
+                float maxRelativeError = 
+                    readEncodedResult.getMaxRelativeError();
+                assertTrue(message, maxRelativeError <= tolerance);
+                assertEquals(message, precision != BlockPrecision.FP32, 
+                    maxRelativeError > 0.0f);
+            }
+        }
+    }
+    
+    public void testReadEncodedResultCanBeWrittenAgain()
+    {
+        // A member that forwards a result to a client writes it again
+        MutableFloatMatrix2D m = createMatrix(100, 50);
+        BlockEncoding blockEncoding = new BlockEncoding(
+            BlockCompression.NONE, BlockPrecision.FP32, BlockPrecision.FP16);
+        EncodedResult<MatMulResult> encodedResult = 
+            new EncodedResult<MatMulResult>(
+                new MatMulResult(new Point(1, 2), m), blockEncoding, 0.0f);
+        EncodedResult<?> readEncodedResult = serializationService.toObject(
+            serializationService.toData(encodedResult));
+        EncodedResult<?> rereadEncodedResult = serializationService.toObject(
+            serializationService.toData(readEncodedResult));
+        
+        MatMulResult readResult = 
+            (MatMulResult)readEncodedResult.getValue();
+        MatMulResult rereadResult = 
+            (MatMulResult)rereadEncodedResult.getValue();
+        assertTrue(Matrices.equal(
+            readResult.getMatrix(), rereadResult.getMatrix(), 0.0f));
+        assertEquals(readEncodedResult.getMaxRelativeError(), 
+            rereadEncodedResult.getMaxRelativeError());
+        assertTrue(rereadEncodedResult.getMaxRelativeError() > 0.0f);
+    }
+    
+    public void testResultCarriesJobIdAndSlice()
+    {
+        MutableFloatMatrix2D m = createMatrix(37, 23);
+        MatMulResult result = 
+            new MatMulResult("job", 3, new Point(1, 2), m, null);
+        MatMulResult readResult = serializationService.toObject(
+            serializationService.toData(result));
+        assertEquals("job", readResult.getJobId());
+        assertEquals(3, readResult.getSlice());
+        assertEquals(new Point(1, 2), readResult.getPoint());
+        assertTrue(Matrices.equal(m, readResult.getMatrix(), 0.0f));
+        
+        MatMulResult resultWithoutJobId = 
+            new MatMulResult(new Point(1, 2), m);
+        MatMulResult readResultWithoutJobId = serializationService.toObject(
+            serializationService.toData(resultWithoutJobId));
+        assertNull(readResultWithoutJobId.getJobId());
+    }
+    
+    public void testReleasedResultMatrixIsReused()
+    {
+        MutableFloatMatrix2D m0 = createMatrix(41, 29);
+        MutableFloatMatrix2D m1 = createMatrix(41, 29);
+        MatMulResult readResult0 = serializationService.toObject(
+            serializationService.toData(
+                new MatMulResult("job", 0, new Point(0, 0), m0, null)));
+        MutableFloatMatrix2D received = readResult0.getMatrix();
+        readResult0.release();
+        
+        MatMulResult readResult1 = serializationService.toObject(
+            serializationService.toData(
+                new MatMulResult("job", 0, new Point(0, 1), m1, null)));
+        assertSame(received, readResult1.getMatrix());
+        assertTrue(Matrices.equal(m1, readResult1.getMatrix(), 0.0f));
+    }
+    
+    public void testEncodingOnlyAppliesToWrappedObject()
+    {
+        MutableFloatMatrix2D m = createMatrix(100, 50);
+        BlockEncoding blockEncoding = new BlockEncoding(
+            BlockCompression.DEFLATE, BlockPrecision.BF16, BlockPrecision.BF16);
+        serializationService.toData(new EncodedTask<MatMulResult>(
+            new MatMulTask(0, 0, m, m, null), blockEncoding));
+        
+        // A matrix that is written afterwards is written exactly
+        FloatMatrix2D read = 
+            serializationService.toObject(serializationService.toData(m));
+        assertTrue(Matrices.equal(m, read, 0.0f));
+    }
+}
@@ -0,0 +1,154 @@
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.io.Serializable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.spi.exception.RetryableHazelcastException;
+
+import de.javagl.hazelcast.matmul.AsyncExecutor;
+import de.javagl.hazelcast.matmul.MatMulResult;
+import de.javagl.hazelcast.matmul.MatMulTask;
+import de.javagl.hazelcast.matmul.Matrices;
+import de.javagl.hazelcast.matmul.MatrixMultiplicators;
+import de.javagl.hazelcast.matmul.MutableFloatMatrix2D;
+
+import junit.framework.TestCase;
+
+public class HazelcastAsyncExecutorTest extends TestCase
+{
+    private static final AtomicInteger executions = new AtomicInteger();
+    
+    private static class FailingCallable 
+        implements Callable<Integer>, Serializable
+    {
+        private static final long serialVersionUID = 1L;
+        
+        private final int failures;
+        
+        FailingCallable(int failures)
+        {
+            this.failures = failures;
+        }
+        
+        @Override
+        public Integer call()
+        {
+            int execution = executions.incrementAndGet();
+            if (execution <= failures)
+            {
+                // Wrapped, so that Hazelcast does not retry the 
+                // invocation internally
+                throw new IllegalStateException(
+                    new RetryableHazelcastException("Failure " + execution));
+            }
+            return execution;
+        }
+    }
+    
+    private HazelcastInstance hazelcastInstance;
+    
+    @Override
+    protected void setUp() throws Exception
+    {
+        Config config = new Config();
+        config.setClusterName(getClass().getSimpleName());
+        config.setProperty("hazelcast.logging.type", "none");
+        config.getNetworkConfig().getJoin().getMulticastConfig()
+            .setEnabled(false);
+        MatMulUtils.initSerializers(config.getSerializationConfig());
+        hazelcastInstance = Hazelcast.newHazelcastInstance(config);
+        executions.set(0);
+    }
+    
+    @Override
+    protected void tearDown() throws Exception
+    {
+        hazelcastInstance.shutdown();
+    }
+    
+    public void testRetryOnSingleMember() throws Exception
+    {
+        HazelcastAsyncExecutor executor = new HazelcastAsyncExecutor(
+            hazelcastInstance, 
+            hazelcastInstance.getExecutorService("testExecutorService"), 2);
+        CompletableFuture<Integer> future = 
+            executor.submit(new FailingCallable(2));
+        assertEquals(Integer.valueOf(3), future.get(30, TimeUnit.SECONDS));
+    }
+    
+    public void testRetriesExhaustedOnSingleMember() throws Exception
+    {
+        HazelcastAsyncExecutor executor = new HazelcastAsyncExecutor(
+            hazelcastInstance, 
+            hazelcastInstance.getExecutorService("testExecutorService"), 2);
+        CompletableFuture<Integer> future = 
+            executor.submit(new FailingCallable(Integer.MAX_VALUE));
+        try
+        {
+            future.get(30, TimeUnit.SECONDS);
+            fail("Expected an ExecutionException");
+        }
+        catch (ExecutionException e)
+        {
+            // Expected
+        }
+        assertEquals(1 + HazelcastAsyncExecutor.DEFAULT_MAX_RETRIES, 
+            executions.get());
+    }
+    
+    private static MatMulResult multiply(AsyncExecutor executor) 
+        throws Exception
+    {
+        MutableFloatMatrix2D A = Matrices.createFloatMatrix2D(20, 30);
+        MutableFloatMatrix2D B = Matrices.createFloatMatrix2D(30, 10);
+        Matrices.fillRandom(A);
+        Matrices.fillRandom(B);
+        MatMulTask task = new MatMulTask("job", 0, 0, 0, A, B,
+            MatrixMultiplicators.createSimpleFactory());
+        MatMulResult result = 
+            executor.submit(task).get(30, TimeUnit.SECONDS);
+        MutableFloatMatrix2D expected = Matrices.createFloatMatrix2D(20, 10);
+        MatrixMultiplicators.createSimple().multiply(expected, A, B);
+        assertTrue(Matrices.equal(expected, result.getMatrix(), 0.1f));
+        return result;
+    }
+    
+    public void testJobExecutorsRecordErrorsSeparately() throws Exception
+    {
+        BlockEncoding sharedEncoding = new BlockEncoding(
+            BlockCompression.NONE, BlockPrecision.FP32, BlockPrecision.FP32);
+        HazelcastAsyncExecutor executor = new HazelcastAsyncExecutor(
+            hazelcastInstance, 
+            hazelcastInstance.getExecutorService("testExecutorService"), 2,
+            HazelcastAsyncExecutor.DEFAULT_MAX_RETRIES, 0.0, sharedEncoding);
+        BlockEncoding encoding0 = new BlockEncoding(
+            BlockCompression.NONE, BlockPrecision.BF16, BlockPrecision.FP32);
+        BlockEncoding encoding1 = new BlockEncoding(
+            BlockCompression.NONE, BlockPrecision.FP16, BlockPrecision.FP32);
+        AsyncExecutor jobExecutor0 = executor.createJobExecutor(encoding0);
+        AsyncExecutor jobExecutor1 = executor.createJobExecutor(encoding1);
+        
+        multiply(jobExecutor0);
+        float error0 = encoding0.fetchMaxRelativeError();
+        assertTrue(error0 > 0.0f);
+        assertTrue(error0 <= 1.0f / 256);
+        assertEquals(0.0f, encoding1.fetchMaxRelativeError(), 0.0f);
+        
+        multiply(jobExecutor1);
+        float error1 = encoding1.fetchMaxRelativeError();
+        assertTrue(error1 > 0.0f);
+        assertTrue(error1 <= 1.0f / 2048);
+        assertEquals(0.0f, encoding0.fetchMaxRelativeError(), 0.0f);
+        assertEquals(0.0f, sharedEncoding.fetchMaxRelativeError(), 0.0f);
+        
+        jobExecutor0.shutdown();
+        jobExecutor1.shutdown();
+    }
+}
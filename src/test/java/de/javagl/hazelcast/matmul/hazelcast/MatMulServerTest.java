@@ -0,0 +1,151 @@
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.io.Serializable;
+import java.util.Properties;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.config.ExecutorConfig;
+
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+import de.javagl.hazelcast.matmul.MatrixMultiplicators;
+import de.javagl.hazelcast.matmul.MatrixMultiplicators.ParallelMatrixMultiplicatorFactory;
+import de.javagl.hazelcast.matmul.MatrixMultiplicators.SimpleMatrixMultiplicatorFactory;
+
+import junit.framework.TestCase;
+
+public class MatMulServerTest extends TestCase
+{
+    private static class CustomFactory
+        implements Factory<MatrixMultiplicator>, Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public MatrixMultiplicator create()
+        {
+            return MatrixMultiplicators.createSimple();
+        }
+    }
+    
+    private static MatMulMemberContext getContext(Config config)
+    {
+        for (Object value : config.getUserContext().values())
+        {
+            if (value instanceof MatMulMemberContext)
+            {
+                return (MatMulMemberContext)value;
+            }
+        }
+        fail("No MatMulMemberContext in the configuration");
+        return null;
+    }
+    
+    private static Config createConfig(String... keysAndValues)
+    {
+        Properties properties = new Properties();
+        for (int i = 0; i < keysAndValues.length; i += 2)
+        {
+            properties.setProperty(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        MatMulServer server = new MatMulServer();
+        server.applyProperties(properties);
+        return server.createConfig();
+    }
+    
+    public void testDefaults()
+    {
+        Config config = createConfig();
+        int processors = Runtime.getRuntime().availableProcessors();
+        
+        ExecutorConfig executorConfig = 
+            config.getExecutorConfig("matMulExecutorService");
+        assertEquals(ExecutorConfig.DEFAULT_POOL_SIZE, 
+            executorConfig.getPoolSize());
+        assertEquals(ExecutorConfig.DEFAULT_QUEUE_CAPACITY, 
+            executorConfig.getQueueCapacity());
+        assertTrue(executorConfig.isStatisticsEnabled());
+        
+        MatMulMemberContext context = getContext(config);
+        assertEquals(processors, context.getComputeThreads());
+        assertEquals(MatMulMemberContext.DEFAULT_COMPUTE_QUEUE_FACTOR * 
+            processors, context.getComputeQueueCapacity());
+        assertNull(context.getKernelFactory());
+        assertEquals(Runtime.getRuntime().maxMemory() / 4, 
+            context.getBlockCache().getMaxSizeInBytes());
+        assertEquals(String.valueOf(processors), 
+            config.getMemberAttributeConfig().getAttribute("matmul.cores"));
+    }
+    
+    public void testProperties()
+    {
+        Config config = createConfig(
+            "executorPoolSize", " 7 ", 
+            "executorQueueCapacity", "123",
+            "executorStatisticsEnabled", "false",
+            "computeThreads", "3",
+            "computeQueueCapacity", "5",
+            "blockCacheSizeMB", "2",
+            "kernel", "parallel",
+            "kernelBlockSize", "25");
+        
+        ExecutorConfig executorConfig = 
+            config.getExecutorConfig("matMulExecutorService");
+        assertEquals(7, executorConfig.getPoolSize());
+        assertEquals(123, executorConfig.getQueueCapacity());
+        assertFalse(executorConfig.isStatisticsEnabled());
+        
+        MatMulMemberContext context = getContext(config);
+        assertEquals(3, context.getComputeThreads());
+        assertEquals(5, context.getComputeQueueCapacity());
+        assertEquals(2L * 1024 * 1024, 
+            context.getBlockCache().getMaxSizeInBytes());
+        ParallelMatrixMultiplicatorFactory kernelFactory = 
+            (ParallelMatrixMultiplicatorFactory)context.getKernelFactory();
+        assertEquals(25, kernelFactory.getBlockSize());
+        assertEquals("3", 
+            config.getMemberAttributeConfig().getAttribute("matmul.cores"));
+    }
+    
+    public void testInvalidValuesKeepDefaults()
+    {
+        Config config = createConfig(
+            "executorPoolSize", "many", 
+            "computeThreads", "3.5",
+            "kernel", "fastest");
+        int processors = Runtime.getRuntime().availableProcessors();
+        
+        ExecutorConfig executorConfig = 
+            config.getExecutorConfig("matMulExecutorService");
+        assertEquals(ExecutorConfig.DEFAULT_POOL_SIZE, 
+            executorConfig.getPoolSize());
+        MatMulMemberContext context = getContext(config);
+        assertEquals(processors, context.getComputeThreads());
+        assertNull(context.getKernelFactory());
+    }
+    
+    public void testKernelOnlyReplacesBuiltInFactories()
+    {
+        Config config = createConfig("kernel", "simple");
+        MatMulMemberContext context = getContext(config);
+        Factory<MatrixMultiplicator> kernelFactory = 
+            context.getKernelFactory();
+        assertTrue(kernelFactory instanceof SimpleMatrixMultiplicatorFactory);
+        
+        assertSame(kernelFactory, context.resolveFactory(
+            MatrixMultiplicators.createParallelFactory(10)));
+        assertSame(kernelFactory, context.resolveFactory(
+            MatrixMultiplicators.createSimpleFactory()));
+        CustomFactory customFactory = new CustomFactory();
+        assertSame(customFactory, context.resolveFactory(customFactory));
+    }
+    
+    public void testClientKernelKeepsFactories()
+    {
+        Config config = createConfig("kernel", "client");
+        MatMulMemberContext context = getContext(config);
+        Factory<MatrixMultiplicator> factory = 
+            MatrixMultiplicators.createParallelFactory(10);
+        assertSame(factory, context.resolveFactory(factory));
+    }
+}
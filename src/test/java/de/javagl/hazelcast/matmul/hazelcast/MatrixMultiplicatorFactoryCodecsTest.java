@@ -0,0 +1,142 @@
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.io.IOException;
+
+import com.hazelcast.internal.nio.BufferObjectDataOutput;
+import com.hazelcast.internal.serialization.InternalSerializationService;
+import com.hazelcast.internal.serialization.impl.DefaultSerializationServiceBuilder;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+import de.javagl.hazelcast.matmul.MatrixMultiplicators;
+import de.javagl.hazelcast.matmul.MatrixMultiplicators.ParallelMatrixMultiplicatorFactory;
+import de.javagl.hazelcast.matmul.MatrixMultiplicators.SimpleMatrixMultiplicatorFactory;
+
+import junit.framework.TestCase;
+
+public class MatrixMultiplicatorFactoryCodecsTest extends TestCase
+{
+    private static final int CUSTOM_ID = 
+        MatrixMultiplicatorFactoryCodecs.MIN_CUSTOM_ID + 4711;
+    
+    private static class CustomFactory implements Factory<MatrixMultiplicator>
+    {
+        private final int parameter;
+        
+        CustomFactory(int parameter)
+        {
+            this.parameter = parameter;
+        }
+        
+        @Override
+        public MatrixMultiplicator create()
+        {
+            return MatrixMultiplicators.createSimple();
+        }
+    }
+    
+    private static class CustomFactoryCodec 
+        implements MatrixMultiplicatorFactoryCodec<CustomFactory>
+    {
+        @Override
+        public void write(ObjectDataOutput out, CustomFactory factory)
+            throws IOException
+        {
+            out.writeInt(factory.parameter);
+        }
+        
+        @Override
+        public CustomFactory read(ObjectDataInput in) throws IOException
+        {
+            return new CustomFactory(in.readInt());
+        }
+    }
+    
+    private static final InternalSerializationService serializationService =
+        new DefaultSerializationServiceBuilder().build();
+    
+    private static Factory<MatrixMultiplicator> writeAndRead(
+        Factory<MatrixMultiplicator> factory) throws IOException
+    {
+        BufferObjectDataOutput out = 
+            serializationService.createObjectDataOutput(64);
+        MatrixMultiplicatorFactoryCodecs.write(out, factory);
+        ObjectDataInput in = 
+            serializationService.createObjectDataInput(out.toByteArray());
+        return MatrixMultiplicatorFactoryCodecs.read(in);
+    }
+    
+    public void testBuiltInFactories() throws IOException
+    {
+        Factory<MatrixMultiplicator> simple = writeAndRead(
+            MatrixMultiplicators.createSimpleFactory());
+        assertTrue(simple instanceof SimpleMatrixMultiplicatorFactory);
+        
+        Factory<MatrixMultiplicator> parallel = writeAndRead(
+            MatrixMultiplicators.createParallelFactory(17));
+        assertTrue(parallel instanceof ParallelMatrixMultiplicatorFactory);
+        assertEquals(17, 
+            ((ParallelMatrixMultiplicatorFactory)parallel).getBlockSize());
+    }
+    
+    public void testCustomCodec() throws IOException
+    {
+        MatrixMultiplicatorFactoryCodecs.register(
+            CUSTOM_ID, CustomFactory.class, new CustomFactoryCodec());
+        Factory<MatrixMultiplicator> factory = 
+            writeAndRead(new CustomFactory(123));
+        assertTrue(factory instanceof CustomFactory);
+        assertEquals(123, ((CustomFactory)factory).parameter);
+        
+        try
+        {
+            MatrixMultiplicatorFactoryCodecs.register(
+                CUSTOM_ID, CustomFactory.class, new CustomFactoryCodec());
+            fail("Expected an IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // Expected
+        }
+    }
+    
+    public void testInvalidCustomId()
+    {
+        try
+        {
+            MatrixMultiplicatorFactoryCodecs.register(
+                MatrixMultiplicatorFactoryCodecs.MIN_CUSTOM_ID - 1, 
+                CustomFactory.class, new CustomFactoryCodec());
+            fail("Expected an IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // Expected
+        }
+    }
+    
+    public void testUnknownId() throws IOException
+    {
+        BufferObjectDataOutput out = 
+            serializationService.createObjectDataOutput(64);
+        out.writeInt(CUSTOM_ID + 1);
+        ObjectDataInput in = 
+            serializationService.createObjectDataInput(out.toByteArray());
+        try
+        {
+            MatrixMultiplicatorFactoryCodecs.read(in);
+            fail("Expected an IOException");
+        }
+        catch (IOException e)
+        {
+            // Expected
+        }
+    }
+    
+    public void testNullFactory() throws IOException
+    {
+        assertNull(writeAndRead(null));
+    }
+}
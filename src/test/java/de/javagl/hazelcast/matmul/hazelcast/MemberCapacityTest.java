@@ -0,0 +1,113 @@
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.hazelcast.cluster.Member;
+import com.hazelcast.config.MemberAttributeConfig;
+
+import junit.framework.TestCase;
+
+public class MemberCapacityTest extends TestCase
+{
+    private static Member createMember(MemberCapacity capacity)
+    {
+        MemberAttributeConfig config = new MemberAttributeConfig();
+        if (capacity != null)
+        {
+            capacity.applyTo(config);
+        }
+        return createMember(config.getAttributes());
+    }
+    
+    private static Member createMember(final Map<String, String> attributes)
+    {
+        return (Member)Proxy.newProxyInstance(
+            Member.class.getClassLoader(), new Class<?>[] { Member.class }, 
+            new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args)
+            {
+                if (method.getName().equals("getAttribute"))
+                {
+                    return attributes.get(args[0]);
+                }
+                if (method.getName().equals("getAttributes"))
+                {
+                    return attributes;
+                }
+                if (method.getName().equals("equals"))
+                {
+                    return proxy == args[0];
+                }
+                if (method.getName().equals("hashCode"))
+                {
+                    return System.identityHashCode(proxy);
+                }
+                return null;
+            }
+        });
+    }
+    
+    public void testWeightsAreNormalized()
+    {
+        List<Member> members = new ArrayList<Member>();
+        members.add(createMember(new MemberCapacity(4, 1.0, -1)));
+        members.add(createMember(new MemberCapacity(2, 1.0, -1)));
+        members.add(createMember(new MemberCapacity(1, 6.0, -1)));
+        double weights[] = MemberCapacity.computeWeights(members);
+        
+        // GFLOPS are 4, 2 and 6, with a mean of 4
+        assertEquals(1.0, weights[0], 1e-9);
+        assertEquals(0.5, weights[1], 1e-9);
+        assertEquals(1.5, weights[2], 1e-9);
+    }
+    
+    public void testMissingCapacity()
+    {
+        List<Member> members = new ArrayList<Member>();
+        members.add(createMember(new MemberCapacity(2, 1.0, -1)));
+        members.add(createMember((MemberCapacity)null));
+        members.add(createMember(new MemberCapacity(6, 1.0, -1)));
+        double weights[] = MemberCapacity.computeWeights(members);
+        
+        // The mean is only computed from the members with a capacity,
+        // and the member without a capacity counts as an average one
+        assertEquals(0.5, weights[0], 1e-9);
+        assertEquals(1.0, weights[1], 1e-9);
+        assertEquals(1.5, weights[2], 1e-9);
+    }
+    
+    public void testZeroCapacity()
+    {
+        List<Member> members = new ArrayList<Member>();
+        members.add(createMember(new MemberCapacity(0, 1.0, -1)));
+        members.add(createMember(new MemberCapacity(4, 0.0, -1)));
+        members.add(createMember(new MemberCapacity(4, 2.0, -1)));
+        double weights[] = MemberCapacity.computeWeights(members);
+        assertEquals(1.0, weights[0], 1e-9);
+        assertEquals(1.0, weights[1], 1e-9);
+        assertEquals(1.0, weights[2], 1e-9);
+    }
+    
+    public void testNoCapacities()
+    {
+        Map<String, String> invalid = Collections.singletonMap(
+            "matmul.cores", "invalid");
+        List<Member> members = new ArrayList<Member>();
+        members.add(createMember((MemberCapacity)null));
+        members.add(createMember(invalid));
+        double weights[] = MemberCapacity.computeWeights(members);
+        assertTrue(Arrays.equals(new double[] { 1.0, 1.0 }, weights));
+        
+        List<Member> noMembers = Collections.emptyList();
+        assertEquals(0, MemberCapacity.computeWeights(noMembers).length);
+    }
+}
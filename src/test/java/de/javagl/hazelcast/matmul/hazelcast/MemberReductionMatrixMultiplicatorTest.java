@@ -0,0 +1,162 @@
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+import de.javagl.hazelcast.matmul.Matrices;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+import de.javagl.hazelcast.matmul.MatrixMultiplicators;
+import de.javagl.hazelcast.matmul.MutableFloatMatrix2D;
+
+import junit.framework.TestCase;
+
+public class MemberReductionMatrixMultiplicatorTest extends TestCase
+{
+    private static final AtomicInteger products = new AtomicInteger();
+
+    private static volatile int productsBeforeGate;
+
+    private static volatile CountDownLatch gate;
+
+    private static class GatedFactory
+        implements Factory<MatrixMultiplicator>, Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public MatrixMultiplicator create()
+        {
+            if (products.incrementAndGet() > productsBeforeGate)
+            {
+                try
+                {
+                    gate.await();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return MatrixMultiplicators.createSimple();
+        }
+    }
+
+    private final List<HazelcastInstance> members =
+        new ArrayList<HazelcastInstance>();
+
+    private HazelcastInstance createMember()
+    {
+        Config config = new Config();
+        config.setClusterName(getClass().getSimpleName());
+        config.setProperty("hazelcast.logging.type", "none");
+        config.getNetworkConfig().getJoin().getMulticastConfig()
+            .setEnabled(false);
+        config.getNetworkConfig().getJoin().getTcpIpConfig()
+            .setEnabled(true).addMember("127.0.0.1");
+        MatMulUtils.initSerializers(config.getSerializationConfig());
+        HazelcastInstance member = Hazelcast.newHazelcastInstance(config);
+        members.add(member);
+        return member;
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        products.set(0);
+        productsBeforeGate = Integer.MAX_VALUE;
+        gate = new CountDownLatch(0);
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        gate.countDown();
+        for (HazelcastInstance member : members)
+        {
+            member.getLifecycleService().terminate();
+        }
+        members.clear();
+    }
+
+    private static MutableFloatMatrix2D createRandom(int rows, int columns)
+    {
+        MutableFloatMatrix2D matrix =
+            Matrices.createFloatMatrix2D(rows, columns);
+        Matrices.fillRandom(matrix);
+        return matrix;
+    }
+
+    private static MutableFloatMatrix2D multiplySimple(
+        FloatMatrix2D A, FloatMatrix2D B)
+    {
+        MutableFloatMatrix2D C =
+            Matrices.createFloatMatrix2D(A.getNumRows(), B.getNumColumns());
+        MatrixMultiplicators.createSimple().multiply(C, A, B);
+        return C;
+    }
+
+    public void testMultiply() throws Exception
+    {
+        HazelcastInstance member = createMember();
+        createMember();
+
+        MutableFloatMatrix2D A = createRandom(150, 170);
+        MutableFloatMatrix2D B = createRandom(170, 130);
+        MutableFloatMatrix2D C = Matrices.createFloatMatrix2D(150, 130);
+        MemberReductionMatrixMultiplicator multiplicator =
+            new MemberReductionMatrixMultiplicator(member, "reduction", 20,
+                MatrixMultiplicators.createSimpleFactory());
+        multiplicator.multiplyAsync(C, A, B).get(60, TimeUnit.SECONDS);
+
+        assertTrue(Matrices.equal(C, multiplySimple(A, B), 1e-3f));
+    }
+
+    public void testMemberJoinsDuringJob() throws Exception
+    {
+        HazelcastInstance member = createMember();
+        createMember();
+
+        // 8 x 7 blocks for each of the 9 outer products. The tasks are
+        // blocked in the third outer product, until the new member
+        // joined and the partitions have been migrated
+        productsBeforeGate = 2 * 8 * 7 + 10;
+        gate = new CountDownLatch(1);
+
+        MutableFloatMatrix2D A = createRandom(150, 170);
+        MutableFloatMatrix2D B = createRandom(170, 130);
+        MutableFloatMatrix2D C = Matrices.createFloatMatrix2D(150, 130);
+        MemberReductionMatrixMultiplicator multiplicator =
+            new MemberReductionMatrixMultiplicator(member, "reduction", 20,
+                new GatedFactory());
+        CompletableFuture<MutableFloatMatrix2D> future =
+            multiplicator.multiplyAsync(C, A, B);
+
+        long deadline = System.currentTimeMillis() + 30000;
+        while (products.get() <= productsBeforeGate)
+        {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        createMember();
+        while (!member.getPartitionService().isClusterSafe())
+        {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        gate.countDown();
+        future.get(60, TimeUnit.SECONDS);
+
+        assertTrue(Matrices.equal(C, multiplySimple(A, B), 1e-3f));
+    }
+}
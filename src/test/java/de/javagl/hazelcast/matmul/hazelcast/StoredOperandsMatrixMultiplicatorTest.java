@@ -0,0 +1,271 @@
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+
+import de.javagl.hazelcast.matmul.AsyncExecutor;
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+import de.javagl.hazelcast.matmul.MatMulResult;
+import de.javagl.hazelcast.matmul.Matrices;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+import de.javagl.hazelcast.matmul.MatrixMultiplicators;
+import de.javagl.hazelcast.matmul.MutableFloatMatrix2D;
+import de.javagl.hazelcast.matmul.Point;
+
+import junit.framework.TestCase;
+
+public class StoredOperandsMatrixMultiplicatorTest extends TestCase
+{
+    private static final AtomicInteger products = new AtomicInteger();
+
+    private static final AtomicBoolean gated = new AtomicBoolean();
+
+    private static volatile int productsBeforeGate;
+
+    private static volatile CountDownLatch gate;
+
+    private static volatile CountDownLatch gatedProductFinished;
+
+    private static class GatedFactory
+        implements Factory<MatrixMultiplicator>, Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public MatrixMultiplicator create()
+        {
+            // Only the first task that exceeds the limit is blocked, so
+            // that its speculative execution is not blocked as well
+            if (products.incrementAndGet() > productsBeforeGate &&
+                gated.compareAndSet(false, true))
+            {
+                try
+                {
+                    gate.await();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                gatedProductFinished.countDown();
+            }
+            return MatrixMultiplicators.createSimple();
+        }
+    }
+
+    private final List<HazelcastInstance> members =
+        new ArrayList<HazelcastInstance>();
+
+    private HazelcastInstance createMember()
+    {
+        Config config = new Config();
+        config.setClusterName(getClass().getSimpleName());
+        config.setProperty("hazelcast.logging.type", "none");
+        config.getNetworkConfig().getJoin().getMulticastConfig()
+            .setEnabled(false);
+        config.getNetworkConfig().getJoin().getTcpIpConfig()
+            .setEnabled(true).addMember("127.0.0.1");
+        MatMulUtils.initSerializers(config.getSerializationConfig());
+        HazelcastInstance member = Hazelcast.newHazelcastInstance(config);
+        members.add(member);
+        return member;
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        products.set(0);
+        gated.set(false);
+        productsBeforeGate = Integer.MAX_VALUE;
+        gate = new CountDownLatch(0);
+        gatedProductFinished = new CountDownLatch(1);
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        gate.countDown();
+        for (HazelcastInstance member : members)
+        {
+            member.getLifecycleService().terminate();
+        }
+        members.clear();
+    }
+
+    private static MutableFloatMatrix2D createRandom(int rows, int columns)
+    {
+        MutableFloatMatrix2D matrix =
+            Matrices.createFloatMatrix2D(rows, columns);
+        Matrices.fillRandom(matrix);
+        return matrix;
+    }
+
+    private static MutableFloatMatrix2D multiplySimple(
+        FloatMatrix2D A, FloatMatrix2D B)
+    {
+        MutableFloatMatrix2D C =
+            Matrices.createFloatMatrix2D(A.getNumRows(), B.getNumColumns());
+        MatrixMultiplicators.createSimple().multiply(C, A, B);
+        return C;
+    }
+
+    private static StoredOperandsMatrixMultiplicator createMultiplicator(
+        final HazelcastInstance member, final double speculationFactor,
+        Factory<MatrixMultiplicator> subMatrixMultiplicatorFactory)
+    {
+        Factory<AsyncExecutor> asyncExecutorFactory =
+            new Factory<AsyncExecutor>()
+        {
+            @Override
+            public AsyncExecutor create()
+            {
+                return new HazelcastAsyncExecutor(member,
+                    member.getExecutorService("stored"), 4,
+                    HazelcastAsyncExecutor.DEFAULT_MAX_RETRIES,
+                    speculationFactor);
+            }
+        };
+        return new StoredOperandsMatrixMultiplicator(member,
+            asyncExecutorFactory, 10, subMatrixMultiplicatorFactory);
+    }
+
+    private static void awaitEmpty(IMap<?, ?> map) throws Exception
+    {
+        // The operands are removed asynchronously
+        long deadline = System.currentTimeMillis() + 30000;
+        while (map.size() > 0)
+        {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    public void testMultiply() throws Exception
+    {
+        HazelcastInstance member = createMember();
+        createMember();
+
+        MutableFloatMatrix2D A = createRandom(55, 43);
+        MutableFloatMatrix2D B = createRandom(43, 37);
+        MutableFloatMatrix2D C = Matrices.createFloatMatrix2D(55, 37);
+        StoredOperandsMatrixMultiplicator multiplicator =
+            createMultiplicator(member, 0.0,
+                MatrixMultiplicators.createSimpleFactory());
+        multiplicator.multiplyAsync(C, A, B).get(60, TimeUnit.SECONDS);
+
+        assertTrue(Matrices.equal(C, multiplySimple(A, B), 1e-3f));
+        awaitEmpty(member.getMap(MatMulUtils.OPERANDS_MAP_NAME));
+    }
+
+    public void testStreamingDeliversEachBlockOnceWithSpeculation()
+        throws Exception
+    {
+        HazelcastInstance member = createMember();
+        createMember();
+
+        // 6 x 5 blocks. The 11th task is blocked until all other results
+        // have been received, so that it is executed speculatively on
+        // the other member, and its first result arrives late
+        productsBeforeGate = 10;
+        gate = new CountDownLatch(1);
+
+        MutableFloatMatrix2D A = createRandom(60, 40);
+        MutableFloatMatrix2D B = createRandom(40, 50);
+        final MutableFloatMatrix2D C = Matrices.createFloatMatrix2D(60, 50);
+        final int deliveries[][] = new int[6][5];
+        final AtomicInteger numDeliveries = new AtomicInteger();
+        Consumer<MatMulResult> consumer = new Consumer<MatMulResult>()
+        {
+            @Override
+            public void accept(MatMulResult result)
+            {
+                Point point = result.getPoint();
+                deliveries[point.r][point.c]++;
+                numDeliveries.incrementAndGet();
+                MutableFloatMatrix2D Crc = MatMulUtils.createBlockSubMatrix(
+                    C, 10, point.r, point.c, point.r + 1, point.c + 1);
+                Matrices.add(Crc, Crc, result.getMatrix());
+            }
+        };
+        StoredOperandsMatrixMultiplicator multiplicator =
+            createMultiplicator(member, 2.0, new GatedFactory());
+        CompletableFuture<Void> future =
+            multiplicator.multiplyStreaming(A, B, consumer);
+        future.get(60, TimeUnit.SECONDS);
+
+        // The speculative execution delivered the gated block. Now let
+        // the original execution finish, and give its result some time
+        // to arrive at the client
+        assertEquals(30, numDeliveries.get());
+        assertTrue(products.get() > 30);
+        gate.countDown();
+        assertTrue(gatedProductFinished.await(30, TimeUnit.SECONDS));
+        Thread.sleep(500);
+
+        assertEquals(30, numDeliveries.get());
+        for (int r = 0; r < 6; r++)
+        {
+            for (int c = 0; c < 5; c++)
+            {
+                assertEquals(1, deliveries[r][c]);
+            }
+        }
+        assertTrue(Matrices.equal(C, multiplySimple(A, B), 1e-3f));
+        awaitEmpty(member.getMap(MatMulUtils.OPERANDS_MAP_NAME));
+    }
+
+    public void testConsumerExceptionFailsJob() throws Exception
+    {
+        HazelcastInstance member = createMember();
+        createMember();
+
+        MutableFloatMatrix2D A = createRandom(60, 40);
+        MutableFloatMatrix2D B = createRandom(40, 50);
+        final AtomicInteger numDeliveries = new AtomicInteger();
+        Consumer<MatMulResult> consumer = new Consumer<MatMulResult>()
+        {
+            @Override
+            public void accept(MatMulResult result)
+            {
+                if (numDeliveries.incrementAndGet() == 3)
+                {
+                    throw new IllegalStateException("Consumer failed");
+                }
+            }
+        };
+        StoredOperandsMatrixMultiplicator multiplicator =
+            createMultiplicator(member, 0.0,
+                MatrixMultiplicators.createSimpleFactory());
+        CompletableFuture<Void> future =
+            multiplicator.multiplyStreaming(A, B, consumer);
+        try
+        {
+            future.get(60, TimeUnit.SECONDS);
+            fail("Expected an ExecutionException");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+            assertEquals("Consumer failed", e.getCause().getMessage());
+        }
+
+        // No further blocks are passed to the consumer
+        Thread.sleep(500);
+        assertEquals(3, numDeliveries.get());
+        awaitEmpty(member.getMap(MatMulUtils.OPERANDS_MAP_NAME));
+    }
+}
@@ -0,0 +1,220 @@
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+
+import de.javagl.hazelcast.matmul.Factory;
+import de.javagl.hazelcast.matmul.FloatMatrix2D;
+import de.javagl.hazelcast.matmul.Matrices;
+import de.javagl.hazelcast.matmul.MatrixMultiplicator;
+import de.javagl.hazelcast.matmul.MatrixMultiplicators;
+import de.javagl.hazelcast.matmul.MutableFloatMatrix2D;
+
+import junit.framework.TestCase;
+
+public class SummaMatrixMultiplicatorTest extends TestCase
+{
+    private static final AtomicInteger steps = new AtomicInteger();
+
+    private static volatile int stepsBeforeGate;
+
+    private static volatile CountDownLatch gate;
+
+    private static class GatedFactory
+        implements Factory<MatrixMultiplicator>, Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public MatrixMultiplicator create()
+        {
+            if (steps.incrementAndGet() > stepsBeforeGate)
+            {
+                try
+                {
+                    gate.await();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return MatrixMultiplicators.createSimple();
+        }
+    }
+
+    private final List<HazelcastInstance> members =
+        new ArrayList<HazelcastInstance>();
+
+    private HazelcastInstance createMember()
+    {
+        Config config = new Config();
+        config.setClusterName(getClass().getSimpleName());
+        config.setProperty("hazelcast.logging.type", "none");
+        config.getNetworkConfig().getJoin().getMulticastConfig()
+            .setEnabled(false);
+        config.getNetworkConfig().getJoin().getTcpIpConfig()
+            .setEnabled(true).addMember("127.0.0.1");
+        MatMulUtils.initSerializers(config.getSerializationConfig());
+        HazelcastInstance member = Hazelcast.newHazelcastInstance(config);
+        members.add(member);
+        return member;
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        steps.set(0);
+        stepsBeforeGate = Integer.MAX_VALUE;
+        gate = new CountDownLatch(0);
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        gate.countDown();
+        for (HazelcastInstance member : members)
+        {
+            member.getLifecycleService().terminate();
+        }
+        members.clear();
+    }
+
+    private static MutableFloatMatrix2D createRandom(int rows, int columns)
+    {
+        MutableFloatMatrix2D matrix =
+            Matrices.createFloatMatrix2D(rows, columns);
+        Matrices.fillRandom(matrix);
+        return matrix;
+    }
+
+    private static MutableFloatMatrix2D multiplySimple(
+        FloatMatrix2D A, FloatMatrix2D B)
+    {
+        MutableFloatMatrix2D C =
+            Matrices.createFloatMatrix2D(A.getNumRows(), B.getNumColumns());
+        MatrixMultiplicators.createSimple().multiply(C, A, B);
+        return C;
+    }
+
+    private void assertMultiply(int numMembers, 
+        int rows, int inner, int columns, int blockSize) throws Exception
+    {
+        HazelcastInstance member = createMember();
+        for (int i = 1; i < numMembers; i++)
+        {
+            createMember();
+        }
+        MutableFloatMatrix2D A = createRandom(rows, inner);
+        MutableFloatMatrix2D B = createRandom(inner, columns);
+        MutableFloatMatrix2D C = Matrices.createFloatMatrix2D(rows, columns);
+        SummaMatrixMultiplicator multiplicator =
+            new SummaMatrixMultiplicator(member, "summa", blockSize,
+                MatrixMultiplicators.createSimpleFactory());
+        multiplicator.multiplyAsync(C, A, B).get(60, TimeUnit.SECONDS);
+
+        assertTrue(Matrices.equal(C, multiplySimple(A, B), 1e-3f));
+        for (HazelcastInstance m : members)
+        {
+            assertTrue(MatMulMemberContext.get(m)
+                .getAccumulatorJobIds().isEmpty());
+        }
+    }
+
+    public void testMultiplyTwoMembers() throws Exception
+    {
+        assertMultiply(2, 150, 170, 130, 20);
+    }
+
+    public void testMultiplyThreeMembers() throws Exception
+    {
+        assertMultiply(3, 97, 61, 143, 20);
+    }
+
+    public void testMultiplyFourMembers() throws Exception
+    {
+        assertMultiply(4, 130, 75, 110, 30);
+    }
+
+    public void testMoreMembersThanBlocks() throws Exception
+    {
+        // A single row of blocks, so that the grid has only one row
+        assertMultiply(4, 15, 47, 90, 20);
+    }
+
+    public void testDeadlineClearsAccumulators() throws Exception
+    {
+        HazelcastInstance member = createMember();
+        createMember();
+
+        // Each of the two members finishes its first step, and the
+        // second steps are blocked until the deadline has passed
+        stepsBeforeGate = 2;
+        gate = new CountDownLatch(1);
+
+        MutableFloatMatrix2D A = createRandom(150, 170);
+        MutableFloatMatrix2D B = createRandom(170, 130);
+        MutableFloatMatrix2D C = Matrices.createFloatMatrix2D(150, 130);
+        SummaMatrixMultiplicator multiplicator =
+            new SummaMatrixMultiplicator(member, "summa", 20, 
+                new GatedFactory());
+        CompletableFuture<MutableFloatMatrix2D> future =
+            multiplicator.multiplyAsync(C, A, B, 2, TimeUnit.SECONDS);
+
+        long deadline = System.currentTimeMillis() + 30000;
+        while (steps.get() <= stepsBeforeGate)
+        {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        int accumulatingMembers = 0;
+        for (HazelcastInstance m : members)
+        {
+            if (!MatMulMemberContext.get(m).getAccumulatorJobIds().isEmpty())
+            {
+                accumulatingMembers++;
+            }
+        }
+        assertTrue(accumulatingMembers > 0);
+        
+        try
+        {
+            future.get(30, TimeUnit.SECONDS);
+            fail("Expected an ExecutionException");
+        }
+        catch (ExecutionException e)
+        {
+            // Expected
+        }
+        gate.countDown();
+        
+        // The accumulators are removed by the GatherBlocksTask that 
+        // discards them, and the steps that are still running do not
+        // create them again
+        for (HazelcastInstance m : members)
+        {
+            MatMulMemberContext context = MatMulMemberContext.get(m);
+            while (!context.getAccumulatorJobIds().isEmpty())
+            {
+                assertTrue(System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+        }
+        Thread.sleep(500);
+        for (HazelcastInstance m : members)
+        {
+            assertTrue(MatMulMemberContext.get(m)
+                .getAccumulatorJobIds().isEmpty());
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package de.javagl.hazelcast.matmul.hazelcast;
+
+import junit.framework.TestCase;
+
+public class TaskLatenciesTest extends TestCase
+{
+    public void testTooFewSamples()
+    {
+        TaskLatencies latencies = new TaskLatencies(8);
+        assertEquals(-1, latencies.computeMedian(0));
+        latencies.record(10);
+        latencies.record(20);
+        assertEquals(-1, latencies.computeMedian(3));
+        assertEquals(20, latencies.computeMedian(2));
+    }
+    
+    public void testMedianOfUnsortedSamples()
+    {
+        TaskLatencies latencies = new TaskLatencies(8);
+        latencies.record(50);
+        latencies.record(10);
+        latencies.record(40);
+        latencies.record(20);
+        latencies.record(30);
+        assertEquals(30, latencies.computeMedian(5));
+        
+        // For an even number of samples, the upper median is used
+        latencies.record(60);
+        assertEquals(40, latencies.computeMedian(5));
+    }
+    
+    public void testOldSamplesAreReplaced()
+    {
+        TaskLatencies latencies = new TaskLatencies(3);
+        latencies.record(1000);
+        latencies.record(1000);
+        latencies.record(1000);
+        assertEquals(1000, latencies.computeMedian(3));
+        latencies.record(1);
+        latencies.record(2);
+        assertEquals(2, latencies.computeMedian(3));
+        latencies.record(3);
+        assertEquals(2, latencies.computeMedian(3));
+    }
+}